@@ -82,6 +82,12 @@ public class KnockoutAnalysis extends OpenCgaTool {
     protected void check() throws Exception {
         super.check();
         executorParams.put("executionMethod", params.getString("executionMethod", "auto"));
+        for (String key : Arrays.asList(KnockoutLocalAnalysisExecutor.SHARD_SIZE, KnockoutLocalAnalysisExecutor.SHARD_PARALLELISM,
+                KnockoutLocalAnalysisExecutor.SHARD_CHROMOSOMES)) {
+            if (params.containsKey(key)) {
+                executorParams.put(key, params.get(key));
+            }
+        }
 
         if (CollectionUtils.isEmpty(analysisParams.getSample())
                 || analysisParams.getSample().size() == 1 && analysisParams.getSample().get(0).equals(ParamConstants.ALL)) {
@@ -17,6 +17,7 @@
 package org.opencb.opencga.analysis.variant.knockout;
 
 import com.google.common.collect.Iterables;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
@@ -42,6 +43,7 @@ import org.opencb.opencga.core.models.analysis.knockout.KnockoutByIndividual.Kno
 import org.opencb.opencga.core.models.analysis.knockout.KnockoutTranscript;
 import org.opencb.opencga.core.models.analysis.knockout.KnockoutVariant;
 import org.opencb.opencga.core.tools.annotations.ToolExecutor;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
 import org.opencb.opencga.storage.core.metadata.models.Trio;
 import org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
@@ -55,6 +57,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static org.opencb.biodata.models.clinical.ClinicalProperty.ModeOfInheritance.COMPOUND_HETEROZYGOUS;
@@ -68,6 +71,14 @@ import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.IS
         framework = ToolExecutor.Framework.LOCAL)
 public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor implements VariantStorageToolExecutor {
 
+    public static final String SHARD_SIZE = "shardSize";
+    public static final String SHARD_PARALLELISM = "shardParallelism";
+    /**
+     * Chromosomes to shard by when analysing all protein coding genes, added to the contigs from the study metadata.
+     */
+    public static final String SHARD_CHROMOSOMES = "shardChromosomes";
+    private static final int DEFAULT_SHARD_SIZE = 200;
+
     private String includeSampleData;
     private Logger logger = LoggerFactory.getLogger(this.getClass());
     private VariantStorageManager variantStorageManager;
@@ -88,6 +99,11 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
         String executionMethod = getExecutorParams().getString("executionMethod", "auto");
         boolean bySample;
         switch (executionMethod) {
+            case "sharded":
+                logger.info("Execute knockout analysis by shards");
+                addAttribute("executionMethod", "sharded");
+                new KnockoutShardedExecutor().run();
+                return;
             case "bySample":
                 bySample = true;
                 break;
@@ -160,17 +176,37 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
         }
 
         protected void processSample(String sample) throws Exception {
+            StopWatch stopWatch = StopWatch.createStarted();
+            logger.info("Processing sample {}", sample);
+            Map<String, KnockoutGene> knockoutGenes = sampleKnockouts(sample,
+                    new KnockoutShard("all", null, allProteinCoding, getProteinCodingGenes(), getOtherGenes()));
+
+            if (knockoutGenes.isEmpty()) {
+                logger.info("No results for sample {}", sample);
+            } else {
+                KnockoutByIndividual.GeneKnockoutByIndividualStats stats = getGeneKnockoutBySampleStats(knockoutGenes.values());
+                writeSampleFile(new KnockoutByIndividual()
+                        .setSampleId(sample)
+                        .setStats(stats)
+                        .setGenes(knockoutGenes.values()));
+            }
+            logger.info("Sample {} processed in {}", sample, TimeUtils.durationToString(stopWatch));
+            logger.info("-----------------------------------------------------------");
+        }
+
+        protected Map<String, KnockoutGene> sampleKnockouts(String sample, KnockoutShard shard) throws Exception {
             Query baseQuery = new Query()
                     .append(VariantQueryParam.STUDY.key(), getStudy())
                     .append(VariantQueryParam.FILTER.key(), getFilter())
                     .append(VariantQueryParam.QUAL.key(), getQual());
-            StopWatch stopWatch = StopWatch.createStarted();
-            logger.info("Processing sample {}", sample);
+            if (shard.getChromosome() != null) {
+                baseQuery.append(VariantQueryParam.REGION.key(), shard.getChromosome());
+            }
             Map<String, KnockoutGene> knockoutGenes = new LinkedHashMap<>();
             Trio trio = getTrios().get(sample);
 
             // Protein coding genes (if any)
-            if (allProteinCoding) {
+            if (shard.isAllProteinCoding()) {
                 // All protein coding genes
                 logger.info("Get knockout from ALL protein coding genes");
                 Query query = new Query(baseQuery)
@@ -181,42 +217,31 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
                         getCts()::contains,
                         b -> b.equals(PROTEIN_CODING),
                         g -> true);
-            } else if (!getProteinCodingGenes().isEmpty()) {
+            } else if (!shard.getProteinCodingGenes().isEmpty()) {
                 // Set of protein coding genes
                 Query query = new Query(baseQuery)
-                        .append(VariantQueryParam.GENE.key(), getProteinCodingGenes())
+                        .append(VariantQueryParam.GENE.key(), shard.getProteinCodingGenes())
                         .append(VariantQueryParam.ANNOT_BIOTYPE.key(), PROTEIN_CODING)
                         .append(VariantQueryParam.ANNOT_CONSEQUENCE_TYPE.key(), getCt())
                         .append(VariantQueryParam.INCLUDE_SAMPLE.key(), sample);
                 knockouts(query, sample, trio, knockoutGenes,
                         getCts()::contains,
                         b -> b.equals(PROTEIN_CODING),
-                        getProteinCodingGenes()::contains);
+                        shard.getProteinCodingGenes()::contains);
             }
 
             // Other genes (if any)
-            if (!getOtherGenes().isEmpty()) {
+            if (!shard.getOtherGenes().isEmpty()) {
                 Query query = new Query(baseQuery)
                         .append(VariantQueryParam.ANNOT_BIOTYPE.key(), biotype)
-                        .append(VariantQueryParam.GENE.key(), getOtherGenes())
+                        .append(VariantQueryParam.GENE.key(), shard.getOtherGenes())
                         .append(VariantQueryParam.INCLUDE_SAMPLE.key(), sample);
                 knockouts(query, sample, trio, knockoutGenes,
                         ct -> true,  // Accept any CT
                         biotype == null ? (b -> !b.equals(PROTEIN_CODING)) : new HashSet<>(biotype)::contains,
-                        getOtherGenes()::contains);
-            }
-
-            if (knockoutGenes.isEmpty()) {
-                logger.info("No results for sample {}", sample);
-            } else {
-                KnockoutByIndividual.GeneKnockoutByIndividualStats stats = getGeneKnockoutBySampleStats(knockoutGenes.values());
-                writeSampleFile(new KnockoutByIndividual()
-                        .setSampleId(sample)
-                        .setStats(stats)
-                        .setGenes(knockoutGenes.values()));
+                        shard.getOtherGenes()::contains);
             }
-            logger.info("Sample {} processed in {}", sample, TimeUtils.durationToString(stopWatch));
-            logger.info("-----------------------------------------------------------");
+            return knockoutGenes;
         }
 
         private void transposeSampleToGeneOutputFiles() throws IOException {
@@ -472,6 +497,236 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
         }
     }
 
+    /**
+     * Sharded execution, to analyse large cohorts with a bounded memory footprint.
+     *
+     * The analysis is split in shards by chromosome (when analysing all protein coding genes) and by blocks of genes.
+     * Shards are processed concurrently, and each one spills its partial results to disk, sorted by sample and by gene.
+     * A final k-way merge of the spill files produces the same per sample and per gene files as the other execution methods.
+     *
+     * Finished shards are checkpointed, so an interrupted execution resumes from the last finished shard.
+     */
+    private class KnockoutShardedExecutor extends KnockoutBySampleExecutor {
+        private static final String SAMPLES_SUFFIX = ".samples.json.gz";
+        private static final String GENES_SUFFIX = ".genes.json.gz";
+        private static final String DONE_SUFFIX = ".done";
+        private static final String MANIFEST = "shards.txt";
+
+        private final Path shardsDir = getOutDir().resolve("knockout_shards");
+        private final Map<String, Integer> samplesIndex = new HashMap<>();
+
+        @Override
+        public void run() throws Exception {
+            for (String sample : getSamples()) {
+                samplesIndex.putIfAbsent(sample, samplesIndex.size());
+            }
+            List<KnockoutShard> shards = getShards();
+            checkManifest(shards);
+
+            List<KnockoutShard> pendingShards = new ArrayList<>(shards.size());
+            for (KnockoutShard shard : shards) {
+                if (Files.exists(getShardFile(shard, DONE_SUFFIX))) {
+                    logger.info("Skip shard {}. Already finished", shard.getId());
+                } else {
+                    pendingShards.add(shard);
+                }
+            }
+            int parallelism = getExecutorParams().getInt(SHARD_PARALLELISM, Runtime.getRuntime().availableProcessors());
+            logger.info("Process {} shards out of {} using {} threads", pendingShards.size(), shards.size(), parallelism);
+            addAttribute("shards", shards.size());
+            addAttribute("resumedShards", shards.size() - pendingShards.size());
+
+            Iterator<KnockoutShard> shardsIterator = pendingShards.iterator();
+            ParallelTaskRunner<KnockoutShard, Void> ptr = new ParallelTaskRunner<>(
+                    batchSize -> {
+                        List<KnockoutShard> batch = new ArrayList<>(batchSize);
+                        for (int i = 0; i < batchSize && shardsIterator.hasNext(); i++) {
+                            batch.add(shardsIterator.next());
+                        }
+                        return batch;
+                    },
+                    batch -> {
+                        for (KnockoutShard shard : batch) {
+                            processShard(shard);
+                        }
+                        return null;
+                    }, null,
+                    ParallelTaskRunner.Config.builder()
+                            .setBatchSize(1)
+                            .setNumTasks(parallelism)
+                            .build()
+            );
+            ptr.run();
+
+            mergeShards(shards);
+            org.apache.commons.io.FileUtils.deleteDirectory(shardsDir.toFile());
+        }
+
+        private List<KnockoutShard> getShards() throws Exception {
+            List<KnockoutShard> shards = new ArrayList<>();
+            if (allProteinCoding) {
+                Set<String> chromosomes = getShardChromosomes();
+                if (chromosomes.isEmpty()) {
+                    // Unable to tell which contigs have variants. Do not split by chromosome, so no gene is left out
+                    logger.warn("No contigs found in the metadata of study '{}'. Analyse all protein coding genes in one shard",
+                            getStudy());
+                    shards.add(new KnockoutShard("allProteinCoding", null, true, Collections.emptySet(), Collections.emptySet()));
+                }
+                // Contig names may contain characters not allowed in file names. Use an index as shard id
+                int i = 0;
+                for (String chromosome : chromosomes) {
+                    shards.add(new KnockoutShard("contig" + (i++), chromosome, true, Collections.emptySet(), Collections.emptySet()));
+                }
+            }
+            // Genes present in both lists must go to the same shard
+            Set<String> genes = new TreeSet<>(getOtherGenes());
+            if (!allProteinCoding) {
+                genes.addAll(getProteinCodingGenes());
+            }
+            int shardSize = getExecutorParams().getInt(SHARD_SIZE, DEFAULT_SHARD_SIZE);
+            int i = 0;
+            for (List<String> genesBlock : Iterables.partition(genes, shardSize)) {
+                Set<String> proteinCodingGenes = new HashSet<>();
+                Set<String> otherGenes = new HashSet<>();
+                for (String gene : genesBlock) {
+                    if (!allProteinCoding && getProteinCodingGenes().contains(gene)) {
+                        proteinCodingGenes.add(gene);
+                    }
+                    if (getOtherGenes().contains(gene)) {
+                        otherGenes.add(gene);
+                    }
+                }
+                shards.add(new KnockoutShard("genes" + (i++), null, false, proteinCodingGenes, otherGenes));
+            }
+            return shards;
+        }
+
+        /**
+         * Contigs from the study metadata, plus the ones from {@link #SHARD_CHROMOSOMES}, if any.
+         * Contigs with and without the "chr" prefix are considered the same chromosome.
+         *
+         * @return Chromosomes to shard by, or an empty set if unknown
+         * @throws Exception on error reading the study metadata
+         */
+        private Set<String> getShardChromosomes() throws Exception {
+            Set<String> chromosomes = new LinkedHashSet<>();
+            List<String> shardChromosomes = getExecutorParams().getAsStringList(SHARD_CHROMOSOMES);
+            if (CollectionUtils.isNotEmpty(shardChromosomes)) {
+                for (String chromosome : shardChromosomes) {
+                    chromosomes.add(Region.normalizeChromosome(chromosome));
+                }
+            }
+            StudyMetadata studyMetadata = variantStorageManager.getStudyMetadata(getStudy(), getToken());
+            if (studyMetadata.getVariantHeader() != null) {
+                for (String contig : studyMetadata.getVariantHeaderLines("contig").keySet()) {
+                    chromosomes.add(Region.normalizeChromosome(contig));
+                }
+            }
+            return chromosomes;
+        }
+
+        private void checkManifest(List<KnockoutShard> shards) throws IOException {
+            // Every parameter that modifies the result of a shard must be in the manifest,
+            // so shards from an execution with different parameters are never merged
+            Map<String, String> trios = new TreeMap<>();
+            if (getTrios() != null) {
+                getTrios().forEach((sample, trio) -> trios.put(sample, trio == null ? null : trio.serialize()));
+            }
+            List<String> manifest = new ArrayList<>(shards.size() + 10);
+            manifest.add("study=" + getStudy());
+            manifest.add("samples=" + getSamples().size() + ":" + DigestUtils.sha1Hex(String.join(",", getSamples())));
+            manifest.add("trios=" + trios.size() + ":" + DigestUtils.sha1Hex(trios.toString()));
+            manifest.add("ct=" + getCt());
+            manifest.add("biotype=" + getBiotype());
+            manifest.add("filter=" + getFilter());
+            manifest.add("qual=" + getQual());
+            manifest.add("disorder=" + getDisorder());
+            manifest.add("includeSampleData=" + includeSampleData);
+            manifest.add("skipGenesFile=" + getSkipGenesFile());
+            for (KnockoutShard shard : shards) {
+                manifest.add(shard.toString());
+            }
+            Path manifestFile = shardsDir.resolve(MANIFEST);
+            if (Files.exists(manifestFile)) {
+                if (Files.readAllLines(manifestFile).equals(manifest)) {
+                    return;
+                }
+                logger.warn("Discard shards from a previous execution with different parameters");
+                org.apache.commons.io.FileUtils.deleteDirectory(shardsDir.toFile());
+            }
+            Files.createDirectories(shardsDir);
+            Files.write(manifestFile, manifest);
+        }
+
+        private void processShard(KnockoutShard shard) throws Exception {
+            StopWatch stopWatch = StopWatch.createStarted();
+            logger.info("Processing shard {}", shard.getId());
+            // Only the genes from this shard are kept in memory
+            Map<String, KnockoutByGene> byGeneMap = new TreeMap<>();
+            int samples = 0;
+            try (KnockoutSpillMerger.SpillWriter<KnockoutByIndividual> writer =
+                         new KnockoutSpillMerger.SpillWriter<>(getShardFile(shard, SAMPLES_SUFFIX), KnockoutByIndividual.class)) {
+                // Samples are written in the same order as in getSamples()
+                for (String sample : getSamples()) {
+                    Map<String, KnockoutGene> knockoutGenes = sampleKnockouts(sample, shard);
+                    if (knockoutGenes.isEmpty()) {
+                        continue;
+                    }
+                    samples++;
+                    writer.write(new KnockoutByIndividual()
+                            .setSampleId(sample)
+                            .setGenes(knockoutGenes.values()));
+                    if (!getSkipGenesFile()) {
+                        for (KnockoutGene gene : knockoutGenes.values()) {
+                            byGeneMap.computeIfAbsent(gene.getName(), name -> new KnockoutByGene().setId(gene.getId()).setName(name))
+                                    .addIndividual(new KnockoutByGene.KnockoutIndividual()
+                                            .setSampleId(sample)
+                                            .setTranscripts(gene.getTranscripts()));
+                        }
+                    }
+                }
+            }
+            if (!getSkipGenesFile()) {
+                KnockoutSpillMerger.write(getShardFile(shard, GENES_SUFFIX), KnockoutByGene.class, byGeneMap.values());
+            }
+            // Checkpoint. This shard will be skipped if the execution is resumed
+            Files.createFile(getShardFile(shard, DONE_SUFFIX));
+            logger.info("Shard {} processed in {}. {} samples and {} genes with knockouts", shard.getId(),
+                    TimeUtils.durationToString(stopWatch), samples, byGeneMap.size());
+        }
+
+        private void mergeShards(List<KnockoutShard> shards) throws IOException {
+            StopWatch stopWatch = StopWatch.createStarted();
+            List<Path> samplesFiles = new ArrayList<>(shards.size());
+            List<Path> genesFiles = new ArrayList<>(shards.size());
+            for (KnockoutShard shard : shards) {
+                samplesFiles.add(getShardFile(shard, SAMPLES_SUFFIX));
+                genesFiles.add(getShardFile(shard, GENES_SUFFIX));
+            }
+
+            Comparator<String> samplesComparator = Comparator.comparing(samplesIndex::get);
+            int samples = new KnockoutSpillMerger<>(KnockoutByIndividual.class, KnockoutByIndividual::getSampleId,
+                    samplesComparator, KnockoutLocalAnalysisExecutor::mergeKnockoutByIndividual)
+                    .merge(samplesFiles, knockoutByIndividual -> {
+                        knockoutByIndividual.setStats(getGeneKnockoutBySampleStats(knockoutByIndividual.getGenes()));
+                        writeSampleFile(knockoutByIndividual);
+                    });
+            if (getSkipGenesFile()) {
+                logger.info("Skip genes file merge");
+            } else {
+                int genes = new KnockoutSpillMerger<>(KnockoutByGene.class, KnockoutByGene::getName,
+                        String::compareTo, KnockoutLocalAnalysisExecutor::mergeKnockoutByGene)
+                        .merge(genesFiles, KnockoutLocalAnalysisExecutor.this::writeGeneFile);
+                logger.info("Merged {} genes from {} shards", genes, shards.size());
+            }
+            logger.info("Merged {} samples from {} shards in {}", samples, shards.size(), TimeUtils.durationToString(stopWatch));
+        }
+
+        private Path getShardFile(KnockoutShard shard, String suffix) {
+            return shardsDir.resolve("shard." + shard.getId() + suffix);
+        }
+    }
+
     private class KnockoutByGeneExecutor {
 
         protected void run() throws Exception {
@@ -876,6 +1131,81 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
         return true;
     }
 
+    private static KnockoutByIndividual mergeKnockoutByIndividual(KnockoutByIndividual a, KnockoutByIndividual b) {
+        Map<String, KnockoutGene> genes = new LinkedHashMap<>();
+        for (KnockoutGene gene : Iterables.concat(a.getGenes(), b.getGenes())) {
+            KnockoutGene existing = genes.putIfAbsent(gene.getName(), gene);
+            if (existing != null) {
+                mergeTranscripts(existing::getTranscript, gene.getTranscripts());
+            }
+        }
+        return a.setGenes(genes.values());
+    }
+
+    private static KnockoutByGene mergeKnockoutByGene(KnockoutByGene a, KnockoutByGene b) {
+        for (KnockoutByGene.KnockoutIndividual individual : b.getIndividuals()) {
+            mergeTranscripts(a.getIndividualBySampleId(individual.getSampleId())::getTranscript, individual.getTranscripts());
+        }
+        return a;
+    }
+
+    private static void mergeTranscripts(Function<String, KnockoutTranscript> target, Collection<KnockoutTranscript> transcripts) {
+        for (KnockoutTranscript transcript : transcripts) {
+            KnockoutTranscript targetTranscript = target.apply(transcript.getId());
+            if (targetTranscript.getBiotype() == null) {
+                targetTranscript.setBiotype(transcript.getBiotype());
+                targetTranscript.setStrand(transcript.getStrand());
+            }
+            for (KnockoutVariant variant : transcript.getVariants()) {
+                targetTranscript.addVariant(variant);
+            }
+        }
+    }
+
+    private static class KnockoutShard {
+        private final String id;
+        private final String chromosome;
+        private final boolean allProteinCoding;
+        private final Set<String> proteinCodingGenes;
+        private final Set<String> otherGenes;
+
+        KnockoutShard(String id, String chromosome, boolean allProteinCoding, Set<String> proteinCodingGenes, Set<String> otherGenes) {
+            this.id = id;
+            this.chromosome = chromosome;
+            this.allProteinCoding = allProteinCoding;
+            this.proteinCodingGenes = proteinCodingGenes;
+            this.otherGenes = otherGenes;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getChromosome() {
+            return chromosome;
+        }
+
+        public boolean isAllProteinCoding() {
+            return allProteinCoding;
+        }
+
+        public Set<String> getProteinCodingGenes() {
+            return proteinCodingGenes;
+        }
+
+        public Set<String> getOtherGenes() {
+            return otherGenes;
+        }
+
+        @Override
+        public String toString() {
+            return id + "{chromosome=" + chromosome
+                    + ", allProteinCoding=" + allProteinCoding
+                    + ", proteinCodingGenes=" + new TreeSet<>(proteinCodingGenes)
+                    + ", otherGenes=" + new TreeSet<>(otherGenes) + '}';
+        }
+    }
+
     private Variant getSecondaryVariant(Variant variant) {
         Genotype gt = new Genotype(variant.getStudies().get(0).getSampleData(0).get(0));
         Variant secVar = null;
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.analysis.variant.knockout;
+
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.opencb.commons.utils.FileUtils;
+import org.opencb.opencga.core.common.JacksonUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * K-way merge of spill files. Each spill file is a list of json objects, sorted by key.
+ * Objects with the same key from different spill files are merged.
+ *
+ * Only one object per spill file is kept in memory at a time.
+ *
+ * Created on 17/10/26.
+ */
+public class KnockoutSpillMerger<T> {
+
+    private final Class<T> clazz;
+    private final Function<T, String> keyFunction;
+    private final Comparator<String> keyComparator;
+    private final BinaryOperator<T> mergeFunction;
+
+    @FunctionalInterface
+    public interface SpillConsumer<T> {
+        void accept(T t) throws IOException;
+    }
+
+    public KnockoutSpillMerger(Class<T> clazz, Function<T, String> keyFunction, Comparator<String> keyComparator,
+                               BinaryOperator<T> mergeFunction) {
+        this.clazz = clazz;
+        this.keyFunction = keyFunction;
+        this.keyComparator = keyComparator;
+        this.mergeFunction = mergeFunction;
+    }
+
+    /**
+     * Write a spill file. Values must be sorted by key.
+     *
+     * @param file      Spill file
+     * @param clazz     Class of the values
+     * @param values    Sorted values
+     * @param <T>       Type of the values
+     * @throws IOException on error writing the file
+     */
+    public static <T> void write(Path file, Class<T> clazz, Iterable<T> values) throws IOException {
+        try (SpillWriter<T> writer = new SpillWriter<>(file, clazz)) {
+            for (T value : values) {
+                writer.write(value);
+            }
+        }
+    }
+
+    /**
+     * Merge the given spill files.
+     *
+     * @param files     Spill files. Each file must be sorted by key
+     * @param consumer  Consumer of the merged values, in key order
+     * @return          Number of merged values
+     * @throws IOException on error reading the files or consuming the values
+     */
+    public int merge(List<Path> files, SpillConsumer<T> consumer) throws IOException {
+        ObjectReader reader = JacksonUtils.getDefaultObjectMapper().readerFor(clazz);
+        List<MappingIterator<T>> iterators = new ArrayList<>(files.size());
+        PriorityQueue<Head> queue = new PriorityQueue<>(Math.max(1, files.size()),
+                (a, b) -> {
+                    int c = keyComparator.compare(a.key, b.key);
+                    // Keep the order of the files for equal keys
+                    return c == 0 ? Integer.compare(a.fileIdx, b.fileIdx) : c;
+                });
+        int count = 0;
+        try {
+            for (Path file : files) {
+                MappingIterator<T> iterator = reader.readValues(FileUtils.newBufferedReader(file));
+                iterators.add(iterator);
+                Head head = new Head(iterators.size() - 1, iterator);
+                if (head.advance()) {
+                    queue.add(head);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Head head = queue.poll();
+                String key = head.key;
+                T value = head.value;
+                if (head.advance()) {
+                    queue.add(head);
+                }
+                while (!queue.isEmpty() && keyComparator.compare(queue.peek().key, key) == 0) {
+                    Head other = queue.poll();
+                    value = mergeFunction.apply(value, other.value);
+                    if (other.advance()) {
+                        queue.add(other);
+                    }
+                }
+                consumer.accept(value);
+                count++;
+            }
+        } finally {
+            for (MappingIterator<T> iterator : iterators) {
+                iterator.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writer of sorted spill files.
+     *
+     * @param <T> Type of the values
+     */
+    public static class SpillWriter<T> implements Closeable {
+        private final BufferedWriter bufferedWriter;
+        private final SequenceWriter writer;
+
+        public SpillWriter(Path file, Class<T> clazz) throws IOException {
+            bufferedWriter = FileUtils.newBufferedWriter(file);
+            writer = JacksonUtils.getDefaultObjectMapper()
+                    .writer(new MinimalPrettyPrinter("\n"))
+                    .forType(clazz)
+                    .writeValues(bufferedWriter);
+        }
+
+        public void write(T value) throws IOException {
+            writer.write(value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+            bufferedWriter.close();
+        }
+    }
+
+    private final class Head {
+        private final int fileIdx;
+        private final MappingIterator<T> iterator;
+        private T value;
+        private String key;
+
+        private Head(int fileIdx, MappingIterator<T> iterator) {
+            this.fileIdx = fileIdx;
+            this.iterator = iterator;
+        }
+
+        private boolean advance() throws IOException {
+            if (iterator.hasNextValue()) {
+                value = iterator.nextValue();
+                key = keyFunction.apply(value);
+                return true;
+            } else {
+                value = null;
+                key = null;
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.analysis.variant.manager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.catalog.exceptions.CatalogException;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived cache of catalog entities resolved while parsing variant queries.
+ *
+ * Entries are indexed by user, study, type of entity and id, so the result of a lookup is never shared between users with
+ * different permissions. Entries expire a few seconds after being loaded, which bounds how long a change in the catalog can go
+ * unnoticed. Failed lookups are never cached. Cached values are shared between threads, and must not be modified.
+ *
+ * Created on 17/10/26.
+ */
+final class VariantCatalogQueryCache {
+
+    @FunctionalInterface
+    interface Loader<T> {
+        T load() throws CatalogException;
+    }
+
+    private final Cache<Key, Object> cache;
+    private final boolean enabled;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Create a VariantCatalogQueryCache.
+     *
+     * @param ttlMs   Time to live of each entry, in milliseconds. Use 0 to disable the cache.
+     * @param maxSize Max number of entries in the cache. Use 0 to disable the cache.
+     */
+    VariantCatalogQueryCache(long ttlMs, long maxSize) {
+        this.enabled = ttlMs > 0 && maxSize > 0;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(ttlMs, 0), TimeUnit.MILLISECONDS)
+                .maximumSize(Math.max(maxSize, 0))
+                .build();
+    }
+
+    /**
+     * Get an entity from the cache, loading it if missing or expired.
+     *
+     * @param user   User resolving the entity
+     * @param study  Study of the entity
+     * @param type   Type of entity
+     * @param id     Id of the entity
+     * @param loader Load the entity if missing
+     * @param <T>    Type of the cached value
+     * @return Cached or loaded value
+     * @throws CatalogException if the loader fails
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String user, String study, String type, String id, Loader<T> loader) throws CatalogException {
+        if (!enabled) {
+            return loader.load();
+        }
+        Key key = new Key(user, study, type, id);
+        Object value = cache.getIfPresent(key);
+        if (value != null) {
+            hits.increment();
+            return (T) value;
+        }
+        misses.increment();
+        T loaded = loader.load();
+        if (loaded != null) {
+            cache.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void invalidate(String study) {
+        cache.asMap().keySet().removeIf(key -> Objects.equals(key.study, study));
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    ObjectMap getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        return new ObjectMap()
+                .append("size", cache.size())
+                .append("hits", hitCount)
+                .append("misses", missCount)
+                .append("hitRate", hitCount + missCount == 0 ? 1.0 : ((double) hitCount) / (hitCount + missCount));
+    }
+
+    private static final class Key {
+        private final String user;
+        private final String study;
+        private final String type;
+        private final String id;
+
+        private Key(String user, String study, String type, String id) {
+            this.user = user;
+            this.study = study;
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(user, key.user) && Objects.equals(study, key.study) && Objects.equals(type, key.type)
+                    && Objects.equals(id, key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, study, type, id);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.opencb.opencga.analysis.variant.manager;
 import com.google.common.collect.Iterables;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.opencb.biodata.models.clinical.ClinicalProperty;
 import org.opencb.biodata.models.clinical.Disorder;
 import org.opencb.biodata.models.clinical.interpretation.DiseasePanel;
@@ -32,6 +33,7 @@ import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.tools.pedigree.ModeOfInheritance;
 import org.opencb.commons.datastore.core.DataResult;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -73,6 +75,12 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -202,16 +210,75 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
     private final FileDataValidator fileDataValidator;
     private final SampleFilterValidator sampleFilterValidator;
     private final CohortFilterValidator cohortFilterValidator;
+    private final Map<VariantQueryParam, FilterValidator> filterValidators;
+    private final VariantCatalogQueryCache cache;
     //    public static final QueryParam SAMPLE_FILTER_GENOTYPE = QueryParam.create("sampleFilterGenotype", "", QueryParam.Type.TEXT_ARRAY);
     protected static Logger logger = LoggerFactory.getLogger(VariantCatalogQueryUtils.class);
 
+    public static final long DEFAULT_CACHE_TTL_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_CACHE_SIZE = 10000;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new BasicThreadFactory.Builder().namingPattern("variant-catalog-query-%s").daemon(true).build());
+
     public VariantCatalogQueryUtils(CatalogManager catalogManager) {
+        this(catalogManager, DEFAULT_CACHE_TTL_MS);
+    }
+
+    /**
+     * Create a VariantCatalogQueryUtils.
+     *
+     * @param catalogManager Catalog manager
+     * @param cacheTtlMs     Time to live of the catalog entities resolved while parsing queries. Use 0 to disable the cache.
+     */
+    public VariantCatalogQueryUtils(CatalogManager catalogManager, long cacheTtlMs) {
         super(catalogManager);
         studyFilterValidator = new StudyFilterValidator();
         fileFilterValidator = new FileFilterValidator();
         fileDataValidator = new FileDataValidator();
         sampleFilterValidator = new SampleFilterValidator();
         cohortFilterValidator = new CohortFilterValidator();
+        cache = new VariantCatalogQueryCache(cacheTtlMs, DEFAULT_CACHE_SIZE);
+
+        // Sorted as they are applied to the query
+        filterValidators = new LinkedHashMap<>();
+        filterValidators.put(VariantQueryParam.STUDY, studyFilterValidator);
+        filterValidators.put(VariantQueryParam.INCLUDE_STUDY, studyFilterValidator);
+        filterValidators.put(VariantQueryParam.SAMPLE, sampleFilterValidator);
+        filterValidators.put(VariantQueryParam.INCLUDE_SAMPLE, sampleFilterValidator);
+        filterValidators.put(VariantQueryParam.GENOTYPE, sampleFilterValidator);
+        filterValidators.put(VariantQueryParam.FILE, fileFilterValidator);
+        filterValidators.put(VariantQueryParam.INCLUDE_FILE, fileFilterValidator);
+        filterValidators.put(VariantQueryParam.FILE_DATA, fileDataValidator);
+        filterValidators.put(VariantQueryParam.COHORT, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.STATS_ALT, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.STATS_REF, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.STATS_MAF, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.STATS_MGF, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.STATS_PASS_FREQ, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.MISSING_ALLELES, cohortFilterValidator);
+        filterValidators.put(VariantQueryParam.MISSING_GENOTYPES, cohortFilterValidator);
+    }
+
+    /**
+     * Discard all the cached catalog entities from the given study.
+     * Should be called after modifying any family, individual, sample, cohort, file or panel used in variant queries.
+     *
+     * @param study Study FQN
+     */
+    public void invalidateCache(String study) {
+        cache.invalidate(study);
+    }
+
+    /**
+     * Discard all the cached catalog entities.
+     */
+    public void invalidateCache() {
+        cache.invalidateAll();
+    }
+
+    public ObjectMap getCacheStats() {
+        return cache.getStats();
     }
 
     public static QueryParam valueOf(String param) {
@@ -274,22 +341,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
         String defaultStudyStr = getDefaultStudyId(studies);
         Integer release = getReleaseFilter(query, token);
 
-        studyFilterValidator.processFilter(query, VariantQueryParam.STUDY, release, token, defaultStudyStr);
-        studyFilterValidator.processFilter(query, VariantQueryParam.INCLUDE_STUDY, release, token, defaultStudyStr);
-        sampleFilterValidator.processFilter(query, VariantQueryParam.SAMPLE, release, token, defaultStudyStr);
-        sampleFilterValidator.processFilter(query, VariantQueryParam.INCLUDE_SAMPLE, release, token, defaultStudyStr);
-        sampleFilterValidator.processFilter(query, VariantQueryParam.GENOTYPE, release, token, defaultStudyStr);
-        fileFilterValidator.processFilter(query, VariantQueryParam.FILE, release, token, defaultStudyStr);
-        fileFilterValidator.processFilter(query, VariantQueryParam.INCLUDE_FILE, release, token, defaultStudyStr);
-        fileDataValidator.processFilter(query, VariantQueryParam.FILE_DATA, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.COHORT, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.STATS_ALT, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.STATS_REF, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.STATS_MAF, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.STATS_MGF, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.STATS_PASS_FREQ, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.MISSING_ALLELES, release, token, defaultStudyStr);
-        cohortFilterValidator.processFilter(query, VariantQueryParam.MISSING_GENOTYPES, release, token, defaultStudyStr);
+        processFilters(query, release, token, defaultStudyStr);
 
         if (release != null) {
             // If include all files:
@@ -380,7 +432,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
             if (StringUtils.isEmpty(defaultStudyStr)) {
                 throw VariantQueryException.missingStudyFor("family", familyId, null);
             }
-            Family family = catalogManager.getFamilyManager().get(defaultStudyStr, familyId, null, token).first();
+            Family family = getFamily(defaultStudyStr, familyId, token);
 
             if (family.getMembers().isEmpty()) {
                 throw VariantQueryException.malformedParam(FAMILY, familyId, "Empty family");
@@ -410,15 +462,12 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
             for (Iterator<Individual> iterator = family.getMembers().iterator(); iterator.hasNext(); ) {
                 Individual member = iterator.next();
                 int numSamples = 0;
-                for (Iterator<Sample> sampleIt = member.getSamples().iterator(); sampleIt.hasNext(); ) {
-                    Sample sample = sampleIt.next();
+                for (Sample sample : member.getSamples()) {
                     long uid = sample.getUid();
                     if (indexedSampleUids.contains(uid)) {
                         numSamples++;
                         sampleUids.add(uid);
                         individualToSampleUid.put(member.getId(), uid);
-                    } else {
-                        sampleIt.remove();
                     }
                 }
                 if (numSamples == 0) {
@@ -978,20 +1027,21 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
                 }
                 String sampleId = sampleFilter.getValues().get(0).getKey();
 
-                Sample sample = catalogManager.getSampleManager().get(defaultStudyStr, sampleId, new QueryOptions(), token).first();
+                Sample sample = cache.get(cacheUser(token), defaultStudyStr, "sample", sampleId,
+                        () -> catalogManager.getSampleManager().get(defaultStudyStr, sampleId, new QueryOptions(), token).first());
                 if (StringUtils.isEmpty(sample.getIndividualId())) {
                     throw VariantQueryException.malformedParam(SAMPLE, sampleFilterValue,
                             "Sample '" + sampleId + "' does not have an Individual associated.");
                 }
 
                 Set<Long> indexedSampleUids = fetchIndexedSampleUIds(token, defaultStudyStr);
-                Individual individual = catalogManager.getIndividualManager().get(defaultStudyStr, sample.getIndividualId(), new QueryOptions(), token).first();
+                Individual individual = getIndividual(defaultStudyStr, sample.getIndividualId(), token);
 
                 Member member = new Member(sampleId, sampleId, individual.getSex());
                 member.setDisorders(individual.getDisorders());
 
                 if (individual.getFather() != null) {
-                    Individual father = catalogManager.getIndividualManager().get(defaultStudyStr, individual.getFather().getId(), new QueryOptions(), token).first();
+                    Individual father = getIndividual(defaultStudyStr, individual.getFather().getId(), token);
                     String fatherId = null;
                     int numSamples = 0;
                     for (Sample s : father.getSamples()) {
@@ -1008,7 +1058,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
                     }
                 }
                 if (individual.getMother() != null) {
-                    Individual mother = catalogManager.getIndividualManager().get(defaultStudyStr, individual.getMother().getId(), new QueryOptions(), token).first();
+                    Individual mother = getIndividual(defaultStudyStr, individual.getMother().getId(), token);
                     String motherId = null;
                     int numSamples = 0;
                     for (Sample s : mother.getSamples()) {
@@ -1086,13 +1136,131 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
 
     private Set<Long> fetchIndexedSampleUIds(String token, String defaultStudyStr) throws CatalogException {
         // Use search instead of get to avoid smartResolutor to fetch all samples
-        return catalogManager.getCohortManager()
-                .search(defaultStudyStr, new Query(CohortDBAdaptor.QueryParams.ID.key(), StudyEntry.DEFAULT_COHORT),
-                        new QueryOptions(INCLUDE, CohortDBAdaptor.QueryParams.SAMPLE_UIDS.key()), token)
-                .first()
-                .getSamples()
-                .stream()
-                .map(Sample::getUid).collect(Collectors.toSet());
+        return cache.get(cacheUser(token), defaultStudyStr, "indexedSamples", StudyEntry.DEFAULT_COHORT,
+                () -> Collections.unmodifiableSet(catalogManager.getCohortManager()
+                        .search(defaultStudyStr, new Query(CohortDBAdaptor.QueryParams.ID.key(), StudyEntry.DEFAULT_COHORT),
+                                new QueryOptions(INCLUDE, CohortDBAdaptor.QueryParams.SAMPLE_UIDS.key()), token)
+                        .first()
+                        .getSamples()
+                        .stream()
+                        .map(Sample::getUid).collect(Collectors.toSet())));
+    }
+
+    private Individual getIndividual(String study, String individualId, String token) throws CatalogException {
+        return cache.get(cacheUser(token), study, "individual", individualId,
+                () -> catalogManager.getIndividualManager().get(study, individualId, new QueryOptions(), token).first());
+    }
+
+    /**
+     * Get a family from the catalog, or from the cache.
+     * Returns a shallow copy of the cached family, so the list of members can be modified.
+     */
+    private Family getFamily(String study, String familyId, String token) throws CatalogException {
+        Family family = cache.get(cacheUser(token), study, "family", familyId,
+                () -> catalogManager.getFamilyManager().get(study, familyId, null, token).first());
+        return new Family()
+                .setId(family.getId())
+                .setPhenotypes(family.getPhenotypes())
+                .setDisorders(family.getDisorders())
+                .setMembers(family.getMembers() == null ? new ArrayList<>() : new ArrayList<>(family.getMembers()))
+                .setAttributes(family.getAttributes());
+    }
+
+    private String cacheUser(String token) throws CatalogException {
+        JwtPayload payload = catalogManager.getUserManager().validateToken(token);
+        return payload.getOrganization() + ":" + payload.getUserId();
+    }
+
+    /**
+     * Validate and translate all the filters from the query that refer to catalog entities.
+     * Filters are independent, so they are validated in parallel, and applied to the query in order.
+     * The family, indexed samples and panels from the query are loaded into the cache at the same time.
+     */
+    private void processFilters(Query query, Integer release, String token, String defaultStudyStr) throws CatalogException {
+        List<VariantQueryParam> params = new ArrayList<>();
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (Map.Entry<VariantQueryParam, FilterValidator> entry : filterValidators.entrySet()) {
+            VariantQueryParam param = entry.getKey();
+            FilterValidator validator = entry.getValue();
+            if (isValidParam(query, param)) {
+                params.add(param);
+                tasks.add(() -> validator.computeFilter(query, param, release, token, defaultStudyStr));
+            }
+        }
+        if (cache.isEnabled() && StringUtils.isNotEmpty(defaultStudyStr)) {
+            if (isValidParam(query, FAMILY)) {
+                String familyId = query.getString(FAMILY.key());
+                tasks.add(prefetch(() -> getFamily(defaultStudyStr, familyId, token)));
+                tasks.add(prefetch(() -> fetchIndexedSampleUIds(token, defaultStudyStr)));
+            }
+            if (isValidParam(query, PANEL)) {
+                for (String panelId : query.getAsStringList(PANEL.key())) {
+                    tasks.add(prefetch(() -> getPanel(defaultStudyStr, panelId, token)));
+                }
+            }
+        }
+
+        List<String> newValues = invokeAll(tasks);
+        for (int i = 0; i < params.size(); i++) {
+            String newValue = newValues.get(i);
+            if (newValue != null) {
+                query.put(params.get(i).key(), newValue);
+            }
+        }
+    }
+
+    private static Callable<String> prefetch(VariantCatalogQueryCache.Loader<?> loader) {
+        return () -> {
+            try {
+                loader.load();
+            } catch (CatalogException | RuntimeException e) {
+                // Ignore. Will fail again when used
+                logger.debug("Ignore error prefetching catalog entities", e);
+            }
+            return null;
+        };
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws CatalogException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (CatalogException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CatalogException(e.getMessage(), e);
+                }
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(EXECUTOR.submit(task));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CatalogException("Interrupted while processing the query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CatalogException) {
+                throw (CatalogException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new CatalogException(cause.getMessage(), cause);
+            }
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
     }
 
     private Region processSegregationFilter(Query query, CellBaseUtils cellBaseUtils, ParsedVariantQuery.VariantQueryXref xrefs,
@@ -1224,7 +1392,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
     }
 
     /**
-     * Get the panel from catalog.
+     * Get the panel from catalog. The returned panel may be shared with other queries, and must not be modified.
      *
      * @param studyId   StudyId
      * @param panelId   PanelId
@@ -1236,7 +1404,8 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
         Panel panel = null;
         if (StringUtils.isNotEmpty(studyId)) {
             try {
-                panel = catalogManager.getPanelManager().get(studyId, panelId, null, sessionId).first();
+                panel = cache.get(cacheUser(sessionId), studyId, "panel", panelId,
+                        () -> catalogManager.getPanelManager().get(studyId, panelId, null, sessionId).first());
             } catch (CatalogException e) {
                 logger.debug("Ignore Panel not found", e);
             }
@@ -1425,16 +1594,36 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
          */
         protected void processFilter(Query query, VariantQueryParam param, Integer release, String sessionId, String defaultStudy)
                 throws CatalogException {
+            String newValue = computeFilter(query, param, release, sessionId, defaultStudy);
+            if (newValue != null) {
+                query.put(param.key(), newValue);
+            }
+        }
+
+        /**
+         * Same as {@link #processFilter}, but returns the new value instead of modifying the query.
+         * Does not modify any shared state, so different filters can be computed in parallel.
+         *
+         * @param query        Query with the data. Won't be modified
+         * @param param        Param to process
+         * @param release      Release filter, if any
+         * @param sessionId    SessionId
+         * @param defaultStudy Default study
+         * @return New value for the param, or null if the value should not change
+         * @throws CatalogException if there is any catalog error
+         */
+        protected String computeFilter(Query query, VariantQueryParam param, Integer release, String sessionId, String defaultStudy)
+                throws CatalogException {
             if (VariantQueryUtils.isValidParam(query, param)) {
                 String valuesStr = query.getString(param.key());
                 // Do not try to transform ALL or NONE values
                 if (isNoneOrAll(valuesStr)) {
-                    return;
+                    return null;
                 }
                 QueryOperation queryOperation = getQueryOperation(valuesStr);
                 List<String> rawValues = splitValue(valuesStr, queryOperation);
                 List<String> values = getValuesToValidate(rawValues);
-                List<String> validatedValues = validate(defaultStudy, values, release, param, sessionId);
+                List<String> validatedValues = validateValues(defaultStudy, values, release, param, sessionId);
 
                 StringBuilder sb = new StringBuilder();
                 for (int i = 0; i < rawValues.size(); i++) {
@@ -1452,9 +1641,9 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
                     }
 
                 }
-                String newValue = sb.toString();
-                query.put(param.key(), newValue);
+                return sb.toString();
             }
+            return null;
         }
 
         protected QueryOperation getQueryOperation(String valuesStr) {
@@ -1484,6 +1673,12 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
         }
 
 
+        protected List<String> validateValues(String defaultStudyStr, List<String> values, Integer release, VariantQueryParam param,
+                                              String sessionId)
+                throws CatalogException {
+            return validate(defaultStudyStr, values, release, param, sessionId);
+        }
+
         protected abstract List<String> validate(String defaultStudyStr, List<String> values, Integer release, VariantQueryParam param,
                                                  String sessionId)
                 throws CatalogException;
@@ -1522,7 +1717,23 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
     }
 
 
-    public class StudyFilterValidator extends FilterValidator {
+    /**
+     * Filter validator that keeps the validated values in the cache.
+     * Values are validated in the same way for every param, so the param is not part of the cache key.
+     */
+    public abstract class CachedFilterValidator extends FilterValidator {
+
+        @Override
+        protected List<String> validateValues(String defaultStudyStr, List<String> values, Integer release, VariantQueryParam param,
+                                              String sessionId)
+                throws CatalogException {
+            String type = getClass().getSimpleName() + (release == null ? "" : ":" + release);
+            return cache.get(cacheUser(sessionId), defaultStudyStr, type, String.join(",", values),
+                    () -> Collections.unmodifiableList(new ArrayList<>(validate(defaultStudyStr, values, release, param, sessionId))));
+        }
+    }
+
+    public class StudyFilterValidator extends CachedFilterValidator {
 
         @Override
         protected List<String> validate(String defaultStudyStr, List<String> values, Integer release, VariantQueryParam param,
@@ -1543,7 +1754,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
         }
     }
 
-    public class FileFilterValidator extends FilterValidator {
+    public class FileFilterValidator extends CachedFilterValidator {
 
         @Override
         protected List<String> validate(String defaultStudyStr, List<String> values, Integer release, VariantQueryParam param,
@@ -1569,7 +1780,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
 
     public class FileDataValidator extends FileFilterValidator {
         @Override
-        protected void processFilter(Query query, VariantQueryParam param, Integer release, String sessionId, String defaultStudy)
+        protected String computeFilter(Query query, VariantQueryParam param, Integer release, String sessionId, String defaultStudy)
                 throws CatalogException {
             if (param != VariantQueryParam.FILE_DATA) {
                 throw new IllegalStateException("Unexpected param '" + param + "' in FileDataValidator");
@@ -1579,24 +1790,24 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
                 if (!value.contains(IS)) {
                     // File data does not contain key-value pairs.
                     // Validation only applies to keys (ie file identifiers)
-                    return;
+                    return null;
                 }
                 ParsedQuery<KeyValues<String, KeyOpValue<String, String>>> fileData = parseFileData(query);
 
                 List<String> valuesToValidate = fileData.mapValues(KeyValues::getKey);
-                List<String> validatedValues = validate(defaultStudy, valuesToValidate, release, param, sessionId);
+                List<String> validatedValues = validateValues(defaultStudy, valuesToValidate, release, param, sessionId);
 
                 for (int i = 0; i < fileData.getValues().size(); i++) {
                     fileData.getValues().get(i).setKey(validatedValues.get(i));
                 }
 
-                String newValue = fileData.toQuery();
-                query.put(param.key(), newValue);
+                return fileData.toQuery();
             }
+            return null;
         }
     }
 
-    public class SampleFilterValidator extends FilterValidator {
+    public class SampleFilterValidator extends CachedFilterValidator {
 
         @Override
         protected QueryOperation getQueryOperation(String valuesStr) {
@@ -1663,7 +1874,7 @@ public class VariantCatalogQueryUtils extends CatalogUtils {
         }
     }
 
-    public class CohortFilterValidator extends FilterValidator {
+    public class CohortFilterValidator extends CachedFilterValidator {
 
         @Override
         protected List<String> validate(String defaultStudyStr, List<String> values, Integer release, VariantQueryParam param,
@@ -62,6 +62,7 @@ public class MutationalSignatureAnalysis extends OpenCgaTool {
 
     public final static String SIGNATURE_COEFFS_FILENAME = "exposures.tsv";
     public final static String CATALOGUES_FILENAME_DEFAULT = "catalogues.tsv";
+    public final static String CATALOGUES_1536_FILENAME_DEFAULT = "catalogues_1536.tsv";
 
     public final static String MUTATIONAL_SIGNATURE_DATA_MODEL_FILENAME = "mutational_signature.json";
     public final static String MUTATIONAL_SIGNATURE_FITTING_DATA_MODEL_FILENAME = "mutational_signature_fitting.json";
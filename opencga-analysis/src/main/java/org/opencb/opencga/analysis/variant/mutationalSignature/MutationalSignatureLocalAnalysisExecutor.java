@@ -18,7 +18,6 @@ package org.opencb.opencga.analysis.variant.mutationalSignature;
 
 import htsjdk.samtools.reference.BlockCompressedIndexedFastaSequenceFile;
 import htsjdk.samtools.reference.FastaSequenceIndex;
-import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.util.GZIIndex;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -101,10 +100,6 @@ public class MutationalSignatureLocalAnalysisExecutor extends MutationalSignatur
                 // SNV
                 logger.info("Computing catalogue (mutational signature) for SNV variants");
 
-                File indexFile = checkGenomeContextFile();
-                logger.info("Mutational signature analysis is using the genome context file {} for sample {}", indexFile.getAbsolutePath(),
-                        getSample());
-
                 query.append(VariantQueryParam.STUDY.key(), getStudy()).append(VariantQueryParam.TYPE.key(), VariantType.SNV);
 
                 QueryOptions queryOptions = new QueryOptions();
@@ -119,9 +114,8 @@ public class MutationalSignatureLocalAnalysisExecutor extends MutationalSignatur
                     return;
                 }
 
-                // Run mutational analysis taking into account that the genome context is stored in an index file,
-                // if the genome context file does not exist, it will be created !!!
-                computeSignatureCatalogueSNV(indexFile);
+                // Run mutational analysis reading the genome context straight from the reference genome
+                computeSignatureCatalogueSNV();
             } else {
                 // SV
                 logger.info("Computing catalogue (mutational signature) for SV variants");
@@ -157,28 +151,31 @@ public class MutationalSignatureLocalAnalysisExecutor extends MutationalSignatur
         return indexFile;
     }
 
+    private BlockCompressedIndexedFastaSequenceFile openReferenceGenome() throws ToolExecutorException, ResourceException,
+            IOException {
+        ResourceManager resourceManager = new ResourceManager(opencgaHome);
+
+        Path gzRefGenomePath;
+        Path faiRefGenomePath;
+        Path gziRefGenomePath;
+        String assembly = getAssembly();
+        if ("GRCh38".equalsIgnoreCase(assembly)) {
+            gzRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH38_FA);
+            faiRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH38_FAI);
+            gziRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH38_GZI);
+        } else if ("GRCh37".equalsIgnoreCase(assembly)) {
+            gzRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH37_FA);
+            faiRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH37_FAI);
+            gziRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH37_GZI);
+        } else {
+            throw new ToolExecutorException("Invalid assembly '" + assembly + "'. Valid values: GRCh38 and GRCh37");
+        }
+        return new BlockCompressedIndexedFastaSequenceFile(gzRefGenomePath, new FastaSequenceIndex(faiRefGenomePath.toFile()),
+                GZIIndex.loadIndex(gziRefGenomePath));
+    }
+
     private void createGenomeContextFile(File indexFile) throws ToolExecutorException {
         try {
-            // First,
-            String resourceName;
-            ResourceManager resourceManager = new ResourceManager(opencgaHome);
-
-            Path gzRefGenomePath;
-            Path faiRefGenomePath;
-            Path gziRefGenomePath;
-            String assembly = getAssembly();
-            if ("GRCh38".equalsIgnoreCase(assembly)) {
-                gzRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH38_FA);
-                faiRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH38_FAI);
-                gziRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH38_GZI);
-            } else if ("GRCh37".equalsIgnoreCase(assembly)) {
-                gzRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH37_FA);
-                faiRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH37_FAI);
-                gziRefGenomePath = resourceManager.checkResourcePath(REFERENCE_GENOME_GRCH37_GZI);
-            } else {
-                throw new ToolExecutorException("Invalid assembly '" + assembly + "'. Valid values: GRCh38 and GRCh37");
-            }
-
             // Compute signature profile: contextual frequencies of each type of base substitution
             Query query = new Query()
                     .append(VariantQueryParam.STUDY.key(), getStudy())
@@ -192,16 +189,14 @@ public class MutationalSignatureLocalAnalysisExecutor extends MutationalSignatur
 
             // Read mutation context from reference genome (.gz, .gz.fai and .gz.gzi files)
             try (PrintWriter pw = new PrintWriter(indexFile);
-                 BlockCompressedIndexedFastaSequenceFile indexed = new BlockCompressedIndexedFastaSequenceFile(
-                         gzRefGenomePath, new FastaSequenceIndex(faiRefGenomePath.toFile()), GZIIndex.loadIndex(gziRefGenomePath))) {
+                 BlockCompressedIndexedFastaSequenceFile indexed = openReferenceGenome()) {
+                ReferenceContextCache referenceContext = new ReferenceContextCache(indexed, 1);
                 while (iterator.hasNext()) {
                     Variant variant = iterator.next();
 
                     try {
                         // Accessing to the context sequence and write it into the context index file
-                        ReferenceSequence refSeq = indexed.getSubsequenceAt(variant.getChromosome(), (long) variant.getStart() - 1,
-                                (long) variant.getEnd() + 1);
-                        String sequence = new String(refSeq.getBases());
+                        String sequence = referenceContext.getContext(variant.getChromosome(), variant.getStart(), 1);
 
                         // Write context index
                         pw.println(variant.toString() + "\t" + sequence);
@@ -210,86 +205,76 @@ public class MutationalSignatureLocalAnalysisExecutor extends MutationalSignatur
                                 variant.toStringSimple(), Arrays.toString(e.getStackTrace()));
                     }
                 }
+            } finally {
+                closeIterator(iterator);
             }
         } catch (IOException | CatalogException | ToolException | StorageEngineException | ResourceException e) {
             throw new ToolExecutorException(e);
         }
     }
 
-    private void updateCountMap(Variant variant, String sequence, Map<String, Map<String, Integer>> countMap) {
+    private void closeIterator(VariantDBIterator iterator) {
         try {
-            String k;
-            String seq;
-
-            String key = variant.getReference() + ">" + variant.getAlternate();
-
-            if (countMap.containsKey(key)) {
-                k = key;
-                seq = sequence;
-            } else {
-                k = MutationalSignatureAnalysisExecutor.complement(key);
-                seq = MutationalSignatureAnalysisExecutor.reverseComplement(sequence);
-            }
-            if (countMap.get(k).containsKey(seq)) {
-                countMap.get(k).put(seq, countMap.get(k).get(seq) + 1);
-            }
+            iterator.close();
         } catch (Exception e) {
-            logger.warn("When counting mutational signature substitutions, ignoring variant {} with sequence {}: {}",
-                    variant.toStringSimple(), sequence, Arrays.toString(e.getStackTrace()));
+            logger.warn("Error closing variant iterator", e);
         }
     }
 
-    public void computeSignatureCatalogueSNV(File indexFile) throws ToolExecutorException {
-        try (BufferedReader br = new BufferedReader(new FileReader(indexFile))) {
-            // Read context index
-            Map<String, String> indexMap = new HashMap<>();
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\t");
-                indexMap.put(parts[0], parts[1]);
-            }
-
-            // Get variant iterator
-            Query query = new Query();
-            if (getQuery() != null) {
-                query.putAll(getQuery());
-            }
-            // Ovewrite study and type (SNV)
-            query.append(VariantQueryParam.STUDY.key(), getStudy()).append(VariantQueryParam.TYPE.key(), VariantType.SNV);
+    public void computeSignatureCatalogueSNV() throws ToolExecutorException {
+        // Get variant iterator
+        Query query = new Query();
+        if (getQuery() != null) {
+            query.putAll(getQuery());
+        }
+        // Ovewrite study and type (SNV)
+        query.append(VariantQueryParam.STUDY.key(), getStudy()).append(VariantQueryParam.TYPE.key(), VariantType.SNV);
 
-            QueryOptions queryOptions = new QueryOptions(QueryOptions.INCLUDE, "id");
+        QueryOptions queryOptions = new QueryOptions(QueryOptions.INCLUDE, "id");
 
+        // Count straight from the variants and the reference genome, in one single pass, without intermediate context files
+        SignatureCatalogueBuilder catalogueBuilder;
+        try {
             VariantDBIterator iterator = getVariantStorageManager().iterator(query, queryOptions, getToken());
-
-            Map<String, Map<String, Integer>> countMap = initCountMap();
-
-            while (iterator.hasNext()) {
-                Variant variant = iterator.next();
-
-                // Update count map
-                updateCountMap(variant, indexMap.get(variant.toString()), countMap);
+            try (BlockCompressedIndexedFastaSequenceFile indexed = openReferenceGenome()) {
+                ReferenceContextCache referenceContext = new ReferenceContextCache(indexed, 2);
+                catalogueBuilder = new SignatureCatalogueBuilder(referenceContext, Collections.singletonList(getSample()));
+                while (iterator.hasNext()) {
+                    catalogueBuilder.add(iterator.next(), 0);
+                }
+                logger.info("Mutational signature catalogue computed reading {} reference genome windows. {} variants skipped",
+                        referenceContext.getLoadedWindows(), catalogueBuilder.getSkippedVariants());
+            } finally {
+                closeIterator(iterator);
             }
+        } catch (IOException | CatalogException | ToolException | StorageEngineException | ResourceException e) {
+            throw new ToolExecutorException(e);
+        }
+        if (catalogueBuilder.getReferenceLookupFailures() > 0) {
+            logger.warn("{} variants not counted, as their genome context could not be read from the {} reference genome",
+                    catalogueBuilder.getReferenceLookupFailures(), getAssembly());
+        }
+        if (catalogueBuilder.getReferenceMismatches() > 0) {
+            logger.warn("{} variants not counted, as their reference base does not match the {} reference genome. "
+                    + "Check the assembly of the study", catalogueBuilder.getReferenceMismatches(), getAssembly());
+        }
 
+        try {
             // Write context counts
             File cataloguesFile = getOutDir().resolve(CATALOGUES_FILENAME_DEFAULT).toFile();
-            writeCountMap(getSample(), countMap, cataloguesFile);
+            catalogueBuilder.writeCatalogue96(cataloguesFile);
+            catalogueBuilder.writeCatalogue1536(getOutDir().resolve(CATALOGUES_1536_FILENAME_DEFAULT).toFile());
 
-            // Check catalogue file before parsing and creating the mutational signature data model
-            if (!cataloguesFile.exists()) {
-                throw new ToolExecutorException("Something wrong happened: counts file " + CATALOGUES_FILENAME_DEFAULT + " could not be"
-                        + " generated");
-            }
-            List<Signature.GenomeContextCount> genomeContextCounts = parseCatalogueResults(getOutDir());
             Signature signature = new Signature()
                     .setId(getQueryId())
                     .setDescription(getQueryDescription())
                     .setQuery(query)
                     .setType("SNV")
-                    .setCounts(genomeContextCounts);
+                    .setCounts(catalogueBuilder.getGenomeContextCounts(0));
 
             JacksonUtils.getDefaultObjectMapper().writerFor(Signature.class).writeValue(getOutDir()
                     .resolve(MutationalSignatureAnalysis.MUTATIONAL_SIGNATURE_DATA_MODEL_FILENAME).toFile(), signature);
-        } catch (IOException | CatalogException | StorageEngineException | ToolException e) {
+        } catch (IOException e) {
             throw new ToolExecutorException(e);
         }
     }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.analysis.variant.mutationalSignature;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the genome context of a position from a few decompressed windows of the reference genome.
+ *
+ * Variants sorted by position are served from the same window, decompressing each reference block only once,
+ * instead of querying the reference genome for every single variant.
+ *
+ * Created on 17/10/26.
+ */
+public class ReferenceContextCache {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1000000;
+    private static final int MAX_WINDOWS = 4;
+
+    private final SequenceProvider sequenceProvider;
+    private final int windowSize;
+    private final int flank;
+    private final LinkedHashMap<String, Window> windows = new LinkedHashMap<>(MAX_WINDOWS * 2, 0.75f, true);
+    private int loadedWindows = 0;
+
+    @FunctionalInterface
+    public interface SequenceProvider {
+        /**
+         * Read a region of the reference genome.
+         *
+         * @param chromosome Chromosome
+         * @param start      Start position, 1-based, inclusive
+         * @param end        End position, 1-based, inclusive. Might be beyond the end of the chromosome.
+         * @return Bases from the region
+         */
+        byte[] getBases(String chromosome, long start, long end);
+    }
+
+    /**
+     * Create a cache over an indexed reference genome file.
+     *
+     * @param referenceSequenceFile Indexed reference genome
+     * @param flank                 Max number of bases to read at each side of the position
+     */
+    public ReferenceContextCache(ReferenceSequenceFile referenceSequenceFile, int flank) {
+        this((chromosome, start, end) -> {
+            SAMSequenceRecord sequence = referenceSequenceFile.getSequenceDictionary().getSequence(chromosome);
+            if (sequence == null) {
+                throw new IllegalArgumentException("Chromosome '" + chromosome + "' not found in the reference genome");
+            }
+            return referenceSequenceFile.getSubsequenceAt(chromosome, start, Math.min(end, sequence.getSequenceLength())).getBases();
+        }, DEFAULT_WINDOW_SIZE, flank);
+    }
+
+    public ReferenceContextCache(SequenceProvider sequenceProvider, int windowSize, int flank) {
+        this.sequenceProvider = sequenceProvider;
+        this.windowSize = windowSize;
+        this.flank = flank;
+    }
+
+    /**
+     * Get the base at the given position.
+     *
+     * @param chromosome Chromosome
+     * @param position   Position, 1-based
+     * @param offset     Offset from the position, between -flank and +flank
+     * @return Base, in upper case, or 'N' if out of the chromosome
+     */
+    public byte getBase(String chromosome, int position, int offset) {
+        if (offset < -flank || offset > flank) {
+            throw new IllegalArgumentException("Offset " + offset + " out of the flank " + flank);
+        }
+        Window window = getWindow(chromosome, position);
+        int idx = (int) (position + offset - window.start);
+        if (idx < 0 || idx >= window.bases.length) {
+            return 'N';
+        }
+        return toUpperCase(window.bases[idx]);
+    }
+
+    /**
+     * Get the sequence around a position, from position - flank to position + flank.
+     *
+     * @param chromosome Chromosome
+     * @param position   Position, 1-based
+     * @param flank      Number of bases at each side of the position
+     * @return Sequence context
+     */
+    public String getContext(String chromosome, int position, int flank) {
+        byte[] bytes = new byte[flank * 2 + 1];
+        for (int i = -flank; i <= flank; i++) {
+            bytes[i + flank] = getBase(chromosome, position, i);
+        }
+        return new String(bytes);
+    }
+
+    /**
+     * @return Number of windows read from the reference genome
+     */
+    public int getLoadedWindows() {
+        return loadedWindows;
+    }
+
+    private Window getWindow(String chromosome, int position) {
+        long windowIdx = (position - 1L) / windowSize;
+        String key = chromosome + ":" + windowIdx;
+        Window window = windows.get(key);
+        if (window == null) {
+            long start = Math.max(1, windowIdx * windowSize + 1 - flank);
+            long end = (windowIdx + 1) * windowSize + flank;
+            window = new Window(start, sequenceProvider.getBases(chromosome, start, end));
+            windows.put(key, window);
+            loadedWindows++;
+            Iterator<Map.Entry<String, Window>> iterator = windows.entrySet().iterator();
+            while (windows.size() > MAX_WINDOWS) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return window;
+    }
+
+    private static byte toUpperCase(byte base) {
+        if (base >= 'a' && base <= 'z') {
+            return (byte) (base - 'a' + 'A');
+        }
+        return base;
+    }
+
+    private static final class Window {
+        private final long start;
+        private final byte[] bases;
+
+        private Window(long start, byte[] bases) {
+            this.start = start;
+            this.bases = bases;
+        }
+    }
+}
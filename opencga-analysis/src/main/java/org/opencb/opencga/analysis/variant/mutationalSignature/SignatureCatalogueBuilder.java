@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.analysis.variant.mutationalSignature;
+
+import org.opencb.biodata.models.clinical.qc.Signature;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the SNV mutational signature catalogue (SBS-96 and SBS-1536) of one or more samples in a single pass over the variants.
+ *
+ * The genome context is read from a {@link ReferenceContextCache}, and the counts are accumulated in primitive arrays.
+ * Substitutions are normalized to the pyrimidine reference base (C or T), reverse complementing the context if needed.
+ *
+ * SBS-96 index:   substitution * 16 + base[-1] * 4 + base[+1]
+ * SBS-1536 index: substitution * 256 + base[-2] * 64 + base[-1] * 16 + base[+1] * 4 + base[+2]
+ *
+ * Where substitution is the index in {@link #SUBSTITUTIONS} and bases are indexed as A=0, C=1, G=2, T=3.
+ *
+ * Variants that are not single nucleotide substitutions are skipped. Variants whose reference base does not match the reference
+ * genome, and variants that could not be read from the reference genome (e.g. missing chromosome), are not counted either, but
+ * are reported separately, as they usually indicate that the reference genome does not match the variants.
+ *
+ * Created on 17/10/26.
+ */
+public class SignatureCatalogueBuilder {
+
+    public static final String[] SUBSTITUTIONS = new String[]{"C>A", "C>G", "C>T", "T>A", "T>C", "T>G"};
+    public static final int SBS_96 = 96;
+    public static final int SBS_1536 = 1536;
+    private static final char[] BASES = new char[]{'A', 'C', 'G', 'T'};
+    private static final int MAX_REFERENCE_MISMATCH_WARNINGS = 10;
+
+    private final ReferenceContextCache referenceContext;
+    private final List<String> samples;
+    private final int[][] counts96;
+    private final int[][] counts1536;
+    private long skippedVariants = 0;
+    private long referenceMismatches = 0;
+    private long referenceLookupFailures = 0;
+    private final Set<String> failedChromosomes = new HashSet<>();
+    private final Logger logger = LoggerFactory.getLogger(SignatureCatalogueBuilder.class);
+
+    /**
+     * Create a catalogue builder.
+     *
+     * @param referenceContext Reference genome context. Must have a flank of at least 2 bases.
+     * @param samples          Samples to count
+     */
+    public SignatureCatalogueBuilder(ReferenceContextCache referenceContext, List<String> samples) {
+        this.referenceContext = referenceContext;
+        this.samples = Collections.unmodifiableList(new ArrayList<>(samples));
+        this.counts96 = new int[samples.size()][SBS_96];
+        this.counts1536 = new int[samples.size()][SBS_1536];
+    }
+
+    /**
+     * Count a variant for all the samples with a non reference genotype in the first study.
+     * If there is only one sample and the variant does not have sample data, the variant is counted for that sample.
+     *
+     * @param variant Variant
+     */
+    public void add(Variant variant) {
+        if (samples.size() == 1) {
+            StudyEntry study = variant.getStudies().isEmpty() ? null : variant.getStudies().get(0);
+            if (study == null || study.getSamples() == null || study.getSamples().isEmpty()) {
+                add(variant, 0);
+                return;
+            }
+        }
+        if (variant.getStudies().isEmpty()) {
+            return;
+        }
+        StudyEntry study = variant.getStudies().get(0);
+        for (int i = 0; i < samples.size(); i++) {
+            SampleEntry sampleEntry = study.getSample(samples.get(i));
+            if (sampleEntry != null && hasAlternate(sampleEntry)) {
+                add(variant, i);
+            }
+        }
+    }
+
+    /**
+     * Count a variant for one sample.
+     *
+     * @param variant   Variant
+     * @param sampleIdx Sample index
+     * @return If the variant was counted
+     */
+    public boolean add(Variant variant, int sampleIdx) {
+        if (variant.getReference().length() != 1 || variant.getAlternate().length() != 1) {
+            skippedVariants++;
+            return false;
+        }
+        return add(variant.getChromosome(), variant.getStart(), variant.getReference().charAt(0), variant.getAlternate().charAt(0),
+                sampleIdx);
+    }
+
+    /**
+     * Count a substitution for one sample.
+     *
+     * @param chromosome Chromosome
+     * @param position   Position, 1-based
+     * @param ref        Reference base
+     * @param alt        Alternate base
+     * @param sampleIdx  Sample index
+     * @return If the substitution was counted
+     */
+    public boolean add(String chromosome, int position, char ref, char alt, int sampleIdx) {
+        boolean reverse = ref == 'A' || ref == 'G';
+        int refIdx = baseIndex(ref, reverse);
+        int altIdx = baseIndex(alt, reverse);
+        if (refIdx < 0 || altIdx < 0 || refIdx == altIdx) {
+            skippedVariants++;
+            return false;
+        }
+        int substitution = substitutionIndex(refIdx, altIdx);
+
+        int[] flanks = new int[4];
+        byte referenceBase;
+        try {
+            referenceBase = referenceContext.getBase(chromosome, position, 0);
+            for (int i = 0; i < 4; i++) {
+                // Offsets -2, -1, +1, +2. Swap sides when reverse complementing
+                int offset = i < 2 ? i - 2 : i - 1;
+                byte base = referenceContext.getBase(chromosome, position, reverse ? -offset : offset);
+                flanks[i] = baseIndex((char) base, reverse);
+            }
+        } catch (RuntimeException e) {
+            referenceLookupFailures++;
+            if (failedChromosomes.add(chromosome)) {
+                logger.warn("Unable to read the genome context of {}:{} from the reference genome: {}", chromosome, position,
+                        e.getMessage());
+            }
+            return false;
+        }
+        if (referenceBase != Character.toUpperCase(ref)) {
+            referenceMismatches++;
+            if (referenceMismatches <= MAX_REFERENCE_MISMATCH_WARNINGS) {
+                logger.warn("Reference base '{}' of variant at {}:{} does not match the reference genome base '{}'",
+                        ref, chromosome, position, (char) referenceBase);
+            }
+            return false;
+        }
+        if (flanks[1] < 0 || flanks[2] < 0) {
+            skippedVariants++;
+            return false;
+        }
+        counts96[sampleIdx][substitution * 16 + flanks[1] * 4 + flanks[2]]++;
+        if (flanks[0] >= 0 && flanks[3] >= 0) {
+            counts1536[sampleIdx][substitution * 256 + flanks[0] * 64 + flanks[1] * 16 + flanks[2] * 4 + flanks[3]]++;
+        }
+        return true;
+    }
+
+    public List<String> getSamples() {
+        return samples;
+    }
+
+    public int[] getCounts96(int sampleIdx) {
+        return counts96[sampleIdx];
+    }
+
+    public int[] getCounts1536(int sampleIdx) {
+        return counts1536[sampleIdx];
+    }
+
+    /**
+     * @return Number of variants skipped for not being single nucleotide substitutions
+     */
+    public long getSkippedVariants() {
+        return skippedVariants;
+    }
+
+    /**
+     * @return Number of variants not counted as their reference base does not match the reference genome
+     */
+    public long getReferenceMismatches() {
+        return referenceMismatches;
+    }
+
+    /**
+     * @return Number of variants not counted as their genome context could not be read from the reference genome
+     */
+    public long getReferenceLookupFailures() {
+        return referenceLookupFailures;
+    }
+
+    /**
+     * @param sampleIdx Sample index
+     * @return SBS-96 genome context counts, in the same order as the catalogue file
+     */
+    public List<Signature.GenomeContextCount> getGenomeContextCounts(int sampleIdx) {
+        List<Signature.GenomeContextCount> contextCounts = new ArrayList<>(SBS_96);
+        for (int i = 0; i < SBS_96; i++) {
+            contextCounts.add(new Signature.GenomeContextCount(context96(i), counts96[sampleIdx][i]));
+        }
+        return contextCounts;
+    }
+
+    /**
+     * Write the SBS-96 catalogue. First line contains the sample names, followed by one line per context.
+     *
+     * @param file Output file
+     * @throws IOException on error writing the file
+     */
+    public void writeCatalogue96(File file) throws IOException {
+        writeCatalogue(file, counts96);
+    }
+
+    /**
+     * Write the SBS-1536 catalogue. First line contains the sample names, followed by one line per context.
+     *
+     * @param file Output file
+     * @throws IOException on error writing the file
+     */
+    public void writeCatalogue1536(File file) throws IOException {
+        writeCatalogue(file, counts1536);
+    }
+
+    private void writeCatalogue(File file, int[][] counts) throws IOException {
+        try (PrintWriter pw = new PrintWriter(file)) {
+            pw.println(String.join("\t", samples));
+            int size = counts[0].length;
+            for (int i = 0; i < size; i++) {
+                pw.print(size == SBS_96 ? context96(i) : context1536(i));
+                for (int[] sampleCounts : counts) {
+                    pw.print('\t');
+                    pw.print(sampleCounts[i]);
+                }
+                pw.println();
+            }
+        }
+    }
+
+    /**
+     * @param idx SBS-96 index
+     * @return Context. e.g. A[C>A]T
+     */
+    public static String context96(int idx) {
+        int substitution = idx / 16;
+        return BASES[(idx / 4) % 4] + "[" + SUBSTITUTIONS[substitution] + "]" + BASES[idx % 4];
+    }
+
+    /**
+     * @param idx SBS-1536 index
+     * @return Context. e.g. AA[C>A]TT
+     */
+    public static String context1536(int idx) {
+        int substitution = idx / 256;
+        return "" + BASES[(idx / 64) % 4] + BASES[(idx / 16) % 4] + "[" + SUBSTITUTIONS[substitution] + "]"
+                + BASES[(idx / 4) % 4] + BASES[idx % 4];
+    }
+
+    private static boolean hasAlternate(SampleEntry sampleEntry) {
+        if (sampleEntry.getData() == null || sampleEntry.getData().isEmpty()) {
+            return true;
+        }
+        String gt = sampleEntry.getData().get(0);
+        for (int i = 0; i < gt.length(); i++) {
+            char c = gt.charAt(i);
+            if (c >= '1' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int substitutionIndex(int refIdx, int altIdx) {
+        // refIdx is C (1) or T (3)
+        if (refIdx == 1) {
+            // C>A, C>G, C>T
+            return altIdx == 0 ? 0 : altIdx == 2 ? 1 : 2;
+        } else {
+            // T>A, T>C, T>G
+            return altIdx == 0 ? 3 : altIdx == 1 ? 4 : 5;
+        }
+    }
+
+    private static int baseIndex(char base, boolean complement) {
+        int idx;
+        switch (Character.toUpperCase(base)) {
+            case 'A':
+                idx = 0;
+                break;
+            case 'C':
+                idx = 1;
+                break;
+            case 'G':
+                idx = 2;
+                break;
+            case 'T':
+                idx = 3;
+                break;
+            default:
+                return -1;
+        }
+        return complement ? 3 - idx : idx;
+    }
+}
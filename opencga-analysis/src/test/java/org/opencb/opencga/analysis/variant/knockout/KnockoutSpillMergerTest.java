@@ -0,0 +1,53 @@
+package org.opencb.opencga.analysis.variant.knockout;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.opencga.core.models.analysis.knockout.KnockoutByGene;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+@Category(ShortTests.class)
+public class KnockoutSpillMergerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMerge() throws Exception {
+        Path file1 = temporaryFolder.getRoot().toPath().resolve("shard.1.genes.json.gz");
+        Path file2 = temporaryFolder.getRoot().toPath().resolve("shard.2.genes.json.gz");
+        Path file3 = temporaryFolder.getRoot().toPath().resolve("shard.3.genes.json.gz");
+        KnockoutSpillMerger.write(file1, KnockoutByGene.class, Arrays.asList(gene("A", "s1"), gene("C", "s1"), gene("D", "s2")));
+        KnockoutSpillMerger.write(file2, KnockoutByGene.class, Arrays.asList(gene("B", "s3"), gene("C", "s2")));
+        KnockoutSpillMerger.write(file3, KnockoutByGene.class, Collections.emptyList());
+
+        List<KnockoutByGene> merged = new ArrayList<>();
+        int count = new KnockoutSpillMerger<>(KnockoutByGene.class, KnockoutByGene::getName, String::compareTo,
+                (a, b) -> {
+                    a.getIndividuals().addAll(b.getIndividuals());
+                    return a;
+                })
+                .merge(Arrays.asList(file1, file2, file3), merged::add);
+
+        assertEquals(4, count);
+        assertEquals(Arrays.asList("A", "B", "C", "D"), merged.stream().map(KnockoutByGene::getName).collect(Collectors.toList()));
+        // Values with the same key are merged in the order of the files
+        assertEquals(Arrays.asList("s1", "s2"), merged.get(2).getIndividuals().stream()
+                .map(KnockoutByGene.KnockoutIndividual::getSampleId)
+                .collect(Collectors.toList()));
+    }
+
+    private static KnockoutByGene gene(String name, String sample) {
+        return new KnockoutByGene().setName(name).addIndividual(new KnockoutByGene.KnockoutIndividual().setSampleId(sample));
+    }
+}
@@ -0,0 +1,87 @@
+package org.opencb.opencga.analysis.variant.manager;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.catalog.exceptions.CatalogException;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class VariantCatalogQueryCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    @Test
+    public void testGet() throws CatalogException {
+        VariantCatalogQueryCache cache = new VariantCatalogQueryCache(60000, 100);
+        assertEquals("v1", cache.get("user1", "s1", "panel", "p1", () -> load("v1")));
+        assertEquals("v1", cache.get("user1", "s1", "panel", "p1", () -> load("v2")));
+        assertEquals(1, loads.get());
+
+        // Different user, study or type are different entries
+        assertEquals("v2", cache.get("user2", "s1", "panel", "p1", () -> load("v2")));
+        assertEquals("v3", cache.get("user1", "s2", "panel", "p1", () -> load("v3")));
+        assertEquals("v4", cache.get("user1", "s1", "family", "p1", () -> load("v4")));
+        assertEquals(4, loads.get());
+
+        assertEquals(1, cache.getStats().getInt("hits"));
+        assertEquals(4, cache.getStats().getInt("misses"));
+    }
+
+    @Test
+    public void testErrorsNotCached() throws CatalogException {
+        VariantCatalogQueryCache cache = new VariantCatalogQueryCache(60000, 100);
+        try {
+            cache.get("user1", "s1", "panel", "p1", () -> {
+                throw new CatalogException("Panel 'p1' not found");
+            });
+            fail();
+        } catch (CatalogException e) {
+            assertEquals("Panel 'p1' not found", e.getMessage());
+        }
+        assertNull(cache.get("user1", "s1", "panel", "p1", () -> null));
+        assertEquals("v1", cache.get("user1", "s1", "panel", "p1", () -> load("v1")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        VariantCatalogQueryCache cache = new VariantCatalogQueryCache(10, 100);
+        cache.get("user1", "s1", "panel", "p1", () -> load("v1"));
+        Thread.sleep(50);
+        assertEquals("v2", cache.get("user1", "s1", "panel", "p1", () -> load("v2")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() throws CatalogException {
+        VariantCatalogQueryCache cache = new VariantCatalogQueryCache(60000, 100);
+        cache.get("user1", "s1", "panel", "p1", () -> load("v1"));
+        cache.get("user1", "s2", "panel", "p1", () -> load("v1"));
+
+        cache.invalidate("s1");
+        assertEquals("v2", cache.get("user1", "s1", "panel", "p1", () -> load("v2")));
+        assertEquals("v1", cache.get("user1", "s2", "panel", "p1", () -> load("v2")));
+
+        cache.invalidateAll();
+        assertEquals("v3", cache.get("user1", "s2", "panel", "p1", () -> load("v3")));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testDisabled() throws CatalogException {
+        VariantCatalogQueryCache cache = new VariantCatalogQueryCache(0, 100);
+        assertFalse(cache.isEnabled());
+        cache.get("user1", "s1", "panel", "p1", () -> load("v1"));
+        assertEquals("v2", cache.get("user1", "s1", "panel", "p1", () -> load("v2")));
+        assertEquals(2, loads.get());
+    }
+}
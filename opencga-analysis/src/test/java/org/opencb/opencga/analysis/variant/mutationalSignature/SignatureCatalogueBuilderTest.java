@@ -0,0 +1,105 @@
+package org.opencb.opencga.analysis.variant.mutationalSignature;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class SignatureCatalogueBuilderTest {
+
+    //                                       1234567
+    private static final String CHROMOSOME = "TTACAGG";
+
+    private ReferenceContextCache newReferenceContext(AtomicInteger reads) {
+        return new ReferenceContextCache((chromosome, start, end) -> {
+            reads.incrementAndGet();
+            int to = (int) Math.min(end, CHROMOSOME.length());
+            return CHROMOSOME.substring((int) start - 1, to).getBytes();
+        }, 4, 2);
+    }
+
+    @Test
+    public void testContexts() {
+        assertEquals("A[C>A]A", SignatureCatalogueBuilder.context96(0));
+        assertEquals("T[T>G]T", SignatureCatalogueBuilder.context96(95));
+        assertEquals("TA[C>A]AG", SignatureCatalogueBuilder.context1536(194));
+        assertEquals("TT[T>G]TT", SignatureCatalogueBuilder.context1536(1535));
+    }
+
+    @Test
+    public void testCount() {
+        SignatureCatalogueBuilder builder = new SignatureCatalogueBuilder(newReferenceContext(new AtomicInteger()),
+                Collections.singletonList("S1"));
+
+        // C>A at position 4. TA[C>A]AG
+        assertTrue(builder.add("1", 4, 'C', 'A', 0));
+        assertEquals(1, builder.getCounts96(0)[0]);
+        assertEquals(1, builder.getCounts1536(0)[194]);
+
+        // G>T at position 6, reverse complemented to C[C>A]T. Second 3' base out of the chromosome
+        assertTrue(builder.add("1", 6, 'G', 'T', 0));
+        assertEquals(1, builder.getCounts96(0)[7]);
+        assertEquals(1, Arrays.stream(builder.getCounts1536(0)).sum());
+
+        // Not a substitution
+        assertFalse(builder.add("1", 4, 'C', 'C', 0));
+        assertEquals(1, builder.getSkippedVariants());
+        assertEquals(2, Arrays.stream(builder.getCounts96(0)).sum());
+        assertEquals(2, builder.getGenomeContextCounts(0).stream().mapToInt(c -> c.getTotal()).sum());
+    }
+
+    @Test
+    public void testReferenceMismatch() {
+        SignatureCatalogueBuilder builder = new SignatureCatalogueBuilder(newReferenceContext(new AtomicInteger()),
+                Collections.singletonList("S1"));
+
+        // Position 4 is a C in the reference genome
+        assertFalse(builder.add("1", 4, 'T', 'A', 0));
+        assertFalse(builder.add("1", 4, 'G', 'A', 0));
+        assertEquals(2, builder.getReferenceMismatches());
+        assertEquals(0, builder.getSkippedVariants());
+        assertEquals(0, Arrays.stream(builder.getCounts96(0)).sum());
+    }
+
+    @Test
+    public void testReferenceLookupFailure() {
+        SignatureCatalogueBuilder builder = new SignatureCatalogueBuilder(new ReferenceContextCache((chromosome, start, end) -> {
+            throw new IllegalArgumentException("Chromosome '" + chromosome + "' not found in the reference genome");
+        }, 4, 2), Collections.singletonList("S1"));
+
+        assertFalse(builder.add("chrUn", 4, 'C', 'A', 0));
+        assertFalse(builder.add("chrUn", 5, 'C', 'A', 0));
+        assertEquals(2, builder.getReferenceLookupFailures());
+        assertEquals(0, builder.getReferenceMismatches());
+        assertEquals(0, builder.getSkippedVariants());
+    }
+
+    @Test
+    public void testMultipleSamples() {
+        SignatureCatalogueBuilder builder = new SignatureCatalogueBuilder(newReferenceContext(new AtomicInteger()),
+                Arrays.asList("S1", "S2"));
+        builder.add("1", 4, 'C', 'A', 0);
+        builder.add("1", 4, 'C', 'A', 1);
+        builder.add("1", 4, 'C', 'T', 1);
+        assertEquals(1, Arrays.stream(builder.getCounts96(0)).sum());
+        assertEquals(2, Arrays.stream(builder.getCounts96(1)).sum());
+    }
+
+    @Test
+    public void testReferenceWindows() {
+        AtomicInteger reads = new AtomicInteger();
+        ReferenceContextCache referenceContext = newReferenceContext(reads);
+        assertEquals("ACA", referenceContext.getContext("1", 4, 1));
+        assertEquals("TAC", referenceContext.getContext("1", 3, 1));
+        assertEquals(1, reads.get());
+        assertEquals("AGG", referenceContext.getContext("1", 6, 1));
+        assertEquals(2, reads.get());
+        assertEquals('N', referenceContext.getBase("1", 7, 1));
+    }
+}
@@ -0,0 +1,100 @@
+package org.opencb.opencga.catalog.auth.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.jsonwebtoken.Claims;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.catalog.exceptions.CatalogAuthenticationException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the claims of already verified tokens.
+ *
+ * Entries are indexed by the SHA-256 digest of the token, so the tokens themselves are not kept in memory. Each entry remembers the
+ * key used to verify the signature, and it is only returned for that same key. Entries are discarded once the token expires, so an
+ * expired token always goes through the parser again and gets the same error as before. Tokens that fail the verification are never
+ * cached.
+ *
+ * Created on 17/10/26.
+ */
+class JwtClaimsCache {
+
+    @FunctionalInterface
+    interface Parser {
+        Claims parse(String token, Key key) throws CatalogAuthenticationException;
+    }
+
+    private final Cache<String, Entry> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Create a JwtClaimsCache.
+     *
+     * @param maxSize Max number of tokens in the cache. Use 0 to disable the cache.
+     */
+    JwtClaimsCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Get the claims of the token, verifying it only if missing from the cache.
+     *
+     * @param token  JWT token
+     * @param key    Key to verify the signature
+     * @param parser Parse and verify the token if missing
+     * @return Verified claims
+     * @throws CatalogAuthenticationException if the token is not valid or has expired
+     */
+    Claims get(String token, Key key, Parser parser) throws CatalogAuthenticationException {
+        String digest = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        Entry entry = cache.getIfPresent(digest);
+        if (entry != null && entry.key.equals(key)) {
+            if (System.currentTimeMillis() < entry.expiration) {
+                hits.increment();
+                return entry.claims;
+            }
+            expired.increment();
+            cache.invalidate(digest);
+        }
+        misses.increment();
+        Claims claims = parser.parse(token, key);
+        Date expiration = claims.getExpiration();
+        cache.put(digest, new Entry(claims, key, expiration == null ? Long.MAX_VALUE : expiration.getTime()));
+        return claims;
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    ObjectMap getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        return new ObjectMap()
+                .append("size", cache.size())
+                .append("hits", hitCount)
+                .append("misses", missCount)
+                .append("expired", expired.sum())
+                .append("hitRate", hitCount + missCount == 0 ? 1.0 : ((double) hitCount) / (hitCount + missCount));
+    }
+
+    private static final class Entry {
+        private final Claims claims;
+        private final Key key;
+        private final long expiration;
+
+        private Entry(Claims claims, Key key, long expiration) {
+            this.claims = claims;
+            this.key = key;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.opencb.opencga.catalog.auth.authentication;
 
 import io.jsonwebtoken.*;
 import org.apache.commons.collections4.CollectionUtils;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.opencga.catalog.exceptions.CatalogAuthenticationException;
 import org.opencb.opencga.core.common.JwtUtils;
 import org.opencb.opencga.core.config.AuthenticationOrigin;
@@ -27,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.security.Key;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -41,10 +43,13 @@ public class JwtManager {
     private Key privateKey;
     private Key publicKey;
 
+    private final JwtClaimsCache claimsCache;
+
     private final Logger logger;
 
     // 32 characters to ensure it is at least 256 bits long
     public static final int SECRET_KEY_MIN_LENGTH = 32;
+    public static final int DEFAULT_CLAIMS_CACHE_SIZE = 10000;
 
     public JwtManager(String algorithm) {
         this(algorithm, null, null);
@@ -55,9 +60,14 @@ public class JwtManager {
     }
 
     public JwtManager(String algorithm, @Nullable Key privateKey, @Nullable Key publicKey) {
+        this(algorithm, privateKey, publicKey, DEFAULT_CLAIMS_CACHE_SIZE);
+    }
+
+    public JwtManager(String algorithm, @Nullable Key privateKey, @Nullable Key publicKey, long claimsCacheSize) {
         this.algorithm = SignatureAlgorithm.forName(algorithm);
         this.privateKey = privateKey;
         this.publicKey = publicKey;
+        this.claimsCache = new JwtClaimsCache(claimsCacheSize);
 
         logger = LoggerFactory.getLogger(JwtManager.class);
     }
@@ -86,6 +96,7 @@ public class JwtManager {
 
     public JwtManager setPublicKey(Key publicKey) {
         this.publicKey = publicKey;
+        claimsCache.invalidateAll();
         return this;
     }
 
@@ -123,17 +134,34 @@ public class JwtManager {
     }
 
     public JwtPayload getPayload(String token) throws CatalogAuthenticationException {
-        Claims body = parseClaims(token).getBody();
-        return new JwtPayload(body.getSubject(), body.getAudience(), getAuthOrigin(body), body.getIssuer(), body.getIssuedAt(),
-                body.getExpiration(), JwtUtils.getFederations(body), token);
+        return getPayload(token, this.publicKey);
     }
 
     public JwtPayload getPayload(String token, Key publicKey) throws CatalogAuthenticationException {
-        Claims body = parseClaims(token, publicKey).getBody();
+        Claims body = parseClaims(token, publicKey);
         return new JwtPayload(body.getSubject(), body.getAudience(), getAuthOrigin(body), body.getIssuer(), body.getIssuedAt(),
                 body.getExpiration(), JwtUtils.getFederations(body), token);
     }
 
+    /**
+     * Get all the claims of a valid token. Use this method to read several claims from the same token.
+     *
+     * @param token JWT token
+     * @return Verified claims. Must not be modified.
+     * @throws CatalogAuthenticationException if the token is not valid or has expired
+     */
+    public Claims getClaims(String token) throws CatalogAuthenticationException {
+        return getClaims(token, this.publicKey);
+    }
+
+    public Claims getClaims(String token, Key publicKey) throws CatalogAuthenticationException {
+        return parseClaims(token, publicKey);
+    }
+
+    public ObjectMap getClaimsCacheStats() {
+        return claimsCache.getStats();
+    }
+
     private AuthenticationOrigin.AuthenticationType getAuthOrigin(Claims claims) {
         String o = claims.get(AUTH_ORIGIN, String.class);
         if (o != null) {
@@ -148,7 +176,7 @@ public class JwtManager {
     }
 
     public String getAudience(String token, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().getAudience();
+        return parseClaims(token, publicKey).getAudience();
     }
 
     public String getUser(String token) throws CatalogAuthenticationException {
@@ -156,11 +184,11 @@ public class JwtManager {
     }
 
     public String getUser(String token, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().getSubject();
+        return parseClaims(token, publicKey).getSubject();
     }
 
     public String getUser(String token, String fieldKey) throws CatalogAuthenticationException {
-        return String.valueOf(parseClaims(token).getBody().get(fieldKey));
+        return String.valueOf(parseClaims(token).get(fieldKey));
     }
 
     public List<String> getGroups(String token, String fieldKey) throws CatalogAuthenticationException {
@@ -168,10 +196,11 @@ public class JwtManager {
     }
 
     public List<String> getGroups(String token, String fieldKey, Key publicKey) throws CatalogAuthenticationException {
-        Object o = parseClaims(token, publicKey).getBody().get(fieldKey);
+        Object o = parseClaims(token, publicKey).get(fieldKey);
 
         if (o instanceof List) {
-            return (List<String>) o;
+            // Copy, as the claims may be cached
+            return new ArrayList<>((List<String>) o);
         } else {
             return Collections.singletonList(String.valueOf(o));
         }
@@ -182,7 +211,7 @@ public class JwtManager {
     }
 
     public Date getExpiration(String token, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().getExpiration();
+        return parseClaims(token, publicKey).getExpiration();
     }
 
     public Object getClaim(String token, String claimId) throws CatalogAuthenticationException {
@@ -190,17 +219,24 @@ public class JwtManager {
     }
 
     public Object getClaim(String token, String claimId, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().get(claimId);
+        return parseClaims(token, publicKey).get(claimId);
     }
 
-    private Jws<Claims> parseClaims(String token) throws CatalogAuthenticationException {
+    private Claims parseClaims(String token) throws CatalogAuthenticationException {
         return parseClaims(token, null);
     }
 
-    private Jws<Claims> parseClaims(String token, Key publicKey) throws CatalogAuthenticationException {
+    private Claims parseClaims(String token, Key publicKey) throws CatalogAuthenticationException {
         Key key = publicKey != null ? publicKey : this.publicKey;
+        if (token == null || key == null) {
+            return verifyClaims(token, key);
+        }
+        return claimsCache.get(token, key, this::verifyClaims);
+    }
+
+    private Claims verifyClaims(String token, Key key) throws CatalogAuthenticationException {
         try {
-            return Jwts.parser().setSigningKey(key).parseClaimsJws(token);
+            return Jwts.parser().setSigningKey(key).parseClaimsJws(token).getBody();
         } catch (ExpiredJwtException e) {
             logger.error("JWT Error: '{}'", e.getMessage(), e);
             throw CatalogAuthenticationException.tokenExpired(token);
@@ -223,7 +259,7 @@ public class JwtManager {
             return true;
         }
 
-        Claims body = parseClaims(token, publicKey).getBody();
+        Claims body = parseClaims(token, publicKey);
         for (Map.Entry<String, List<String>> entry : filters.entrySet()) {
             if (!entry.getValue().contains(String.valueOf(body.get(entry.getKey())))) {
                 return false;
@@ -17,6 +17,7 @@
 package org.opencb.opencga.catalog.auth.authentication;
 
 import com.sun.jndi.ldap.LdapCtxFactory;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
@@ -227,8 +228,9 @@ public class LDAPAuthenticationManager extends AuthenticationManager {
     @Override
     public List<String> getRemoteGroups(String token) throws CatalogException {
         // Get LDAP_RDN of the user from the token we generate
-        String userRdn = (String) jwtManager.getClaim(token, OPENCGA_DISTINGUISHED_NAME);
-        String opencgaUser = jwtManager.getUser(token);
+        Claims claims = jwtManager.getClaims(token);
+        String userRdn = (String) claims.get(OPENCGA_DISTINGUISHED_NAME);
+        String opencgaUser = claims.getSubject();
         return getGroupsFromLdapUser(opencgaUser, userRdn, usersSearch);
     }
 
@@ -434,6 +434,21 @@ public interface AuthorizationManager {
 
     void removePermissionRule(String organizationId, long studyId, String permissionRuleId, Enums.Entity entry) throws CatalogException;
 
+    /**
+     * Discard the cached groups and study permissions of a study. Must be called after changing the groups of the study.
+     *
+     * @param organizationId Organization id.
+     * @param studyUid       Study uid.
+     */
+    void invalidateStudyAclCache(String organizationId, long studyUid);
+
+    /**
+     * Discard the cached groups and study permissions of all the studies of the organization.
+     *
+     * @param organizationId Organization id.
+     */
+    void invalidateStudyAclCache(String organizationId);
+
     class CatalogAclParams {
         private List<Long> ids;
         private List<String> permissions;
@@ -18,6 +18,7 @@ package org.opencb.opencga.catalog.auth.authorization;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.catalog.db.DBAdaptorFactory;
@@ -64,16 +65,31 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
     public static final String MEMBERS_GROUP = ParamConstants.MEMBERS_GROUP;
     public static final String ADMINS_GROUP = ParamConstants.ADMINS_GROUP;
 
+    // Max number of studies with cached groups and study permissions
+    static final long STUDY_ACL_CACHE_MAX_SIZE = 10000;
+    // Max time to use the cached groups and study permissions of a study without checking if they changed
+    static final long STUDY_ACL_CACHE_REVALIDATE_MS = 1000;
+
     private final Logger logger;
 
     private final DBAdaptorFactory dbAdaptorFactory;
     private final AuthorizationDBAdaptorFactory authorizationDBAdaptorFactory;
+    private final StudyAclCache studyAclCache;
 
     public CatalogAuthorizationManager(DBAdaptorFactory dbFactory, AuthorizationDBAdaptorFactory authorizationDBAdaptorFactory)
             throws CatalogDBException {
+        this(dbFactory, authorizationDBAdaptorFactory, STUDY_ACL_CACHE_REVALIDATE_MS);
+    }
+
+    CatalogAuthorizationManager(DBAdaptorFactory dbFactory, AuthorizationDBAdaptorFactory authorizationDBAdaptorFactory,
+                                long studyAclCacheRevalidateMs) {
         this.logger = LoggerFactory.getLogger(CatalogAuthorizationManager.class);
         this.dbAdaptorFactory = dbFactory;
         this.authorizationDBAdaptorFactory = authorizationDBAdaptorFactory;
+        this.studyAclCache = new StudyAclCache(STUDY_ACL_CACHE_MAX_SIZE, studyAclCacheRevalidateMs,
+                (organizationId, studyUid) -> dbAdaptorFactory.getCatalogStudyDBAdaptor(organizationId).getAclVersion(studyUid),
+                (organizationId, studyUid) -> dbAdaptorFactory.getCatalogStudyDBAdaptor(organizationId)
+                        .getGroup(studyUid, null, Collections.emptyList()).getResults());
     }
 
     @Override
@@ -144,7 +160,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
         if (isOpencgaAdministrator(organizationId, userId)) {
             return;
         } else {
-            if (dbAdaptorFactory.getCatalogStudyDBAdaptor(organizationId).hasStudyPermission(studyUid, userId, permission)) {
+            if (hasStudyPermission(organizationId, studyUid, userId, permission)) {
                 return;
             }
         }
@@ -157,13 +173,19 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
         if (isAtLeastOrganizationOwnerOrAdmin(organizationId, userId)) {
             return;
         } else {
-            if (dbAdaptorFactory.getCatalogStudyDBAdaptor(organizationId).hasStudyPermission(studyId, userId, permission)) {
+            if (hasStudyPermission(organizationId, studyId, userId, permission)) {
                 return;
             }
         }
         throw CatalogAuthorizationException.deny(userId, permission.name(), "Study", studyId, null);
     }
 
+    private boolean hasStudyPermission(String organizationId, long studyUid, String userId, StudyPermissions.Permissions permission)
+            throws CatalogException {
+        return studyAclCache.hasStudyPermission(organizationId, studyUid, userId, permission.name(),
+                () -> dbAdaptorFactory.getCatalogStudyDBAdaptor(organizationId).hasStudyPermission(studyUid, userId, permission));
+    }
+
     @Override
     public void checkCanEditStudy(String organizationId, long studyId, String userId) throws CatalogException {
         if (!this.isAtLeastStudyAdministrator(organizationId, studyId, userId)) {
@@ -587,6 +609,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
     public void resetPermissionsFromAllEntities(String organizationId, long studyId, List<String> members) throws CatalogException {
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId)
                 .resetMembersFromAllEntries(studyId, members);
+        invalidateStudyAclCache(organizationId, studyId);
     }
 
     private void checkAskingOwnPermissions(String organizationId, long studyId, String member, String userId) throws CatalogException {
@@ -614,6 +637,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             throws CatalogException {
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId)
                 .setToMembers(studyIds, members, getImplicitPermissions(permissions, Enums.Resource.STUDY));
+        invalidateStudyAclCache(organizationId, studyIds);
     }
 
     @Override
@@ -621,6 +645,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             throws CatalogException {
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId)
                 .addToMembers(studyIds, members, getImplicitPermissions(permissions, Enums.Resource.STUDY));
+        invalidateStudyAclCache(organizationId, studyIds);
     }
 
     @Override
@@ -635,6 +660,8 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
         setImplicitPermissions(aclParams);
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId)
                 .setToMembers(studyUid, members, aclParams);
+        // Users are added to the @members group
+        invalidateStudyAclCache(organizationId, studyUid);
     }
 
     @Override
@@ -642,12 +669,19 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             throws CatalogException {
         setImplicitPermissions(aclParams);
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId).addToMembers(studyId, members, aclParams);
+        // Users are added to the @members group
+        invalidateStudyAclCache(organizationId, studyId);
     }
 
     @Override
     public void removeAcls(String organizationId, List<String> members, List<CatalogAclParams> aclParams) throws CatalogException {
         setDependentPermissions(aclParams);
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId).removeFromMembers(members, aclParams);
+        for (CatalogAclParams aclParam : aclParams) {
+            if (aclParam.getResource() == Enums.Resource.STUDY) {
+                invalidateStudyAclCache(organizationId, aclParam.getIds());
+            }
+        }
     }
 
     private void setDependentPermissions(List<CatalogAclParams> aclParams) throws CatalogAuthorizationException {
@@ -1049,6 +1083,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
         // 2. We can apply the permission rules
         authorizationDBAdaptorFactory.getAuthorizationDBAdaptor(organizationId)
                 .applyPermissionRules(studyId, permissionRule, entry);
+        invalidateStudyAclCache(organizationId, studyId);
     }
 
     @Override
@@ -1081,6 +1116,33 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .removePermissionRule(studyId, permissionRuleId, entry);
     }
 
+    @Override
+    public void invalidateStudyAclCache(String organizationId, long studyUid) {
+        studyAclCache.invalidate(organizationId, studyUid);
+    }
+
+    @Override
+    public void invalidateStudyAclCache(String organizationId) {
+        studyAclCache.invalidate(organizationId);
+    }
+
+    private void invalidateStudyAclCache(String organizationId, List<Long> studyUids) {
+        if (studyUids != null) {
+            for (Long studyUid : studyUids) {
+                studyAclCache.invalidate(organizationId, studyUid);
+            }
+        }
+    }
+
+    /**
+     * Get the stats of the cache of groups and study permissions.
+     *
+     * @return Cache stats
+     */
+    public ObjectMap getStudyAclCacheStats() {
+        return studyAclCache.getStats();
+    }
+
     /*
     ====================================
     Auxiliar methods
@@ -1105,7 +1167,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
      * @throws CatalogException when there is any database error.
      */
     OpenCGAResult<Group> getGroupBelonging(String organizationId, long studyId, List<String> members) throws CatalogException {
-        return dbAdaptorFactory.getCatalogStudyDBAdaptor(organizationId).getGroup(studyId, null, members);
+        return new OpenCGAResult<>(0, studyAclCache.getGroups(organizationId, studyId, members));
     }
 
     OpenCGAResult<Group> getGroupBelonging(String organizationId, long studyId, String members) throws CatalogException {
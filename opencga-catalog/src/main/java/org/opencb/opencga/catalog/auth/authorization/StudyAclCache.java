@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.auth.authorization;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.catalog.exceptions.CatalogException;
+import org.opencb.opencga.core.models.study.Group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the groups and the resolved study permissions of each study.
+ *
+ * Every change in the groups or the ACLs of a study increments a version stored in the study document. Each entry keeps the version
+ * it was loaded from, and it is discarded as soon as the stored version is different. To avoid one extra round trip for each check,
+ * the version is read at most once every {@code revalidateMs}. Changes made from this process invalidate the entries immediately.
+ *
+ * Created on 17/10/26.
+ */
+class StudyAclCache {
+
+    @FunctionalInterface
+    interface Loader<T> {
+        T load(String organizationId, long studyUid) throws CatalogException;
+    }
+
+    @FunctionalInterface
+    interface PermissionLoader {
+        boolean load() throws CatalogException;
+    }
+
+    private final Cache<String, Entry> cache;
+    private final long revalidateNanos;
+    private final Loader<Long> versionLoader;
+    private final Loader<List<Group>> groupsLoader;
+    // Incremented on every invalidation. Entries loaded while invalidating are not stored.
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+
+    /**
+     * Create a StudyAclCache.
+     *
+     * @param maxSize       Max number of studies in the cache
+     * @param revalidateMs  Time in milliseconds during which an entry is used without reading the version of the study
+     * @param versionLoader Read the ACL version of the study
+     * @param groupsLoader  Read all the groups of the study
+     */
+    StudyAclCache(long maxSize, long revalidateMs, Loader<Long> versionLoader, Loader<List<Group>> groupsLoader) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMs);
+        this.versionLoader = versionLoader;
+        this.groupsLoader = groupsLoader;
+    }
+
+    /**
+     * Get the groups of the study where any of the members belong to.
+     *
+     * @param organizationId Organization id
+     * @param studyUid       Study uid
+     * @param members        User ids. If empty, return all groups.
+     * @return List of groups
+     * @throws CatalogException if the study could not be read
+     */
+    List<Group> getGroups(String organizationId, long studyUid, List<String> members) throws CatalogException {
+        List<Group> groups = get(organizationId, studyUid).groups;
+        if (members == null || members.isEmpty()) {
+            return groups;
+        }
+        List<Group> result = new ArrayList<>();
+        for (Group group : groups) {
+            if (group.getUserIds() != null) {
+                for (String member : members) {
+                    if (group.getUserIds().contains(member)) {
+                        result.add(group);
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if the user has a permission in the study. The result is resolved once per entry.
+     *
+     * @param organizationId Organization id
+     * @param studyUid       Study uid
+     * @param user           User id
+     * @param permission     Study permission
+     * @param loader         Resolve the permission if missing
+     * @return true if the user has the permission
+     * @throws CatalogException if the study could not be read
+     */
+    boolean hasStudyPermission(String organizationId, long studyUid, String user, String permission, PermissionLoader loader)
+            throws CatalogException {
+        Entry entry = get(organizationId, studyUid);
+        String key = user + ':' + permission;
+        Boolean hasPermission = entry.studyPermissions.get(key);
+        if (hasPermission == null) {
+            hasPermission = loader.load();
+            entry.studyPermissions.put(key, hasPermission);
+        }
+        return hasPermission;
+    }
+
+    void invalidate(String organizationId, long studyUid) {
+        generation.incrementAndGet();
+        cache.invalidate(getKey(organizationId, studyUid));
+    }
+
+    void invalidate(String organizationId) {
+        generation.incrementAndGet();
+        String prefix = organizationId + ':';
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    ObjectMap getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        return new ObjectMap()
+                .append("size", cache.size())
+                .append("hits", hitCount)
+                .append("misses", missCount)
+                .append("revalidations", revalidations.sum())
+                .append("hitRate", hitCount + missCount == 0 ? 1.0 : ((double) hitCount) / (hitCount + missCount));
+    }
+
+    private Entry get(String organizationId, long studyUid) throws CatalogException {
+        String key = getKey(organizationId, studyUid);
+        Entry entry = cache.getIfPresent(key);
+        long now = System.nanoTime();
+        Long version = null;
+        if (entry != null) {
+            if (now - entry.validatedAt < revalidateNanos) {
+                hits.increment();
+                return entry;
+            }
+            revalidations.increment();
+            version = versionLoader.load(organizationId, studyUid);
+            if (version == entry.version) {
+                entry.validatedAt = now;
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        long currentGeneration = generation.get();
+        if (version == null) {
+            version = versionLoader.load(organizationId, studyUid);
+        }
+        // Read the version before the groups. If they change in between, the entry will be discarded on the next validation.
+        entry = new Entry(version, Collections.unmodifiableList(groupsLoader.load(organizationId, studyUid)), now);
+        if (generation.get() == currentGeneration) {
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static String getKey(String organizationId, long studyUid) {
+        return organizationId + ':' + studyUid;
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final List<Group> groups;
+        private final Map<String, Boolean> studyPermissions = new ConcurrentHashMap<>();
+        private volatile long validatedAt;
+
+        private Entry(long version, List<Group> groups, long validatedAt) {
+            this.version = version;
+            this.groups = groups;
+            this.validatedAt = validatedAt;
+        }
+    }
+}
@@ -194,6 +194,15 @@ public interface StudyDBAdaptor extends Iterable<Study> {
 
     boolean hasStudyPermission(long studyId, String user, StudyPermissions.Permissions permission) throws CatalogDBException;
 
+    /**
+     * Obtain the version of the groups and ACLs of the study. The version is incremented each time any of them changes.
+     *
+     * @param studyUid study uid.
+     * @return the current version.
+     * @throws CatalogDBException if the study does not exist.
+     */
+    long getAclVersion(long studyUid) throws CatalogDBException;
+
     OpenCGAResult<Study> getAllStudiesInProject(long projectId, QueryOptions options) throws CatalogDBException;
 
     OpenCGAResult<Study> get(long studyId, QueryOptions options) throws CatalogDBException;
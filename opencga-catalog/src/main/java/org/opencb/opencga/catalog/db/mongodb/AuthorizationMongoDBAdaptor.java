@@ -1155,6 +1155,10 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
     private DataResult<?> update(ClientSession clientSession, Bson query, Bson update, Enums.Resource resource) throws CatalogDBException {
         QueryOptions options = new QueryOptions(MongoDBCollection.MULTI, true);
+        if (resource == Enums.Resource.STUDY) {
+            // Invalidate the study ACLs cached by the authorization manager
+            update = StudyMongoDBAdaptor.incrementAclVersion(update);
+        }
 
         DataResult<?> result = getMainCollection(resource).update(clientSession, query, update, options);
         if (hasArchiveCollection(resource)) {
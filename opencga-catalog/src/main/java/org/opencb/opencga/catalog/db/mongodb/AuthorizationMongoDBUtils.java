@@ -41,6 +41,8 @@ public class AuthorizationMongoDBUtils {
 
     static final String OPENCGA = "opencga";
     public static final String PRIVATE_ACL = "_acl";
+    // Counter incremented on every change of the groups or the ACLs of the study
+    public static final String PRIVATE_ACL_VERSION = "_aclVersion";
     private static final String VARIABLE_SETS = "variableSets";
     private static final String ANNOTATION_SETS = AnnotationMongoDBAdaptor.AnnotationSetParams.ANNOTATION_SETS.key();
 
@@ -329,6 +329,27 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
         return checkStudyPermission(dbAdaptorFactory.getOrganizationId(), (Document) queryResult.first(), user, permission.name());
     }
 
+    @Override
+    public long getAclVersion(long studyUid) throws CatalogDBException {
+        DataResult<Document> result = studyCollection.find(new Document(PRIVATE_UID, studyUid),
+                Projections.include(AuthorizationMongoDBUtils.PRIVATE_ACL_VERSION), null);
+        if (result.getNumResults() == 0) {
+            throw CatalogDBException.uidNotFound("Study", studyUid);
+        }
+        Number version = result.first().get(AuthorizationMongoDBUtils.PRIVATE_ACL_VERSION, Number.class);
+        return version == null ? 0 : version.longValue();
+    }
+
+    /**
+     * Add the increment of the ACL version to an update of the groups of the study.
+     *
+     * @param update Update document.
+     * @return the update also incrementing the ACL version.
+     */
+    static Bson incrementAclVersion(Bson update) {
+        return Updates.combine(update, Updates.inc(AuthorizationMongoDBUtils.PRIVATE_ACL_VERSION, 1));
+    }
+
     @Override
     public long getId(long projectId, String studyAlias) throws CatalogDBException {
         Query query1 = new Query(QueryParams.PROJECT_ID.key(), projectId).append(QueryParams.ID.key(), studyAlias);
@@ -381,7 +402,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 .append(QueryParams.GROUP_ID.key(), new Document("$ne", group.getId()));
         Document update = new Document("$push", new Document(QueryParams.GROUPS.key(), getMongoDBDocument(group, "Group")));
 
-        DataResult result = studyCollection.update(query, update, null);
+        DataResult result = studyCollection.update(query, incrementAclVersion(update), null);
 
         if (result.getNumUpdated() != 1) {
             OpenCGAResult<Group> group1 = getGroup(studyId, group.getId(), Collections.emptyList());
@@ -439,7 +460,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 .append(PRIVATE_UID, studyId)
                 .append(QueryParams.GROUP_ID.key(), groupId);
         Document update = new Document("$set", new Document("groups.$.userIds", members));
-        DataResult result = studyCollection.update(query, update, null);
+        DataResult result = studyCollection.update(query, incrementAclVersion(update), null);
 
         if (result.getNumMatches() != 1) {
             throw new CatalogDBException("Unable to set users to group " + groupId + ". The group does not exist.");
@@ -456,7 +477,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 .append(PRIVATE_UID, studyId)
                 .append(QueryParams.GROUP_ID.key(), groupId);
         Document update = new Document("$addToSet", new Document("groups.$.userIds", new Document("$each", members)));
-        DataResult<?> result = studyCollection.update(clientSession, query, update, null);
+        DataResult<?> result = studyCollection.update(clientSession, query, incrementAclVersion(update), null);
 
         if (result.getNumMatches() != 1) {
             throw new CatalogDBException("Unable to add members to group " + groupId + ". The group does not exist.");
@@ -473,7 +494,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 .append(PRIVATE_UID, studyId)
                 .append(QueryParams.GROUP_ID.key(), groupId);
         Document update = new Document("$addToSet", new Document("groups.$.userIds", new Document("$each", members)));
-        DataResult result = studyCollection.update(query, update, null);
+        DataResult result = studyCollection.update(query, incrementAclVersion(update), null);
 
         if (result.getNumMatches() != 1) {
             throw new CatalogDBException("Unable to add members to group " + groupId + ". The group does not exist.");
@@ -487,7 +508,8 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
         }
 
         Document query = new Document(QueryParams.GROUP_ID.key(), ParamConstants.ADMINS_GROUP);
-        Document update = new Document("$addToSet", new Document("groups.$.userIds", new Document("$each", members)));
+        Bson update = incrementAclVersion(new Document("$addToSet",
+                new Document("groups.$.userIds", new Document("$each", members))));
         studyCollection.update(clientSession, query, update, new QueryOptions(MongoDBCollection.MULTI, true));
 
         query = new Document(QueryParams.GROUP_ID.key(), ParamConstants.MEMBERS_GROUP);
@@ -504,7 +526,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 .append(PRIVATE_UID, studyId)
                 .append(QueryParams.GROUP_ID.key(), groupId);
         Bson pull = Updates.pullAll("groups.$.userIds", members);
-        DataResult update = studyCollection.update(query, pull, null);
+        DataResult update = studyCollection.update(query, incrementAclVersion(pull), null);
         if (update.getNumMatches() != 1) {
             throw new CatalogDBException("Unable to remove members from group " + groupId + ". The group does not exist.");
         }
@@ -518,7 +540,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
 
         Document query = new Document()
                 .append(QueryParams.GROUP_ID.key(), ParamConstants.ADMINS_GROUP);
-        Bson pull = Updates.pullAll("groups.$.userIds", members);
+        Bson pull = incrementAclVersion(Updates.pullAll("groups.$.userIds", members));
         DataResult update = studyCollection.update(clientSession, query, pull, new QueryOptions(MongoDBCollection.MULTI, true));
         return new OpenCGAResult<>(update);
     }
@@ -537,7 +559,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 Document query = new Document()
                         .append(PRIVATE_UID, studyId)
                         .append(QueryParams.GROUP_USER_IDS.key(), new Document("$in", users));
-                Bson pull = Updates.pullAll("groups.$.userIds", users);
+                Bson pull = incrementAclVersion(Updates.pullAll("groups.$.userIds", users));
 
                 // Pull those users while they are still there
                 DataResult<?> update;
@@ -566,7 +588,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
 
                 Document query = new Document()
                         .append(QueryParams.GROUP_USER_IDS.key(), new Document("$in", users));
-                Bson pull = Updates.pullAll("groups.$.userIds", users);
+                Bson pull = incrementAclVersion(Updates.pullAll("groups.$.userIds", users));
 
                 QueryOptions multi = new QueryOptions(MongoDBCollection.MULTI, true);
                 // Pull those users while they are still there
@@ -589,7 +611,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                 .append(PRIVATE_UID, studyId)
                 .append(QueryParams.GROUP_ID.key(), groupId);
         Document pull = new Document("$pull", new Document("groups", new Document("id", groupId)));
-        DataResult result = studyCollection.update(queryBson, pull, null);
+        DataResult result = studyCollection.update(queryBson, incrementAclVersion(pull), null);
 
         if (result.getNumUpdated() != 1) {
             throw new CatalogDBException("Could not remove the group " + groupId);
@@ -621,7 +643,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                             .append("userIds", user)
                             .append("syncedFrom.authOrigin", authOrigin)
                     ));
-            Bson pull = Updates.pull("groups.$.userIds", user);
+            Bson pull = incrementAclVersion(Updates.pull("groups.$.userIds", user));
 
             // Pull the user while it still belongs to a synced group
             QueryOptions multi = new QueryOptions(MongoDBCollection.MULTI, true);
@@ -639,7 +661,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                                 .append("syncedFrom.remoteGroup", new Document("$in", groupList))
                                 .append("syncedFrom.authOrigin", authOrigin)
                         ));
-                Document push = new Document("$addToSet", new Document("groups.$.userIds", user));
+                Bson push = incrementAclVersion(new Document("$addToSet", new Document("groups.$.userIds", user)));
                 do {
                     update = studyCollection.update(clientSession, query, push, multi);
                 } while (update.getNumUpdated() > 0);
@@ -701,7 +723,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                         addQuery.put(QueryParams.UID.key(), new Document("$in", studyUids));
                     }
 
-                    Document push = new Document("$addToSet", new Document("groups.$.userIds", user));
+                    Bson push = incrementAclVersion(new Document("$addToSet", new Document("groups.$.userIds", user)));
                     DataResult<?> update;
                     do {
                         update = studyCollection.update(clientSession, addQuery, push, multi);
@@ -732,7 +754,7 @@ public class StudyMongoDBAdaptor extends CatalogMongoDBAdaptor implements StudyD
                     if (studyUids != null) {
                         removeQuery.put(QueryParams.UID.key(), new Document("$in", studyUids));
                     }
-                    Bson pull = Updates.pull("groups.$.userIds", user);
+                    Bson pull = incrementAclVersion(Updates.pull("groups.$.userIds", user));
                     DataResult<?> pullUpdate;
                     do {
                         pullUpdate = studyCollection.update(clientSession, removeQuery, pull, multi);
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.db.mongodb.iterators;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecConfigurationException;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the batches of the batched catalog iterators.
+ *
+ * The size of each batch adapts to the size of the documents, aiming for {@link #TARGET_BATCH_BYTES} per batch. The size of the first
+ * document of each batch, including the joined documents, is measured and averaged.
+ *
+ * If enabled, the next batch is loaded in a background thread while the caller consumes the current one. The loader is never executed
+ * concurrently, so the mongo cursor is only used from one thread at a time. Prefetch must not be used with a client session, as
+ * sessions can not be shared between threads.
+ *
+ * Created on 17/10/26.
+ */
+final class BatchPrefetcher {
+
+    @FunctionalInterface
+    interface BatchLoader {
+        void fetch(Queue<Document> buffer, int batchSize);
+    }
+
+    static final int DEFAULT_BATCH_SIZE = 100;
+    static final int MIN_BATCH_SIZE = 10;
+    static final int MAX_BATCH_SIZE = 1000;
+    static final int TARGET_BATCH_BYTES = 4 * 1024 * 1024;
+
+    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+            .namingPattern("catalog-iterator-prefetch-%s")
+            .daemon(true)
+            .build());
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final BatchLoader loader;
+    private final boolean prefetch;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long avgDocumentSize;
+    private Future<Batch> nextBatch;
+
+    BatchPrefetcher(BatchLoader loader, boolean prefetch) {
+        this.loader = loader;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Get the next batch of documents.
+     *
+     * @return Next batch. Empty if there are no more documents.
+     */
+    Queue<Document> next() {
+        Batch batch;
+        if (nextBatch != null) {
+            batch = get(nextBatch);
+            nextBatch = null;
+        } else {
+            batch = load(batchSize);
+        }
+        updateBatchSize(batch.buffer);
+
+        // A batch smaller than requested means that the cursor is exhausted
+        if (prefetch && batch.buffer.size() == batch.requestedSize) {
+            int size = batchSize;
+            nextBatch = THREAD_POOL.submit(() -> load(size));
+        }
+        return batch.buffer;
+    }
+
+    /**
+     * Wait for any pending batch. Must be called before closing the cursor.
+     */
+    void close() {
+        if (nextBatch != null) {
+            try {
+                nextBatch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignore) {
+                // Nothing to do. The iterator is being closed.
+            }
+            nextBatch = null;
+        }
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    private Batch load(int size) {
+        Queue<Document> buffer = new LinkedList<>();
+        loader.fetch(buffer, size);
+        return new Batch(buffer, size);
+    }
+
+    private void updateBatchSize(Queue<Document> buffer) {
+        Document document = buffer.peek();
+        if (document == null) {
+            return;
+        }
+        long size;
+        try {
+            size = new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer().remaining();
+        } catch (CodecConfigurationException e) {
+            // Unable to measure. Keep current batch size
+            return;
+        }
+        avgDocumentSize = avgDocumentSize == 0 ? size : (avgDocumentSize * 3 + size) / 4;
+        batchSize = (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, TARGET_BATCH_BYTES / Math.max(1, avgDocumentSize)));
+    }
+
+    private static Batch get(Future<Batch> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching the next batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private static final class Batch {
+        private final Queue<Document> buffer;
+        private final int requestedSize;
+
+        private Batch(Queue<Document> buffer, int requestedSize) {
+            this.buffer = buffer;
+            this.requestedSize = requestedSize;
+        }
+    }
+}
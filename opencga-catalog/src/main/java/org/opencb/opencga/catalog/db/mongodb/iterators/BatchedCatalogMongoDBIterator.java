@@ -30,6 +30,7 @@ import java.util.function.UnaryOperator;
 public abstract class BatchedCatalogMongoDBIterator<T> extends CatalogMongoDBIterator<T> {
 
     private Queue<Document> buffer = new LinkedList<>();
+    private final BatchPrefetcher prefetcher;
 
     protected final QueryOptions options;
 
@@ -42,17 +43,24 @@ public abstract class BatchedCatalogMongoDBIterator<T> extends CatalogMongoDBIte
                                          QueryOptions options) {
         super(mongoCursor, clientSession, converter, filter);
         this.options = options == null ? QueryOptions.empty() : options;
+        // Client sessions can not be used from multiple threads
+        this.prefetcher = new BatchPrefetcher(this::fetchNextBatch, clientSession == null);
     }
 
-
     @Override
     public boolean hasNext() {
         if (buffer.isEmpty()) {
-            fetchNextBatch(buffer, 100);
+            buffer = prefetcher.next();
         }
         return !buffer.isEmpty();
     }
 
+    @Override
+    public void close() {
+        prefetcher.close();
+        super.close();
+    }
+
     protected abstract void fetchNextBatch(Queue<Document> buffer, int bufferSize);
 
     @Override
@@ -53,11 +53,15 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
     private IndividualMongoDBAdaptor individualDBAdaptor;
     private QueryOptions fatherQueryOptions;
     private QueryOptions motherQueryOptions;
+    // Parents already fetched in previous batches. Siblings usually come close to each other.
+    private Map<Long, Document> fatherCache;
+    private Map<Long, Document> motherCache;
     private Queue<Document> individualListBuffer;
+    private BatchPrefetcher prefetcher;
 
     private Logger logger;
 
-    private static final int BUFFER_SIZE = 100;
+    private static final int PARENT_CACHE_SIZE = 1000;
 
     public IndividualCatalogMongoDBIterator(MongoDBIterator<Document> mongoCursor, ClientSession clientSession,
                                             AnnotableConverter<? extends Annotable> converter, UnaryOperator<Document> filter,
@@ -81,7 +85,12 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
         this.fatherQueryOptions = createInnerQueryOptionsForVersionedEntity(options, IndividualDBAdaptor.QueryParams.FATHER.key(), true);
         this.motherQueryOptions = createInnerQueryOptionsForVersionedEntity(options, IndividualDBAdaptor.QueryParams.MOTHER.key(), true);
 
+        this.fatherCache = createParentCache();
+        this.motherCache = createParentCache();
+
         this.individualListBuffer = new LinkedList<>();
+        // Client sessions can not be used from multiple threads
+        this.prefetcher = new BatchPrefetcher(this::fetchNextBatch, clientSession == null);
         this.logger = LoggerFactory.getLogger(IndividualCatalogMongoDBIterator.class);
     }
 
@@ -105,19 +114,25 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
     @Override
     public boolean hasNext() {
         if (individualListBuffer.isEmpty()) {
-            fetchNextBatch();
+            individualListBuffer = prefetcher.next();
         }
         return !individualListBuffer.isEmpty();
     }
 
-    private void fetchNextBatch() {
+    @Override
+    public void close() {
+        prefetcher.close();
+        super.close();
+    }
+
+    private void fetchNextBatch(Queue<Document> individualListBuffer, int bufferSize) {
         Set<String> sampleVersions = new HashSet<>();
         Map<Long, List<Document>> fatherMap = new HashMap<>();
         Map<Long, List<Document>> motherMap = new HashMap<>();
 
-        // Get next BUFFER_SIZE documents
+        // Get next bufferSize documents
         int counter = 0;
-        while (mongoCursor.hasNext() && counter < BUFFER_SIZE) {
+        while (mongoCursor.hasNext() && counter < bufferSize) {
             Document individualDocument = (Document) mongoCursor.next();
 
             if (user != null && studyUid <= 0) {
@@ -151,8 +166,8 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
             }
         }
 
-        obtainParentInformation(fatherMap, fatherQueryOptions);
-        obtainParentInformation(motherMap, motherQueryOptions);
+        obtainParentInformation(fatherMap, fatherQueryOptions, fatherCache);
+        obtainParentInformation(motherMap, motherQueryOptions, motherCache);
 
         if (!sampleVersions.isEmpty()) {
             // Obtain all those samples
@@ -209,7 +224,19 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
         }
     }
 
-    private void obtainParentInformation(Map<Long, List<Document>> parentMap, QueryOptions queryOptions) {
+    private void obtainParentInformation(Map<Long, List<Document>> parentMap, QueryOptions queryOptions,
+                                         Map<Long, Document> parentCache) {
+        Iterator<Map.Entry<Long, List<Document>>> iterator = parentMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, List<Document>> entry = iterator.next();
+            Document individual = parentCache.get(entry.getKey());
+            if (individual != null) {
+                for (Document parentDocument : entry.getValue()) {
+                    parentDocument.putAll(individual);
+                }
+                iterator.remove();
+            }
+        }
         if (!parentMap.isEmpty()) {
             // Obtain the parents
             Query query = new Query(IndividualDBAdaptor.QueryParams.UID.key(), parentMap.keySet());
@@ -224,8 +251,9 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
                 }
 
                 for (Document individual : individualDataResult.getResults()) {
-                    List<Document> parentList =
-                            parentMap.get(((Number) individual.get(IndividualDBAdaptor.QueryParams.UID.key())).longValue());
+                    long uid = ((Number) individual.get(IndividualDBAdaptor.QueryParams.UID.key())).longValue();
+                    parentCache.put(uid, individual);
+                    List<Document> parentList = parentMap.get(uid);
                     for (Document parentDocument : parentList) {
                         parentDocument.putAll(individual);
                     }
@@ -236,6 +264,15 @@ public class IndividualCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDB
         }
     }
 
+    private static Map<Long, Document> createParentCache() {
+        return new LinkedHashMap<Long, Document>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Document> eldest) {
+                return size() > PARENT_CACHE_SIZE;
+            }
+        };
+    }
+
     private void addParentToMap(Map<Long, List<Document>> individualMap, Document parent) {
         if (parent != null && parent.size() > 0) {
             long uid = ((Number) parent.get("uid")).longValue();
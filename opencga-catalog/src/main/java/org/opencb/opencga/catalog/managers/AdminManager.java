@@ -118,6 +118,7 @@ public class AdminManager extends AbstractManager {
             }
 
             OpenCGAResult<Group> result = getStudyDBAdaptor(organizationId).updateUserFromGroups(userId, studyUids, groupIds, action);
+            authorizationManager.invalidateStudyAclCache(organizationId);
 
             auditManager.audit(organizationId, jwtPayload.getUserId(organizationId), Enums.Action.UPDATE_USERS_FROM_STUDY_GROUP,
                     Enums.Resource.STUDY, "", "", "", "", auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
@@ -224,6 +225,7 @@ public class AdminManager extends AbstractManager {
             }
             OpenCGAResult<Group> result = getStudyDBAdaptor(organizationId).resyncUserWithSyncedGroups(userId, remoteGroupIds,
                     authenticationOriginId);
+            authorizationManager.invalidateStudyAclCache(organizationId);
 
             auditManager.audit(organizationId, jwtPayload.getUserId(organizationId), Enums.Action.UPDATE_USERS_FROM_STUDY_GROUP,
                     Enums.Resource.STUDY, "", "", "", "", auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
@@ -32,6 +32,7 @@ import org.opencb.opencga.catalog.utils.ParamUtils;
 import org.opencb.opencga.catalog.utils.UuidUtils;
 import org.opencb.opencga.core.common.GitRepositoryState;
 import org.opencb.opencga.core.common.TimeUtils;
+import org.opencb.opencga.core.config.Audit;
 import org.opencb.opencga.core.config.Configuration;
 import org.opencb.opencga.core.models.JwtPayload;
 import org.opencb.opencga.core.models.audit.AuditRecord;
@@ -57,6 +58,8 @@ public class AuditManager {
     private final DBAdaptorFactory dbAdaptorFactory;
 
     private final Map<String, List<AuditRecord>> auditRecordMap;
+    // Only in ASYNC mode. Otherwise, records are written from the caller thread.
+    private final AuditWriter auditWriter;
     private static final int MAX_BATCH_SIZE = 100;
 
     public AuditManager(AuthorizationManager authorizationManager, CatalogManager catalogManager, DBAdaptorFactory dbAdaptorFactory,
@@ -65,18 +68,63 @@ public class AuditManager {
         this.authorizationManager = authorizationManager;
         this.dbAdaptorFactory = dbAdaptorFactory;
         this.auditRecordMap = new HashMap<>();
+
+        Audit audit = configuration == null ? null : configuration.getAudit();
+        if (audit != null && audit.getWriteMode() == Audit.WriteMode.ASYNC) {
+            this.auditWriter = new AuditWriter(this::insertAuditRecords, audit.getQueueSize(), audit.getBatchSize(),
+                    audit.getFlushIntervalMs()).start();
+        } else {
+            this.auditWriter = null;
+        }
     }
 
     public void audit(String organizationId, AuditRecord auditRecord) throws CatalogException {
-        dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecord(auditRecord);
+        if (auditWriter != null) {
+            auditWriter.write(organizationId, auditRecord);
+        } else {
+            dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecord(auditRecord);
+        }
     }
 
     public void audit(String organizationId, List<AuditRecord> auditRecordList) throws CatalogException {
-        for (AuditRecord auditRecord : auditRecordList) {
-            dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecord(auditRecord);
+        if (auditWriter != null) {
+            auditWriter.write(organizationId, auditRecordList);
+        } else if (!auditRecordList.isEmpty()) {
+            insertAuditRecords(organizationId, auditRecordList);
+        }
+    }
+
+    /**
+     * Wait until all the pending audit records are written. Only needed in ASYNC write mode.
+     */
+    public void flush() {
+        if (auditWriter != null) {
+            auditWriter.flush();
+        }
+    }
+
+    /**
+     * Write all the pending audit records, and stop the background writer.
+     */
+    public void close() {
+        if (auditWriter != null) {
+            auditWriter.close();
         }
     }
 
+    /**
+     * Get the statistics of the audit writer, if any.
+     *
+     * @return queue depth, number of written and failed records, and flush times. Empty in SYNC write mode
+     */
+    public ObjectMap getStats() {
+        return auditWriter == null ? new ObjectMap() : auditWriter.getStats();
+    }
+
+    private void insertAuditRecords(String organizationId, List<AuditRecord> auditRecordList) throws CatalogDBException {
+        dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecords(auditRecordList);
+    }
+
     public void initAuditBatch(String operationId) {
         this.auditRecordMap.put(operationId, new LinkedList<>());
     }
@@ -86,10 +134,8 @@ public class AuditManager {
             throw new CatalogException("Cannot audit. Operation id '" + operationId + "' not found.");
         }
         try {
-            if (!this.auditRecordMap.get(operationId).isEmpty()) {
-                dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecords(this.auditRecordMap.get(operationId));
-            }
-        } catch (CatalogDBException e) {
+            audit(organizationId, this.auditRecordMap.get(operationId));
+        } catch (CatalogException e) {
             logger.error("Could not audit operation '{}' -> Error: {}", operationId, e.getMessage(), e);
         } finally {
             this.auditRecordMap.remove(operationId);
@@ -231,10 +277,10 @@ public class AuditManager {
         if (this.auditRecordMap.containsKey(operationId)) {
             this.auditRecordMap.get(operationId).add(auditRecord);
 
-            if (this.auditRecordMap.size() == MAX_BATCH_SIZE) {
+            if (this.auditRecordMap.get(operationId).size() == MAX_BATCH_SIZE) {
                 try {
-                    dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecords(this.auditRecordMap.get(operationId));
-                } catch (CatalogDBException e) {
+                    audit(organizationId, this.auditRecordMap.get(operationId));
+                } catch (CatalogException e) {
                     // FIXME : How to raise attention on this silent error?
                     // This is a critical error that should not happen.
                     logger.error("Could not audit operation '{}' -> Error: {}", operationId, e.getMessage(), e);
@@ -244,8 +290,8 @@ public class AuditManager {
             }
         } else {
             try {
-                dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).insertAuditRecord(auditRecord);
-            } catch (CatalogDBException | RuntimeException e) {
+                audit(organizationId, auditRecord);
+            } catch (CatalogException | RuntimeException e) {
                 // FIXME : How to raise attention on this silent error?
                 // This is a critical error that should not happen.
                 logger.error("Could not audit '{}' -> Error: {}", auditRecord, e.getMessage(), e);
@@ -273,6 +319,8 @@ public class AuditManager {
 
             query.remove(AuditDBAdaptor.QueryParams.STUDY_ID.key());
             query.put(AuditDBAdaptor.QueryParams.STUDY_UUID.key(), study.getUuid());
+            // Include the records still in the queue
+            flush();
             OpenCGAResult<AuditRecord> result = dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).get(query, options);
 
             auditSearch(organizationId, userId, Enums.Resource.AUDIT, study.getId(), study.getUuid(), auditParams,
@@ -308,6 +356,7 @@ public class AuditManager {
         String organizationId = payload.getOrganization();
         String userId = payload.getUserId();
         if (authorizationManager.isAtLeastOrganizationOwnerOrAdmin(organizationId, userId)) {
+            flush();
             return dbAdaptorFactory.getCatalogAuditDbAdaptor(organizationId).groupBy(query, fields, options);
         }
         throw CatalogAuthorizationException.notOrganizationOwnerOrAdmin("query the audit database");
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.managers;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.catalog.exceptions.CatalogDBException;
+import org.opencb.opencga.core.models.audit.AuditRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous writer of audit records.
+ *
+ * Records are added to a bounded queue, and written from a background thread with one bulk insert per organization. A batch is written
+ * as soon as it reaches {@code batchSize} records, or when its oldest record has waited {@code flushIntervalMs}. If the queue is full,
+ * the record is written from the caller thread, so records are never discarded.
+ *
+ * The queue is drained on {@link #close()}, and from a shutdown hook if the writer was not closed.
+ *
+ * Created on 17/10/26.
+ */
+final class AuditWriter {
+
+    @FunctionalInterface
+    interface Sink {
+        void write(String organizationId, List<AuditRecord> auditRecords) throws CatalogDBException;
+    }
+
+    private static final long CLOSE_TIMEOUT_MS = 60000;
+
+    private final Sink sink;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread thread;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder callerWrites = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushTimeNanos = new LongAdder();
+    private final AtomicLong maxFlushTimeNanos = new AtomicLong();
+    private final AtomicLong maxQueueTimeNanos = new AtomicLong();
+
+    private final Logger logger = LoggerFactory.getLogger(AuditWriter.class);
+
+    AuditWriter(Sink sink, int queueSize, int batchSize, long flushIntervalMs) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.thread = new Thread(this::run, "audit-writer");
+        this.thread.setDaemon(true);
+        this.shutdownHook = new Thread(this::close, "audit-writer-shutdown");
+    }
+
+    AuditWriter start() {
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        return this;
+    }
+
+    void write(String organizationId, AuditRecord auditRecord) {
+        Entry entry = new Entry(organizationId, auditRecord, null);
+        if (closed || !queue.offer(entry)) {
+            // Queue full or writer closed. Write from the caller thread
+            callerWrites.increment();
+            write(Collections.singletonList(entry));
+        } else {
+            enqueued.increment();
+        }
+    }
+
+    void write(String organizationId, List<AuditRecord> auditRecords) {
+        for (AuditRecord auditRecord : auditRecords) {
+            write(organizationId, auditRecord);
+        }
+    }
+
+    /**
+     * Wait until all the records queued before this call are written.
+     */
+    void flush() {
+        if (closed) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            queue.put(new Entry(null, null, latch));
+            // The writer thread may have finished in the meantime. Do not wait forever
+            while (!latch.await(1, TimeUnit.SECONDS)) {
+                if (!thread.isAlive()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop accepting records, and wait until all the queued records are written.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // Wake up the writer thread
+            queue.offer(new Entry(null, null, new CountDownLatch(1)));
+            thread.join(CLOSE_TIMEOUT_MS);
+            if (thread.isAlive()) {
+                logger.error("Audit writer did not finish after {}ms. {} audit records may be lost", CLOSE_TIMEOUT_MS, queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Records queued while closing
+        List<Entry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.removeIf(entry -> {
+            if (entry.latch != null) {
+                entry.latch.countDown();
+                return true;
+            }
+            return false;
+        });
+        write(remaining);
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignore) {
+                // Shutdown in progress
+            }
+        }
+    }
+
+    ObjectMap getStats() {
+        long numFlushes = flushes.sum();
+        return new ObjectMap()
+                .append("queueDepth", queue.size())
+                .append("enqueued", enqueued.sum())
+                .append("written", written.sum())
+                .append("failed", failed.sum())
+                .append("callerWrites", callerWrites.sum())
+                .append("flushes", numFlushes)
+                .append("avgFlushTimeMs", numFlushes == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(flushTimeNanos.sum() / numFlushes))
+                .append("maxFlushTimeMs", TimeUnit.NANOSECONDS.toMillis(maxFlushTimeNanos.get()))
+                .append("maxQueueTimeMs", TimeUnit.NANOSECONDS.toMillis(maxQueueTimeNanos.get()));
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        List<CountDownLatch> latches = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                add(first, batch, latches);
+                long deadline = first.enqueuedNanos + flushIntervalNanos;
+                while (batch.size() < batchSize && latches.isEmpty()) {
+                    long remaining = deadline - System.nanoTime();
+                    Entry entry = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (entry == null) {
+                        break;
+                    }
+                    add(entry, batch, latches);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Audit writer interrupted");
+            }
+            write(batch);
+            batch.clear();
+            latches.forEach(CountDownLatch::countDown);
+            latches.clear();
+        }
+    }
+
+    private void add(Entry entry, List<Entry> batch, List<CountDownLatch> latches) {
+        if (entry.latch != null) {
+            // Flush request. Write the current batch right away
+            latches.add(entry.latch);
+        } else {
+            batch.add(entry);
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        maxQueueTimeNanos.accumulateAndGet(start - batch.get(0).enqueuedNanos, Math::max);
+
+        Map<String, List<AuditRecord>> recordsByOrganization = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            recordsByOrganization.computeIfAbsent(entry.organizationId, k -> new ArrayList<>()).add(entry.auditRecord);
+        }
+        for (Map.Entry<String, List<AuditRecord>> entry : recordsByOrganization.entrySet()) {
+            try {
+                sink.write(entry.getKey(), entry.getValue());
+                written.add(entry.getValue().size());
+            } catch (CatalogDBException | RuntimeException e) {
+                // FIXME : How to raise attention on this silent error?
+                // This is a critical error that should not happen.
+                failed.add(entry.getValue().size());
+                logger.error("Could not audit {} records from organization '{}' -> Error: {}", entry.getValue().size(), entry.getKey(),
+                        e.getMessage(), e);
+            }
+        }
+
+        long time = System.nanoTime() - start;
+        flushes.increment();
+        flushTimeNanos.add(time);
+        maxFlushTimeNanos.accumulateAndGet(time, Math::max);
+    }
+
+    private static final class Entry {
+        private final String organizationId;
+        private final AuditRecord auditRecord;
+        private final CountDownLatch latch;
+        private final long enqueuedNanos = System.nanoTime();
+
+        private Entry(String organizationId, AuditRecord auditRecord, CountDownLatch latch) {
+            this.organizationId = organizationId;
+            this.auditRecord = auditRecord;
+            this.latch = latch;
+        }
+    }
+}
@@ -348,6 +348,10 @@ public class CatalogManager implements AutoCloseable {
 
     @Override
     public void close() throws CatalogException {
+        if (auditManager != null) {
+            // Write pending audit records before closing the database
+            auditManager.close();
+        }
         catalogDBAdaptorFactory.close();
     }
 
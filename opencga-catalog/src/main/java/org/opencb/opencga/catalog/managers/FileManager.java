@@ -1199,6 +1199,9 @@ public class FileManager extends AnnotationSetManager<File> {
                 ioManager.deleteDirectory(tempDirectory);
 
                 file.setChecksum(checksum);
+                // Store the modification time used for the checksum, so it can be reused while the file is not modified
+                file.getAttributes().put(Constants.FILE_CHECKSUM_MODIFICATION_TIME,
+                        ioManager.getModificationDate(file.getUri()).getTime());
 
                 // Improve metadata information and extract samples if any
                 new FileMetadataReader(catalogManager).addMetadataInformation(study.getFqn(), file);
@@ -25,6 +25,7 @@ import org.opencb.opencga.catalog.exceptions.CatalogException;
 import org.opencb.opencga.catalog.exceptions.CatalogIOException;
 import org.opencb.opencga.catalog.io.IOManager;
 import org.opencb.opencga.catalog.utils.CatalogFqn;
+import org.opencb.opencga.catalog.utils.Constants;
 import org.opencb.opencga.catalog.utils.ParamUtils;
 import org.opencb.opencga.core.common.UriUtils;
 import org.opencb.opencga.core.models.JwtPayload;
@@ -147,7 +148,8 @@ public class FileUtils {
      * @param file              file
      * @param fileUri           If null, calls to getFileUri()
      *                          <p>
-     * TODO: Lazy checksum: Only calculate checksum if the size has changed.
+     * The checksum is only calculated if the size or the modification time of the file have changed since the last time it was
+     * calculated. See {@link Constants#FILE_CHECKSUM_MODIFICATION_TIME}.
      * @param calculateChecksum Calculate checksum to check if have changed
      * @return ObjectMap ObjectMap
      * @throws CatalogException CatalogException
@@ -158,14 +160,40 @@ public class FileUtils {
             fileUri = catalogManager.getFileManager().getUri(organizationId, file);
         }
         String checksum = null;
+        ObjectMap parameters = new ObjectMap();
         if (calculateChecksum) {
             try {
-                checksum = catalogManager.getIoManagerFactory().get(fileUri).calculateChecksum(fileUri);
+                IOManager ioManager = catalogManager.getIoManagerFactory().get(fileUri);
+                long modificationTime = ioManager.getModificationDate(fileUri).getTime();
+                if (isChecksumUpToDate(file, ioManager.getFileSize(fileUri), modificationTime)) {
+                    logger.debug("Reusing checksum of file '{}'. Size and modification time have not changed", file.getPath());
+                } else {
+                    checksum = ioManager.calculateChecksum(fileUri);
+                    parameters.put(FileDBAdaptor.QueryParams.ATTRIBUTES.key(),
+                            new ObjectMap(Constants.FILE_CHECKSUM_MODIFICATION_TIME, modificationTime));
+                }
             } catch (IOException e) {
                 throw CatalogIOException.ioManagerException(fileUri, e);
             }
         }
-        return getModifiedFileAttributes(organizationId, file, checksum, fileUri, null);
+        return getModifiedFileAttributes(organizationId, file, checksum, fileUri, parameters);
+    }
+
+    /**
+     * Check if the stored checksum of the file was calculated with the same size and modification time.
+     * See {@link Constants#FILE_CHECKSUM_MODIFICATION_TIME}.
+     *
+     * @param file              File from catalog
+     * @param size              Current size of the file
+     * @param modificationTime  Current modification time of the file, in milliseconds
+     * @return if the stored checksum is still valid
+     */
+    public static boolean isChecksumUpToDate(File file, long size, long modificationTime) {
+        if (StringUtils.isEmpty(file.getChecksum()) || file.getAttributes() == null || file.getSize() != size) {
+            return false;
+        }
+        Object checksumModificationTime = file.getAttributes().get(Constants.FILE_CHECKSUM_MODIFICATION_TIME);
+        return checksumModificationTime instanceof Number && ((Number) checksumModificationTime).longValue() == modificationTime;
     }
 
     /**
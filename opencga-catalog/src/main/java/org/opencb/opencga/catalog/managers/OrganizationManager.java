@@ -271,6 +271,8 @@ public class OrganizationManager extends AbstractManager {
             organizationId = organization.getId();
 
             result = getOrganizationDBAdaptor(organizationId).update(organizationId, updateMap, options);
+            // Changes in the owner or admins of the organization are propagated to the @admins group of every study
+            authorizationManager.invalidateStudyAclCache(organizationId);
 
             auditManager.auditUpdate(organizationId, userId, Enums.Resource.ORGANIZATION, organization.getId(), organization.getUuid(), "",
                     "", auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
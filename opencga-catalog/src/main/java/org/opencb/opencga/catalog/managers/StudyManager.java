@@ -1290,6 +1290,7 @@ public class StudyManager extends AbstractManager {
 
             // Create the group
             OpenCGAResult result = getStudyDBAdaptor(organizationId).createGroup(study.getUid(), group);
+            authorizationManager.invalidateStudyAclCache(organizationId, study.getUid());
 
             OpenCGAResult<Group> queryResult = getStudyDBAdaptor(organizationId).getGroup(study.getUid(), group.getId(), null);
             queryResult.setTime(queryResult.getTime() + result.getTime());
@@ -1517,6 +1518,7 @@ public class StudyManager extends AbstractManager {
                 default:
                     throw new CatalogException("Unknown action " + action + " found.");
             }
+            authorizationManager.invalidateStudyAclCache(organizationId, study.getUid());
 
             auditManager.audit(organizationId, userId, Enums.Action.UPDATE_USERS_FROM_STUDY_GROUP, Enums.Resource.STUDY, study.getId(),
                     study.getUuid(), study.getId(), study.getUuid(), auditParams,
@@ -1640,6 +1642,7 @@ public class StudyManager extends AbstractManager {
             updateAcl(studyId, groupId, aclParams, ParamUtils.AclAction.RESET, token);
 
             getStudyDBAdaptor(organizationId).deleteGroup(study.getUid(), groupId);
+            authorizationManager.invalidateStudyAclCache(organizationId, study.getUid());
 
             auditManager.audit(organizationId, userId, Enums.Action.REMOVE_STUDY_GROUP, Enums.Resource.STUDY, study.getId(),
                     study.getUuid(), study.getId(), study.getUuid(), auditParams,
@@ -2441,6 +2444,7 @@ public class StudyManager extends AbstractManager {
     void addToMembersGroup(String organizationId, List<Study> studyList, List<String> userIds) throws CatalogDBException {
         for (Study study : studyList) {
             getStudyDBAdaptor(organizationId).addUsersToGroup(study.getUid(), MEMBERS, userIds);
+            authorizationManager.invalidateStudyAclCache(organizationId, study.getUid());
         }
     }
 
@@ -1057,6 +1057,7 @@ public class UserManager extends AbstractManager {
 
                 // Resync synced groups of user in OpenCGA
                 getStudyDBAdaptor(organizationId).resyncUserWithSyncedGroups(user.getId(), remoteGroups, authId);
+                authorizationManager.invalidateStudyAclCache(organizationId);
             } catch (CatalogException e) {
                 logger.error("Could not update synced groups for user '{}': {}", user.getId(), e.getMessage(), e);
             }
@@ -111,6 +111,11 @@ public class Constants {
      */
     public static final String JOB_DELETED_OUTPUT_DIRECTORY = "deletedOutputFiles";
 
+    /**
+     * Key in file attributes to contain the modification time (in millis) of the file when its checksum was calculated.
+     */
+    public static final String FILE_CHECKSUM_MODIFICATION_TIME = "_checksumModificationTime";
+
     public static final String DEFAULT_USER_EXPIRATION_DATE = "21000101000000";
 
 }
@@ -16,7 +16,7 @@
 
 package org.opencb.opencga.catalog.utils;
 
-import org.opencb.commons.datastore.core.DataResult;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.catalog.db.api.DBIterator;
@@ -24,6 +24,7 @@ import org.opencb.opencga.catalog.db.api.FileDBAdaptor;
 import org.opencb.opencga.catalog.exceptions.CatalogException;
 import org.opencb.opencga.catalog.exceptions.CatalogIOException;
 import org.opencb.opencga.catalog.io.IOManager;
+import org.opencb.opencga.catalog.io.PosixIOManager;
 import org.opencb.opencga.catalog.managers.CatalogManager;
 import org.opencb.opencga.catalog.managers.FileUtils;
 import org.opencb.opencga.core.models.file.File;
@@ -41,19 +42,37 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
+ * Tracks the files of a study in the filesystem.
+ * <p>
+ * Directories are walked with a fork-join pool, and the filesystem checks of each batch of files run in parallel. Catalog lookups
+ * and reads are grouped in batches of {@link #BATCH_SIZE} files. Checksums of files whose size and modification time have not
+ * changed are reused. See {@link FileUtils#getModifiedFileAttributes}.
+ *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
 public class FileScanner {
 
     private static Logger logger = LoggerFactory.getLogger(FileScanner.class);
 
+    /**
+     * Default number of threads accessing the filesystem. Shared filesystems benefit from having several requests in flight.
+     */
+    public static final int DEFAULT_PARALLELISM = Math.max(8, Runtime.getRuntime().availableProcessors());
+    static final int BATCH_SIZE = 1000;
+    private static final long PROGRESS_LOG_INTERVAL_MS = 10000;
+
     protected final CatalogManager catalogManager;
 
     private FileUtils catalogFileUtils;
+    private final int parallelism;
 
     public enum FileScannerPolicy {
         DELETE,     //Delete file and file entry. Then create a new one
@@ -63,7 +82,12 @@ public class FileScanner {
     }
 
     public FileScanner(CatalogManager catalogManager) {
+        this(catalogManager, DEFAULT_PARALLELISM);
+    }
+
+    public FileScanner(CatalogManager catalogManager, int parallelism) {
         this.catalogManager = catalogManager;
+        this.parallelism = Math.max(1, parallelism);
         catalogFileUtils = new FileUtils(catalogManager);
     }
 
@@ -82,20 +106,28 @@ public class FileScanner {
      */
     public List<File> checkStudyFiles(String organizationId, Study study, boolean calculateChecksum, String sessionId)
             throws CatalogException {
-        Query query = new Query();
-        query.put(FileDBAdaptor.QueryParams.INTERNAL_STATUS_ID.key(), Arrays.asList(
-                FileStatus.READY, FileStatus.MISSING, FileStatus.TRASHED));
-
-        DBIterator<File> iterator = catalogManager.getFileManager().iterator(study.getFqn(), query, new QueryOptions(),
-                sessionId);
+        // Only READY and MISSING files may change their status. See FileUtils.checkFile
+        Query query = new Query()
+                .append(FileDBAdaptor.QueryParams.TYPE.key(), File.Type.FILE)
+                .append(FileDBAdaptor.QueryParams.INTERNAL_STATUS_ID.key(), Arrays.asList(FileStatus.READY, FileStatus.MISSING));
 
         List<File> modifiedFiles = new LinkedList<>();
-        while (iterator.hasNext()) {
-            File file = iterator.next();
-            File checkedFile = catalogFileUtils.checkFile(study.getFqn(), file, calculateChecksum, sessionId);
-            if (checkedFile != file) {
-                modifiedFiles.add(checkedFile);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (DBIterator<File> iterator = catalogManager.getFileManager().iterator(study.getFqn(), query,
+                new QueryOptions(QueryOptions.COUNT, true), sessionId)) {
+            Progress progress = new Progress("Check files from study '" + study.getFqn() + "'", iterator.getNumMatches());
+            List<File> batch = new ArrayList<>(BATCH_SIZE);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+                    modifiedFiles.addAll(checkFiles(organizationId, study, batch, calculateChecksum, pool, sessionId));
+                    progress.increment(batch.size());
+                    batch.clear();
+                }
             }
+            progress.done();
+        } finally {
+            pool.shutdown();
         }
 
         return modifiedFiles;
@@ -114,14 +146,46 @@ public class FileScanner {
      */
     public List<File> reSync(String organizationId, Study study, boolean calculateChecksum, String sessionId)
             throws CatalogException, IOException {
+        return reSync(organizationId, study, calculateChecksum, null, sessionId);
+    }
+
+    /**
+     * Scan the study folder, add all untracked files and check tracking.
+     * <p>
+     * Tracked files with the same size and modification time as when their checksum was calculated are not read again. Neither are
+     * tracked files not modified after {@code since} with the same size. Use the date of the previous scan to only process the changes
+     * since then. Untracked files are always added, whatever their modification date.
+     *
+     * @param organizationId    Organization id.
+     * @param study             Study to resync
+     * @param calculateChecksum Calculates checksum of all the files in the directory to scan
+     * @param since             Also skip tracked files not modified after this date. May be null.
+     * @param sessionId         User sessionId
+     * @return New, lost and found files
+     * @throws CatalogException if a Catalog error occurs
+     * @throws IOException      if an I/O error occurs
+     */
+    public List<File> reSync(String organizationId, Study study, boolean calculateChecksum, Date since, String sessionId)
+            throws CatalogException, IOException {
         Query query = new Query(FileDBAdaptor.QueryParams.TYPE.key(), File.Type.DIRECTORY);
-        DBIterator<File> iterator = catalogManager.getFileManager().iterator(study.getFqn(), query, null, sessionId);
+        List<File> folders = new ArrayList<>();
+        try (DBIterator<File> iterator = catalogManager.getFileManager().iterator(study.getFqn(), query, null, sessionId)) {
+            iterator.forEachRemaining(folders::add);
+        }
+        // Parent folders first
+        folders.sort(Comparator.comparing(File::getPath));
 
+        // Scanning a folder covers all the subfolders stored within its URI, so each directory is walked only once
+        Map<String, URI> scannedFolders = new HashMap<>();
         List<File> scan = new LinkedList<>();
-        while (iterator.hasNext()) {
-            File folder = iterator.next();
-            scan.addAll(scan(organizationId, folder, catalogManager.getFileManager().getUri(organizationId, folder),
-                    FileScannerPolicy.REPLACE, calculateChecksum, false, sessionId));
+        for (File folder : folders) {
+            URI folderUri = catalogManager.getFileManager().getUri(organizationId, folder);
+            if (isScanned(folder.getPath(), folderUri, scannedFolders)) {
+                continue;
+            }
+            scannedFolders.put(folder.getPath(), folderUri);
+            scan.addAll(scan(organizationId, folder, folderUri, FileScannerPolicy.REPLACE, calculateChecksum, false, uri -> true, since,
+                    sessionId));
         }
 
         // TODO: Scan per file
@@ -140,45 +204,38 @@ public class FileScanner {
      * @throws CatalogException if a Catalog error occurs
      */
     public Map<String, URI> untrackedFiles(String organizationId, Study study, String sessionId) throws CatalogException {
-        long studyId = study.getUid();
         URI studyUri = study.getUri();
 
-        IOManager ioManager = null;
-        try {
-            ioManager = catalogManager.getIoManagerFactory().get(studyUri);
-        } catch (IOException e) {
-            throw CatalogIOException.ioManagerException(studyUri, e);
-        }
+        IOManager ioManager = getIoManager(studyUri);
         Map<String, URI> linkedFolders = new HashMap<>();
         linkedFolders.put("", studyUri);
         Query query = new Query(FileDBAdaptor.QueryParams.URI.key(), "~.*"); //Where URI exists)
-        QueryOptions queryOptions = new QueryOptions("include", "projects.studies.files.path,projects.studies.files.uri");
-        catalogManager.getFileManager().search(String.valueOf(studyId), query, queryOptions, sessionId).getResults()
+        QueryOptions queryOptions = new QueryOptions(QueryOptions.INCLUDE, Arrays.asList(FileDBAdaptor.QueryParams.PATH.key(),
+                FileDBAdaptor.QueryParams.URI.key()));
+        catalogManager.getFileManager().search(study.getFqn(), query, queryOptions, sessionId).getResults()
                 .forEach(f -> linkedFolders.put(f.getPath(), f.getUri()));
 
         Map<String, URI> untrackedFiles = new HashMap<>();
-        for (Map.Entry<String, URI> entry : linkedFolders.entrySet()) {
-            if (!ioManager.exists(entry.getValue())) {
-                untrackedFiles.put(entry.getKey(), entry.getValue());
-                continue;
-            }
-
-            try (Stream<URI> files = ioManager.listFilesStream(entry.getValue())) {
-                Iterator<URI> iterator = files.iterator();
-
-                while (iterator.hasNext()) {
-                    URI uri = iterator.next();
-                    String filePath = entry.getKey() + entry.getValue().relativize(uri).toString();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Map.Entry<String, URI> entry : linkedFolders.entrySet()) {
+                if (!ioManager.exists(entry.getValue())) {
+                    untrackedFiles.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
 
-                    DataResult<File> searchFile = catalogManager.getFileManager().search(String.valueOf(studyId),
-                            new Query("path", filePath), new QueryOptions("include", "projects.studies.files.id"), sessionId);
-                    if (searchFile.getResults().isEmpty()) {
-                        untrackedFiles.put(filePath, uri);
-                    } /*else {
-                    iterator.remove(); //Remove the ones that have an entry in Catalog
-                }*/
+                Map<String, URI> files = new HashMap<>();
+                for (ParallelFileWalker.Entry fileEntry : listFiles(ioManager, entry.getValue(), pool)) {
+                    URI uri = fileEntry.getUri();
+                    files.put(entry.getKey() + entry.getValue().relativize(uri).toString(), uri);
                 }
+                // Remove the ones that have an entry in Catalog
+                files.keySet().removeAll(getFilesByPath(study, files.keySet(),
+                        new QueryOptions(QueryOptions.INCLUDE, FileDBAdaptor.QueryParams.PATH.key()), sessionId).keySet());
+                untrackedFiles.putAll(files);
             }
+        } finally {
+            pool.shutdown();
         }
         return untrackedFiles;
     }
@@ -220,6 +277,31 @@ public class FileScanner {
      */
     public List<File> scan(String organizationId, File directory, URI directoryToScan, FileScannerPolicy policy, boolean calculateChecksum,
                            boolean deleteSource, Predicate<URI> filter, String sessionId) throws CatalogException, IOException {
+        return scan(organizationId, directory, directoryToScan, policy, calculateChecksum, deleteSource, filter, null, sessionId);
+    }
+
+    /**
+     * Scans the files inside the specified URI and adds to the provided directory.
+     * <p>
+     * With the {@link FileScannerPolicy#REPLACE} policy, tracked files with the same size are skipped if they were not modified after
+     * {@code since}, or if they have the same modification time as when their checksum was calculated.
+     *
+     * @param organizationId    Organization id.
+     * @param directory         Directory where add found files
+     * @param directoryToScan   Directory to scan
+     * @param policy            What to do when there is a file in the target path. See {@link FileScannerPolicy}
+     * @param calculateChecksum Calculates checksum of all the files in the directory to scan
+     * @param deleteSource      After moving, deletes the source file. If false, force copy.
+     * @param filter            File filter. Excludes the file when this predicate returns false.
+     * @param since             Also skip tracked files not modified after this date. May be null.
+     * @param sessionId         User sessionId
+     * @return found and new files.
+     * @throws IOException      if an I/O error occurs
+     * @throws CatalogException if a Catalog error occurs
+     */
+    public List<File> scan(String organizationId, File directory, URI directoryToScan, FileScannerPolicy policy, boolean calculateChecksum,
+                           boolean deleteSource, Predicate<URI> filter, Date since, String sessionId)
+            throws CatalogException, IOException {
         if (filter == null) {
             filter = uri -> true;
         }
@@ -239,11 +321,11 @@ public class FileScanner {
 
         List<File> files = new LinkedList<>();
         if (ioManager.exists(directoryToScan)) {
-            try (Stream<URI> stream = catalogManager.getIoManagerFactory().get(directoryToScan).listFilesStream(directoryToScan)) {
-                Iterator<URI> iterator = stream.iterator();
-                while (iterator.hasNext()) {
-                    long fileScanStart = System.currentTimeMillis();
-                    URI uri = iterator.next();
+            Map<String, ParallelFileWalker.Entry> entries = new LinkedHashMap<>();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (ParallelFileWalker.Entry entry : listFiles(ioManager, directoryToScan, pool)) {
+                    URI uri = entry.getUri();
                     if (!filter.test(uri)) {
                         continue;
                     }
@@ -253,15 +335,41 @@ public class FileScanner {
                     if (generatedFile.getPath().endsWith("/") && !filePath.endsWith("/")) {
                         filePath += "/";
                     }
+                    entries.put(filePath, entry);
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            // With the REPLACE policy no entry is removed while scanning, so the existing files can be fetched in bulk.
+            // Otherwise, look for each file right before processing it.
+            Map<String, File> existingFiles = policy == FileScannerPolicy.REPLACE
+                    ? getFilesByPath(study, entries.keySet(), null, sessionId)
+                    : null;
+
+            Progress progress = new Progress("Scan directory '" + directoryToScan + "'", entries.size());
+            try {
+                for (Map.Entry<String, ParallelFileWalker.Entry> entry : entries.entrySet()) {
+                    long fileScanStart = System.currentTimeMillis();
+                    progress.increment(1);
+                    String filePath = entry.getKey();
+                    URI uri = entry.getValue().getUri();
 
-                    Query query = new Query(FileDBAdaptor.QueryParams.PATH.key(), filePath);
-                    DataResult<File> searchFile = catalogManager.getFileManager().search(study.getFqn(), query, null,
-                            sessionId);
+                    File existingFile;
+                    if (existingFiles != null) {
+                        existingFile = existingFiles.get(filePath);
+                    } else {
+                        Query query = new Query(FileDBAdaptor.QueryParams.PATH.key(), filePath);
+                        existingFile = catalogManager.getFileManager().search(study.getFqn(), query, null, sessionId).first();
+                    }
+                    if (existingFile != null && policy == FileScannerPolicy.REPLACE && isUnchanged(existingFile, entry.getValue(), since)) {
+                        logger.debug("Skip file \"{}\". Not modified", filePath);
+                        continue;
+                    }
                     File file = null;
                     boolean overwrite = true;
                     boolean returnFile = false;
-                    if (searchFile.getNumResults() != 0) {
-                        File existingFile = searchFile.first();
+                    if (existingFile != null) {
                         logger.info("File already existing in target \"" + filePath + "\". FileScannerPolicy = " + policy);
                         switch (policy) {
                             case DELETE:
@@ -340,6 +448,8 @@ public class FileScanner {
                     logger.debug("{}s (create {}s, upload {}s, metadata {}s)", (System.currentTimeMillis() - fileScanStart) / 1000.0,
                             createFileTime / 1000.0, uploadFileTime / 1000.0, metadataFileTime / 1000.0);
                 }
+            } finally {
+                progress.done();
             }
         }
 
@@ -348,4 +458,189 @@ public class FileScanner {
         logger.debug("Read metadata information: " + metadataReadTime / 1000.0 + "s");
         return files;
     }
+
+    /**
+     * Check the files from the filesystem in parallel, and then update the catalog.
+     *
+     * @return modified files
+     */
+    private List<File> checkFiles(String organizationId, Study study, List<File> files, boolean calculateChecksum, ForkJoinPool pool,
+                                  String token) throws CatalogException {
+        List<Callable<ObjectMap>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+            URI fileUri = catalogManager.getFileManager().getUri(organizationId, file);
+            // Get the IOManager from this thread, as the IOManagerFactory is not thread safe
+            IOManager ioManager = getIoManager(fileUri);
+            tasks.add(() -> checkFile(organizationId, file, fileUri, ioManager, calculateChecksum));
+        }
+        List<ObjectMap> updates = invokeAll(pool, tasks);
+
+        List<Long> modifiedFileUids = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            ObjectMap params = updates.get(i);
+            if (params != null) {
+                File file = files.get(i);
+                catalogManager.getFileManager().update(study.getFqn(), file.getPath(), params, QueryOptions.empty(), token);
+                modifiedFileUids.add(file.getUid());
+            }
+        }
+        if (modifiedFileUids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Read all the modified files at once
+        Query query = new Query(FileDBAdaptor.QueryParams.UID.key(), modifiedFileUids);
+        return catalogManager.getFileManager().search(study.getFqn(), query, QueryOptions.empty(), token).getResults();
+    }
+
+    /**
+     * Same as {@link FileUtils#checkFile}, without modifying the catalog.
+     *
+     * @return parameters to update, or null if there are no changes.
+     */
+    private ObjectMap checkFile(String organizationId, File file, URI fileUri, IOManager ioManager, boolean calculateChecksum)
+            throws CatalogException {
+        boolean missing = file.getInternal().getStatus().getId().equals(FileStatus.MISSING);
+        if (!ioManager.exists(fileUri)) {
+            if (missing) {
+                return null;
+            }
+            logger.warn("File { path:\"" + file.getPath() + "\" } lost tracking from file " + fileUri);
+            return new ObjectMap(FileDBAdaptor.UpdateParams.INTERNAL_STATUS.key(), new FileStatus(FileStatus.MISSING));
+        } else if (missing) {
+            logger.info("File { path:\"" + file.getPath() + "\" } recover tracking from file " + fileUri);
+            ObjectMap params = catalogFileUtils.getModifiedFileAttributes(organizationId, file, fileUri, calculateChecksum);
+            params.put(FileDBAdaptor.UpdateParams.INTERNAL_STATUS.key(), new FileStatus(FileStatus.READY));
+            return params;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Check if the folder was already walked while scanning one of its parents.
+     */
+    private static boolean isScanned(String path, URI uri, Map<String, URI> scannedFolders) {
+        for (Map.Entry<String, URI> entry : scannedFolders.entrySet()) {
+            URI scannedUri = entry.getValue();
+            if (path.startsWith(entry.getKey()) && Objects.equals(scannedUri.getScheme(), uri.getScheme())
+                    && Paths.get(scannedUri.getPath(), path.substring(entry.getKey().length())).equals(Paths.get(uri.getPath()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a tracked file has the same size, and was either not modified after {@code since}, or is the same file, with the same
+     * modification time stored when its checksum was calculated.
+     */
+    private static boolean isUnchanged(File file, ParallelFileWalker.Entry entry, Date since) {
+        if (file.getType() != File.Type.FILE
+                || !file.getInternal().getStatus().getId().equals(FileStatus.READY)
+                || entry.getModificationTime() < 0
+                || entry.getSize() != file.getSize()) {
+            return false;
+        }
+        return since != null && entry.getModificationTime() < since.getTime()
+                || isSameFile(file, entry.getUri()) && FileUtils.isChecksumUpToDate(file, entry.getSize(), entry.getModificationTime());
+    }
+
+    private static boolean isSameFile(File file, URI uri) {
+        return file.getUri() != null && "file".equals(file.getUri().getScheme()) && "file".equals(uri.getScheme())
+                && Paths.get(file.getUri()).equals(Paths.get(uri));
+    }
+
+    private static List<ParallelFileWalker.Entry> listFiles(IOManager ioManager, URI directory, ForkJoinPool pool)
+            throws CatalogIOException {
+        if (ioManager instanceof PosixIOManager) {
+            try {
+                return new ParallelFileWalker(pool).walk(Paths.get(directory));
+            } catch (IOException e) {
+                throw new CatalogIOException("Unable to list files from '" + directory + "'", e);
+            }
+        }
+        // Size and modification time unknown
+        List<ParallelFileWalker.Entry> entries = new ArrayList<>();
+        try (Stream<URI> stream = ioManager.listFilesStream(directory)) {
+            stream.forEach(uri -> entries.add(new ParallelFileWalker.Entry(uri, uri.getPath().endsWith("/"), -1, -1)));
+        }
+        return entries;
+    }
+
+    private Map<String, File> getFilesByPath(Study study, Collection<String> paths, QueryOptions options, String token)
+            throws CatalogException {
+        Map<String, File> files = new HashMap<>();
+        List<String> pathList = new ArrayList<>(paths);
+        for (int i = 0; i < pathList.size(); i += BATCH_SIZE) {
+            Query query = new Query(FileDBAdaptor.QueryParams.PATH.key(), pathList.subList(i, Math.min(i + BATCH_SIZE, pathList.size())));
+            for (File file : catalogManager.getFileManager().search(study.getFqn(), query, options, token).getResults()) {
+                files.put(file.getPath(), file);
+            }
+        }
+        return files;
+    }
+
+    private IOManager getIoManager(URI uri) throws CatalogIOException {
+        try {
+            return catalogManager.getIoManagerFactory().get(uri);
+        } catch (IOException e) {
+            throw CatalogIOException.ioManagerException(uri, e);
+        }
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws CatalogException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CatalogException("Interrupted while checking files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CatalogException) {
+                throw (CatalogException) e.getCause();
+            }
+            throw new CatalogException("Error checking files: " + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Logs the progress of a long task, at most once every {@link #PROGRESS_LOG_INTERVAL_MS}.
+     */
+    private static final class Progress {
+        private final String task;
+        private final long total;
+        private final long start = System.currentTimeMillis();
+        private long lastLog = start;
+        private long count;
+
+        private Progress(String task, long total) {
+            this.task = task;
+            this.total = total;
+        }
+
+        private void increment(long delta) {
+            count += delta;
+            long now = System.currentTimeMillis();
+            if (now - lastLog >= PROGRESS_LOG_INTERVAL_MS) {
+                lastLog = now;
+                log();
+            }
+        }
+
+        private void done() {
+            log();
+        }
+
+        private void log() {
+            double seconds = (System.currentTimeMillis() - start) / 1000.0;
+            if (total > 0) {
+                logger.info("{} : {}/{} files ({}%) in {}s", task, count, total, String.format("%.1f", count * 100.0 / total), seconds);
+            } else {
+                logger.info("{} : {} files in {}s", task, count, seconds);
+            }
+        }
+    }
 }
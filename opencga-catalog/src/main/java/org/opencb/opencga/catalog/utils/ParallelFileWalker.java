@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Walks a local directory tree with a fork-join pool, listing each directory in a different task.
+ *
+ * Returns the same entries as {@link Files#walk}, excluding the root directory, and sorted by URI so every directory comes before
+ * its content. Directory URIs end with "/". Symbolic links are not followed, but the size and modification time of their targets
+ * are reported. The attributes read while listing are returned with each entry, so no extra calls to the filesystem are needed.
+ *
+ * Created on 17/10/26.
+ */
+final class ParallelFileWalker {
+
+    private final ForkJoinPool pool;
+
+    ParallelFileWalker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Walk the directory tree.
+     *
+     * @param directory Root directory
+     * @return Sorted list with all the files and directories found
+     * @throws IOException if any directory could not be listed
+     */
+    List<Entry> walk(Path directory) throws IOException {
+        List<Entry> entries;
+        try {
+            entries = pool.invoke(new WalkTask(directory));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        entries.sort(Comparator.comparing(entry -> entry.getUri().toString()));
+        return entries;
+    }
+
+    static final class Entry {
+        private final URI uri;
+        private final boolean directory;
+        private final long size;
+        private final long modificationTime;
+
+        Entry(URI uri, boolean directory, long size, long modificationTime) {
+            this.uri = uri;
+            this.directory = directory;
+            this.size = size;
+            this.modificationTime = modificationTime;
+        }
+
+        URI getUri() {
+            return uri;
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getModificationTime() {
+            return modificationTime;
+        }
+    }
+
+    private static final class WalkTask extends RecursiveTask<List<Entry>> {
+        private final Path directory;
+
+        private WalkTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> entries = new ArrayList<>();
+            List<WalkTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isSymbolicLink()) {
+                        try {
+                            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        } catch (IOException ignore) {
+                            // Broken link. Report the link itself
+                        }
+                    } else if (attributes.isDirectory()) {
+                        WalkTask subTask = new WalkTask(path);
+                        subTask.fork();
+                        subTasks.add(subTask);
+                    }
+                    // Path.toUri adds the trailing "/" to directories, following links as Files.walk + Path.toUri does
+                    URI uri = path.toUri();
+                    entries.add(new Entry(uri, uri.getPath().endsWith("/"), attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (WalkTask subTask : subTasks) {
+                entries.addAll(subTask.join());
+            }
+            return entries;
+        }
+    }
+}
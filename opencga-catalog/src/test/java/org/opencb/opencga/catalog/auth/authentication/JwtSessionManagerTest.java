@@ -20,8 +20,11 @@ import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.impl.TextCodec;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.test.GenericTest;
 import org.opencb.opencga.catalog.exceptions.CatalogAuthenticationException;
 import org.opencb.opencga.catalog.exceptions.CatalogException;
@@ -44,6 +47,9 @@ public class JwtSessionManagerTest extends GenericTest {
     private String jwtToken;
     private String organizationId = "test_org";
 
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
     @Before
     public void setUp() throws Exception  {
         Key key = new SecretKeySpec(TextCodec.BASE64.decode(RandomStringUtils.randomAlphanumeric(50)), SignatureAlgorithm.HS256.getJcaName());
@@ -79,6 +85,22 @@ public class JwtSessionManagerTest extends GenericTest {
         jwtSessionManager.validateToken(jwtToken);
     }
 
+    @Test
+    public void testClaimsCache() throws CatalogException {
+        assertEquals("testUser", jwtSessionManager.getUser(jwtToken));
+        assertEquals(organizationId, jwtSessionManager.getAudience(jwtToken));
+        assertEquals("testUser", jwtSessionManager.getPayload(jwtToken).getUserId());
+        ObjectMap stats = jwtSessionManager.getClaimsCacheStats();
+        assertEquals(1, stats.getInt("misses"));
+        assertEquals(2, stats.getInt("hits"));
+        assertEquals(1, stats.getInt("size"));
+
+        // Cached claims are not used with a different key
+        jwtSessionManager.setPublicKey(new SecretKeySpec(TextCodec.BASE64.decode("wrongKey"), SignatureAlgorithm.HS256.getJcaName()));
+        thrown.expect(CatalogAuthenticationException.class);
+        jwtSessionManager.getUser(jwtToken);
+    }
+
     @Test
     public void testNonExpiringToken() throws CatalogException {
         String nonExpiringToken = jwtSessionManager.createJWTToken(organizationId, null, "System", null, null, -1L);
@@ -117,6 +117,18 @@ public class CatalogAuthorizationManagerTest extends AbstractManagerTest {
         assertTrue(!groups.get(ParamConstants.ADMINS_GROUP).getUserIds().contains(normalUserId1));
     }
 
+    @Test
+    public void changeGroupMembershipCachedPermissions() throws CatalogException {
+        long studyUid = catalogManager.getStudyManager().get(studyFqn, QueryOptions.empty(), ownerToken).first().getUid();
+        AuthorizationManager authorizationManager = catalogManager.getAuthorizationManager();
+
+        assertFalse(authorizationManager.isAtLeastStudyAdministrator(organizationId, studyUid, normalUserId3));
+        updateGroup(studyFqn, ParamConstants.ADMINS_GROUP, normalUserId3, null, null, ownerToken);
+        assertTrue(authorizationManager.isAtLeastStudyAdministrator(organizationId, studyUid, normalUserId3));
+        updateGroup(studyFqn, ParamConstants.ADMINS_GROUP, null, normalUserId3, null, ownerToken);
+        assertFalse(authorizationManager.isAtLeastStudyAdministrator(organizationId, studyUid, normalUserId3));
+    }
+
     @Test
     public void adminUserRemovesFromAdminsGroup() throws CatalogException {
         thrown.expectMessage("Only the owner");
@@ -0,0 +1,133 @@
+package org.opencb.opencga.catalog.auth.authorization;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.core.api.ParamConstants;
+import org.opencb.opencga.core.models.study.Group;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class StudyAclCacheTest {
+
+    private AtomicLong version;
+    private AtomicInteger versionReads;
+    private AtomicInteger groupReads;
+    private List<Group> groups;
+
+    @Before
+    public void setUp() throws Exception {
+        version = new AtomicLong();
+        versionReads = new AtomicInteger();
+        groupReads = new AtomicInteger();
+        groups = new ArrayList<>();
+        groups.add(new Group(ParamConstants.MEMBERS_GROUP, Arrays.asList("user1", "user2", "user3")));
+        groups.add(new Group(ParamConstants.ADMINS_GROUP, Collections.singletonList("user1")));
+        groups.add(new Group("@analysts", Arrays.asList("user1", "user2")));
+    }
+
+    private StudyAclCache newCache(long revalidateMs) {
+        return new StudyAclCache(100, revalidateMs,
+                (organizationId, studyUid) -> {
+                    versionReads.incrementAndGet();
+                    return version.get();
+                },
+                (organizationId, studyUid) -> {
+                    groupReads.incrementAndGet();
+                    return new ArrayList<>(groups);
+                });
+    }
+
+    @Test
+    public void testGetGroups() throws Exception {
+        StudyAclCache cache = newCache(60000);
+
+        assertEquals(3, cache.getGroups("org", 1, Collections.emptyList()).size());
+        assertEquals(Arrays.asList(ParamConstants.MEMBERS_GROUP, "@analysts"), getIds(cache.getGroups("org", 1,
+                Collections.singletonList("user2"))));
+        assertEquals(Collections.singletonList(ParamConstants.MEMBERS_GROUP), getIds(cache.getGroups("org", 1,
+                Arrays.asList("user3", "unknown"))));
+        assertEquals(Collections.emptyList(), cache.getGroups("org", 1, Collections.singletonList("unknown")));
+
+        // Loaded only once
+        assertEquals(1, groupReads.get());
+        assertEquals(1, versionReads.get());
+
+        // Different study, different entry
+        cache.getGroups("org", 2, Collections.emptyList());
+        assertEquals(2, groupReads.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        StudyAclCache cache = newCache(60000);
+        cache.getGroups("org", 1, Collections.emptyList());
+        cache.getGroups("org", 2, Collections.emptyList());
+        cache.getGroups("org2", 1, Collections.emptyList());
+        assertEquals(3, groupReads.get());
+
+        groups.remove(2);
+        cache.invalidate("org", 1);
+        assertEquals(2, cache.getGroups("org", 1, Collections.emptyList()).size());
+        assertEquals(4, groupReads.get());
+
+        cache.invalidate("org");
+        cache.getGroups("org", 2, Collections.emptyList());
+        cache.getGroups("org2", 1, Collections.emptyList());
+        assertEquals(5, groupReads.get());
+    }
+
+    @Test
+    public void testRevalidateVersion() throws Exception {
+        StudyAclCache cache = newCache(0);
+        cache.getGroups("org", 1, Collections.emptyList());
+        assertEquals(1, groupReads.get());
+
+        // Same version. Only the version is read
+        cache.getGroups("org", 1, Collections.emptyList());
+        assertEquals(1, groupReads.get());
+        assertEquals(2, versionReads.get());
+
+        // Changed from another process
+        groups.remove(2);
+        version.incrementAndGet();
+        assertEquals(2, cache.getGroups("org", 1, Collections.emptyList()).size());
+        assertEquals(2, groupReads.get());
+        assertEquals(2L, cache.getStats().get("revalidations"));
+    }
+
+    @Test
+    public void testHasStudyPermission() throws Exception {
+        StudyAclCache cache = newCache(60000);
+        AtomicInteger permissionReads = new AtomicInteger();
+        StudyAclCache.PermissionLoader loader = () -> {
+            permissionReads.incrementAndGet();
+            return true;
+        };
+
+        assertTrue(cache.hasStudyPermission("org", 1, "user2", "VIEW_SAMPLES", loader));
+        assertTrue(cache.hasStudyPermission("org", 1, "user2", "VIEW_SAMPLES", loader));
+        assertEquals(1, permissionReads.get());
+
+        cache.hasStudyPermission("org", 1, "user2", "WRITE_SAMPLES", loader);
+        cache.hasStudyPermission("org", 1, "user3", "VIEW_SAMPLES", loader);
+        assertEquals(3, permissionReads.get());
+
+        cache.invalidate("org", 1);
+        assertFalse(cache.hasStudyPermission("org", 1, "user2", "VIEW_SAMPLES", () -> false));
+    }
+
+    private static List<String> getIds(List<Group> groups) {
+        List<String> ids = new ArrayList<>(groups.size());
+        for (Group group : groups) {
+            ids.add(group.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,70 @@
+package org.opencb.opencga.catalog.db.mongodb.iterators;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+
+@Category(ShortTests.class)
+public class BatchPrefetcherTest {
+
+    @Test
+    public void testPrefetch() {
+        testPrefetch(true);
+    }
+
+    @Test
+    public void testNoPrefetch() {
+        testPrefetch(false);
+    }
+
+    private void testPrefetch(boolean prefetch) {
+        Iterator<Document> cursor = documents(5000, "").iterator();
+        BatchPrefetcher prefetcher = new BatchPrefetcher((buffer, batchSize) -> {
+            while (cursor.hasNext() && buffer.size() < batchSize) {
+                buffer.add(cursor.next());
+            }
+        }, prefetch);
+
+        List<Document> result = new ArrayList<>();
+        Queue<Document> batch;
+        while (!(batch = prefetcher.next()).isEmpty()) {
+            result.addAll(batch);
+        }
+        prefetcher.close();
+
+        assertEquals(documents(5000, ""), result);
+        // Small documents. Batch size should grow up to the max
+        assertEquals(BatchPrefetcher.MAX_BATCH_SIZE, prefetcher.getBatchSize());
+    }
+
+    @Test
+    public void testLargeDocuments() {
+        Iterator<Document> cursor = documents(100, StringUtils.repeat('A', 1024 * 1024)).iterator();
+        BatchPrefetcher prefetcher = new BatchPrefetcher((buffer, batchSize) -> {
+            while (cursor.hasNext() && buffer.size() < batchSize) {
+                buffer.add(cursor.next());
+            }
+        }, true);
+
+        assertEquals(BatchPrefetcher.DEFAULT_BATCH_SIZE, prefetcher.next().size());
+        assertEquals(BatchPrefetcher.MIN_BATCH_SIZE, prefetcher.getBatchSize());
+        prefetcher.close();
+    }
+
+    private static List<Document> documents(int num, String value) {
+        List<Document> documents = new ArrayList<>(num);
+        for (int i = 0; i < num; i++) {
+            documents.add(new Document("uid", i).append("value", value));
+        }
+        return documents;
+    }
+}
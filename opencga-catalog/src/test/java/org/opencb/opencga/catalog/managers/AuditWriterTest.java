@@ -0,0 +1,105 @@
+package org.opencb.opencga.catalog.managers;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.catalog.exceptions.CatalogDBException;
+import org.opencb.opencga.core.models.audit.AuditRecord;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(ShortTests.class)
+public class AuditWriterTest {
+
+    private final Map<String, List<String>> written = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    private void write(String organizationId, List<AuditRecord> auditRecords) {
+        batchSizes.add(auditRecords.size());
+        written.computeIfAbsent(organizationId, k -> new CopyOnWriteArrayList<>())
+                .addAll(auditRecords.stream().map(AuditRecord::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFlush() {
+        AuditWriter writer = new AuditWriter(this::write, 10000, 100, 60000).start();
+        List<String> expected = records(writer, "org1", 1050);
+        records(writer, "org2", 10);
+
+        writer.flush();
+        assertEquals(expected, written.get("org1"));
+        assertEquals(10, written.get("org2").size());
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 100));
+
+        ObjectMap stats = writer.getStats();
+        assertEquals(1060, stats.getInt("enqueued"));
+        assertEquals(1060, stats.getInt("written"));
+        assertEquals(0, stats.getInt("queueDepth"));
+        writer.close();
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        AuditWriter writer = new AuditWriter(this::write, 10000, 100, 10).start();
+        records(writer, "org1", 5);
+        for (int i = 0; i < 100 && !written.containsKey("org1"); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(5, written.get("org1").size());
+        writer.close();
+    }
+
+    @Test
+    public void testCloseDrains() {
+        AuditWriter writer = new AuditWriter(this::write, 10000, 100, 60000).start();
+        List<String> expected = records(writer, "org1", 500);
+        writer.close();
+        assertEquals(expected, written.get("org1"));
+
+        // Closed writer writes from the caller thread
+        records(writer, "org1", 1);
+        assertEquals(501, written.get("org1").size());
+    }
+
+    @Test
+    public void testQueueFull() {
+        // Writer not started. Records that do not fit in the queue are written from the caller thread
+        AuditWriter writer = new AuditWriter(this::write, 10, 100, 60000);
+        records(writer, "org1", 15);
+        assertEquals(5, written.get("org1").size());
+        assertEquals(5, writer.getStats().getInt("callerWrites"));
+        assertEquals(10, writer.getStats().getInt("queueDepth"));
+    }
+
+    @Test
+    public void testWriteError() {
+        AuditWriter writer = new AuditWriter((organizationId, auditRecords) -> {
+            throw new CatalogDBException("Error");
+        }, 10000, 100, 60000).start();
+        records(writer, "org1", 10);
+        writer.flush();
+        assertEquals(10, writer.getStats().getInt("failed"));
+        writer.close();
+    }
+
+    private static List<String> records(AuditWriter writer, String organizationId, int num) {
+        List<String> ids = new ArrayList<>(num);
+        IntStream.range(0, num).forEach(i -> {
+            String id = organizationId + "_" + i;
+            ids.add(id);
+            writer.write(organizationId, Collections.singletonList(new AuditRecord().setId(id)));
+        });
+        return ids;
+    }
+}
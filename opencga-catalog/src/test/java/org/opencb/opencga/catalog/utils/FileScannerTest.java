@@ -43,7 +43,9 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -276,6 +278,103 @@ public class FileScannerTest extends AbstractManagerTest {
 
     }
 
+    @Test
+    public void testCheckStudyFilesReuseChecksum() throws IOException, CatalogException {
+        Path studyUriPath = Paths.get(study.getUri());
+        IOManager ioManager = catalogManager.getIoManagerFactory().getDefault();
+        ioManager.createDirectory(studyUriPath.resolve("data/test/folder/").toUri(), true);
+        Path filePath = studyUriPath.resolve("data/test/folder/").resolve("file_scanner_test_file.txt");
+        Files.write(filePath, "content_1".getBytes());
+
+        FileScanner fileScanner = new FileScanner(catalogManager);
+        assertEquals(1, fileScanner.reSync(organizationId, study, true, ownerToken).size());
+
+        // Lose and recover the file. The checksum is calculated again
+        Path tmpPath = directory.resolve("file_scanner_test_file.txt");
+        Files.move(filePath, tmpPath);
+        assertEquals(FileStatus.MISSING, fileScanner.checkStudyFiles(organizationId, study, true, ownerToken).get(0).getInternal()
+                .getStatus().getId());
+        Files.move(tmpPath, filePath);
+        File file = fileScanner.checkStudyFiles(organizationId, study, true, ownerToken).get(0);
+        assertEquals(FileStatus.READY, file.getInternal().getStatus().getId());
+        assertEquals(ioManager.calculateChecksum(filePath.toUri()), file.getChecksum());
+        assertEquals(Files.getLastModifiedTime(filePath).toMillis(),
+                ((Number) file.getAttributes().get(Constants.FILE_CHECKSUM_MODIFICATION_TIME)).longValue());
+
+        // Change the content, keeping size and modification time. The stored checksum is reused
+        FileTime modificationTime = Files.getLastModifiedTime(filePath);
+        Files.write(filePath, "content_2".getBytes());
+        Files.setLastModifiedTime(filePath, modificationTime);
+        Files.move(filePath, tmpPath);
+        fileScanner.checkStudyFiles(organizationId, study, true, ownerToken);
+        Files.move(tmpPath, filePath);
+        File foundFile = fileScanner.checkStudyFiles(organizationId, study, true, ownerToken).get(0);
+        assertEquals(FileStatus.READY, foundFile.getInternal().getStatus().getId());
+        assertEquals(file.getChecksum(), foundFile.getChecksum());
+
+        // Modify the file. The checksum is calculated again
+        Files.setLastModifiedTime(filePath, FileTime.fromMillis(modificationTime.toMillis() + 10000));
+        Files.move(filePath, tmpPath);
+        fileScanner.checkStudyFiles(organizationId, study, true, ownerToken);
+        Files.move(tmpPath, filePath);
+        foundFile = fileScanner.checkStudyFiles(organizationId, study, true, ownerToken).get(0);
+        assertEquals(ioManager.calculateChecksum(filePath.toUri()), foundFile.getChecksum());
+        assertNotEquals(file.getChecksum(), foundFile.getChecksum());
+    }
+
+    @Test
+    public void testResyncReuseChecksum() throws IOException, CatalogException {
+        Path studyUriPath = Paths.get(study.getUri());
+        IOManager ioManager = catalogManager.getIoManagerFactory().getDefault();
+        ioManager.createDirectory(studyUriPath.resolve("data/test/folder/").toUri(), true);
+        Path filePath = studyUriPath.resolve("data/test/folder/").resolve("file_scanner_test_file.txt");
+        Files.write(filePath, "content_1".getBytes());
+
+        FileScanner fileScanner = new FileScanner(catalogManager);
+        File file = fileScanner.reSync(organizationId, study, true, ownerToken).get(0);
+        assertEquals(ioManager.calculateChecksum(filePath.toUri()), file.getChecksum());
+        assertEquals(Files.getLastModifiedTime(filePath).toMillis(),
+                ((Number) file.getAttributes().get(Constants.FILE_CHECKSUM_MODIFICATION_TIME)).longValue());
+
+        // Change the content, keeping size and modification time. The file is not read again
+        FileTime modificationTime = Files.getLastModifiedTime(filePath);
+        Files.write(filePath, "content_2".getBytes());
+        Files.setLastModifiedTime(filePath, modificationTime);
+        assertEquals(0, fileScanner.reSync(organizationId, study, true, ownerToken).size());
+        File resyncFile = catalogManager.getFileManager().get(studyFqn, file.getPath(), null, ownerToken).first();
+        assertEquals(file.getChecksum(), resyncFile.getChecksum());
+        assertNotEquals(ioManager.calculateChecksum(filePath.toUri()), resyncFile.getChecksum());
+
+        // Modify the file. The checksum is calculated again
+        Files.setLastModifiedTime(filePath, FileTime.fromMillis(modificationTime.toMillis() + 10000));
+        assertEquals(0, fileScanner.reSync(organizationId, study, true, ownerToken).size());
+        resyncFile = catalogManager.getFileManager().get(studyFqn, file.getPath(), null, ownerToken).first();
+        assertEquals(ioManager.calculateChecksum(filePath.toUri()), resyncFile.getChecksum());
+        assertEquals(Files.getLastModifiedTime(filePath).toMillis(),
+                ((Number) resyncFile.getAttributes().get(Constants.FILE_CHECKSUM_MODIFICATION_TIME)).longValue());
+    }
+
+    @Test
+    public void testResyncSince() throws IOException, CatalogException {
+        Path studyUriPath = Paths.get(study.getUri());
+        catalogManager.getIoManagerFactory().getDefault().createDirectory(studyUriPath.resolve("data/test/folder/").toUri(), true);
+        Path filePath = MongoBackupUtils
+                .createDebugFile(studyUriPath.resolve("data/test/folder/").resolve("file_scanner_test_file.txt").toString()).toPath();
+        Date since = new Date();
+
+        FileScanner fileScanner = new FileScanner(catalogManager);
+        // Untracked files are always added
+        List<File> files = fileScanner.reSync(organizationId, study, true, since, ownerToken);
+        assertEquals(1, files.size());
+        assertEquals(FileStatus.READY, files.get(0).getInternal().getStatus().getId());
+
+        // Lost files are always detected
+        Files.delete(filePath);
+        files = fileScanner.reSync(organizationId, study, true, since, ownerToken);
+        assertEquals(1, files.size());
+        assertEquals(FileStatus.MISSING, files.get(0).getInternal().getStatus().getId());
+    }
+
     @Test
     public void testComplexAdd() throws IOException, CatalogException, URISyntaxException {
 
@@ -0,0 +1,80 @@
+package org.opencb.opencga.catalog.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@Category(ShortTests.class)
+public class ParallelFileWalkerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWalk() throws IOException {
+        Path root = temporaryFolder.getRoot().toPath();
+        for (int i = 0; i < 5; i++) {
+            Path folder = Files.createDirectories(root.resolve("folder_" + i).resolve("subfolder"));
+            for (int j = 0; j < 10; j++) {
+                Files.write(folder.resolve("file_" + j + ".txt"), new byte[j]);
+                Files.write(folder.getParent().resolve("file_" + j + ".txt"), new byte[j]);
+            }
+        }
+        Files.createDirectory(root.resolve("empty"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<ParallelFileWalker.Entry> entries = new ParallelFileWalker(pool).walk(root);
+        pool.shutdown();
+
+        List<URI> expected;
+        try (Stream<Path> stream = Files.walk(root)) {
+            expected = stream.filter(path -> !path.equals(root)).map(Path::toUri).sorted().collect(Collectors.toList());
+        }
+        assertEquals(expected, entries.stream().map(ParallelFileWalker.Entry::getUri).collect(Collectors.toList()));
+
+        for (ParallelFileWalker.Entry entry : entries) {
+            Path path = Paths.get(entry.getUri());
+            assertEquals(Files.isDirectory(path), entry.isDirectory());
+            assertEquals(Files.getLastModifiedTime(path).toMillis(), entry.getModificationTime());
+            if (!entry.isDirectory()) {
+                assertEquals(Files.size(path), entry.getSize());
+            }
+        }
+    }
+
+    @Test
+    public void testParentsFirst() throws IOException {
+        Path root = temporaryFolder.getRoot().toPath();
+        Files.createDirectories(root.resolve("a/b/c"));
+        Files.createDirectories(root.resolve("a-b"));
+        Files.write(root.resolve("a/b/c/file.txt"), new byte[1]);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<ParallelFileWalker.Entry> entries = new ParallelFileWalker(pool).walk(root);
+        pool.shutdown();
+
+        for (int i = 0; i < entries.size(); i++) {
+            String uri = entries.get(i).getUri().toString();
+            for (int j = i + 1; j < entries.size(); j++) {
+                // No entry is a parent of a previous one
+                assertFalse(uri.startsWith(entries.get(j).getUri().toString()));
+            }
+        }
+        assertEquals(5, entries.size());
+    }
+}
@@ -77,4 +77,33 @@ public class AnalysisVariantGrpcClient extends AbstractGrpcClient<VariantService
     }
 
 
+    public Iterator<VariantProto.Variant> queryBatch(ObjectMap options, String token) {
+        Map<String, String> optionsMap = new HashMap<>();
+        for (String key : options.keySet()) {
+            optionsMap.put(key, options.getString(key));
+        }
+
+        GenericServiceModel.Request request = GenericServiceModel.Request.newBuilder()
+                .putAllQuery(optionsMap)
+                .setToken(token)
+                .build();
+
+        try {
+            Iterator<GenericServiceModel.VariantBatchResponse> batchIterator = getStub().queryBatch(request);
+            return Iterators.concat(Iterators.transform(batchIterator, next -> {
+                if (StringUtils.isNotEmpty(next.getError())) {
+                    logger.error("gRPC request failed: {}\n{}", next.getErrorFull(), next.getStackTrace());
+                    throw new RuntimeException("gRPC request failed: " + next.getError());
+                }
+                return next.getVariantsList().iterator();
+            }));
+        } catch (StatusRuntimeException e) {
+            logger.error("gRPC request failed: {}", e.getStatus(), e);
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error("gRPC request failed: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
 }
@@ -24,6 +24,25 @@ public class Audit {
     private String manager;
     private long maxDocuments;
     private long maxSize;
+    private WriteMode writeMode = WriteMode.ASYNC;
+    private int queueSize = 10000;
+    private int batchSize = 500;
+    private long flushIntervalMs = 1000;
+
+    /**
+     * Durability of the audit records.
+     */
+    public enum WriteMode {
+        /**
+         * Each record is written before returning to the caller.
+         */
+        SYNC,
+        /**
+         * Records are queued and written in batches from a background thread. Records still in the queue are lost if the process
+         * is killed, up to {@code flushIntervalMs} or {@code queueSize} records. The queue is drained when the catalog is closed.
+         */
+        ASYNC
+    }
 
     public Audit() {
     }
@@ -40,6 +59,10 @@ public class Audit {
         sb.append("manager='").append(manager).append('\'');
         sb.append(", maxDocuments=").append(maxDocuments);
         sb.append(", maxSize=").append(maxSize);
+        sb.append(", writeMode=").append(writeMode);
+        sb.append(", queueSize=").append(queueSize);
+        sb.append(", batchSize=").append(batchSize);
+        sb.append(", flushIntervalMs=").append(flushIntervalMs);
         sb.append('}');
         return sb.toString();
     }
@@ -70,4 +93,40 @@ public class Audit {
         this.maxSize = maxSize;
         return this;
     }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public Audit setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public Audit setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Audit setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public Audit setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+        return this;
+    }
 }
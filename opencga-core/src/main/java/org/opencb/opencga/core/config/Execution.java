@@ -38,6 +38,14 @@ public class Execution {
             "variant-secondary-annotation-index",
             "variant-secondary-sample-index"
     );
+    public static final String JOBS_DAEMON_POLLING_THREADS = "jobs.daemon.polling.threads";
+    public static final int JOBS_DAEMON_POLLING_THREADS_DEFAULT = 4;
+    public static final String JOBS_DAEMON_INGESTION_THREADS = "jobs.daemon.ingestion.threads";
+    public static final int JOBS_DAEMON_INGESTION_THREADS_DEFAULT = 4;
+    public static final String JOBS_DAEMON_NOTIFICATION_THREADS = "jobs.daemon.notification.threads";
+    public static final int JOBS_DAEMON_NOTIFICATION_THREADS_DEFAULT = 2;
+    public static final String JOBS_DAEMON_MAX_PENDING_TASKS = "jobs.daemon.maxPendingTasks";
+    public static final int JOBS_DAEMON_MAX_PENDING_TASKS_DEFAULT = 1000;
 
     @Deprecated
     @DataField(id = "id", deprecated = true, description = "Use queues.id instead")
@@ -23,29 +23,46 @@ public class CacheConfiguration {
 
     /**
      * This field contain the host and port, ie. host[:port].
+     * @deprecated Results are cached in-process. Redis is no longer used.
      */
+    @Deprecated
     private String host;
     private boolean active;
 
     /**
      * Accepted values are: JSON, Kryo.
+     * @deprecated Results are cached in-process. Redis is no longer used.
      */
+    @Deprecated
     private String serialization;
     private int slowThreshold;
     private int maxResultSize;
+    @Deprecated
     private String password;
 
+    /**
+     * Max size in bytes of the results cached in the heap.
+     */
+    private long maxHeapSize;
+
+    /**
+     * Max size in bytes of the results cached off-heap. Use 0 to disable the off-heap tier.
+     */
+    private long maxOffHeapSize;
+
     /**
      * Accepted values are: aln(alignment), var(variant).
      */
     private String allowedTypes;
 
-    public static final boolean DEFAULT_ACTVE = true;
+    public static final boolean DEFAULT_ACTVE = false;
     public static final String DEFAULT_SERIALIZATION = "json";
     public static final String DEFAULT_ALLOWED_TYPE = "aln,var";
     public static final String DEFAULT_HOST = "localhost:6379";
     public static final String DEFAULT_PASSWORD = "";
     public static final int DEFAULT_MAX_FILE_SIZE = 500;
+    public static final long DEFAULT_MAX_HEAP_SIZE = 256L * 1024 * 1024;
+    public static final long DEFAULT_MAX_OFF_HEAP_SIZE = 0;
 
     public CacheConfiguration() {
         this(DEFAULT_HOST, DEFAULT_ACTVE, DEFAULT_SERIALIZATION, 50, DEFAULT_MAX_FILE_SIZE, DEFAULT_PASSWORD,
@@ -61,6 +78,8 @@ public class CacheConfiguration {
         this.maxResultSize = maxFileSize;
         this.password = password;
         this.allowedTypes = allowedTypes;
+        this.maxHeapSize = DEFAULT_MAX_HEAP_SIZE;
+        this.maxOffHeapSize = DEFAULT_MAX_OFF_HEAP_SIZE;
     }
 
     @Override
@@ -72,6 +91,8 @@ public class CacheConfiguration {
                 + ", slowThreshold=" + slowThreshold
                 + ", maxResultSize=" + maxResultSize
                 + ", allowedTypes='" + allowedTypes + '\''
+                + ", maxHeapSize=" + maxHeapSize
+                + ", maxOffHeapSize=" + maxOffHeapSize
                 + '}');
         return sb.toString();
     }
@@ -138,4 +159,22 @@ public class CacheConfiguration {
         this.allowedTypes = allowedTypes;
         return this;
     }
+
+    public long getMaxHeapSize() {
+        return maxHeapSize;
+    }
+
+    public CacheConfiguration setMaxHeapSize(long maxHeapSize) {
+        this.maxHeapSize = maxHeapSize;
+        return this;
+    }
+
+    public long getMaxOffHeapSize() {
+        return maxOffHeapSize;
+    }
+
+    public CacheConfiguration setMaxOffHeapSize(long maxOffHeapSize) {
+        this.maxOffHeapSize = maxOffHeapSize;
+        return this;
+    }
 }
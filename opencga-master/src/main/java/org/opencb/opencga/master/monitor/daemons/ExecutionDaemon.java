@@ -86,6 +86,7 @@ import org.opencb.opencga.catalog.utils.ParamUtils;
 import org.opencb.opencga.core.api.ParamConstants;
 import org.opencb.opencga.core.common.ExceptionUtils;
 import org.opencb.opencga.core.common.TimeUtils;
+import org.opencb.opencga.core.config.Execution;
 import org.opencb.opencga.core.config.ExecutionQueue;
 import org.opencb.opencga.core.config.storage.StorageConfiguration;
 import org.opencb.opencga.core.models.AclEntryList;
@@ -124,8 +125,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -167,7 +166,8 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
     private final QueryOptions queryOptions;
     private final QueryOptions queuedOptions = new QueryOptions(QueryOptions.INCLUDE, JobDBAdaptor.QueryParams.EXECUTION.key());
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Status polling, finished-job ingestion and notification phases. One lane per study to keep the order of its jobs.
+    private final JobPipeline pipeline;
     private final JobScheduler jobScheduler;
 
     static {
@@ -271,6 +271,13 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
         this.executionQueues = catalogManager.getConfiguration().getAnalysis().getExecution().getQueues();
         this.jobScheduler = new JobScheduler(catalogManager, this.executionQueues, token);
 
+        ObjectMap executionOptions = catalogManager.getConfiguration().getAnalysis().getExecution().getOptions();
+        this.pipeline = new JobPipeline(
+                executionOptions.getInt(Execution.JOBS_DAEMON_POLLING_THREADS, Execution.JOBS_DAEMON_POLLING_THREADS_DEFAULT),
+                executionOptions.getInt(Execution.JOBS_DAEMON_INGESTION_THREADS, Execution.JOBS_DAEMON_INGESTION_THREADS_DEFAULT),
+                executionOptions.getInt(Execution.JOBS_DAEMON_NOTIFICATION_THREADS, Execution.JOBS_DAEMON_NOTIFICATION_THREADS_DEFAULT),
+                executionOptions.getInt(Execution.JOBS_DAEMON_MAX_PENDING_TASKS, Execution.JOBS_DAEMON_MAX_PENDING_TASKS_DEFAULT));
+
         if (CollectionUtils.isEmpty(packages)) {
             this.packages = Collections.singletonList(ToolFactory.DEFAULT_PACKAGE);
         } else {
@@ -287,19 +294,18 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
     @Override
     public void close() throws IOException {
         super.close();
-        try {
-            logger.info("Attempt to shutdown webhook executor");
-            executor.shutdown();
-            executor.awaitTermination(5, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            logger.error("Webhook tasks interrupted");
-        } finally {
-            if (!executor.isTerminated()) {
-                logger.error("Cancel non-finished webhook tasks");
-            }
-            executor.shutdownNow();
-            logger.info("Webhook tasks finished");
-        }
+        logger.info("Attempt to shutdown job pipeline");
+        pipeline.close(5, TimeUnit.SECONDS);
+        logger.info("Job pipeline tasks finished");
+    }
+
+    /**
+     * Get the metrics of the job pipeline: queue depth, number of tasks and latencies for each phase.
+     *
+     * @return Pipeline stats by phase
+     */
+    public ObjectMap getPipelineStats() {
+        return pipeline.getStats();
     }
 
     protected void checkJobs() throws CatalogException {
@@ -336,24 +342,31 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
                 checkPendingJobs(organizationId);
             }
         }
+        logger.info("----- EXECUTION DAEMON  ----- Pipeline queue depth --> polling={}, ingestion={}, notification={}",
+                pipeline.getQueueDepth(JobPipeline.Phase.STATUS_POLLING),
+                pipeline.getQueueDepth(JobPipeline.Phase.FINISHED_JOB_INGESTION),
+                pipeline.getQueueDepth(JobPipeline.Phase.NOTIFICATION));
+        logger.debug("Pipeline stats: {}", pipeline.getStats());
     }
 
     protected void checkRunningJobs(List<String> organizationIds) {
         for (String organizationId : organizationIds) {
-            int handledRunningJobs = 0;
+            int submittedRunningJobs = 0;
             try (DBIterator<Job> iterator = jobManager.iteratorInOrganization(organizationId, runningJobsQuery, queryOptions, token)) {
-                while (handledRunningJobs < MAX_NUM_JOBS && iterator.hasNext()) {
-                    try {
-                        Job job = iterator.next();
-                        handledRunningJobs += checkRunningJob(job);
-                    } catch (Exception e) {
-                        logger.error("{}", e.getMessage(), e);
-                    }
+                while (submittedRunningJobs < MAX_NUM_JOBS && iterator.hasNext()) {
+                    Job job = iterator.next();
+                    pipeline.submit(JobPipeline.Phase.STATUS_POLLING, job.getStudy().getId(), () -> checkRunningJob(job));
+                    submittedRunningJobs++;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while submitting running jobs", e);
+                return;
             } catch (Exception e) {
                 logger.error("{}", e.getMessage(), e);
             }
         }
+        awaitPipeline();
     }
 
     protected int checkRunningJob(Job job) {
@@ -404,7 +417,7 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
             case Enums.ExecutionStatus.DONE:
             case Enums.ExecutionStatus.READY:
                 // Register job results
-                return processFinishedJob(job, jobStatus);
+                return submitFinishedJob(job, jobStatus);
             case Enums.ExecutionStatus.QUEUED:
                 if (killSignalSent(job)) {
                     return processKillJob(job);
@@ -428,6 +441,19 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
 
     }
 
+    /**
+     * Wait for the status polling and the finished-job ingestion phases, so the next steps of the cycle see the updated jobs.
+     * Notifications are not awaited.
+     */
+    private void awaitPipeline() {
+        try {
+            pipeline.awaitIdle(JobPipeline.Phase.STATUS_POLLING, JobPipeline.Phase.FINISHED_JOB_INGESTION);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the job pipeline", e);
+        }
+    }
+
     private int processKillJob(Job job) {
         logger.info("[{}] - Kill signal request received for job with status='{}'. Attempting to abort execution.", job.getId(),
                 job.getInternal().getStatus().getId());
@@ -447,20 +473,22 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
 
     protected void checkQueuedJobs(List<String> organizationIds) {
         for (String organizationId : organizationIds) {
-            int handledQueuedJobs = 0;
+            int submittedQueuedJobs = 0;
             try (DBIterator<Job> iterator = jobManager.iteratorInOrganization(organizationId, queuedJobsQuery, queryOptions, token)) {
-                while (handledQueuedJobs < MAX_NUM_JOBS && iterator.hasNext()) {
-                    try {
-                        Job job = iterator.next();
-                        handledQueuedJobs += checkQueuedJob(job);
-                    } catch (Exception e) {
-                        logger.error("{}", e.getMessage(), e);
-                    }
+                while (submittedQueuedJobs < MAX_NUM_JOBS && iterator.hasNext()) {
+                    Job job = iterator.next();
+                    pipeline.submit(JobPipeline.Phase.STATUS_POLLING, job.getStudy().getId(), () -> checkQueuedJob(job));
+                    submittedQueuedJobs++;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while submitting queued jobs", e);
+                return;
             } catch (Exception e) {
                 logger.error("{}", e.getMessage(), e);
             }
         }
+        awaitPipeline();
     }
 
     /**
@@ -1159,7 +1187,25 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
 
     private int abortKillJob(Job job, String description) {
         logger.info("[{}] -Aborting job - Reason: '{}'", job.getId(), description);
-        return processFinishedJob(job, new Enums.ExecutionStatus(Enums.ExecutionStatus.ABORTED, description));
+        return submitFinishedJob(job, new Enums.ExecutionStatus(Enums.ExecutionStatus.ABORTED, description));
+    }
+
+    /**
+     * Hand over a finished job to the ingestion phase of the pipeline.
+     *
+     * @param job       Finished job
+     * @param status    Final status
+     * @return 1 if the job was submitted, 0 otherwise.
+     */
+    private int submitFinishedJob(Job job, Enums.ExecutionStatus status) {
+        try {
+            pipeline.submit(JobPipeline.Phase.FINISHED_JOB_INGESTION, job.getStudy().getId(), () -> processFinishedJob(job, status));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("[{}] - Interrupted while submitting finished job. Will be retried next loop iteration", job.getId(), e);
+            return 0;
+        }
+        return 1;
     }
 
     private int setStatus(Job job, Enums.ExecutionStatus status) {
@@ -1367,13 +1413,18 @@ public class ExecutionDaemon extends MonitorParentDaemon implements Closeable {
 
     private void notifyStatusChange(Job job) {
         if (job.getInternal().getWebhook().getUrl() != null) {
-            executor.submit(() -> {
-                try {
-                    sendWebhookNotification(job, job.getInternal().getWebhook().getUrl());
-                } catch (URISyntaxException | CatalogException | CloneNotSupportedException e) {
-                    logger.warn("Could not store notification status: {}", e.getMessage(), e);
-                }
-            });
+            try {
+                pipeline.submit(JobPipeline.Phase.NOTIFICATION, job.getStudy().getId(), () -> {
+                    try {
+                        sendWebhookNotification(job, job.getInternal().getWebhook().getUrl());
+                    } catch (URISyntaxException | CatalogException | CloneNotSupportedException e) {
+                        logger.warn("Could not store notification status: {}", e.getMessage(), e);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("[{}] - Interrupted while submitting webhook notification", job.getId(), e);
+            }
         }
     }
 
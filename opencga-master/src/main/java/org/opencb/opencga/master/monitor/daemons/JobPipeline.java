@@ -0,0 +1,275 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.master.monitor.daemons;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Staged pipeline used by the {@link ExecutionDaemon} to process the jobs.
+ *
+ * Each {@link Phase} has its own bounded pool of workers. Tasks are grouped in lanes, usually one per study.
+ * Tasks from the same lane are executed one at a time, in submission order, while tasks from different lanes run concurrently.
+ * A lane is rescheduled after each task, so a study with many jobs does not starve the rest.
+ *
+ * Created on 17/10/26.
+ */
+public class JobPipeline implements Closeable {
+
+    public enum Phase {
+        STATUS_POLLING,
+        FINISHED_JOB_INGESTION,
+        NOTIFICATION
+    }
+
+    private final Map<Phase, PhaseExecutor> phases = new EnumMap<>(Phase.class);
+    private final Logger logger = LoggerFactory.getLogger(JobPipeline.class);
+
+    /**
+     * Create a JobPipeline.
+     *
+     * @param pollingThreads        Number of threads checking the status of queued and running jobs
+     * @param ingestionThreads      Number of threads registering the results of the finished jobs
+     * @param notificationThreads   Number of threads sending the webhook notifications
+     * @param maxPendingTasks       Max number of pending tasks per phase. Submitting a task to a full phase blocks the caller.
+     */
+    public JobPipeline(int pollingThreads, int ingestionThreads, int notificationThreads, int maxPendingTasks) {
+        phases.put(Phase.STATUS_POLLING, new PhaseExecutor(Phase.STATUS_POLLING, pollingThreads, maxPendingTasks));
+        phases.put(Phase.FINISHED_JOB_INGESTION, new PhaseExecutor(Phase.FINISHED_JOB_INGESTION, ingestionThreads, maxPendingTasks));
+        phases.put(Phase.NOTIFICATION, new PhaseExecutor(Phase.NOTIFICATION, notificationThreads, maxPendingTasks));
+    }
+
+    /**
+     * Submit a task to a phase of the pipeline.
+     *
+     * @param phase Phase
+     * @param lane  Lane of the task. Tasks from the same lane and phase are executed in submission order.
+     * @param task  Task to execute
+     * @throws InterruptedException if interrupted while waiting for the phase to accept new tasks.
+     */
+    public void submit(Phase phase, String lane, Runnable task) throws InterruptedException {
+        phases.get(phase).submit(lane, task);
+    }
+
+    /**
+     * Wait until the given phases have no pending tasks. Phases are awaited in the given order, so a phase
+     * feeding another one should be listed first.
+     *
+     * @param phases Phases to wait for
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitIdle(Phase... phases) throws InterruptedException {
+        for (Phase phase : phases) {
+            this.phases.get(phase).awaitIdle();
+        }
+    }
+
+    public int getQueueDepth(Phase phase) {
+        return phases.get(phase).getQueueDepth();
+    }
+
+    public ObjectMap getStats() {
+        ObjectMap stats = new ObjectMap();
+        for (PhaseExecutor phaseExecutor : phases.values()) {
+            stats.put(phaseExecutor.phase.name(), phaseExecutor.getStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        close(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop accepting new tasks and wait for the pending ones to finish.
+     *
+     * @param timeout Max time to wait for each phase
+     * @param unit    Time unit
+     */
+    public void close(long timeout, TimeUnit unit) {
+        for (PhaseExecutor phaseExecutor : phases.values()) {
+            phaseExecutor.pool.shutdown();
+        }
+        for (PhaseExecutor phaseExecutor : phases.values()) {
+            try {
+                if (!phaseExecutor.pool.awaitTermination(timeout, unit)) {
+                    logger.warn("Cancel {} non-finished {} tasks", phaseExecutor.getQueueDepth(), phaseExecutor.phase);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for {} tasks", phaseExecutor.phase);
+                Thread.currentThread().interrupt();
+            } finally {
+                phaseExecutor.pool.shutdownNow();
+            }
+        }
+    }
+
+    private final class PhaseExecutor {
+        private final Phase phase;
+        private final int maxPendingTasks;
+        private final ThreadPoolExecutor pool;
+        // Active lanes. A lane is in this map while it has tasks scheduled or running.
+        private final Map<String, Deque<PipelineTask>> lanes = new HashMap<>();
+        // Guarded by "this"
+        private int pending;
+        private int running;
+
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder waitTimeNanos = new LongAdder();
+        private final LongAdder runTimeNanos = new LongAdder();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+        private final AtomicLong maxQueueDepth = new AtomicLong();
+
+        private PhaseExecutor(Phase phase, int threads, int maxPendingTasks) {
+            this.phase = phase;
+            this.maxPendingTasks = maxPendingTasks;
+            String name = phase.name().toLowerCase().replace('_', '-');
+            this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    new BasicThreadFactory.Builder()
+                            .namingPattern("execution-daemon-" + name + "-%s")
+                            .daemon(true)
+                            .build());
+        }
+
+        private void submit(String lane, Runnable task) throws InterruptedException {
+            boolean schedule;
+            synchronized (this) {
+                while (maxPendingTasks > 0 && pending >= maxPendingTasks) {
+                    wait();
+                }
+                pending++;
+                Deque<PipelineTask> tasks = lanes.get(lane);
+                schedule = tasks == null;
+                if (schedule) {
+                    tasks = new ArrayDeque<>();
+                    lanes.put(lane, tasks);
+                }
+                tasks.add(new PipelineTask(task));
+                maxQueueDepth.accumulateAndGet(pending - running, Math::max);
+            }
+            submitted.increment();
+            if (schedule) {
+                schedule(lane);
+            }
+        }
+
+        private void schedule(String lane) {
+            try {
+                pool.execute(() -> runNext(lane));
+            } catch (RejectedExecutionException e) {
+                int dropped;
+                synchronized (this) {
+                    dropped = lanes.remove(lane).size();
+                    pending -= dropped;
+                    notifyAll();
+                }
+                logger.warn("Pipeline closed. Discarding {} {} tasks from '{}'", dropped, phase, lane);
+            }
+        }
+
+        private void runNext(String lane) {
+            PipelineTask task;
+            synchronized (this) {
+                task = lanes.get(lane).peek();
+                running++;
+            }
+            long start = System.nanoTime();
+            boolean reschedule;
+            try {
+                task.runnable.run();
+                completed.increment();
+            } catch (RuntimeException e) {
+                failed.increment();
+                logger.error("Unexpected error in {} task from '{}': {}", phase, lane, e.getMessage(), e);
+            } finally {
+                long end = System.nanoTime();
+                waitTimeNanos.add(start - task.submitTime);
+                runTimeNanos.add(end - start);
+                maxLatencyNanos.accumulateAndGet(end - task.submitTime, Math::max);
+                synchronized (this) {
+                    Deque<PipelineTask> tasks = lanes.get(lane);
+                    tasks.poll();
+                    running--;
+                    pending--;
+                    reschedule = !tasks.isEmpty();
+                    if (!reschedule) {
+                        lanes.remove(lane);
+                    }
+                    notifyAll();
+                }
+            }
+            if (reschedule) {
+                // Go back to the end of the pool queue to let other lanes progress
+                schedule(lane);
+            }
+        }
+
+        private synchronized void awaitIdle() throws InterruptedException {
+            while (pending > 0) {
+                wait();
+            }
+        }
+
+        private synchronized int getQueueDepth() {
+            return pending - running;
+        }
+
+        private ObjectMap getStats() {
+            long completedCount = completed.sum();
+            long failedCount = failed.sum();
+            long finished = Math.max(1, completedCount + failedCount);
+            int queueDepth;
+            int runningCount;
+            synchronized (this) {
+                queueDepth = pending - running;
+                runningCount = running;
+            }
+            return new ObjectMap()
+                    .append("threads", pool.getMaximumPoolSize())
+                    .append("queueDepth", queueDepth)
+                    .append("maxQueueDepth", maxQueueDepth.get())
+                    .append("running", runningCount)
+                    .append("submitted", submitted.sum())
+                    .append("completed", completedCount)
+                    .append("failed", failedCount)
+                    .append("avgWaitTimeMs", TimeUnit.NANOSECONDS.toMillis(waitTimeNanos.sum() / finished))
+                    .append("avgRunTimeMs", TimeUnit.NANOSECONDS.toMillis(runTimeNanos.sum() / finished))
+                    .append("maxLatencyMs", TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()));
+        }
+    }
+
+    private static final class PipelineTask {
+        private final Runnable runnable;
+        private final long submitTime;
+
+        private PipelineTask(Runnable runnable) {
+            this.runnable = runnable;
+            this.submitTime = System.nanoTime();
+        }
+    }
+}
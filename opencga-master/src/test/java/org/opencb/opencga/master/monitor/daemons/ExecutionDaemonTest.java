@@ -64,6 +64,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -780,8 +781,8 @@ public class ExecutionDaemonTest extends AbstractManagerTest {
 
     private static class DummyBatchExecutor implements BatchExecutor {
 
-        public Map<String, String> jobStatus = new HashMap<>();
-        public Map<String, AtomicInteger> jobKillCount = new HashMap<>();
+        public Map<String, String> jobStatus = new ConcurrentHashMap<>();
+        public Map<String, AtomicInteger> jobKillCount = new ConcurrentHashMap<>();
 
         @Override
         public void execute(Job job, String queue, String commandLine, Path stdout, Path stderr) throws Exception {
@@ -0,0 +1,143 @@
+package org.opencb.opencga.master.monitor.daemons;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class JobPipelineTest {
+
+    private JobPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        pipeline = new JobPipeline(4, 4, 1, 100);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipeline.close(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testOrderPerLane() throws Exception {
+        Map<String, List<Integer>> executed = Collections.synchronizedMap(new HashMap<>());
+        for (int i = 0; i < 200; i++) {
+            String lane = "study" + (i % 5);
+            int value = i;
+            pipeline.submit(JobPipeline.Phase.STATUS_POLLING, lane, () -> {
+                executed.computeIfAbsent(lane, k -> Collections.synchronizedList(new ArrayList<>())).add(value);
+            });
+        }
+        pipeline.awaitIdle(JobPipeline.Phase.STATUS_POLLING);
+
+        assertEquals(5, executed.size());
+        for (List<Integer> values : executed.values()) {
+            assertEquals(40, values.size());
+            List<Integer> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            assertEquals(sorted, values);
+        }
+        assertEquals(200L, pipeline.getStats().get(JobPipeline.Phase.STATUS_POLLING.name(), ObjectMap.class).getLong("completed"));
+    }
+
+    @Test
+    public void testLanesRunConcurrently() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        AtomicInteger finished = new AtomicInteger();
+        for (String lane : Arrays.asList("study1", "study2")) {
+            pipeline.submit(JobPipeline.Phase.FINISHED_JOB_INGESTION, lane, () -> {
+                latch.countDown();
+                try {
+                    // Only finishes if the other lane is running at the same time
+                    if (latch.await(5, TimeUnit.SECONDS)) {
+                        finished.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        pipeline.awaitIdle(JobPipeline.Phase.FINISHED_JOB_INGESTION);
+        assertEquals(2, finished.get());
+    }
+
+    @Test
+    public void testAwaitChainedPhases() throws Exception {
+        AtomicInteger ingested = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(JobPipeline.Phase.STATUS_POLLING, "study" + (i % 3), () -> {
+                try {
+                    pipeline.submit(JobPipeline.Phase.FINISHED_JOB_INGESTION, "study", ingested::incrementAndGet);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        pipeline.awaitIdle(JobPipeline.Phase.STATUS_POLLING, JobPipeline.Phase.FINISHED_JOB_INGESTION);
+
+        assertEquals(20, ingested.get());
+        assertEquals(0, pipeline.getQueueDepth(JobPipeline.Phase.STATUS_POLLING));
+        assertEquals(0, pipeline.getQueueDepth(JobPipeline.Phase.FINISHED_JOB_INGESTION));
+    }
+
+    @Test
+    public void testFailedTasks() throws Exception {
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        pipeline.submit(JobPipeline.Phase.NOTIFICATION, "study", () -> {
+            throw new IllegalStateException("Fail");
+        });
+        pipeline.submit(JobPipeline.Phase.NOTIFICATION, "study", () -> executed.add(1));
+        pipeline.awaitIdle(JobPipeline.Phase.NOTIFICATION);
+
+        // A failed task does not block its lane
+        assertEquals(Collections.singletonList(1), executed);
+        ObjectMap stats = pipeline.getStats().get(JobPipeline.Phase.NOTIFICATION.name(), ObjectMap.class);
+        assertEquals(1L, stats.getLong("failed"));
+        assertEquals(1L, stats.getLong("completed"));
+        assertEquals(2L, stats.getLong("submitted"));
+    }
+
+    @Test
+    public void testMaxPendingTasks() throws Exception {
+        pipeline.close();
+        pipeline = new JobPipeline(1, 1, 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit(JobPipeline.Phase.NOTIFICATION, "study", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        pipeline.submit(JobPipeline.Phase.NOTIFICATION, "study", () -> { });
+
+        Thread submitter = new Thread(() -> {
+            try {
+                pipeline.submit(JobPipeline.Phase.NOTIFICATION, "study", () -> { });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        submitter.join(200);
+        // Blocked until there is room in the phase
+        assertTrue(submitter.isAlive());
+
+        release.countDown();
+        submitter.join(5000);
+        assertFalse(submitter.isAlive());
+        pipeline.awaitIdle(JobPipeline.Phase.NOTIFICATION);
+        assertEquals(3L, pipeline.getStats().get(JobPipeline.Phase.NOTIFICATION.name(), ObjectMap.class).getLong("completed"));
+    }
+}
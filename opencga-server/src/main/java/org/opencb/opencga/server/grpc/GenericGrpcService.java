@@ -93,6 +93,22 @@ public class GenericGrpcService {
         logger.info("========================================================================\n");
     }
 
+    /**
+     * Create a GenericGrpcService with an already initialized VariantStorageManager. Used for testing.
+     *
+     * @param configuration         OpenCGA configuration
+     * @param storageConfiguration  Storage configuration
+     * @param variantStorageManager Variant storage manager
+     */
+    GenericGrpcService(Configuration configuration, StorageConfiguration storageConfiguration,
+                       VariantStorageManager variantStorageManager) {
+        logger = LoggerFactory.getLogger(GenericGrpcService.class);
+        jsonObjectWriter = getExternalOpencgaObjectMapper().writer();
+        this.configuration = configuration;
+        this.storageConfiguration = storageConfiguration;
+        this.variantStorageManager = variantStorageManager;
+    }
+
     private void initOpenCGAObjects() throws CatalogException {
 
         catalogManager = new CatalogManager(configuration);
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.server.grpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Outbound flow control for server streaming calls.
+ *
+ * Blocks the producer while the transport is not ready to accept more messages, so slow clients do not make the
+ * server buffer the whole response in memory.
+ *
+ * The onReady handler is executed by the call executor, which is busy running the blocking request handler, so it is
+ * usually delayed until the handler returns. Therefore, the readiness is also polled periodically.
+ *
+ * Created on 17/10/26.
+ */
+public class GrpcFlowControl {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final ServerCallStreamObserver<?> streamObserver;
+    private final Object lock = new Object();
+    private long blockedNanos = 0;
+    private int blockedCount = 0;
+
+    /**
+     * Create a flow control for the given observer. Must be called within the request handler.
+     *
+     * @param streamObserver Response stream observer
+     */
+    public GrpcFlowControl(StreamObserver<?> streamObserver) {
+        if (streamObserver instanceof ServerCallStreamObserver) {
+            this.streamObserver = (ServerCallStreamObserver<?>) streamObserver;
+            this.streamObserver.setOnReadyHandler(this::signal);
+        } else {
+            this.streamObserver = null;
+        }
+    }
+
+    /**
+     * Wait until the transport is ready to accept a new message.
+     *
+     * @return false if the call was cancelled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitReady() throws InterruptedException {
+        if (streamObserver == null) {
+            return true;
+        }
+        if (!streamObserver.isReady()) {
+            long start = System.nanoTime();
+            blockedCount++;
+            synchronized (lock) {
+                while (!streamObserver.isReady() && !streamObserver.isCancelled()) {
+                    lock.wait(POLL_MILLIS);
+                }
+            }
+            blockedNanos += System.nanoTime() - start;
+        }
+        return !streamObserver.isCancelled();
+    }
+
+    /**
+     * @return Total time in milliseconds the producer was blocked waiting for the client
+     */
+    public long getBlockedTimeMillis() {
+        return blockedNanos / 1000000;
+    }
+
+    /**
+     * @return Number of times the producer was blocked waiting for the client
+     */
+    public int getBlockedCount() {
+        return blockedCount;
+    }
+
+    private void signal() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+}
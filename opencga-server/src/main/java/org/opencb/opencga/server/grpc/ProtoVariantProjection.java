@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.server.grpc;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.protobuf.VariantProto;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
+
+import java.util.*;
+
+/**
+ * Removes from the protobuf variants all the fields not included in the query projection.
+ *
+ * Uses the same {@link VariantField}s as {@link QueryOptions#INCLUDE} and {@link QueryOptions#EXCLUDE}.
+ * Fields explicitly included must exist in the protobuf model. Excluded fields not present in the protobuf model are ignored.
+ *
+ * Created on 17/10/26.
+ */
+public class ProtoVariantProjection {
+
+    // Fields required to identify the variant. Never removed.
+    private static final Set<VariantField> REQUIRED_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            VariantField.CHROMOSOME,
+            VariantField.START,
+            VariantField.END,
+            VariantField.REFERENCE,
+            VariantField.ALTERNATE));
+
+    private final List<String> variantFields = new ArrayList<>();
+    private final List<String> studyFields = new ArrayList<>();
+    private final List<String> annotationFields = new ArrayList<>();
+
+    /**
+     * Create a projection from the {@link QueryOptions#INCLUDE} and {@link QueryOptions#EXCLUDE} of the query options.
+     *
+     * @param options Query options
+     * @throws VariantQueryException if any included field is unknown, or not available in the protobuf model
+     */
+    public ProtoVariantProjection(QueryOptions options) {
+        this(VariantField.getIncludeFields(options));
+        for (String include : options.getAsStringList(QueryOptions.INCLUDE)) {
+            if (StringUtils.isEmpty(include)) {
+                continue;
+            }
+            VariantField field = VariantField.get(include);
+            if (field == null) {
+                throw VariantQueryException.unknownVariantField(QueryOptions.INCLUDE, include);
+            }
+            if (!isAvailable(field)) {
+                throw new VariantQueryException("Variant field '" + include + "' from " + QueryOptions.INCLUDE
+                        + " is not available in the protobuf variant model");
+            }
+        }
+    }
+
+    public ProtoVariantProjection(Set<VariantField> includeFields) {
+        for (VariantField field : VariantField.values()) {
+            if (includeFields.contains(field) || REQUIRED_FIELDS.contains(field)) {
+                continue;
+            }
+            if (field.getParent() == null) {
+                variantFields.add(field.fieldName());
+            } else if (includeFields.contains(field.getParent())) {
+                String childName = StringUtils.substringAfter(field.fieldName(), ".");
+                if (field.getParent() == VariantField.STUDIES) {
+                    studyFields.add(childName);
+                } else if (field.getParent() == VariantField.ANNOTATION) {
+                    annotationFields.add(childName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a variant field exists in the protobuf model.
+     *
+     * @param field Variant field
+     * @return If the field is present in the protobuf variant, or in the protobuf study or annotation for nested fields
+     */
+    public static boolean isAvailable(VariantField field) {
+        Descriptors.Descriptor descriptor = VariantProto.Variant.getDescriptor();
+        if (field.getParent() == null) {
+            return findField(descriptor, field.fieldName()) != null;
+        }
+        Descriptors.FieldDescriptor parent = findField(descriptor, field.getParent().fieldName());
+        if (parent == null || parent.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+            return false;
+        }
+        return findField(parent.getMessageType(), StringUtils.substringAfter(field.fieldName(), ".")) != null;
+    }
+
+    /**
+     * @return If this projection does not remove any field
+     */
+    public boolean isEmpty() {
+        return variantFields.isEmpty() && studyFields.isEmpty() && annotationFields.isEmpty();
+    }
+
+    /**
+     * Apply the projection to a variant.
+     *
+     * @param variant Protobuf variant
+     * @return Variant without the excluded fields
+     */
+    public VariantProto.Variant apply(VariantProto.Variant variant) {
+        if (isEmpty()) {
+            return variant;
+        }
+        VariantProto.Variant.Builder builder = variant.toBuilder();
+        clearFields(builder, variantFields);
+
+        if (!studyFields.isEmpty()) {
+            Descriptors.FieldDescriptor studies = findField(builder.getDescriptorForType(), VariantField.STUDIES.fieldName());
+            if (studies != null && studies.isRepeated()) {
+                for (int i = 0; i < builder.getRepeatedFieldCount(studies); i++) {
+                    Message.Builder study = ((Message) builder.getRepeatedField(studies, i)).toBuilder();
+                    clearFields(study, studyFields);
+                    builder.setRepeatedField(studies, i, study.build());
+                }
+            }
+        }
+        if (!annotationFields.isEmpty()) {
+            Descriptors.FieldDescriptor annotation = findField(builder.getDescriptorForType(), VariantField.ANNOTATION.fieldName());
+            if (annotation != null && !annotation.isRepeated() && builder.hasField(annotation)) {
+                Message.Builder annotationBuilder = ((Message) builder.getField(annotation)).toBuilder();
+                clearFields(annotationBuilder, annotationFields);
+                builder.setField(annotation, annotationBuilder.build());
+            }
+        }
+        return builder.build();
+    }
+
+    private static void clearFields(Message.Builder builder, List<String> fieldNames) {
+        Descriptors.Descriptor descriptor = builder.getDescriptorForType();
+        for (String fieldName : fieldNames) {
+            Descriptors.FieldDescriptor field = findField(descriptor, fieldName);
+            if (field != null) {
+                builder.clearField(field);
+            }
+        }
+    }
+
+    // Fields are named as in the VariantField, or in snake case in the protobuf model
+    private static Descriptors.FieldDescriptor findField(Descriptors.Descriptor descriptor, String fieldName) {
+        Descriptors.FieldDescriptor field = descriptor.findFieldByName(fieldName);
+        if (field == null) {
+            for (Descriptors.FieldDescriptor fieldDescriptor : descriptor.getFields()) {
+                if (fieldDescriptor.getJsonName().equals(fieldName)) {
+                    return fieldDescriptor;
+                }
+            }
+        }
+        return field;
+    }
+}
@@ -17,14 +17,16 @@
 package org.opencb.opencga.server.grpc;
 
 import io.grpc.stub.StreamObserver;
-import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.protobuf.VariantProto;
 import org.opencb.biodata.tools.variant.converters.proto.VariantAvroToVariantProtoConverter;
 import org.opencb.commons.datastore.core.Event;
 import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.analysis.variant.manager.VariantStorageManager;
 import org.opencb.opencga.core.common.ExceptionUtils;
+import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.server.grpc.VariantServiceGrpc.VariantServiceImplBase;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,7 +35,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.opencb.opencga.server.grpc.GenericServiceModel.Request;
+import static org.opencb.opencga.server.grpc.GenericServiceModel.VariantBatchResponse;
 import static org.opencb.opencga.server.grpc.GenericServiceModel.VariantResponse;
+import static org.opencb.opencga.server.grpc.VariantServiceGrpc.getQueryBatchMethod;
 import static org.opencb.opencga.server.grpc.VariantServiceGrpc.getQueryMethod;
 
 /**
@@ -41,6 +45,18 @@ import static org.opencb.opencga.server.grpc.VariantServiceGrpc.getQueryMethod;
  */
 public class VariantGrpcService extends VariantServiceImplBase {
 
+    /**
+     * Number of variants per message in {@link #queryBatch}.
+     */
+    public static final String RESPONSE_BATCH_SIZE = "responseBatchSize";
+    public static final int DEFAULT_RESPONSE_BATCH_SIZE = 100;
+    /**
+     * Remove from the response all the fields not included with {@link QueryOptions#INCLUDE} or {@link QueryOptions#EXCLUDE}.
+     */
+    public static final String COMPACT = "compact";
+    // Flush batches bigger than this, far below the default max inbound message size of 4MB
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
     private final GenericGrpcService genericGrpcService;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -54,72 +70,182 @@ public class VariantGrpcService extends VariantServiceImplBase {
     @Override
     public void query(Request request, StreamObserver<VariantResponse> responseObserver) {
         genericGrpcService.run(getQueryMethod(), request, responseObserver, (query, queryOptions) -> {
-            Query variantQuery = VariantStorageManager.getVariantQuery(queryOptions);
-            query.putAll(variantQuery);
-//            Map<String, String> queryMap = new HashMap<>();
-//            Map<String, String> queryOptionsMap = new HashMap<>();
-//            for (String key : queryOptions.keySet()) {
-//                if (query.containsKey(key)) {
-//                    queryMap.put(key, query.getString(key));
-//                } else {
-//                    queryOptionsMap.put(key, queryOptions.getString(key));
-//                }
-//            }
-
-            VariantAvroToVariantProtoConverter converter = new VariantAvroToVariantProtoConverter();
-            int i = 0;
-            List<org.opencb.opencga.server.grpc.GenericServiceModel.Event> events = null;
-            try (VariantDBIterator iterator = variantStorageManager.iterator(query, queryOptions, request.getToken())) {
-                if (iterator.getEvents() != null) {
-                    events = new ArrayList<>(iterator.getEvents().size());
-                    for (Event event : iterator.getEvents()) {
-                        org.opencb.opencga.server.grpc.GenericServiceModel.Event.Builder eventB =
-                                org.opencb.opencga.server.grpc.GenericServiceModel.Event.newBuilder();
-                        if (event.getMessage() != null) {
-                            eventB.setMessage(event.getMessage());
+            moveToQueryOptions(query, queryOptions);
+            queryOptions.remove(RESPONSE_BATCH_SIZE);
+            return query(request, query, queryOptions, responseObserver, 1,
+                    (variants, events, count) -> {
+                        VariantResponse.Builder responseBuilder = VariantResponse.newBuilder();
+                        if (events != null) {
+                            responseBuilder.addAllEvent(events);
                         }
-                        if (event.getType() != null) {
-                            eventB.setType(event.getType().name());
+                        return responseBuilder
+                                .setVariant(variants.get(0))
+                                .setCount(count)
+                                .build();
+                    },
+                    (events, e) -> {
+                        VariantResponse.Builder responseBuilder = VariantResponse.newBuilder();
+                        if (events != null) {
+                            responseBuilder.addAllEvent(events);
                         }
-                        if (event.getName() != null) {
-                            eventB.setName(event.getName());
+                        return responseBuilder
+                                .setError(e.getMessage())
+                                .setErrorFull(ExceptionUtils.prettyExceptionMessage(e))
+                                .setStackTrace(ExceptionUtils.prettyExceptionStackTrace(e))
+                                .build();
+                    });
+        });
+    }
+
+    @Override
+    public void queryBatch(Request request, StreamObserver<VariantBatchResponse> responseObserver) {
+        genericGrpcService.run(getQueryBatchMethod(), request, responseObserver, (query, queryOptions) -> {
+            moveToQueryOptions(query, queryOptions);
+            int batchSize = Math.max(1, queryOptions.getInt(RESPONSE_BATCH_SIZE, DEFAULT_RESPONSE_BATCH_SIZE));
+            queryOptions.remove(RESPONSE_BATCH_SIZE);
+            return query(request, query, queryOptions, responseObserver, batchSize,
+                    (variants, events, count) -> {
+                        VariantBatchResponse.Builder responseBuilder = VariantBatchResponse.newBuilder();
+                        if (events != null) {
+                            responseBuilder.addAllEvent(events);
                         }
-                        if (event.getId() != null) {
-                            eventB.setId(event.getId());
+                        return responseBuilder
+                                .addAllVariants(variants)
+                                .setCount(count)
+                                .build();
+                    },
+                    (events, e) -> {
+                        VariantBatchResponse.Builder responseBuilder = VariantBatchResponse.newBuilder();
+                        if (events != null) {
+                            responseBuilder.addAllEvent(events);
                         }
-                        eventB.setCode(event.getCode());
-                        events.add(eventB.build());
-                    }
+                        return responseBuilder
+                                .setError(e.getMessage())
+                                .setErrorFull(ExceptionUtils.prettyExceptionMessage(e))
+                                .setStackTrace(ExceptionUtils.prettyExceptionStackTrace(e))
+                                .build();
+                    });
+        });
+    }
+
+    /**
+     * Params of this service not known by {@link org.opencb.opencga.server.OpenCGAServerUtils#parseParams} are parsed as query params.
+     *
+     * @param query        Query
+     * @param queryOptions QueryOptions
+     */
+    private static void moveToQueryOptions(Query query, QueryOptions queryOptions) {
+        for (String key : new String[]{RESPONSE_BATCH_SIZE, COMPACT}) {
+            if (query.containsKey(key)) {
+                queryOptions.putIfAbsent(key, query.remove(key));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseBuilder<R> {
+        R build(List<VariantProto.Variant> variants, List<GenericServiceModel.Event> events, int count);
+    }
+
+    @FunctionalInterface
+    private interface ErrorResponseBuilder<R> {
+        R build(List<GenericServiceModel.Event> events, Exception e);
+    }
+
+    /**
+     * Stream the variants from the query, waiting for the client to be ready before sending each message.
+     *
+     * @param request           Request
+     * @param query             Query
+     * @param queryOptions      QueryOptions
+     * @param responseObserver  Response observer
+     * @param batchSize         Max number of variants per message
+     * @param responseBuilder   Build the response message from a batch of variants
+     * @param errorBuilder      Build the response message from an exception
+     * @param <R>               Response message type
+     * @return                  Number of variants sent
+     * @throws Exception        on error
+     */
+    private <R> int query(Request request, Query query, QueryOptions queryOptions, StreamObserver<R> responseObserver, int batchSize,
+                          ResponseBuilder<R> responseBuilder, ErrorResponseBuilder<R> errorBuilder) throws Exception {
+        Query variantQuery = VariantStorageManager.getVariantQuery(queryOptions);
+        query.putAll(variantQuery);
+
+        ProtoVariantProjection projection = null;
+        if (queryOptions.getBoolean(COMPACT, false)) {
+            try {
+                projection = new ProtoVariantProjection(queryOptions);
+            } catch (VariantQueryException e) {
+                responseObserver.onNext(errorBuilder.build(null, e));
+                throw e;
+            }
+        }
+        queryOptions.remove(COMPACT);
+
+        GrpcFlowControl flowControl = new GrpcFlowControl(responseObserver);
+        VariantAvroToVariantProtoConverter converter = new VariantAvroToVariantProtoConverter();
+        List<VariantProto.Variant> batch = new ArrayList<>(batchSize);
+        int batchBytes = 0;
+        int count = 0;
+        List<GenericServiceModel.Event> events = null;
+        try (VariantDBIterator iterator = variantStorageManager.iterator(query, queryOptions, request.getToken())) {
+            events = convertEvents(iterator.getEvents());
+            while (iterator.hasNext()) {
+                VariantProto.Variant variantProto = converter.convert(iterator.next());
+                if (projection != null) {
+                    variantProto = projection.apply(variantProto);
                 }
-                while (iterator.hasNext() && !genericGrpcService.isCancelled(responseObserver)) {
-                    Variant variant = iterator.next();
-                    VariantProto.Variant variantProto = converter.convert(variant);
-                    VariantResponse.Builder responseBuilder = VariantResponse.newBuilder();
-                    if (events != null) {
-                        responseBuilder.addAllEvent(events);
-                        events = null;
+                batch.add(variantProto);
+                batchBytes += variantProto.getSerializedSize();
+                if (batch.size() >= batchSize || batchBytes >= MAX_BATCH_BYTES) {
+                    if (!flowControl.awaitReady()) {
+                        break;
                     }
-                    VariantResponse response = responseBuilder
-                            .setVariant(variantProto)
-                            .setCount(i++)
-                            .build();
-                    responseObserver.onNext(response);
-                }
-            } catch (Exception e) {
-                VariantResponse.Builder responseBuilder = VariantResponse.newBuilder();
-                if (events != null) {
-                    responseBuilder.addAllEvent(events);
+                    responseObserver.onNext(responseBuilder.build(batch, events, count));
+                    events = null;
+                    count += batch.size();
+                    batch.clear();
+                    batchBytes = 0;
                 }
-                VariantResponse response = responseBuilder
-                        .setError(e.getMessage())
-                        .setErrorFull(ExceptionUtils.prettyExceptionMessage(e))
-                        .setStackTrace(ExceptionUtils.prettyExceptionStackTrace(e))
-                        .build();
-                responseObserver.onNext(response);
-                throw e;
             }
-            return i;
-        });
+            if (!batch.isEmpty() && flowControl.awaitReady()) {
+                responseObserver.onNext(responseBuilder.build(batch, events, count));
+                count += batch.size();
+            }
+        } catch (Exception e) {
+            responseObserver.onNext(errorBuilder.build(events, e));
+            throw e;
+        }
+        if (flowControl.getBlockedCount() > 0) {
+            logger.info("Response blocked {} times waiting for the client. Total blocked time: {}",
+                    flowControl.getBlockedCount(), TimeUtils.durationToString(flowControl.getBlockedTimeMillis()));
+        }
+        return count;
+    }
+
+    private static List<GenericServiceModel.Event> convertEvents(List<Event> events) {
+        if (events == null) {
+            return null;
+        }
+        List<GenericServiceModel.Event> eventsProto = new ArrayList<>(events.size());
+        for (Event event : events) {
+            GenericServiceModel.Event.Builder eventB = GenericServiceModel.Event.newBuilder();
+            if (event.getMessage() != null) {
+                eventB.setMessage(event.getMessage());
+            }
+            if (event.getType() != null) {
+                eventB.setType(event.getType().name());
+            }
+            if (event.getName() != null) {
+                eventB.setName(event.getName());
+            }
+            if (event.getId() != null) {
+                eventB.setId(event.getId());
+            }
+            eventB.setCode(event.getCode());
+            eventsProto.add(eventB.build());
+        }
+        return eventsProto;
     }
 
 }
@@ -38,6 +38,7 @@ import org.opencb.opencga.server.rest.analysis.AlignmentWebService;
 import org.opencb.opencga.server.rest.analysis.ClinicalWebService;
 import org.opencb.opencga.server.rest.analysis.VariantWebService;
 import org.opencb.opencga.server.rest.operations.VariantOperationWebService;
+import org.opencb.opencga.storage.core.variant.query.metrics.VariantQueryMetricsRegistry;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
@@ -113,6 +114,14 @@ public class MetaWSServer extends OpenCGAWSServer {
         }
     }
 
+    @GET
+    @Path("/metrics")
+    @Produces("text/plain")
+    @ApiOperation(httpMethod = "GET", value = "Variant query metrics in Prometheus text format.", response = String.class)
+    public Response metrics() {
+        return Response.ok(VariantQueryMetricsRegistry.getInstance().scrape(), "text/plain; version=0.0.4").build();
+    }
+
     @GET
     @Path("/model")
     @ApiOperation(value = "Opencga model webservices.", response = String.class)
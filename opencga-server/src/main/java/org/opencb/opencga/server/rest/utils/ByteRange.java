@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.server.rest.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Inclusive byte range from an HTTP "Range" header.
+ *
+ * Created on 17/10/26.
+ */
+public final class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long from;
+    private final long to;
+
+    public ByteRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parse the value of an HTTP "Range" header. Accepts multiple ranges, open ended ranges "bytes=N-"
+     * and suffix ranges "bytes=-N". Ranges exceeding the file size are truncated, and unsatisfiable ranges are discarded.
+     *
+     * @param header   Range header value. e.g. "bytes=0-99,200-,-100"
+     * @param fileSize Size of the file
+     * @return List of satisfiable ranges. Empty if none of the ranges can be satisfied.
+     * @throws IllegalArgumentException if the header is malformed
+     */
+    public static List<ByteRange> parse(String header, long fileSize) {
+        if (header == null || !header.trim().startsWith(BYTES_UNIT)) {
+            throw new IllegalArgumentException("Unsupported range '" + header + "'. Expected '" + BYTES_UNIT + "{from}-{to}'");
+        }
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String range : header.trim().substring(BYTES_UNIT.length()).split(",")) {
+            range = range.trim();
+            int idx = range.indexOf('-');
+            if (idx < 0 || range.length() == 1) {
+                throw new IllegalArgumentException("Malformed range '" + range + "'");
+            }
+            String fromStr = range.substring(0, idx).trim();
+            String toStr = range.substring(idx + 1).trim();
+            long from;
+            long to;
+            try {
+                if (fromStr.isEmpty()) {
+                    // Suffix range. Last N bytes
+                    long suffix = Long.parseLong(toStr);
+                    from = Math.max(0, fileSize - suffix);
+                    to = fileSize - 1;
+                } else {
+                    from = Long.parseLong(fromStr);
+                    to = StringUtils.isEmpty(toStr) ? fileSize - 1 : Math.min(Long.parseLong(toStr), fileSize - 1);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed range '" + range + "'", e);
+            }
+            if (from < 0 || (!fromStr.isEmpty() && !toStr.isEmpty() && Long.parseLong(toStr) < from)) {
+                throw new IllegalArgumentException("Malformed range '" + range + "'");
+            }
+            if (from < fileSize && from <= to) {
+                ranges.add(new ByteRange(from, to));
+            }
+        }
+        return ranges;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public long length() {
+        return to - from + 1;
+    }
+
+    public String toContentRange(long fileSize) {
+        return "bytes " + from + "-" + to + "/" + fileSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ByteRange byteRange = (ByteRange) o;
+        return from == byteRange.from && to == byteRange.to;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return from + "-" + to;
+    }
+}
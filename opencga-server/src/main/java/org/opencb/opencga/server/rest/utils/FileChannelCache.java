@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.server.rest.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * LRU cache of read-only file channels.
+ *
+ * Channels are reference counted. A channel evicted from the cache is closed once all the handles using it are closed.
+ * If the file was modified since the channel was opened, a new channel is opened.
+ *
+ * Positional reads (e.g. {@link FileChannel#transferTo}) do not modify the channel position, so a channel can be
+ * shared by concurrent requests.
+ *
+ * Created on 17/10/26.
+ */
+public class FileChannelCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Logger logger = LoggerFactory.getLogger(FileChannelCache.class);
+
+    public FileChannelCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a channel for the given file. The handle must be closed after use.
+     *
+     * @param path File path
+     * @return Handle to the file channel
+     * @throws IOException if the file can not be opened
+     */
+    public Handle acquire(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        List<Entry> toClose = new ArrayList<>();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(path);
+            if (entry != null && (entry.lastModified != lastModified || entry.size != size)) {
+                entries.remove(path);
+                entry.evicted = true;
+                if (entry.references == 0) {
+                    toClose.add(entry);
+                }
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(FileChannel.open(path, StandardOpenOption.READ), lastModified, size);
+                entries.put(path, entry);
+                Iterator<Entry> iterator = entries.values().iterator();
+                while (entries.size() > maxSize && iterator.hasNext()) {
+                    Entry eldest = iterator.next();
+                    iterator.remove();
+                    eldest.evicted = true;
+                    if (eldest.references == 0) {
+                        toClose.add(eldest);
+                    }
+                }
+            }
+            entry.references++;
+        }
+        for (Entry e : toClose) {
+            close(e);
+        }
+        return new Handle(entry);
+    }
+
+    /**
+     * Close all the channels not in use.
+     */
+    public void clear() {
+        List<Entry> toClose = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                entry.evicted = true;
+                if (entry.references == 0) {
+                    toClose.add(entry);
+                }
+            }
+            entries.clear();
+        }
+        for (Entry entry : toClose) {
+            close(entry);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void release(Entry entry) {
+        boolean close;
+        synchronized (this) {
+            entry.references--;
+            close = entry.evicted && entry.references == 0;
+        }
+        if (close) {
+            close(entry);
+        }
+    }
+
+    private void close(Entry entry) {
+        try {
+            entry.channel.close();
+        } catch (IOException e) {
+            logger.warn("Error closing file channel", e);
+        }
+    }
+
+    private static final class Entry {
+        private final FileChannel channel;
+        private final long lastModified;
+        private final long size;
+        private int references = 0;
+        private boolean evicted = false;
+
+        private Entry(FileChannel channel, long lastModified, long size) {
+            this.channel = channel;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Handle to a cached file channel. Closing the handle does not close the channel.
+     */
+    public final class Handle implements AutoCloseable {
+        private final Entry entry;
+        private boolean closed = false;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public FileChannel getChannel() {
+            return entry.channel;
+        }
+
+        /**
+         * @return Size of the file when the channel was opened
+         */
+        public long getSize() {
+            return entry.size;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+}
@@ -29,18 +29,27 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 @Path("/{apiVersion}/utils")
 @Produces("application/json")
 public class FileRangesWSServer extends OpenCGAWSServer {
 
+    // Shared by all the requests, as there is one instance of this class per request
+    private static final FileChannelCache FILE_CHANNEL_CACHE = new FileChannelCache(64);
+    private static final long MAX_TRANSFER_SIZE = 8 * 1024 * 1024;
+
     public FileRangesWSServer(@Context UriInfo uriInfo, @Context HttpServletRequest httpServletRequest, @Context HttpHeaders headerParam)
             throws IOException, VersionException {
         super(uriInfo, httpServletRequest, headerParam);
@@ -60,44 +69,113 @@ public class FileRangesWSServer extends OpenCGAWSServer {
             File file = queryResult.getResults().get(0);
 
             List<String> rangeList = headers.getRequestHeader("range");
-            if (rangeList != null) {
-                long from;
-                long to;
-                String[] acceptedRanges = rangeList.get(0).split("=")[1].split("-");
-                from = Long.parseLong(acceptedRanges[0]);
-                to = Long.parseLong(acceptedRanges[1]);
-                int length = (int) (to - from) + 1;
-                ByteBuffer buf = ByteBuffer.allocate(length);
+            if (rangeList != null && !rangeList.isEmpty()) {
+                Response response = getRanges(file, rangeList.get(0));
+                if (response != null) {
+                    return response;
+                }
+            }
+            DataInputStream stream = catalogManager.getFileManager().download(studyStr, fileIdStr, -1, -1, token);
+            return createOkResponse(stream, MediaType.APPLICATION_OCTET_STREAM_TYPE, file.getName());
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
 
-                logger.debug("from: {} , to: {}, length:{}", from, to, length);
-                StopWatch t = StopWatch.createStarted();
+    /**
+     * Build a partial content response for the given Range header.
+     *
+     * The file channel is only acquired while the response is being written, so it can not leak if the response is never sent.
+     *
+     * @param file        File to read
+     * @param rangeHeader Value of the Range header
+     * @return Partial content response, or null if the Range header is malformed and should be ignored
+     * @throws IOException if the file can not be read
+     */
+    private Response getRanges(File file, String rangeHeader) throws IOException {
+        java.nio.file.Path filePath = Paths.get(file.getUri());
+        long fileSize = Files.size(filePath);
+        List<ByteRange> ranges;
+        try {
+            ranges = ByteRange.parse(rangeHeader, fileSize);
+        } catch (IllegalArgumentException e) {
+            // RFC 7233: An unparseable Range header is ignored, serving the whole file
+            logger.debug("Ignore malformed range '{}'", rangeHeader, e);
+            return null;
+        }
+        logger.debug("Ranges: {}, fileSize: {}", ranges, fileSize);
+        if (ranges.isEmpty()) {
+            return addRangeHeaders(Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE))
+                    .header("Content-Range", "bytes */" + fileSize)
+                    .build();
+        }
 
-                java.nio.file.Path filePath = Paths.get(file.getUri());
-                try (FileChannel fc = (FileChannel.open(filePath, StandardOpenOption.READ))) {
-                    fc.position(from);
-                    fc.read(buf);
+        Response.ResponseBuilder responseBuilder;
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            StreamingOutput output = outputStream -> {
+                try (FileChannelCache.Handle handle = FILE_CHANNEL_CACHE.acquire(filePath)) {
+                    transfer(handle, range, Channels.newChannel(outputStream));
                 }
+            };
+            responseBuilder = Response.ok(output, MediaType.APPLICATION_OCTET_STREAM_TYPE)
+                    .header("Content-Range", range.toContentRange(fileSize))
+                    .header("Content-length", range.length());
+        } else {
+            String boundary = UUID.randomUUID().toString();
+            List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+            long contentLength = 0;
+            for (ByteRange range : ranges) {
+                byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                        + "Content-Type: " + MediaType.APPLICATION_OCTET_STREAM + "\r\n"
+                        + "Content-Range: " + range.toContentRange(fileSize) + "\r\n"
+                        + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                partHeaders.add(partHeader);
+                contentLength += partHeader.length + range.length();
+            }
+            byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            contentLength += end.length;
+            StreamingOutput output = outputStream -> {
+                try (FileChannelCache.Handle handle = FILE_CHANNEL_CACHE.acquire(filePath)) {
+                    WritableByteChannel target = Channels.newChannel(outputStream);
+                    for (int i = 0; i < ranges.size(); i++) {
+                        outputStream.write(partHeaders.get(i));
+                        transfer(handle, ranges.get(i), target);
+                    }
+                    outputStream.write(end);
+                }
+            };
+            responseBuilder = Response.ok(output, "multipart/byteranges; boundary=" + boundary)
+                    .header("Content-length", contentLength);
+        }
+        return addRangeHeaders(responseBuilder)
+                .status(Response.Status.PARTIAL_CONTENT)
+                .build();
+    }
 
-                t.stop();
-                logger.debug("Skip {}B and read {}B in {}s", from, length, t.getTime(TimeUnit.MILLISECONDS) / 1000.0);
-
-                return Response.ok(buf.array(), MediaType.APPLICATION_OCTET_STREAM_TYPE)
-                        .header("Accept-Ranges", "bytes")
-                        .header("Access-Control-Allow-Origin", "*")
-                        .header("Access-Control-Allow-Headers", "x-requested-with, content-type, range")
-                        .header("Access-Control-Allow-Credentials", "true")
-                        .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS")
-                        .header("Content-Range", "bytes " + from + "-" + to + "/" + file.getSize())
-                        .header("Content-length", to - from + 1)
-                        .status(Response.Status.PARTIAL_CONTENT).build();
+    private Response.ResponseBuilder addRangeHeaders(Response.ResponseBuilder responseBuilder) {
+        return responseBuilder
+                .header("Accept-Ranges", "bytes")
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Headers", "x-requested-with, content-type, range")
+                .header("Access-Control-Allow-Credentials", "true")
+                .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+    }
 
-            } else {
-                DataInputStream stream = catalogManager.getFileManager().download(studyStr, fileIdStr, -1, -1, token);
-                return createOkResponse(stream, MediaType.APPLICATION_OCTET_STREAM_TYPE, file.getName());
+    private void transfer(FileChannelCache.Handle handle, ByteRange range, WritableByteChannel target) throws IOException {
+        StopWatch stopWatch = StopWatch.createStarted();
+        FileChannel channel = handle.getChannel();
+        long position = range.getFrom();
+        long remaining = range.length();
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, Math.min(remaining, MAX_TRANSFER_SIZE), target);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of file at position " + position);
             }
-        } catch (Exception e) {
-            return createErrorResponse(e);
+            position += transferred;
+            remaining -= transferred;
         }
+        logger.debug("Skip {}B and read {}B in {}s", range.getFrom(), range.length(), stopWatch.getTime(TimeUnit.MILLISECONDS) / 1000.0);
     }
 
 }
@@ -1,27 +1,52 @@
 package org.opencb.opencga.server.grpc;
 
 import io.grpc.*;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.opencb.biodata.models.variant.protobuf.VariantProto;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.analysis.variant.manager.VariantStorageManager;
 import org.opencb.opencga.core.common.ExceptionUtils;
+import org.opencb.opencga.core.config.storage.StorageConfiguration;
+import org.opencb.opencga.storage.core.StorageEngineFactory;
+import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageEngine;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.opencb.opencga.server.grpc.GenericServiceModel.*;
 
 public class GrpcServerTest {
 
+    // Variants returned by the DummyVariantDBAdaptor
+    private static final List<String> DUMMY_CHROMOSOMES = Arrays.asList(
+            "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18", "19", "20", "21", "22",
+            "X", "Y", "MT");
+
     private Server server;
+    private Server variantServer;
     private org.opencb.opencga.server.grpc.VariantServiceGrpc.VariantServiceBlockingStub variantServiceBlockingStub;
+    private org.opencb.opencga.server.grpc.VariantServiceGrpc.VariantServiceBlockingStub dummyVariantServiceBlockingStub;
     private org.opencb.opencga.server.grpc.AdminServiceGrpc.AdminServiceBlockingStub adminServiceBlockingStub;
     private int port;
+    private DummyVariantStorageManager dummyVariantStorageManager;
+    private VariantGrpcService variantGrpcService;
 
     @Before
     public void setUp() throws Exception {
@@ -42,6 +67,30 @@ public class GrpcServerTest {
         variantServiceBlockingStub = org.opencb.opencga.server.grpc.VariantServiceGrpc.newBlockingStub(channel);
         adminServiceBlockingStub = org.opencb.opencga.server.grpc.AdminServiceGrpc.newBlockingStub(channel);
 
+        // Real VariantGrpcService, reading from the dummy storage engine
+        StorageConfiguration storageConfiguration;
+        try (InputStream is = DummyVariantStorageEngine.class.getClassLoader().getResourceAsStream("storage-configuration.yml")) {
+            storageConfiguration = StorageConfiguration.load(is);
+        }
+        StorageEngineFactory storageEngineFactory = StorageEngineFactory.get(storageConfiguration);
+        DummyVariantStorageEngine.configure(storageEngineFactory, true);
+        VariantStorageEngine engine = storageEngineFactory
+                .getVariantStorageEngine(DummyVariantStorageEngine.STORAGE_ENGINE_ID, "grpc_test");
+        VariantStorageMetadataManager metadataManager = engine.getMetadataManager();
+        StudyMetadata study = metadataManager.createStudy("study");
+        int fileId = metadataManager.registerFile(study.getId(), "file.vcf", Arrays.asList("S1", "S2"));
+        metadataManager.addIndexedFiles(study.getId(), Collections.singletonList(fileId));
+
+        dummyVariantStorageManager = new DummyVariantStorageManager(storageEngineFactory, engine);
+        variantGrpcService = new VariantGrpcService(new GenericGrpcService(null, storageConfiguration, dummyVariantStorageManager));
+        variantServer = ServerBuilder.forPort(port - 2)
+                .addService(variantGrpcService)
+                .build()
+                .start();
+        dummyVariantServiceBlockingStub = org.opencb.opencga.server.grpc.VariantServiceGrpc.newBlockingStub(
+                ManagedChannelBuilder.forTarget("localhost:" + (port - 2))
+                        .usePlaintext()
+                        .build());
     }
 
     @After
@@ -50,6 +99,10 @@ public class GrpcServerTest {
             server.shutdown();
             server.awaitTermination();
         }
+        if (variantServer != null) {
+            variantServer.shutdown();
+            variantServer.awaitTermination();
+        }
     }
 
     @Test
@@ -128,6 +181,215 @@ public class GrpcServerTest {
         Assert.assertEquals(5, count);
     }
 
+    @Test
+    public void testQuery() throws Exception {
+        Iterator<VariantResponse> iterator = dummyVariantServiceBlockingStub.query(Request.newBuilder().build());
+        List<String> chromosomes = new ArrayList<>();
+        while (iterator.hasNext()) {
+            VariantResponse next = iterator.next();
+            Assert.assertEquals("", next.getError());
+            Assert.assertEquals(chromosomes.size(), next.getCount());
+            chromosomes.add(next.getVariant().getChromosome());
+        }
+        Assert.assertEquals(DUMMY_CHROMOSOMES, chromosomes);
+        Assert.assertEquals(1, dummyVariantStorageManager.closed.get());
+    }
+
+    @Test
+    public void testQueryBatch() throws Exception {
+        // Smaller than, divisor of, non divisor of, equal to and bigger than the number of variants
+        for (int batchSize : Arrays.asList(1, 5, 7, 25, 100)) {
+            List<Integer> batchSizes = new ArrayList<>();
+            List<String> chromosomes = queryBatch(batchSize, batchSizes);
+            Assert.assertEquals("Batch size " + batchSize, DUMMY_CHROMOSOMES, chromosomes);
+            Assert.assertEquals("Batch size " + batchSize,
+                    (DUMMY_CHROMOSOMES.size() + batchSize - 1) / batchSize, batchSizes.size());
+            for (int i = 0; i < batchSizes.size() - 1; i++) {
+                Assert.assertEquals("Batch size " + batchSize, batchSize, batchSizes.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testQueryBatchDefaultSize() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        Assert.assertEquals(DUMMY_CHROMOSOMES, queryBatch(null, batchSizes));
+        Assert.assertEquals(Collections.singletonList(DUMMY_CHROMOSOMES.size()), batchSizes);
+    }
+
+    private List<String> queryBatch(Integer batchSize, List<Integer> batchSizes) {
+        Request.Builder request = Request.newBuilder();
+        if (batchSize != null) {
+            request.putQuery(VariantGrpcService.RESPONSE_BATCH_SIZE, batchSize.toString());
+        }
+        Iterator<VariantBatchResponse> batchIterator = dummyVariantServiceBlockingStub.queryBatch(request.build());
+        List<String> chromosomes = new ArrayList<>();
+        while (batchIterator.hasNext()) {
+            VariantBatchResponse next = batchIterator.next();
+            Assert.assertEquals("", next.getError());
+            Assert.assertEquals(chromosomes.size(), next.getCount());
+            for (VariantProto.Variant variant : next.getVariantsList()) {
+                chromosomes.add(variant.getChromosome());
+            }
+            batchSizes.add(next.getVariantsCount());
+        }
+        return chromosomes;
+    }
+
+    @Test
+    public void testQueryBatchBackpressure() throws Exception {
+        TestServerCallStreamObserver<VariantBatchResponse> observer = new TestServerCallStreamObserver<>();
+        observer.ready = false;
+        Thread thread = new Thread(() -> variantGrpcService.queryBatch(Request.newBuilder()
+                .putQuery(VariantGrpcService.RESPONSE_BATCH_SIZE, "5")
+                .build(), observer));
+        thread.start();
+
+        // The producer waits for the client, without reading more variants than the ones for the first message
+        observer.awaitBlocked();
+        Thread.sleep(200);
+        Assert.assertTrue(thread.isAlive());
+        Assert.assertEquals(0, observer.messages.size());
+        Assert.assertEquals(5, dummyVariantStorageManager.read.get());
+
+        observer.setReady();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertTrue(observer.completed);
+        Assert.assertNull(observer.error);
+        Assert.assertEquals(5, observer.messages.size());
+        for (VariantBatchResponse message : observer.messages) {
+            Assert.assertEquals(5, message.getVariantsCount());
+        }
+        Assert.assertEquals(DUMMY_CHROMOSOMES.size(), dummyVariantStorageManager.read.get());
+        Assert.assertEquals(1, dummyVariantStorageManager.closed.get());
+    }
+
+    @Test
+    public void testQueryBatchCancelled() throws Exception {
+        TestServerCallStreamObserver<VariantBatchResponse> observer = new TestServerCallStreamObserver<>();
+        observer.ready = false;
+        Thread thread = new Thread(() -> variantGrpcService.queryBatch(Request.newBuilder()
+                .putQuery(VariantGrpcService.RESPONSE_BATCH_SIZE, "5")
+                .build(), observer));
+        thread.start();
+
+        observer.awaitBlocked();
+        observer.cancel();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(thread.isAlive());
+
+        // Stop reading from the storage as soon as the client cancels the call
+        Assert.assertEquals(0, observer.messages.size());
+        Assert.assertNull(observer.error);
+        Assert.assertEquals(5, dummyVariantStorageManager.read.get());
+        Assert.assertEquals(1, dummyVariantStorageManager.closed.get());
+    }
+
+    @Test
+    public void testQueryBatchCompactNestedField() throws Exception {
+        VariantProto.Variant variant = dummyVariantServiceBlockingStub.queryBatch(Request.newBuilder()
+                .putQuery(VariantGrpcService.RESPONSE_BATCH_SIZE, "100")
+                .build()).next().getVariants(0);
+        Assert.assertEquals(1, variant.getStudiesCount());
+        Assert.assertEquals(2, variant.getStudies(0).getSamplesCount());
+        Assert.assertEquals(1, variant.getStudies(0).getFilesCount());
+
+        variant = dummyVariantServiceBlockingStub.queryBatch(Request.newBuilder()
+                .putQuery(VariantGrpcService.RESPONSE_BATCH_SIZE, "100")
+                .putQuery(VariantGrpcService.COMPACT, "true")
+                .putQuery(QueryOptions.INCLUDE, VariantField.STUDIES_SAMPLES.fieldName())
+                .build()).next().getVariants(0);
+        Assert.assertEquals("1", variant.getChromosome());
+        Assert.assertEquals(1, variant.getStudiesCount());
+        Assert.assertEquals(2, variant.getStudies(0).getSamplesCount());
+        Assert.assertEquals(0, variant.getStudies(0).getFilesCount());
+        Assert.assertFalse(variant.hasAnnotation());
+    }
+
+    @Test
+    public void testQueryBatchCompactUnknownField() throws Exception {
+        Iterator<VariantBatchResponse> iterator = dummyVariantServiceBlockingStub.queryBatch(Request.newBuilder()
+                .putQuery(VariantGrpcService.COMPACT, "true")
+                .putQuery(QueryOptions.INCLUDE, "studies.unknownField")
+                .build());
+        VariantBatchResponse response = iterator.next();
+        Assert.assertEquals(0, response.getVariantsCount());
+        Assert.assertEquals(VariantQueryException.unknownVariantField(QueryOptions.INCLUDE, "studies.unknownField").getMessage(),
+                response.getError());
+        Assert.assertThrows(StatusRuntimeException.class, iterator::hasNext);
+        // The query is never executed
+        Assert.assertEquals(0, dummyVariantStorageManager.read.get());
+    }
+
+    @Test
+    public void testCompactProjection() throws Exception {
+        VariantProto.Variant variant = VariantProto.Variant.newBuilder()
+                .setId("var1")
+                .addNames("rs1")
+                .setChromosome("1")
+                .setStart(100)
+                .build();
+
+        ProtoVariantProjection projection = new ProtoVariantProjection(VariantField.parseInclude("id"));
+        VariantProto.Variant compact = projection.apply(variant);
+        Assert.assertEquals("var1", compact.getId());
+        Assert.assertEquals("1", compact.getChromosome());
+        Assert.assertEquals(100, compact.getStart());
+        Assert.assertEquals(0, compact.getNamesCount());
+
+        Assert.assertTrue(new ProtoVariantProjection(VariantField.all()).isEmpty());
+        Assert.assertSame(variant, new ProtoVariantProjection(VariantField.all()).apply(variant));
+    }
+
+    @Test
+    public void testCompactProjectionNestedField() throws Exception {
+        VariantProto.Variant variant = VariantProto.Variant.newBuilder()
+                .setChromosome("1")
+                .addStudies(VariantProto.StudyEntry.newBuilder()
+                        .addFiles(VariantProto.FileEntry.newBuilder().build())
+                        .addSamples(VariantProto.SampleEntry.newBuilder().build()))
+                .build();
+
+        VariantProto.Variant compact = new ProtoVariantProjection(new QueryOptions(QueryOptions.INCLUDE, "studies.files")).apply(variant);
+        Assert.assertEquals(1, compact.getStudiesCount());
+        Assert.assertEquals(1, compact.getStudies(0).getFilesCount());
+        Assert.assertEquals(0, compact.getStudies(0).getSamplesCount());
+
+        compact = new ProtoVariantProjection(new QueryOptions(QueryOptions.EXCLUDE, "studies.files")).apply(variant);
+        Assert.assertEquals(0, compact.getStudies(0).getFilesCount());
+        Assert.assertEquals(1, compact.getStudies(0).getSamplesCount());
+    }
+
+    @Test
+    public void testCompactProjectionUnknownField() throws Exception {
+        try {
+            new ProtoVariantProjection(new QueryOptions(QueryOptions.INCLUDE, "id,unknownField"));
+            Assert.fail();
+        } catch (VariantQueryException e) {
+            Assert.assertEquals(VariantQueryException.unknownVariantField(QueryOptions.INCLUDE, "unknownField").getMessage(),
+                    e.getMessage());
+        }
+
+        // Fields from the variant model not available in the protobuf model can not be included
+        VariantField missingField = null;
+        for (VariantField field : VariantField.values()) {
+            if (!ProtoVariantProjection.isAvailable(field)) {
+                missingField = field;
+                break;
+            }
+        }
+        Assume.assumeNotNull(missingField);
+        try {
+            new ProtoVariantProjection(new QueryOptions(QueryOptions.INCLUDE, missingField.fieldName()));
+            Assert.fail();
+        } catch (VariantQueryException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(missingField.fieldName()));
+        }
+        // But they can be excluded
+        new ProtoVariantProjection(new QueryOptions(QueryOptions.EXCLUDE, missingField.fieldName()));
+    }
+
 //    @Test
 //    public void testGrpcClient() throws Exception {
 //        new org.opencb.opencga.client.grpc.OpenCGAGrpcClient("localhost", port).admin().ping();
@@ -181,4 +443,114 @@ public class GrpcServerTest {
             responseObserver.onCompleted();
         }
     }
+
+    /**
+     * VariantStorageManager reading directly from the storage engine, without catalog.
+     */
+    private static class DummyVariantStorageManager extends VariantStorageManager {
+        private final VariantStorageEngine engine;
+        private final AtomicInteger read = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+
+        DummyVariantStorageManager(StorageEngineFactory storageEngineFactory, VariantStorageEngine engine) {
+            super(null, storageEngineFactory);
+            this.engine = engine;
+        }
+
+        @Override
+        public VariantDBIterator iterator(Query query, QueryOptions queryOptions, String token) {
+            return engine.iterator(query, queryOptions)
+                    .map(variant -> {
+                        read.incrementAndGet();
+                        return variant;
+                    })
+                    .addCloseable(closed::incrementAndGet);
+        }
+    }
+
+    /**
+     * Response observer with a controlled transport readiness.
+     */
+    private static class TestServerCallStreamObserver<T> extends ServerCallStreamObserver<T> {
+        private final List<T> messages = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private volatile boolean ready = true;
+        private volatile boolean cancelled = false;
+        private volatile boolean completed = false;
+        private volatile Throwable error;
+        private volatile Runnable onReadyHandler;
+        private volatile Runnable onCancelHandler;
+
+        void awaitBlocked() throws InterruptedException {
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        }
+
+        void setReady() {
+            ready = true;
+            if (onReadyHandler != null) {
+                onReadyHandler.run();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (onCancelHandler != null) {
+                onCancelHandler.run();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+            this.onCancelHandler = onCancelHandler;
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public boolean isReady() {
+            if (!ready) {
+                blocked.countDown();
+            }
+            return ready;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(T value) {
+            messages.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
 }
@@ -0,0 +1,74 @@
+package org.opencb.opencga.server.rest.utils;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class ByteRangeTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(Collections.singletonList(new ByteRange(0, 99)), ByteRange.parse("bytes=0-99", 1000));
+        assertEquals(Collections.singletonList(new ByteRange(500, 999)), ByteRange.parse("bytes=500-", 1000));
+        assertEquals(Collections.singletonList(new ByteRange(900, 999)), ByteRange.parse("bytes=-100", 1000));
+        assertEquals(Collections.singletonList(new ByteRange(900, 999)), ByteRange.parse("bytes=900-5000", 1000));
+        assertEquals(Arrays.asList(new ByteRange(0, 9), new ByteRange(20, 29), new ByteRange(990, 999)),
+                ByteRange.parse("bytes=0-9, 20-29,-10", 1000));
+    }
+
+    @Test
+    public void testParseUnsatisfiable() {
+        assertEquals(Collections.emptyList(), ByteRange.parse("bytes=1000-", 1000));
+        assertEquals(Collections.singletonList(new ByteRange(0, 9)), ByteRange.parse("bytes=0-9,2000-3000", 1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformed() {
+        ByteRange.parse("bytes=10-5", 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseUnknownUnit() {
+        ByteRange.parse("items=0-5", 1000);
+    }
+
+    @Test
+    public void testFileChannelCache() throws IOException {
+        FileChannelCache cache = new FileChannelCache(2);
+        Path file1 = Files.createTempFile("file1", ".bin");
+        Path file2 = Files.createTempFile("file2", ".bin");
+        Path file3 = Files.createTempFile("file3", ".bin");
+        try {
+            Files.write(file1, new byte[]{1, 2, 3});
+            FileChannelCache.Handle handle1 = cache.acquire(file1);
+            try (FileChannelCache.Handle handle = cache.acquire(file1)) {
+                assertSame(handle1.getChannel(), handle.getChannel());
+            }
+            try (FileChannelCache.Handle handle2 = cache.acquire(file2);
+                 FileChannelCache.Handle handle3 = cache.acquire(file3)) {
+                assertEquals(2, cache.size());
+            }
+            // Evicted but still in use
+            ByteBuffer buffer = ByteBuffer.allocate(3);
+            handle1.getChannel().read(buffer, 0);
+            assertArrayEquals(new byte[]{1, 2, 3}, buffer.array());
+            handle1.close();
+            assertFalse(handle1.getChannel().isOpen());
+        } finally {
+            cache.clear();
+            Files.delete(file1);
+            Files.delete(file2);
+            Files.delete(file3);
+        }
+    }
+}
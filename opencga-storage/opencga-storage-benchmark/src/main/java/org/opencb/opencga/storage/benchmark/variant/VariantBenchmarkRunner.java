@@ -19,6 +19,7 @@ package org.opencb.opencga.storage.benchmark.variant;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.google.common.base.Throwables;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jmeter.protocol.http.control.AuthManager;
 import org.apache.jmeter.protocol.http.control.Authorization;
@@ -38,12 +39,16 @@ import org.opencb.opencga.storage.benchmark.variant.samplers.VariantStorageEngin
 import org.opencb.opencga.storage.benchmark.variant.samplers.VariantStorageEngineSampler;
 import org.opencb.opencga.storage.benchmark.variant.samplers.VariantStorageManagerRestSampler;
 import org.opencb.opencga.storage.core.io.plain.StringDataReader;
+import org.opencb.opencga.storage.core.variant.query.metrics.VariantQueryMetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -55,6 +60,7 @@ import java.util.*;
  */
 public class VariantBenchmarkRunner extends BenchmarkRunner {
 
+    public static final String METRICS_REST_PATH = "/webservices/rest/v2/meta/metrics";
     private Logger logger = LoggerFactory.getLogger(getClass());
 
     public VariantBenchmarkRunner(StorageConfiguration storageConfiguration, Path jmeterHome, Path outdir) throws IOException {
@@ -148,6 +154,47 @@ public class VariantBenchmarkRunner extends BenchmarkRunner {
         addThreadGroup(samplers);
     }
 
+    @Override
+    public void run() throws IOException {
+        super.run();
+        scrapeMetrics();
+    }
+
+    /**
+     * Store the variant query metrics, in Prometheus text format, next to the benchmark results.
+     *
+     * For DIRECT connections, the metrics are read from this JVM. For REST connections, from the "meta/metrics" web service.
+     *
+     * @throws IOException on error writing the file
+     */
+    public void scrapeMetrics() throws IOException {
+        String metrics;
+        ConnectionType type = ConnectionType.valueOf(storageConfiguration.getBenchmark().getConnectionType());
+        if (type == ConnectionType.DIRECT) {
+            metrics = VariantQueryMetricsRegistry.getInstance().scrape();
+        } else if (type == ConnectionType.REST) {
+            URI uri = storageConfiguration.getBenchmark().getRest();
+            String path = uri.getPath();
+            if (!path.endsWith(VariantStorageManagerRestSampler.STORAGE_MANAGER_REST_PATH)) {
+                logger.warn("Unable to scrape variant query metrics from " + uri);
+                return;
+            }
+            String basePath = path.substring(0, path.length() - VariantStorageManagerRestSampler.STORAGE_MANAGER_REST_PATH.length());
+            URI metricsUri = uri.resolve(basePath + METRICS_REST_PATH);
+            try (InputStream is = metricsUri.toURL().openStream()) {
+                metrics = IOUtils.toString(is, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                logger.warn("Unable to scrape variant query metrics from " + metricsUri, e);
+                return;
+            }
+        } else {
+            return;
+        }
+        Path metricsFile = outdir.resolve("metrics.prom");
+        Files.write(metricsFile, metrics.getBytes(StandardCharsets.UTF_8));
+        logger.info("Variant query metrics : " + metricsFile);
+    }
+
     public VariantStorageEngineSampler newVariantStorageEngineSampler(ConnectionType type) {
         switch (type) {
             case REST:
@@ -0,0 +1,66 @@
+package org.opencb.opencga.storage.benchmark.sampleindex;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.AlleleSnvCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode the reference and alternate alleles of the variants of a synthetic entry with the {@link AlleleSnvCodec}.
+ *
+ * Created on 17/10/26.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AlleleSnvCodecBenchmark {
+
+    private String[] references;
+    private String[] alternates;
+    private byte[] codes;
+
+    @Setup(Level.Trial)
+    public void setUp(SampleIndexEntryState state) {
+        List<Variant> variants = new ArrayList<>();
+        state.variantsByGt.values().forEach(variants::addAll);
+        references = new String[variants.size()];
+        alternates = new String[variants.size()];
+        List<Byte> snvCodes = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            references[i] = variants.get(i).getReference();
+            alternates[i] = variants.get(i).getAlternate();
+            if (AlleleSnvCodec.valid(references[i], alternates[i])) {
+                snvCodes.add(AlleleSnvCodec.encode(references[i], alternates[i]));
+            }
+        }
+        codes = new byte[snvCodes.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = snvCodes.get(i);
+        }
+    }
+
+    @Benchmark
+    public int validAndEncode() {
+        int acc = 0;
+        for (int i = 0; i < references.length; i++) {
+            if (AlleleSnvCodec.valid(references[i], alternates[i])) {
+                acc ^= AlleleSnvCodec.encode(references[i], alternates[i]);
+            }
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        for (byte code : codes) {
+            blackhole.consume(AlleleSnvCodec.decode(code));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencb.opencga.storage.benchmark.sampleindex;
+
+import org.opencb.opencga.storage.core.io.bit.BitBuffer;
+import org.opencb.opencga.storage.core.io.bit.BitInputStream;
+import org.opencb.opencga.storage.core.io.bit.BitOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write fixed width values with {@link BitBuffer}, {@link BitInputStream} and {@link BitOutputStream}.
+ *
+ * Created on 17/10/26.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BitBufferBenchmark {
+
+    /**
+     * Width in bits of each value. Covers values within a byte, crossing a byte boundary and spanning multiple bytes.
+     */
+    @Param({"3", "7", "13"})
+    public int bitLength;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    private byte[] buffer;
+    private BitBuffer bitBuffer;
+    private int[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        buffer = new byte[bufferSize];
+        random.nextBytes(buffer);
+        bitBuffer = new BitBuffer(bufferSize * Byte.SIZE);
+        values = new int[bufferSize * Byte.SIZE / bitLength];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1 << bitLength);
+        }
+    }
+
+    @Benchmark
+    public int getIntPartial() {
+        BitBuffer bb = new BitBuffer(buffer);
+        int acc = 0;
+        for (int i = 0; i < values.length; i++) {
+            acc ^= bb.getIntPartial(i * bitLength, bitLength);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public BitBuffer setIntPartial() {
+        for (int i = 0; i < values.length; i++) {
+            bitBuffer.setIntPartial(values[i], i * bitLength, bitLength);
+        }
+        return bitBuffer;
+    }
+
+    @Benchmark
+    public int readIntPartial() {
+        BitInputStream bis = new BitInputStream(buffer);
+        int acc = 0;
+        while (bis.remainingBits() >= bitLength) {
+            acc ^= bis.readIntPartial(bitLength);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public byte[] write() {
+        BitOutputStream bos = new BitOutputStream(bufferSize);
+        for (int value : values) {
+            bos.write(value, bitLength);
+        }
+        return bos.toByteArray();
+    }
+}
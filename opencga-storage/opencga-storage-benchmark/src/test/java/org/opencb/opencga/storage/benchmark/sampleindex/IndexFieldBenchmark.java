@@ -0,0 +1,140 @@
+package org.opencb.opencga.storage.benchmark.sampleindex;
+
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.opencga.storage.core.io.bit.BitBuffer;
+import org.opencb.opencga.storage.hadoop.variant.index.core.CategoricalMultiValuedIndexField;
+import org.opencb.opencga.storage.hadoop.variant.index.core.IndexField;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode the annotation values of a synthetic entry with the sample index {@link IndexField}s.
+ * Consequence type and biotype are {@link CategoricalMultiValuedIndexField}s, and population frequencies are range fields.
+ *
+ * Created on 17/10/26.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IndexFieldBenchmark {
+
+    private CategoricalMultiValuedIndexField<String> ctField;
+    private CategoricalMultiValuedIndexField<String> btField;
+    private IndexField<Double> popFreqField;
+
+    private List<List<String>> cts;
+    private List<List<String>> bts;
+    private double[] popFreqs;
+    private int[] ctCodes;
+    private int[] btCodes;
+    private int[] popFreqCodes;
+    private BitBuffer bitBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp(SampleIndexEntryState state) {
+        ctField = state.schema.getCtIndex().getField();
+        btField = state.schema.getBiotypeIndex().getField();
+        PopulationFrequency firstPopulation = state.annotations.get(0).getPopulationFrequencies().get(0);
+        popFreqField = state.schema.getPopFreqIndex().getField(firstPopulation.getStudy(), firstPopulation.getPopulation());
+
+        cts = new ArrayList<>(state.annotations.size());
+        bts = new ArrayList<>(state.annotations.size());
+        popFreqs = new double[state.annotations.size()];
+        for (int i = 0; i < state.annotations.size(); i++) {
+            VariantAnnotation annotation = state.annotations.get(i);
+            Set<String> ct = new LinkedHashSet<>();
+            Set<String> bt = new LinkedHashSet<>();
+            for (ConsequenceType consequenceType : annotation.getConsequenceTypes()) {
+                for (SequenceOntologyTerm term : consequenceType.getSequenceOntologyTerms()) {
+                    ct.add(term.getName());
+                }
+                if (consequenceType.getBiotype() != null) {
+                    bt.add(consequenceType.getBiotype());
+                }
+            }
+            cts.add(new ArrayList<>(ct));
+            bts.add(new ArrayList<>(bt));
+            popFreqs[i] = annotation.getPopulationFrequencies().get(0).getAltAlleleFreq();
+        }
+
+        ctCodes = new int[cts.size()];
+        btCodes = new int[bts.size()];
+        popFreqCodes = new int[popFreqs.length];
+        for (int i = 0; i < cts.size(); i++) {
+            ctCodes[i] = ctField.encode(cts.get(i));
+            btCodes[i] = btField.encode(bts.get(i));
+            popFreqCodes[i] = popFreqField.encode(popFreqs[i]);
+        }
+        bitBuffer = new BitBuffer(state.schema.getPopFreqIndex().getBitsLength());
+    }
+
+    @Benchmark
+    public int encodeConsequenceType() {
+        int acc = 0;
+        for (List<String> ct : cts) {
+            acc ^= ctField.encode(ct);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public void decodeConsequenceType(Blackhole blackhole) {
+        for (int code : ctCodes) {
+            blackhole.consume(ctField.decode(code));
+        }
+    }
+
+    @Benchmark
+    public int encodeBiotype() {
+        int acc = 0;
+        for (List<String> bt : bts) {
+            acc ^= btField.encode(bt);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public void decodeBiotype(Blackhole blackhole) {
+        for (int code : btCodes) {
+            blackhole.consume(btField.decode(code));
+        }
+    }
+
+    @Benchmark
+    public int encodePopulationFrequency() {
+        int acc = 0;
+        for (double popFreq : popFreqs) {
+            acc ^= popFreqField.encode(popFreq);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public void decodePopulationFrequency(Blackhole blackhole) {
+        for (int code : popFreqCodes) {
+            blackhole.consume(popFreqField.decode(code));
+        }
+    }
+
+    @Benchmark
+    public int writeAndReadPopulationFrequency() {
+        int acc = 0;
+        for (double popFreq : popFreqs) {
+            popFreqField.write(popFreq, bitBuffer);
+            acc ^= popFreqField.read(bitBuffer);
+        }
+        return acc;
+    }
+}
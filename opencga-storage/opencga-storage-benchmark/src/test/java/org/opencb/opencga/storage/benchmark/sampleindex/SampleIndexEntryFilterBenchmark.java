@@ -0,0 +1,110 @@
+package org.opencb.opencga.storage.benchmark.sampleindex;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.core.api.ParamConstants;
+import org.opencb.opencga.storage.core.variant.query.OpValue;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
+import org.opencb.opencga.storage.hadoop.variant.index.core.filters.IndexFieldFilter;
+import org.opencb.opencga.storage.hadoop.variant.index.core.filters.IndexFilter;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SampleAnnotationIndexQuery;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SampleIndexQuery;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SingleSampleIndexQuery;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexEntryFilter;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexSchema;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverter.INTERGENIC_MASK;
+
+/**
+ * Filter and count the variants of a synthetic entry with the {@link SampleIndexEntryFilter}.
+ *
+ * Created on 17/10/26.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleIndexEntryFilterBenchmark {
+
+    /**
+     * Annotation filter to apply.
+     * <ul>
+     *     <li>none: Only genotypes</li>
+     *     <li>ct: Consequence type</li>
+     *     <li>ct_bt: Consequence type and biotype, including the combination index</li>
+     *     <li>popFreq: Population frequency</li>
+     *     <li>ct_popFreq: Consequence type and population frequency</li>
+     * </ul>
+     */
+    @Param({"none", "ct", "ct_bt", "popFreq", "ct_popFreq"})
+    public String filter;
+
+    private SampleIndexEntryState state;
+    private SampleIndexEntryFilter entryFilter;
+
+    @Setup(Level.Trial)
+    public void setUp(SampleIndexEntryState state) {
+        this.state = state;
+        SingleSampleIndexQuery query = buildQuery(state.schema, filter);
+        entryFilter = new SampleIndexEntryFilter(query);
+    }
+
+    @Benchmark
+    public int filterAndCount() {
+        return entryFilter.filterAndCount(state.entry);
+    }
+
+    @Benchmark
+    public Collection<Variant> filter() {
+        return entryFilter.filter(state.entry);
+    }
+
+    private static SingleSampleIndexQuery buildQuery(SampleIndexSchema schema, String filter) {
+        boolean ct = filter.startsWith("ct");
+        boolean bt = filter.contains("bt");
+        boolean popFreq = filter.contains("popFreq");
+
+        SampleAnnotationIndexQuery annotationIndexQuery;
+        if (!ct && !bt && !popFreq) {
+            annotationIndexQuery = new SampleAnnotationIndexQuery(schema);
+        } else {
+            IndexFieldFilter ctFilter = ct
+                    ? schema.getCtIndex().getField().buildFilter(new OpValue<>("=", Arrays.asList("missense_variant", "stop_gained")))
+                    : schema.getCtIndex().getField().noOpFilter();
+            IndexFieldFilter btFilter = bt
+                    ? schema.getBiotypeIndex().getField().buildFilter(new OpValue<>("=", Collections.singletonList("protein_coding")))
+                    : schema.getBiotypeIndex().getField().noOpFilter();
+            IndexFieldFilter tfFilter = schema.getTranscriptFlagIndexSchema().getField().noOpFilter();
+            IndexFilter popFreqFilter = popFreq
+                    ? schema.getPopFreqIndex().buildFilter(Collections.singletonList(
+                            schema.getPopFreqIndex().getField(ParamConstants.POP_FREQ_GNOMAD_GENOMES, "ALL")
+                                    .buildFilter(new OpValue<>("<", 0.001))), VariantQueryUtils.QueryOperation.AND)
+                    : schema.getPopFreqIndex().noOpFilter();
+            boolean nonIntergenic = ct || bt;
+            annotationIndexQuery = new SampleAnnotationIndexQuery(
+                    nonIntergenic ? new byte[]{INTERGENIC_MASK, 0} : new byte[]{0, 0},
+                    nonIntergenic ? Boolean.FALSE : null,
+                    ctFilter,
+                    btFilter,
+                    tfFilter,
+                    bt
+                            ? schema.getCtBtTfIndex().getField().buildFilter(ctFilter, btFilter, tfFilter)
+                            : schema.getCtBtTfIndex().getField().noOpFilter(),
+                    schema.getClinicalIndexSchema().noOpFilter(),
+                    popFreqFilter);
+        }
+
+        return new SampleIndexQuery(schema, Collections.emptyList(), 0, null, "study",
+                Collections.singletonMap("S1", Arrays.asList(SampleIndexEntryState.GT_HET, SampleIndexEntryState.GT_HOM_ALT)),
+                Collections.emptySet(), null, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+                annotationIndexQuery, Collections.emptySet(), null, false, VariantQueryUtils.QueryOperation.AND, null)
+                .forSample("S1");
+    }
+}
@@ -0,0 +1,157 @@
+package org.opencb.opencga.storage.benchmark.sampleindex;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.opencga.core.api.ParamConstants;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverter;
+import org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationPutBuilder;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.HBaseToSampleIndexConverter;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexEntry;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexEntryPutBuilder;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexSchema;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexVariantConverter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverterTest.annot;
+import static org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverterTest.ct;
+import static org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverterTest.pf;
+
+/**
+ * Synthetic SampleIndexEntry shared by the sample index benchmarks.
+ *
+ * The entry is built with the same builders used when loading the sample index, and read back with the
+ * {@link HBaseToSampleIndexConverter}, so the payload layout is the same as the one read from HBase.
+ * Variants are randomly generated (with a fixed seed) over a single sample index batch of chromosome 1.
+ *
+ * Created on 17/10/26.
+ */
+@State(Scope.Benchmark)
+public class SampleIndexEntryState {
+
+    public static final String CHROMOSOME = "1";
+    public static final int SAMPLE_ID = 1;
+    public static final String GT_HET = "0/1";
+    public static final String GT_HOM_ALT = "1/1";
+
+    private static final String[] ALLELES = {"A", "C", "G", "T"};
+    private static final String[] CONSEQUENCE_TYPES = {
+            "missense_variant", "synonymous_variant", "stop_gained", "frameshift_variant", "splice_region_variant",
+            "intron_variant", "upstream_gene_variant", "downstream_gene_variant", "3_prime_UTR_variant", "start_lost"};
+    private static final String[] BIOTYPES = {"protein_coding", "lncRNA", "nonsense_mediated_decay", "retained_intron", "miRNA"};
+    private static final String[] FILTERS = {"PASS", "PASS", "PASS", "PASS", "LowQual"};
+
+    /**
+     * Number of variants in the entry, distributed along the 1Mb batch.
+     */
+    @Param({"1000", "10000"})
+    public int numVariants;
+
+    @Param({"42"})
+    public long seed;
+
+    public SampleIndexSchema schema;
+    public SampleIndexEntry entry;
+    public Map<String, List<Variant>> variantsByGt;
+    public List<VariantAnnotation> annotations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        schema = SampleIndexSchema.defaultSampleIndexSchema();
+        Random random = new Random(seed);
+
+        variantsByGt = new HashMap<>();
+        Map<String, List<VariantAnnotation>> annotationsByGt = new HashMap<>();
+        annotations = new ArrayList<>(numVariants);
+
+        SampleIndexVariantConverter variantConverter = new SampleIndexVariantConverter(schema);
+        SampleIndexEntryPutBuilder putBuilder = new SampleIndexEntryPutBuilder(SAMPLE_ID, CHROMOSOME, 0, schema, true, false);
+
+        int maxGap = Math.max(1, 2 * (SampleIndexSchema.BATCH_SIZE - 100) / numVariants);
+        int position = 1;
+        for (int i = 0; i < numVariants; i++) {
+            position += 1 + random.nextInt(maxGap);
+            Variant variant = randomVariant(random, position);
+            VariantAnnotation annotation = randomAnnotation(random);
+            String gt = random.nextInt(100) < 65 ? GT_HET : GT_HOM_ALT;
+
+            Map<String, String> fileAttributes = new HashMap<>();
+            fileAttributes.put(StudyEntry.FILTER, FILTERS[random.nextInt(FILTERS.length)]);
+            fileAttributes.put(StudyEntry.QUAL, String.valueOf(10 + random.nextInt(90)));
+            Map<String, String> sampleData = Collections.singletonMap("DP", String.valueOf(5 + random.nextInt(60)));
+
+            putBuilder.add(gt, variantConverter.createSampleIndexVariant(0, variant, null, Collections.emptyList(),
+                    fileAttributes::get, sampleData::get));
+            variantsByGt.computeIfAbsent(gt, k -> new ArrayList<>()).add(variant);
+            annotationsByGt.computeIfAbsent(gt, k -> new ArrayList<>()).add(annotation);
+            annotations.add(annotation);
+        }
+
+        Put put = putBuilder.build();
+        SampleIndexVariantAnnotationConverter annotationConverter = new SampleIndexVariantAnnotationConverter(schema);
+        for (Map.Entry<String, List<VariantAnnotation>> gtAnnotations : annotationsByGt.entrySet()) {
+            SampleIndexVariantAnnotationPutBuilder annotationPutBuilder = new SampleIndexVariantAnnotationPutBuilder(schema);
+            for (VariantAnnotation annotation : gtAnnotations.getValue()) {
+                annotationPutBuilder.add(annotationConverter.convert(annotation));
+            }
+            annotationPutBuilder.buildAndReset(put, gtAnnotations.getKey(), GenomeHelper.COLUMN_FAMILY_BYTES);
+        }
+
+        List<Cell> cells = put.getFamilyCellMap().values().stream().flatMap(Collection::stream).collect(Collectors.toList());
+        entry = new HBaseToSampleIndexConverter(schema).convert(Result.create(cells));
+    }
+
+    private static Variant randomVariant(Random random, int position) {
+        int type = random.nextInt(100);
+        if (type < 90) {
+            int ref = random.nextInt(ALLELES.length);
+            int alt = (ref + 1 + random.nextInt(ALLELES.length - 1)) % ALLELES.length;
+            return new Variant(CHROMOSOME, position, ALLELES[ref], ALLELES[alt]);
+        } else if (type < 97) {
+            return new Variant(CHROMOSOME, position, randomSequence(random, 1 + random.nextInt(5)), "");
+        } else {
+            return new Variant(CHROMOSOME, position, "", randomSequence(random, 1 + random.nextInt(5)));
+        }
+    }
+
+    private static String randomSequence(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALLELES[random.nextInt(ALLELES.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static VariantAnnotation randomAnnotation(Random random) {
+        VariantAnnotation annotation;
+        if (random.nextInt(100) < 20) {
+            annotation = annot();
+        } else {
+            int numCts = 1 + random.nextInt(3);
+            ConsequenceType[] cts = new ConsequenceType[numCts];
+            for (int i = 0; i < numCts; i++) {
+                cts[i] = ct(CONSEQUENCE_TYPES[random.nextInt(CONSEQUENCE_TYPES.length)], BIOTYPES[random.nextInt(BIOTYPES.length)]);
+            }
+            annotation = annot(cts);
+        }
+        // Skewed towards rare variants
+        List<PopulationFrequency> populationFrequencies = new ArrayList<>(2);
+        populationFrequencies.add(pf(ParamConstants.POP_FREQ_1000G, "ALL", Math.pow(random.nextDouble(), 4)));
+        populationFrequencies.add(pf(ParamConstants.POP_FREQ_GNOMAD_GENOMES, "ALL", Math.pow(random.nextDouble(), 4)));
+        annotation.setPopulationFrequencies(populationFrequencies);
+        return annotation;
+    }
+}
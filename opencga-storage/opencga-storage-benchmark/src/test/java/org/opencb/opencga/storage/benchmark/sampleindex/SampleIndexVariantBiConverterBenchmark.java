@@ -0,0 +1,74 @@
+package org.opencb.opencga.storage.benchmark.sampleindex;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexEntry;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexEntryIterator;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexVariantBiConverter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode the variants of a synthetic {@link SampleIndexEntry} with the {@link SampleIndexVariantBiConverter}.
+ *
+ * Created on 17/10/26.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleIndexVariantBiConverterBenchmark {
+
+    private SampleIndexVariantBiConverter converter;
+    private List<Variant> variants;
+    private SampleIndexEntry.SampleIndexGtEntry gtEntry;
+
+    @Setup(Level.Trial)
+    public void setUp(SampleIndexEntryState state) {
+        converter = new SampleIndexVariantBiConverter(state.schema);
+        variants = state.variantsByGt.get(SampleIndexEntryState.GT_HET);
+        gtEntry = state.entry.getGtEntry(SampleIndexEntryState.GT_HET);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return converter.toBytes(variants);
+    }
+
+    @Benchmark
+    public List<Variant> toVariants() {
+        return converter.toVariants(SampleIndexEntryState.CHROMOSOME, 0,
+                gtEntry.getVariants(), gtEntry.getVariantsOffset(), gtEntry.getVariantsLength());
+    }
+
+    @Benchmark
+    public void iterateVariants(Blackhole blackhole) {
+        SampleIndexEntryIterator iterator = converter.toVariantsIterator(gtEntry);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void iterateSampleIndexVariants(Blackhole blackhole) {
+        SampleIndexEntryIterator iterator = converter.toVariantsIterator(gtEntry);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.nextSampleIndexVariant());
+        }
+    }
+
+    @Benchmark
+    public int skipVariants() {
+        SampleIndexEntryIterator iterator = converter.toVariantsIterator(gtEntry);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.skip();
+            count++;
+        }
+        return count;
+    }
+}
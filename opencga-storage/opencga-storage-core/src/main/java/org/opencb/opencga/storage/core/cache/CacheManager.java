@@ -18,180 +18,190 @@ package org.opencb.opencga.storage.core.cache;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.opencb.commons.datastore.core.Query;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.QueryOptions;
-import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.opencga.core.config.storage.CacheConfiguration;
 import org.opencb.opencga.core.config.storage.StorageConfiguration;
-import org.redisson.Config;
-import org.redisson.Redisson;
-import org.redisson.RedissonClient;
-import org.redisson.client.RedisConnectionException;
-import org.redisson.codec.JsonJacksonCodec;
-import org.redisson.codec.KryoCodec;
-import org.redisson.core.RKeys;
-import org.redisson.core.RMap;
+import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.ProjectMetadata;
+import org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryResult;
+import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
+ * In-process cache of variant query results. See {@link VariantQueryResultCache}.
+ *
+ * Each key includes a version of the data, obtained from the {@link ProjectMetadata}. Any new load, annotation or
+ * stats calculation recorded by the {@link VariantStorageMetadataManager} produces a new version, invalidating all the
+ * entries of the cache. Other operations that modify the result of a query, like removing files or samples, or building
+ * secondary indexes, must call {@link VariantStorageMetadataManager#invalidateQueryCache()}.
+ * This also works when the data was modified by a different process.
+ *
  * Created by wasim on 26/10/16.
  */
 public class CacheManager {
 
-    private StorageConfiguration storageConfiguration;
+    public static final String VARIANT_TYPE = "var";
+    public static final String ALIGNMENT_TYPE = "aln";
 
-    private Config redissonConfig;
-    private Set<String> allowedTypesSet;
-    private RedissonClient redissonClient;
-    private boolean redisState;
+    private static final String PREFIX_DATABASE_KEY = "ocga:";
+    private static final Set<String> IGNORED_KEYS = new HashSet<>(Arrays.asList("cache", "sId",
+            // Replaced by the normalized values from the ParsedVariantQuery
+            QueryOptions.INCLUDE, QueryOptions.EXCLUDE, QueryOptions.LIMIT, QueryOptions.SKIP, QueryOptions.COUNT));
 
+    private final CacheConfiguration cacheConfiguration;
+    private final Set<String> allowedTypesSet;
+    private final VariantQueryResultCache cache;
+    private volatile String dataVersion;
 
-    private static final String PREFIX_DATABASE_KEY = "ocga:";
+    private final Logger logger = LoggerFactory.getLogger(CacheManager.class);
 
     public CacheManager() {
+        this(null);
     }
 
     public CacheManager(StorageConfiguration configuration) {
-
-        CacheConfiguration cache;
-
         if (configuration != null && configuration.getCache() != null) {
-
-            this.storageConfiguration = configuration;
-
-            cache = configuration.getCache();
-            redissonConfig = new Config();
-
-            String host = (StringUtils.isNotEmpty(cache.getHost()))
-                    ? cache.getHost()
-                    : CacheConfiguration.DEFAULT_HOST;
-            redissonConfig.useSingleServer().setAddress(host);
-
-            String codec = (StringUtils.isNotEmpty(cache.getSerialization()))
-                    ? cache.getSerialization()
-                    : CacheConfiguration.DEFAULT_SERIALIZATION;
-
-            this.allowedTypesSet = new HashSet<>(Arrays.asList(cache.getAllowedTypes().split(",")));
-
-
-            if (StringUtils.isNotEmpty(cache.getPassword())) {
-                redissonConfig.useSingleServer().setPassword(cache.getPassword());
-            }
-
-            if ("KRYO".equalsIgnoreCase(codec)) {
-                redissonConfig.setCodec(new KryoCodec());
-            } else {
-                redissonConfig.setCodec(new JsonJacksonCodec());
-            }
-
-            redisState = true;
-
-//            redissonClient = Redisson.create(redissonConfig);
-            redissonClient = null;
+            cacheConfiguration = configuration.getCache();
+        } else {
+            cacheConfiguration = new CacheConfiguration().setActive(false);
         }
+        String allowedTypes = StringUtils.isNotEmpty(cacheConfiguration.getAllowedTypes())
+                ? cacheConfiguration.getAllowedTypes()
+                : CacheConfiguration.DEFAULT_ALLOWED_TYPE;
+        allowedTypesSet = new HashSet<>(Arrays.asList(allowedTypes.split(",")));
+        cache = new VariantQueryResultCache(cacheConfiguration.getMaxHeapSize(), cacheConfiguration.getMaxOffHeapSize());
     }
 
+    /**
+     * Get a cached result.
+     *
+     * @param key Cache key, from {@link #createKey}
+     * @return Copy of the cached result, or null if missing
+     */
+    public VariantQueryResult<Variant> get(String key) {
+        if (!isActive()) {
+            return null;
+        }
+        VariantQueryResult<Variant> result = cache.get(key);
+        if (result != null) {
+            result.setTime(0);
+            result.getAttributes().put("cache", true);
+        }
+        return result;
+    }
 
-    public <T> QueryResult<T> get(String key) {
-
-        QueryResult<T> queryResult = new QueryResult<>();
-        if (isActive()) {
-            long start = System.currentTimeMillis();
-            RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-
-            try {
-                // We only retrieve the first field of the HASH, which is the only one that exist.
-                Map<Integer, Map<String, Object>> result = map.getAll(new HashSet<>(Collections.singletonList(0)));
-
-                if (result != null && !result.isEmpty()) {
-                    Object resultMap = result.get(0).get("result");
-                    queryResult = (QueryResult<T>) resultMap;
-                    queryResult.setDbTime((int) (System.currentTimeMillis() - start));
-                }
-            } catch (RedisConnectionException e) {
-                redisState = false;
-                queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
-                return queryResult;
-            }
+    /**
+     * Store the result in the cache, if it is slow enough and small enough to be cached.
+     *
+     * @param key    Cache key, from {@link #createKey}
+     * @param result Query result
+     */
+    public void set(String key, VariantQueryResult<Variant> result) {
+        if (isActive()
+                && result.getTime() >= cacheConfiguration.getSlowThreshold()
+                && result.getResults().size() <= cacheConfiguration.getMaxResultSize()) {
+            cache.put(key, result);
         }
-        return queryResult;
     }
 
-    public void set(String key, Query query, QueryResult queryResult) {
-
-        if (isActive()) {
-            if (queryResult.getDbTime() >= storageConfiguration.getCache().getSlowThreshold()
-                    && queryResult.getResult().size() >= storageConfiguration.getCache().getMaxResultSize()) {
-                RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-                Map<String, Object> record = new HashMap<>();
-                record.put("query", query);
-                record.put("result", queryResult);
-                try {
-                    map.fastPut(0, record);
-                } catch (RedisConnectionException e) {
-                    redisState = false;
-                    queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
+    /**
+     * Create the cache key for a variant query. Invalidates the cache if the data has been modified since the last call.
+     *
+     * @param variantQuery    Variant query
+     * @param metadataManager Metadata manager
+     * @return Cache key
+     */
+    public String createKey(ParsedVariantQuery variantQuery, VariantStorageMetadataManager metadataManager) {
+        String version = getDataVersion(metadataManager.getProjectMetadata());
+        if (!version.equals(dataVersion)) {
+            synchronized (this) {
+                if (!version.equals(dataVersion)) {
+                    if (dataVersion != null) {
+                        logger.info("Variant data modified. Invalidate query cache");
+                        cache.invalidate();
+                    }
+                    dataVersion = version;
                 }
             }
         }
-    }
-
-    public String createKey(String studyId, String allowedType, Query query, QueryOptions queryOptions) {
-
-        queryOptions.remove("cache");
-        queryOptions.remove("sId");
 
-        StringBuilder key = new StringBuilder(PREFIX_DATABASE_KEY);
-        key.append(studyId).append(":").append(allowedType);
-        SortedMap<String, SortedSet<Object>> map = new TreeMap<>();
-
-        for (String item : query.keySet()) {
-            map.put(item.toLowerCase(), new TreeSet<>(query.getAsStringList(item)));
+        // Use the normalized query and projection, so equivalent queries share the same entry, and queries that resolve to
+        // different samples or studies (e.g. after a metadata change) do not.
+        SortedMap<String, String> map = new TreeMap<>();
+        addToKey(map, "q.", variantQuery.getQuery());
+        addToKey(map, "o.", variantQuery.getInputOptions());
+        map.put("o." + QueryOptions.LIMIT, String.valueOf(variantQuery.getLimit()));
+        map.put("o." + QueryOptions.SKIP, String.valueOf(variantQuery.getSkip()));
+        map.put("o." + QueryOptions.COUNT, String.valueOf(variantQuery.getCount()));
+        VariantQueryProjection projection = variantQuery.getProjection();
+        if (projection != null) {
+            map.put("p.fields", new TreeSet<>(projection.getFields()).toString());
+            map.put("p.samples", new TreeMap<>(projection.getSamples()).toString());
+            map.put("p.files", new TreeMap<>(projection.getFiles()).toString());
         }
+        return PREFIX_DATABASE_KEY + VARIANT_TYPE + ':' + version + ':' + DigestUtils.sha1Hex(map.toString());
+    }
 
-        for (String item : queryOptions.keySet()) {
-            map.put(item.toLowerCase(), new TreeSet<>(queryOptions.getAsStringList(item)));
+    private static void addToKey(SortedMap<String, String> map, String prefix, ObjectMap params) {
+        if (params == null) {
+            return;
         }
+        for (String key : params.keySet()) {
+            if (IGNORED_KEYS.contains(key)) {
+                continue;
+            }
+            String value = params.getString(key);
+            if (StringUtils.isNotEmpty(value)) {
+                map.put(prefix + key, value);
+            }
+        }
+    }
 
-        String sha1 = DigestUtils.sha1Hex(map.toString());
-        key.append(":").append(sha1);
-
-        queryOptions.add("cache", "true");
-        return key.toString();
+    private static String getDataVersion(ProjectMetadata projectMetadata) {
+        if (projectMetadata == null) {
+            return "0";
+        }
+        ProjectMetadata.VariantAnnotationMetadata currentAnnotation = projectMetadata.getAnnotation() == null
+                ? null
+                : projectMetadata.getAnnotation().getCurrent();
+        return projectMetadata.getRelease()
+                + "_" + projectMetadata.getValidCacheTimestamp()
+                + "_" + projectMetadata.getVariantIndexLastTimestamp()
+                + "_" + projectMetadata.getAnnotationIndexLastUpdateStartTimestamp()
+                + "_" + projectMetadata.getAnnotationIndexLastUpdateEndTimestamp()
+                + "_" + projectMetadata.getStatsLastEndTimestamp()
+                + "_" + (currentAnnotation == null ? -1 : currentAnnotation.getId())
+                + "_" + Integer.toHexString(Objects.hash(projectMetadata.getCounters(), projectMetadata.getAttributes()));
     }
 
     public boolean isActive() {
-        return storageConfiguration.getCache().isActive() && redisState;
+        return cacheConfiguration.isActive() && isTypeAllowed(VARIANT_TYPE);
+    }
+
+    public boolean isActive(QueryOptions options) {
+        return isActive() && (options == null || options.getBoolean("cache", true));
     }
 
     public boolean isTypeAllowed(String type) {
         return allowedTypesSet.contains(type);
     }
 
-    public void clear() {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*");
+    public ObjectMap getStats() {
+        return cache.getStats();
     }
 
-    public void clear(Pattern pattern) {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(pattern.toString());
+    public void clear() {
+        cache.invalidate();
     }
 
     public void close() {
-        if (redissonClient != null) {
-            redissonClient.shutdown();
-            redissonClient = null;
-        }
-    }
-
-    private synchronized RedissonClient getRedissonClient() {
-        if (redissonClient == null) {
-            redissonClient = Redisson.create(redissonConfig);
-        }
-        return redissonClient;
+        cache.invalidate();
     }
 
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.cache;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two tiered LRU cache of variant query results.
+ * <p>
+ * The first tier keeps the results on heap. Entries evicted from the first tier are moved, if enabled, to a second
+ * tier that stores the variants serialized in Avro format in direct (off-heap) buffers. Entries found in the second
+ * tier are promoted back to the first tier.
+ * <p>
+ * Both tiers are bounded by an estimated size in bytes. Returned results are always copies, so the callers can
+ * freely modify them.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantQueryResultCache {
+
+    // Estimated overhead of each entry, including the key and the result metadata
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    // Ratio between the size of a variant in memory and its serialized size
+    private static final int HEAP_SIZE_FACTOR = 4;
+
+    private final long maxHeapSize;
+    private final long maxOffHeapSize;
+
+    private final LinkedHashMap<String, HeapEntry> heapEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, OffHeapEntry> offHeapEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long heapSize = 0;
+    private long offHeapSize = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong offHeapHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Logger logger = LoggerFactory.getLogger(VariantQueryResultCache.class);
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxHeapSize    Max size in bytes of the on heap tier
+     * @param maxOffHeapSize Max size in bytes of the off heap tier. Use 0 to disable the second tier.
+     */
+    public VariantQueryResultCache(long maxHeapSize, long maxOffHeapSize) {
+        this.maxHeapSize = maxHeapSize;
+        this.maxOffHeapSize = maxOffHeapSize;
+    }
+
+    /**
+     * Get a copy of a cached result.
+     *
+     * @param key Cache key
+     * @return Copy of the cached result, or null if missing
+     */
+    public VariantQueryResult<Variant> get(String key) {
+        HeapEntry heapEntry;
+        OffHeapEntry offHeapEntry = null;
+        synchronized (this) {
+            heapEntry = heapEntries.get(key);
+            if (heapEntry == null) {
+                offHeapEntry = offHeapEntries.remove(key);
+                if (offHeapEntry != null) {
+                    offHeapSize -= offHeapEntry.size;
+                }
+            }
+        }
+        if (heapEntry != null) {
+            hits.incrementAndGet();
+            return heapEntry.copy();
+        } else if (offHeapEntry != null) {
+            offHeapHits.incrementAndGet();
+            // Promote to the heap tier
+            heapEntry = new HeapEntry(offHeapEntry.shell, decode(offHeapEntry.buffer), offHeapEntry.heapSize);
+            putHeapEntry(key, heapEntry);
+            return heapEntry.copy();
+        } else {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Store a copy of the result in the cache.
+     *
+     * @param key    Cache key
+     * @param result Result to cache
+     * @return If the result was cached
+     */
+    public boolean put(String key, VariantQueryResult<Variant> result) {
+        List<Variant> variants = new ArrayList<>(result.getResults().size());
+        for (Variant variant : result.getResults()) {
+            variants.add(copy(variant));
+        }
+        long size = ENTRY_OVERHEAD_BYTES + ((long) encode(variants).length) * HEAP_SIZE_FACTOR;
+        if (size > maxHeapSize) {
+            logger.debug("Result too large to be cached: {} bytes", size);
+            return false;
+        }
+        puts.incrementAndGet();
+        putHeapEntry(key, new HeapEntry(copy(result, Collections.emptyList()), variants, size));
+        return true;
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public synchronized void invalidate() {
+        invalidations.incrementAndGet();
+        heapEntries.clear();
+        offHeapEntries.clear();
+        heapSize = 0;
+        offHeapSize = 0;
+    }
+
+    public ObjectMap getStats() {
+        long hits = this.hits.get();
+        long offHeapHits = this.offHeapHits.get();
+        long misses = this.misses.get();
+        long total = hits + offHeapHits + misses;
+        ObjectMap stats = new ObjectMap();
+        stats.put("hits", hits);
+        stats.put("offHeapHits", offHeapHits);
+        stats.put("misses", misses);
+        stats.put("hitRate", total == 0 ? 0 : ((double) (hits + offHeapHits)) / total);
+        stats.put("puts", puts.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        synchronized (this) {
+            stats.put("heapEntries", heapEntries.size());
+            stats.put("heapSize", heapSize);
+            stats.put("offHeapEntries", offHeapEntries.size());
+            stats.put("offHeapSize", offHeapSize);
+        }
+        return stats;
+    }
+
+    private void putHeapEntry(String key, HeapEntry entry) {
+        List<Map.Entry<String, HeapEntry>> evicted = new ArrayList<>();
+        synchronized (this) {
+            HeapEntry old = heapEntries.put(key, entry);
+            if (old != null) {
+                heapSize -= old.size;
+            }
+            heapSize += entry.size;
+            Iterator<Map.Entry<String, HeapEntry>> iterator = heapEntries.entrySet().iterator();
+            while (heapSize > maxHeapSize && iterator.hasNext()) {
+                Map.Entry<String, HeapEntry> eldest = iterator.next();
+                iterator.remove();
+                heapSize -= eldest.getValue().size;
+                evicted.add(eldest);
+            }
+        }
+        for (Map.Entry<String, HeapEntry> eldest : evicted) {
+            if (maxOffHeapSize > 0) {
+                // Serialize out of the synchronized block
+                HeapEntry heapEntry = eldest.getValue();
+                byte[] bytes = encode(heapEntry.variants);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes);
+                buffer.flip();
+                putOffHeapEntry(eldest.getKey(), new OffHeapEntry(heapEntry.shell, buffer, heapEntry.size));
+            } else {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void putOffHeapEntry(String key, OffHeapEntry entry) {
+        if (entry.size > maxOffHeapSize) {
+            evictions.incrementAndGet();
+            return;
+        }
+        OffHeapEntry old = offHeapEntries.put(key, entry);
+        if (old != null) {
+            offHeapSize -= old.size;
+        }
+        offHeapSize += entry.size;
+        Iterator<OffHeapEntry> iterator = offHeapEntries.values().iterator();
+        while (offHeapSize > maxOffHeapSize && iterator.hasNext()) {
+            OffHeapEntry eldest = iterator.next();
+            iterator.remove();
+            offHeapSize -= eldest.size;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static Variant copy(Variant variant) {
+        return new Variant(VariantAvro.newBuilder(variant.getImpl()).build());
+    }
+
+    private static VariantQueryResult<Variant> copy(VariantQueryResult<Variant> result, List<Variant> variants) {
+        VariantQueryResult<Variant> copy = new VariantQueryResult<>(result, variants);
+        copy.setEvents(result.getEvents() == null ? new ArrayList<>() : new ArrayList<>(result.getEvents()));
+        copy.setAttributes(result.getAttributes() == null ? new ObjectMap() : new ObjectMap(result.getAttributes()));
+        return copy;
+    }
+
+    private static byte[] encode(List<Variant> variants) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+            SpecificDatumWriter<VariantAvro> writer = new SpecificDatumWriter<>(VariantAvro.getClassSchema());
+            encoder.writeInt(variants.size());
+            for (Variant variant : variants) {
+                writer.write(variant.getImpl(), encoder);
+            }
+            encoder.flush();
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Variant> decode(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        try {
+            BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, null);
+            SpecificDatumReader<VariantAvro> reader = new SpecificDatumReader<>(VariantAvro.getClassSchema());
+            int size = decoder.readInt();
+            List<Variant> variants = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                variants.add(new Variant(reader.read(null, decoder)));
+            }
+            return variants;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class HeapEntry {
+        // Result without variants
+        private final VariantQueryResult<Variant> shell;
+        private final List<Variant> variants;
+        private final long size;
+
+        private HeapEntry(VariantQueryResult<Variant> shell, List<Variant> variants, long size) {
+            this.shell = shell;
+            this.variants = variants;
+            this.size = size;
+        }
+
+        private VariantQueryResult<Variant> copy() {
+            List<Variant> variantsCopy = new ArrayList<>(variants.size());
+            for (Variant variant : variants) {
+                variantsCopy.add(VariantQueryResultCache.copy(variant));
+            }
+            return VariantQueryResultCache.copy(shell, variantsCopy);
+        }
+    }
+
+    private static final class OffHeapEntry {
+        // Result without variants
+        private final VariantQueryResult<Variant> shell;
+        private final ByteBuffer buffer;
+        private final long size;
+        // Estimated size once moved back to the heap
+        private final long heapSize;
+
+        private OffHeapEntry(VariantQueryResult<Variant> shell, ByteBuffer buffer, long heapSize) {
+            this.shell = shell;
+            this.buffer = buffer;
+            this.size = ENTRY_OVERHEAD_BYTES + buffer.capacity();
+            this.heapSize = heapSize;
+        }
+    }
+}
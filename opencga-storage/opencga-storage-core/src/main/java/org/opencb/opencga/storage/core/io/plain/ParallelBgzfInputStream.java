@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * InputStream for BGZF compressed files that inflates the blocks in parallel.
+ *
+ * BGZF files are a concatenation of independent gzip members of up to 64KB, each one with its compressed size
+ * in the header. Blocks are read sequentially from the underlying stream, inflated by a pool of threads,
+ * and returned in the same order.
+ *
+ * Created on 17/10/26.
+ */
+public class ParallelBgzfInputStream extends InputStream {
+
+    private static final int BLOCK_HEADER_LENGTH = 18;
+    private static final int BLOCK_FOOTER_LENGTH = 8;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private boolean eof = false;
+    private byte[] block = new byte[0];
+    private int blockOffset = 0;
+
+    /**
+     * Create a ParallelBgzfInputStream.
+     *
+     * @param in        Compressed input stream
+     * @param threads   Number of threads inflating blocks
+     */
+    public ParallelBgzfInputStream(InputStream in, int threads) {
+        this.in = in;
+        this.maxPendingBlocks = Math.max(1, threads) * 4;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new BasicThreadFactory.Builder()
+                .namingPattern("bgzf-inflate-%s")
+                .daemon(true)
+                .build());
+    }
+
+    /**
+     * Check if the stream starts with a BGZF block header. The stream is reset to the initial position.
+     *
+     * @param in    Input stream supporting mark
+     * @return      If the stream is BGZF compressed
+     * @throws IOException  on error reading the stream
+     */
+    public static boolean isBgzf(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("InputStream must support mark");
+        }
+        byte[] header = new byte[BLOCK_HEADER_LENGTH];
+        in.mark(BLOCK_HEADER_LENGTH);
+        try {
+            int read = readFully(in, header, 0, BLOCK_HEADER_LENGTH);
+            return read == BLOCK_HEADER_LENGTH && isBgzfHeader(header);
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static boolean isBgzfHeader(byte[] header) {
+        return (header[0] & 0xFF) == 31            // ID1
+                && (header[1] & 0xFF) == 139       // ID2
+                && header[2] == 8                  // CM = deflate
+                && (header[3] & 4) != 0            // FLG = FEXTRA
+                && readShort(header, 10) == 6      // XLEN
+                && header[12] == 'B'               // SI1
+                && header[13] == 'C'               // SI2
+                && readShort(header, 14) == 2;     // SLEN
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return block[blockOffset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int read = Math.min(len, block.length - blockOffset);
+        System.arraycopy(block, blockOffset, b, off, read);
+        blockOffset += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return block.length - blockOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pendingBlocks.clear();
+        in.close();
+    }
+
+    /**
+     * Move to the next non-empty inflated block, if the current one is exhausted.
+     *
+     * @return false if there are no more blocks
+     * @throws IOException on error reading or inflating the blocks
+     */
+    private boolean nextBlock() throws IOException {
+        while (blockOffset >= block.length) {
+            fillPendingBlocks();
+            Future<byte[]> future = pendingBlocks.poll();
+            if (future == null) {
+                return false;
+            }
+            try {
+                block = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while inflating BGZF block");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Error inflating BGZF block", e.getCause());
+            }
+            blockOffset = 0;
+        }
+        return true;
+    }
+
+    private void fillPendingBlocks() throws IOException {
+        while (!eof && pendingBlocks.size() < maxPendingBlocks) {
+            byte[] compressedBlock = readBlock();
+            if (compressedBlock == null) {
+                eof = true;
+            } else {
+                pendingBlocks.add(executor.submit(() -> inflate(compressedBlock)));
+            }
+        }
+    }
+
+    private byte[] readBlock() throws IOException {
+        byte[] header = new byte[BLOCK_HEADER_LENGTH];
+        int read = readFully(in, header, 0, BLOCK_HEADER_LENGTH);
+        if (read == 0) {
+            return null;
+        }
+        if (read != BLOCK_HEADER_LENGTH || !isBgzfHeader(header)) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int blockSize = readShort(header, 16) + 1;
+        if (blockSize < BLOCK_HEADER_LENGTH + BLOCK_FOOTER_LENGTH || blockSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid BGZF block size " + blockSize);
+        }
+        byte[] compressedBlock = new byte[blockSize];
+        System.arraycopy(header, 0, compressedBlock, 0, BLOCK_HEADER_LENGTH);
+        if (readFully(in, compressedBlock, BLOCK_HEADER_LENGTH, blockSize - BLOCK_HEADER_LENGTH) != blockSize - BLOCK_HEADER_LENGTH) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return compressedBlock;
+    }
+
+    private static byte[] inflate(byte[] compressedBlock) throws IOException {
+        int blockSize = compressedBlock.length;
+        int expectedCrc = readInt(compressedBlock, blockSize - 8);
+        int uncompressedSize = readInt(compressedBlock, blockSize - 4);
+        if (uncompressedSize < 0 || uncompressedSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid BGZF uncompressed block size " + uncompressedSize);
+        }
+        byte[] uncompressed = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressedBlock, BLOCK_HEADER_LENGTH, blockSize - BLOCK_HEADER_LENGTH - BLOCK_FOOTER_LENGTH);
+            int inflated = 0;
+            while (inflated < uncompressedSize) {
+                int n = inflater.inflate(uncompressed, inflated, uncompressedSize - inflated);
+                if (n == 0) {
+                    // Finished, or needs more input
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != uncompressedSize) {
+                throw new IOException("Corrupted BGZF block. Expected " + uncompressedSize + " bytes, inflated " + inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(uncompressed, 0, uncompressedSize);
+        if ((int) crc32.getValue() != expectedCrc) {
+            throw new IOException("Corrupted BGZF block. CRC mismatch");
+        }
+        return uncompressed;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF)
+                | ((buffer[offset + 1] & 0xFF) << 8)
+                | ((buffer[offset + 2] & 0xFF) << 16)
+                | ((buffer[offset + 3] & 0xFF) << 24);
+    }
+}
@@ -51,6 +51,7 @@ public class StringDataReader implements DataReader<String> {
     private BiConsumer<Long, Long> readLinesListener;
     private final InputStream is;
     private final boolean closeReader;
+    private int inflateThreads = 1;
 
     public StringDataReader(Path path) {
         this.path = Objects.requireNonNull(path);
@@ -98,8 +99,15 @@ public class StringDataReader implements DataReader<String> {
                     sizeInputStream = new SizeInputStream(new FileInputStream(path.toFile()), lastAvailable);
                 }
                 if (fileName.endsWith(".gz")) {
-                    logger.debug("Gzip input compress");
-                    this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(sizeInputStream)));
+                    BufferedInputStream bufferedInputStream = new BufferedInputStream(sizeInputStream);
+                    if (inflateThreads > 1 && ParallelBgzfInputStream.isBgzf(bufferedInputStream)) {
+                        logger.debug("BGZF input compress. Inflate with {} threads", inflateThreads);
+                        this.reader = new BufferedReader(new InputStreamReader(
+                                new ParallelBgzfInputStream(bufferedInputStream, inflateThreads)));
+                    } else {
+                        logger.debug("Gzip input compress");
+                        this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(bufferedInputStream)));
+                    }
                 } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
                     logger.debug("Snappy input compress");
                     this.reader = new BufferedReader(new InputStreamReader(new SnappyInputStream(sizeInputStream)));
@@ -186,6 +194,17 @@ public class StringDataReader implements DataReader<String> {
         return this;
     }
 
+    /**
+     * Number of threads used to inflate BGZF compressed files. Plain gzip files are always inflated by the reader thread.
+     *
+     * @param inflateThreads    Number of threads. 1 to disable.
+     * @return this
+     */
+    public StringDataReader setInflateThreads(int inflateThreads) {
+        this.inflateThreads = inflateThreads;
+        return this;
+    }
+
     public StringDataReader setReadLinesListener(BiConsumer<Long, Long> readLinesListener) {
         this.readLinesListener = readLinesListener;
         return this;
@@ -1,35 +1,72 @@
 package org.opencb.opencga.storage.core.metadata;
 
-import java.util.concurrent.ConcurrentHashMap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
 
 /**
+ * Size bounded cache of metadata values, indexed by study and resource id.
+ *
+ * Least recently used entries are evicted when the cache reaches the max size. Entries can optionally expire after
+ * some time since they were loaded. Null values are never cached.
+ *
  * Created by jacobo on 27/02/19.
  */
 public class MetadataCache<ID, R> {
 
-    private final ConcurrentHashMap<String, R> cache;
+    public static final long DEFAULT_MAX_SIZE = 200_000;
+
+    private final Cache<Object, R> cache;
     private final BiFunction<Integer, ID, R> function;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
     public MetadataCache(BiFunction<Integer, ID, R> function) {
         this(function, null);
     }
 
     public MetadataCache(BiFunction<Integer, ID, R> function, Predicate<R> reuseValue) {
-        this.cache = new ConcurrentHashMap<>();
+        this(function, reuseValue, DEFAULT_MAX_SIZE, 0);
+    }
+
+    /**
+     * Create a MetadataCache.
+     *
+     * @param function          Function to load the values
+     * @param reuseValue        Values matching this predicate are shared between entries, if equal.
+     *                          Allows to avoid duplicated values and lets the GC to claim the unused values.
+     * @param maxSize           Max number of entries in the cache
+     * @param expireAfterWrite  Time in milliseconds for the entries to expire since they were loaded. 0 to never expire.
+     */
+    public MetadataCache(BiFunction<Integer, ID, R> function, Predicate<R> reuseValue, long maxSize, long expireAfterWrite) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictions.increment();
+                    }
+                });
+        if (expireAfterWrite > 0) {
+            builder.expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder.build();
         if (reuseValue != null) {
-            // Try to reuse the value from another already existing in the cache.
-            // Allows to avoid duplicated values and lets the GC to claim the unused values.
+            // Try to reuse an equal value, instead of scanning the cache.
+            // Weak interner, so the canonical values can be claimed by the GC once evicted from the cache.
+            Interner<R> interner = Interners.newWeakInterner();
             this.function = function.andThen(value -> {
-                // Once we have the value, try to find an equal value in the cache
                 if (value != null && reuseValue.test(value)) {
-                    for (R cachedValue : cache.values()) {
-                        if (cachedValue.equals(value)) {
-                            // Use the cached value. The GC will claim the 'value'. Multiple entries will point to the same value.
-                            return cachedValue;
-                        }
-                    }
+                    // Use the canonical value. The GC will claim the 'value'. Multiple entries will point to the same value.
+                    return interner.intern(value);
                 }
                 return value;
             });
@@ -46,16 +83,16 @@ public class MetadataCache<ID, R> {
      * @return        Value
      */
     public R get(int studyId, ID id) {
-        String key = getKey(studyId, id);
+        Object key = getKey(studyId, id);
 
-        // Avoid unnecessary synchronize blocks.
-        // ConcurrentHashMap::get does not have any synchronization block
-        R r = cache.get(key);
+        R r = cache.getIfPresent(key);
         if (r != null) {
+            hits.increment();
             return r;
         } else {
+            misses.increment();
             // Use this method to avoid executing the function twice
-            return cache.computeIfAbsent(key, k -> this.function.apply(studyId, id));
+            return cache.asMap().computeIfAbsent(key, k -> this.function.apply(studyId, id));
         }
     }
 
@@ -68,14 +105,13 @@ public class MetadataCache<ID, R> {
      * @return Value
      */
     public R get(int studyId, ID id, R invalidValue) {
-        String key = getKey(studyId, id);
+        Object key = getKey(studyId, id);
 
-        // Avoid unnecessary synchronize blocks.
-        // ConcurrentHashMap::get does not have any synchronization block
-        R r = cache.get(key);
+        R r = cache.getIfPresent(key);
         if (r == null || r.equals(invalidValue)) {
+            misses.increment();
             // Use this method to avoid executing the function twice
-            return cache.compute(key, (k, v) -> {
+            return cache.asMap().compute(key, (k, v) -> {
                 if (v == null || v.equals(invalidValue)) {
                     return this.function.apply(studyId, id);
                 } else {
@@ -83,6 +119,7 @@ public class MetadataCache<ID, R> {
                 }
             });
         } else {
+            hits.increment();
             return r;
         }
     }
@@ -92,11 +129,81 @@ public class MetadataCache<ID, R> {
     }
 
     public void clear() {
-        cache.clear();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requests = hitCount + getMissCount();
+        return requests == 0 ? 1.0 : ((double) hitCount) / requests;
+    }
+
+    public ObjectMap getStats() {
+        return new ObjectMap()
+                .append("size", size())
+                .append("hits", getHitCount())
+                .append("misses", getMissCount())
+                .append("evictions", getEvictionCount())
+                .append("hitRate", getHitRate());
+    }
+
+    private static Object getKey(int studyId, Object id) {
+        if (id instanceof Integer) {
+            // Pack both ints into a single long
+            return (((long) studyId) << Integer.SIZE) | (((Integer) id) & 0xFFFFFFFFL);
+        } else {
+            return new Key(studyId, id);
+        }
     }
 
-    private String getKey(int studyId, ID id) {
-        return studyId + "_" + id;
+    private static final class Key {
+        private final int studyId;
+        private final Object id;
+        private final int hashCode;
+
+        private Key(int studyId, Object id) {
+            this.studyId = studyId;
+            this.id = id;
+            this.hashCode = 31 * studyId + Objects.hashCode(id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return studyId == key.studyId && Objects.equals(id, key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return studyId + "_" + id;
+        }
     }
 
 }
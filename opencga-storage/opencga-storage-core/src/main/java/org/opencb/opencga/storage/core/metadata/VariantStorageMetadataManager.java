@@ -115,29 +115,29 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         lockTimeout = dbAdaptorFactory.getConfiguration()
                 .getInt(METADATA_LOCK_TIMEOUT.key(), METADATA_LOCK_TIMEOUT.defaultValue());
         this.dbAdaptorFactory = dbAdaptorFactory;
-        sampleIdCache = new MetadataCache<>(sampleDBAdaptor::getSampleId);
-        sampleNameCache = new MetadataCache<>((studyId, sampleId) -> {
+        sampleIdCache = newMetadataCache(sampleDBAdaptor::getSampleId);
+        sampleNameCache = newMetadataCache((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = sampleDBAdaptor.getSampleMetadata(studyId, sampleId, null);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
             }
             return sampleMetadata.getName();
         });
-        sampleIdIndexedCache = new MetadataCache<>((studyId, sampleId) -> {
+        sampleIdIndexedCache = newMetadataCache((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = sampleDBAdaptor.getSampleMetadata(studyId, sampleId, null);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
             }
             return sampleMetadata.isIndexed();
         });
-        sampleIdsFromFileIdCache = new MetadataCache<>((studyId, fileId) -> {
+        sampleIdsFromFileIdCache = newMetadataCache((studyId, fileId) -> {
             FileMetadata fileMetadata = fileDBAdaptor.getFileMetadata(studyId, fileId, null);
             if (fileMetadata == null) {
                 throw VariantQueryException.fileNotFound(fileId, getStudyName(studyId));
             }
             return fileMetadata.getSamples();
         }, samples -> samples.size() > 100);
-        splitDataCache = new MetadataCache<>((studyId, sampleId) -> {
+        splitDataCache = newMetadataCache((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = sampleDBAdaptor.getSampleMetadata(studyId, sampleId, null);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
@@ -150,7 +150,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             }
         });
 
-        fileIdCache = new MetadataCache<>((studyId, file) -> {
+        fileIdCache = newMetadataCache((studyId, file) -> {
             Integer fileId = fileDBAdaptor.getFileId(studyId, file);
             if (fileId == null && file.contains("/")) {
                 // Input is a file path. Try reading by fileName. Then ensure that the filePath matches.
@@ -173,21 +173,21 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             }
             return fileId;
         });
-        fileNameCache = new MetadataCache<>((studyId, fileId) -> {
+        fileNameCache = newMetadataCache((studyId, fileId) -> {
             FileMetadata fileMetadata = fileDBAdaptor.getFileMetadata(studyId, fileId, null);
             if (fileMetadata == null) {
                 throw VariantQueryException.fileNotFound(fileId, getStudyName(studyId));
             }
             return fileMetadata.getName();
         });
-        fileIdIndexedCache = new MetadataCache<>((studyId, fileId) -> {
+        fileIdIndexedCache = newMetadataCache((studyId, fileId) -> {
             FileMetadata fileMetadata = fileDBAdaptor.getFileMetadata(studyId, fileId, null);
             if (fileMetadata == null) {
                 throw VariantQueryException.fileNotFound(fileId, getStudyName(studyId));
             }
             return fileMetadata.isIndexed();
         });
-        fileIdsFromSampleIdCache = new MetadataCache<>((studyId, sampleId) -> {
+        fileIdsFromSampleIdCache = newMetadataCache((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = getSampleMetadata(studyId, sampleId);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
@@ -195,8 +195,8 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             return sampleMetadata.getFiles();
         }, files -> files.size() > 20);
 
-        cohortIdCache = new MetadataCache<>(cohortDBAdaptor::getCohortId);
-        cohortNameCache = new MetadataCache<>((studyId, cohortId) -> {
+        cohortIdCache = newMetadataCache(cohortDBAdaptor::getCohortId);
+        cohortNameCache = newMetadataCache((studyId, cohortId) -> {
             CohortMetadata cohortMetadata = cohortDBAdaptor.getCohortMetadata(studyId, cohortId, null);
             if (cohortMetadata == null) {
                 throw VariantQueryException.cohortNotFound(cohortId, studyId, getAvailableCohorts(studyId));
@@ -205,6 +205,16 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         });
     }
 
+    private <ID, R> MetadataCache<ID, R> newMetadataCache(BiFunction<Integer, ID, R> function) {
+        return newMetadataCache(function, null);
+    }
+
+    private <ID, R> MetadataCache<ID, R> newMetadataCache(BiFunction<Integer, ID, R> function, Predicate<R> reuseValue) {
+        return new MetadataCache<>(function, reuseValue,
+                configuration.getInt(METADATA_CACHE_MAX_SIZE.key(), METADATA_CACHE_MAX_SIZE.defaultValue()),
+                configuration.getInt(METADATA_CACHE_EXPIRE.key(), METADATA_CACHE_EXPIRE.defaultValue()));
+    }
+
     public ObjectMap getConfiguration() {
         return dbAdaptorFactory.getConfiguration();
     }
@@ -299,6 +309,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
                 }
             }
             updateProjectStatus(projectMetadata);
+            invalidateQueryCache(projectMetadata);
             return projectMetadata;
         });
     }
@@ -599,6 +610,28 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             studyMetadata.getVariantScores().removeIf(s -> s.getId() == scoreMetadata.getId());
             return studyMetadata;
         });
+        invalidateQueryCache();
+    }
+
+    /**
+     * Invalidate the cached results of variant queries, in this and any other process sharing the same metadata.
+     *
+     * Must be called after any metadata change that modifies the result of a query and is not already recorded in the
+     * {@link ProjectMetadata}, like removing files or samples, or building secondary indexes.
+     *
+     * @throws StorageEngineException if the project metadata can not be updated
+     */
+    public void invalidateQueryCache() throws StorageEngineException {
+        updateProjectMetadata(projectMetadata -> {
+            if (projectMetadata != null) {
+                invalidateQueryCache(projectMetadata);
+            }
+        });
+    }
+
+    private static void invalidateQueryCache(ProjectMetadata projectMetadata) {
+        int now = (int) (System.currentTimeMillis() / 1000);
+        projectMetadata.setValidCacheTimestamp(Math.max(projectMetadata.getValidCacheTimestamp() + 1, now));
     }
 
     public <E extends Exception> ProjectMetadata updateProjectMetadata(UpdateConsumer<ProjectMetadata, E> consumer)
@@ -1221,6 +1254,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         }
 
         removeSamplesFromCohorts(studyId, cohortIds, otherRemovedFileIds, removedSampleIds);
+        invalidateQueryCache();
     }
 
     public void removeIndexedSamples(int studyId, Collection<Integer> sampleIds) throws StorageEngineException {
@@ -1233,6 +1267,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         for (Integer sampleId : sampleIds) {
             updateSampleMetadata(studyId, sampleId, VariantStorageMetadataManager::setRemovedSample);
         }
+        invalidateQueryCache();
     }
 
     private static void setRemovedSample(SampleMetadata sampleMetadata) {
@@ -1488,6 +1523,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             });
         }
         cohortDBAdaptor.removeCohort(studyId, cohortId);
+        invalidateQueryCache();
     }
 
     public void removeSamplesFromCohorts(int studyId, Collection<Integer> cohortIds,
@@ -2714,6 +2750,24 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         }
     }
 
+    /**
+     * @return Size, hits, misses and evictions of each metadata cache
+     */
+    public ObjectMap getCacheStats() {
+        return new ObjectMap()
+                .append("sampleId", sampleIdCache.getStats())
+                .append("sampleName", sampleNameCache.getStats())
+                .append("sampleIdIndexed", sampleIdIndexedCache.getStats())
+                .append("sampleIdsFromFileId", sampleIdsFromFileIdCache.getStats())
+                .append("splitData", splitDataCache.getStats())
+                .append("fileId", fileIdCache.getStats())
+                .append("fileName", fileNameCache.getStats())
+                .append("fileIdIndexed", fileIdIndexedCache.getStats())
+                .append("fileIdsFromSampleId", fileIdsFromSampleIdCache.getStats())
+                .append("cohortId", cohortIdCache.getStats())
+                .append("cohortName", cohortNameCache.getStats());
+    }
+
     public void clearCaches() {
         sampleIdCache.clear();
         sampleNameCache.clear();
@@ -50,6 +50,7 @@ public class SampleMetadata extends StudyResourceMetadata<SampleMetadata> {
     private static final String FAMILY_INDEX_STATUS_PREFIX = "familyIndex_";
     private static final String FAMILY_INDEX_VERSIONS = "familyIndexReadyVersions";
     private static final String FAMILY_INDEX_DEFINED = "familyIndexDefined";
+    private static final String SAMPLE_INDEX_GENERATION = "sampleIndexGeneration";
 
     public SampleMetadata() {
         files = new ArrayList<>(1);
@@ -247,6 +248,7 @@ public class SampleMetadata extends StudyResourceMetadata<SampleMetadata> {
     public SampleMetadata setSampleIndexStatus(TaskMetadata.Status status, int version) {
         registerVersion(SAMPLE_INDEX_VERSIONS, status, version);
         this.setStatus(SAMPLE_INDEX_STATUS_PREFIX + version, status);
+        increaseSampleIndexGeneration();
         return this;
     }
 
@@ -269,14 +271,31 @@ public class SampleMetadata extends StudyResourceMetadata<SampleMetadata> {
     public SampleMetadata setSampleIndexAnnotationStatus(TaskMetadata.Status status, int version) {
         registerVersion(SAMPLE_INDEX_ANNOTATION_VERSIONS, status, version);
         this.setStatus(SAMPLE_INDEX_ANNOTATION_STATUS_PREFIX + version, status);
+        increaseSampleIndexGeneration();
         return this;
     }
 
     @JsonIgnore
     public SampleMetadata setMendelianErrorStatus(TaskMetadata.Status mendelianErrorStatus) {
+        increaseSampleIndexGeneration();
         return setStatus("mendelian_error", mendelianErrorStatus);
     }
 
+    /**
+     * Counter increased every time the sample index, sample index annotation, family index or mendelian error status changes.
+     * Allows detecting that the sample index of this sample was rewritten, even from other processes.
+     *
+     * @return Sample index generation
+     */
+    @JsonIgnore
+    public long getSampleIndexGeneration() {
+        return getAttributes().getLong(SAMPLE_INDEX_GENERATION, 0);
+    }
+
+    private void increaseSampleIndexGeneration() {
+        getAttributes().put(SAMPLE_INDEX_GENERATION, getSampleIndexGeneration() + 1);
+    }
+
     @JsonIgnore
     public TaskMetadata.Status getMendelianErrorStatus() {
         return getStatus("mendelian_error");
@@ -302,6 +321,7 @@ public class SampleMetadata extends StudyResourceMetadata<SampleMetadata> {
             setFamilyIndexDefined(true);
         }
         registerVersion(FAMILY_INDEX_VERSIONS, status, version);
+        increaseSampleIndexGeneration();
         return setStatus(FAMILY_INDEX_STATUS_PREFIX + version, status);
     }
 
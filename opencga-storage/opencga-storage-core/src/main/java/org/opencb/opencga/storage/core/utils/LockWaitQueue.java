@@ -0,0 +1,333 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.utils;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-JVM queue of threads waiting for the same distributed lock.
+ *
+ * Threads from the same process wait here in FIFO order, and are woken up as soon as the local holder releases
+ * the lock. Only the head of the queue goes to the database, so local contention never polls the backend.
+ * Contention with other processes is still resolved by the database, polling with exponential backoff and jitter.
+ *
+ * The local hold is a lease. If the holder stops refreshing it (e.g. the keep-alive was stopped), the lease
+ * expires with the same lock duration as the database token, and the next waiter is allowed to go to the database.
+ *
+ * Queues are removed from the shared registry once they have no waiters and no active holder, so only locks in use are kept in
+ * memory. A queue instance obtained before its removal can still be used: it is registered again on {@link #enter}. Tickets are unique
+ * in the JVM, so releasing a ticket on a different instance of the same queue does nothing.
+ * Wait time stats are kept in a separate registry by lock key, and are shared by all the instances of the same queue, so they
+ * are not lost when an idle queue is removed.
+ *
+ * Created on 17/10/26.
+ */
+public final class LockWaitQueue {
+
+    private static final Map<String, LockWaitQueue> QUEUES = new ConcurrentHashMap<>();
+    private static final Map<String, WaitStats> STATS = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_TICKET = new AtomicLong();
+
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+    private static final long[] HISTOGRAM_BUCKETS = {1, 10, 100, 1000, 10000, 60000, Long.MAX_VALUE};
+
+    private final String key;
+    private final ReentrantLock mutex = new ReentrantLock();
+    private final Condition changed = mutex.newCondition();
+    private final Deque<Object> waiters = new ArrayDeque<>();
+    private long owner = 0;
+    private long leaseExpiry = 0;
+    private final WaitStats stats;
+
+    private static final class WaitStats {
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS.length);
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        private ObjectMap toObjectMap(int numWaiters) {
+            ObjectMap histogramMap = new ObjectMap();
+            for (int i = 0; i < HISTOGRAM_BUCKETS.length; i++) {
+                String bucket = HISTOGRAM_BUCKETS[i] == Long.MAX_VALUE
+                        ? ">" + HISTOGRAM_BUCKETS[i - 1] + "ms"
+                        : "<=" + HISTOGRAM_BUCKETS[i] + "ms";
+                histogramMap.put(bucket, histogram.get(i));
+            }
+            return new ObjectMap()
+                    .append("acquired", acquired.get())
+                    .append("timeouts", timeouts.get())
+                    .append("retries", retries.get())
+                    .append("waiters", numWaiters)
+                    .append("totalWaitMillis", totalWaitMillis.get())
+                    .append("maxWaitMillis", maxWaitMillis.get())
+                    .append("waitHistogram", histogramMap);
+        }
+    }
+
+    private LockWaitQueue(String key) {
+        this.key = key;
+        this.stats = STATS.computeIfAbsent(key, k -> new WaitStats());
+    }
+
+    /**
+     * Get the shared queue for the given lock.
+     *
+     * @param key   Unique identifier of the lock in the backend, e.g. table, row and column.
+     * @return      Queue for the lock
+     */
+    public static LockWaitQueue get(String key) {
+        return QUEUES.computeIfAbsent(key, LockWaitQueue::new);
+    }
+
+    /**
+     * Wait until this thread is the first local waiter and no other local thread holds the lock.
+     *
+     * The returned ticket has an unbounded lease until {@link #acquired} or {@link #leave} are called.
+     *
+     * @param timeout   Max time in milliseconds to wait
+     * @return          Ticket identifying the local holder
+     * @throws InterruptedException if any thread has interrupted the current thread.
+     * @throws TimeoutException     if the operations takes more than the timeout value.
+     */
+    public long enter(long timeout) throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + timeout;
+        Object node = new Object();
+        // Register the node while holding the registry entry, so the queue can not be removed in between
+        LockWaitQueue queue = QUEUES.compute(key, (k, registered) -> {
+            if (registered != null && registered != this) {
+                return registered;
+            }
+            mutex.lock();
+            try {
+                waiters.addLast(node);
+            } finally {
+                mutex.unlock();
+            }
+            return this;
+        });
+        if (queue != this) {
+            // This instance was removed from the registry, and replaced by a new one
+            return queue.enter(timeout);
+        }
+        boolean entered = false;
+        try {
+            mutex.lockInterruptibly();
+            try {
+                while (waiters.peekFirst() != node || isHeld()) {
+                    long now = System.currentTimeMillis();
+                    long wait = deadline - now;
+                    if (wait <= 0) {
+                        stats.timeouts.incrementAndGet();
+                        throw new TimeoutException("Unable to get the lock");
+                    }
+                    if (owner != 0) {
+                        // Wake up when the lease expires
+                        wait = Math.min(wait, leaseExpiry - now);
+                    }
+                    changed.await(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+                }
+                owner = NEXT_TICKET.incrementAndGet();
+                leaseExpiry = Long.MAX_VALUE;
+                entered = true;
+                return owner;
+            } finally {
+                mutex.unlock();
+            }
+        } finally {
+            mutex.lock();
+            try {
+                waiters.remove(node);
+                changed.signalAll();
+            } finally {
+                mutex.unlock();
+            }
+            if (!entered) {
+                removeIfIdle();
+            }
+        }
+    }
+
+    /**
+     * Mark the lock as acquired in the database.
+     *
+     * @param ticket        Ticket returned by {@link #enter}
+     * @param lockDuration  Duration of the database token, used as local lease
+     * @param waitMillis    Total time waiting for the lock
+     */
+    public void acquired(long ticket, long lockDuration, long waitMillis) {
+        LockWaitQueue queue = registered();
+        if (queue != this) {
+            queue.acquired(ticket, lockDuration, waitMillis);
+            return;
+        }
+        extend(ticket, lockDuration);
+        stats.acquired.incrementAndGet();
+        stats.totalWaitMillis.addAndGet(waitMillis);
+        stats.maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        for (int i = 0; i < HISTOGRAM_BUCKETS.length; i++) {
+            if (waitMillis <= HISTOGRAM_BUCKETS[i]) {
+                stats.histogram.incrementAndGet(i);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Extend the local lease after refreshing the database token.
+     *
+     * @param ticket        Ticket returned by {@link #enter}
+     * @param lockDuration  Duration of the database token
+     */
+    public void extend(long ticket, long lockDuration) {
+        LockWaitQueue queue = registered();
+        if (queue != this) {
+            queue.extend(ticket, lockDuration);
+            return;
+        }
+        mutex.lock();
+        try {
+            if (owner == ticket) {
+                leaseExpiry = System.currentTimeMillis() + lockDuration;
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Release the local hold, and wake up the next waiter. Does nothing if the lease was already taken by another thread.
+     *
+     * @param ticket        Ticket returned by {@link #enter}
+     */
+    public void leave(long ticket) {
+        LockWaitQueue queue = registered();
+        if (queue != this) {
+            queue.leave(ticket);
+            return;
+        }
+        mutex.lock();
+        try {
+            if (owner == ticket) {
+                owner = 0;
+                leaseExpiry = 0;
+                changed.signalAll();
+            }
+        } finally {
+            mutex.unlock();
+        }
+        removeIfIdle();
+    }
+
+    /**
+     * Sleep before polling the database again.
+     *
+     * Exponential backoff with jitter, starting at {@value #MIN_BACKOFF_MILLIS}ms and capped at {@value #MAX_BACKOFF_MILLIS}ms.
+     *
+     * @param attempt   Number of failed attempts so far
+     * @param remaining Remaining time until the timeout
+     * @throws InterruptedException if any thread has interrupted the current thread.
+     */
+    public void backoff(int attempt, long remaining) throws InterruptedException {
+        stats.retries.incrementAndGet();
+        long sleep = backoffMillis(attempt);
+        Thread.sleep(Math.max(1, Math.min(sleep, remaining)));
+    }
+
+    static long backoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(attempt, 20));
+        // Equal jitter. Between half and the full cap
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private boolean isHeld() {
+        return owner != 0 && leaseExpiry > System.currentTimeMillis();
+    }
+
+    /**
+     * Instance currently registered for this key. If this instance was removed, the ticket may belong to a newer one.
+     */
+    private LockWaitQueue registered() {
+        LockWaitQueue queue = QUEUES.get(key);
+        return queue == null ? this : queue;
+    }
+
+    private void removeIfIdle() {
+        QUEUES.computeIfPresent(key, (k, registered) -> {
+            if (registered != this) {
+                return registered;
+            }
+            mutex.lock();
+            try {
+                return waiters.isEmpty() && !isHeld() ? null : this;
+            } finally {
+                mutex.unlock();
+            }
+        });
+    }
+
+    static boolean isRegistered(String key) {
+        return QUEUES.containsKey(key);
+    }
+
+    private int getNumWaiters() {
+        mutex.lock();
+        try {
+            return waiters.size();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    public ObjectMap getStats() {
+        return stats.toObjectMap(registered().getNumWaiters());
+    }
+
+    /**
+     * Wait time stats of all the locks used in this JVM, including the ones without any queue in use.
+     *
+     * @return Stats by lock key
+     */
+    public static ObjectMap getAllStats() {
+        ObjectMap allStats = new ObjectMap();
+        for (Map.Entry<String, WaitStats> entry : new TreeMap<>(STATS).entrySet()) {
+            LockWaitQueue queue = QUEUES.get(entry.getKey());
+            allStats.put(entry.getKey(), entry.getValue().toObjectMap(queue == null ? 0 : queue.getNumWaiters()));
+        }
+        return allStats;
+    }
+
+    @Override
+    public String toString() {
+        return "LockWaitQueue{" + key + '}';
+    }
+}
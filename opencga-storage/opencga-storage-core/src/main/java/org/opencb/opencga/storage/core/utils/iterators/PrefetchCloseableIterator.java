@@ -0,0 +1,143 @@
+package org.opencb.opencga.storage.core.utils.iterators;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Consumes the delegated iterator in a background task, buffering batches of elements in a bounded queue.
+ *
+ * The delegated iterator is only accessed from the background task, so it does not need to be thread safe.
+ * Any exception thrown by the delegated iterator is rethrown on the consumer thread.
+ *
+ * Created on 17/10/26.
+ */
+public class PrefetchCloseableIterator<T> extends CloseableIterator<T> {
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final Iterator<T> delegated;
+    private final int batchSize;
+    private final BlockingQueue<List<T>> queue;
+    // Marker batch. Compared by identity
+    private final List<T> endOfStream = new ArrayList<>(0);
+    private final Future<?> future;
+    private volatile boolean closed = false;
+    private volatile Throwable exception;
+
+    private Iterator<T> batchIterator = Collections.emptyIterator();
+    private boolean finished = false;
+    private final Logger logger = LoggerFactory.getLogger(PrefetchCloseableIterator.class);
+
+    /**
+     * Starts prefetching the delegated iterator.
+     *
+     * @param delegated   Iterator to consume in background. Will be closed, if closeable, when closing this iterator.
+     * @param executor    Executor where to run the prefetch task
+     * @param bufferSize  Max number of elements to buffer
+     * @param batchSize   Number of elements per batch
+     */
+    public PrefetchCloseableIterator(Iterator<T> delegated, ExecutorService executor, int bufferSize, int batchSize) {
+        this.delegated = delegated;
+        this.batchSize = Math.max(1, batchSize);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferSize / this.batchSize));
+        addCloseableOptional(delegated);
+        this.future = executor.submit(this::prefetch);
+    }
+
+    private void prefetch() {
+        try {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (!closed && delegated.hasNext()) {
+                batch.add(delegated.next());
+                if (batch.size() >= batchSize) {
+                    if (!put(batch)) {
+                        return;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                put(batch);
+            }
+        } catch (Throwable e) {
+            if (closed) {
+                logger.debug("Ignore exception from closed iterator", e);
+            } else {
+                exception = e;
+            }
+        } finally {
+            put(endOfStream);
+        }
+    }
+
+    private boolean put(List<T> batch) {
+        try {
+            while (!closed) {
+                if (queue.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!batchIterator.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            List<T> batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for prefetched elements", e);
+            }
+            if (batch == endOfStream) {
+                finished = true;
+                if (exception != null) {
+                    if (exception instanceof RuntimeException) {
+                        throw (RuntimeException) exception;
+                    } else if (exception instanceof Error) {
+                        throw (Error) exception;
+                    } else {
+                        throw new IllegalStateException(exception);
+                    }
+                }
+                return false;
+            }
+            batchIterator = batch.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batchIterator.next();
+    }
+
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        queue.clear();
+        try {
+            // Wait for the background task before closing the delegated iterator
+            future.get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Error waiting for prefetch task to finish", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        super.close();
+    }
+}
@@ -2,59 +2,61 @@ package org.opencb.opencga.storage.core.utils.iterators;
 
 import java.util.*;
 
+/**
+ * K-way merge of sorted iterators. Elements found in more than one iterator are returned only once.
+ *
+ * The head of each iterator is kept in a heap, so each step costs log(k) comparisons instead of k.
+ *
+ * @param <T> Type of the elements
+ */
 public class UnionMultiKeyIterator<T> extends MultiKeyIterator<T> {
 
-    protected List<T> elements;
+    private final PriorityQueue<Head<T>> heads;
 
     public UnionMultiKeyIterator(Comparator<T> comparator, List<? extends Iterator<T>> iterators) {
         super(comparator, iterators);
-        elements = new ArrayList<>(iterators.size());
+        // On ties, return the element from the first iterator
+        heads = new PriorityQueue<>(Math.max(1, iterators.size()), (h1, h2) -> {
+            int c = comparator.compare(h1.element, h2.element);
+            return c == 0 ? Integer.compare(h1.index, h2.index) : c;
+        });
     }
 
     @Override
     protected void init() {
-        for (Iterator<T> iterator : iterators) {
+        for (int i = 0; i < iterators.size(); i++) {
+            Iterator<T> iterator = iterators.get(i);
             if (iterator.hasNext()) {
-                elements.add(iterator.next());
-            } else {
-                // Mark as this iterator is over
-                elements.add(null);
+                heads.add(new Head<>(i, iterator.next()));
             }
         }
-        next = elements.stream().filter(Objects::nonNull).min(comparator).orElse(null);
+        next = heads.isEmpty() ? null : heads.peek().element;
     }
 
     @Override
     public void getNext() {
-        T nextMin = null;
-
-        // Find the smallest element
-        for (int i = 0; i < iterators.size(); i++) {
-            Iterator<T> iterator = iterators.get(i);
-            T element = elements.get(i);
-            // Increment iterator if it was pointing to the previous element
-            if (element != null && comparator.compare(prev, element) == 0) {
-                if (iterator.hasNext()) {
-                    element = iterator.next();
-                    elements.set(i, element);
-                } else {
-                    element = null;
-                    elements.set(i, null);
-                }
-            }
-            if (element != null) {
-                if (nextMin == null) {
-                    nextMin = element;
-                } else {
-                    if (comparator.compare(element, nextMin) < 0) {
-                        nextMin = element;
-                    }
-                }
+        // Increment all the iterators pointing to the previous element
+        while (!heads.isEmpty() && comparator.compare(prev, heads.peek().element) == 0) {
+            Head<T> head = heads.poll();
+            Iterator<T> iterator = iterators.get(head.index);
+            if (iterator.hasNext()) {
+                head.element = iterator.next();
+                heads.add(head);
             }
         }
 
         prev = null;
-        next = nextMin;
+        next = heads.isEmpty() ? null : heads.peek().element;
+    }
+
+    private static final class Head<T> {
+        private final int index;
+        private T element;
+
+        private Head(int index, T element) {
+            this.index = index;
+            this.element = element;
+        }
     }
 
 }
@@ -36,6 +36,7 @@ import org.opencb.opencga.core.models.operations.variant.VariantAggregateParams;
 import org.opencb.opencga.core.models.variant.VariantSetupParams;
 import org.opencb.opencga.storage.core.StorageEngine;
 import org.opencb.opencga.storage.core.StoragePipelineResult;
+import org.opencb.opencga.storage.core.cache.CacheManager;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.exceptions.StoragePipelineException;
 import org.opencb.opencga.storage.core.exceptions.VariantSearchException;
@@ -95,6 +96,7 @@ import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.*;
 public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdaptor> implements VariantIterable {
 
     private final AtomicReference<VariantSearchManager> variantSearchManager = new AtomicReference<>();
+    private final AtomicReference<CacheManager> cacheManager = new AtomicReference<>();
     private final List<VariantQueryExecutor> lazyVariantQueryExecutorsList = new ArrayList<>();
     private final List<VariantAggregationExecutor> lazyVariantAggregationExecutorsList = new ArrayList<>();
     private CellBaseUtils cellBaseUtils;
@@ -937,6 +939,7 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                     });
                 }
             }
+            mm.invalidateQueryCache();
         }
 
         return load;
@@ -1338,7 +1341,33 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         addDefaultLimit(options, getOptions());
         addDefaultSampleLimit(query, getOptions());
         ParsedVariantQuery variantQuery = parseQuery(query, options);
-        return getVariantQueryExecutor(variantQuery).get(variantQuery);
+        CacheManager cacheManager = getCacheManager();
+        if (!cacheManager.isActive(options)) {
+            return getVariantQueryExecutor(variantQuery).get(variantQuery);
+        }
+        String key;
+        try {
+            key = cacheManager.createKey(variantQuery, getMetadataManager());
+        } catch (StorageEngineException e) {
+            throw VariantQueryException.internalException(e);
+        }
+        VariantQueryResult<Variant> result = cacheManager.get(key);
+        if (result == null) {
+            result = getVariantQueryExecutor(variantQuery).get(variantQuery);
+            cacheManager.set(key, result);
+        }
+        return result;
+    }
+
+    public CacheManager getCacheManager() {
+        if (cacheManager.get() == null) {
+            synchronized (cacheManager) {
+                if (cacheManager.get() == null) {
+                    cacheManager.set(new CacheManager(configuration));
+                }
+            }
+        }
+        return cacheManager.get();
     }
 
     @Override
@@ -1406,8 +1435,10 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
      */
     public VariantQueryExecutor getVariantQueryExecutor(ParsedVariantQuery variantQuery) {
         try {
+            long start = System.nanoTime();
             for (VariantQueryExecutor executor : getVariantQueryExecutors()) {
                 if (executor.acceptsQuery(variantQuery)) {
+                    variantQuery.getMetrics().setSelectionTimeNanos(System.nanoTime() - start);
                     logger.info("Using VariantQueryExecutor : " + executor.getClass().getName());
                     logger.info("  Query : " + printQuery(variantQuery.getInputQuery()));
                     logger.info("  Options : " + variantQuery.getInputOptions().toJson());
@@ -1444,7 +1475,16 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
 
     public ParsedVariantQuery parseQuery(Query originalQuery, QueryOptions options) {
         try {
-            return getVariantQueryParser().parseQuery(originalQuery, options);
+            long start = System.nanoTime();
+            ParsedVariantQuery variantQuery = getVariantQueryParser().parseQuery(originalQuery, options);
+            variantQuery.getMetrics()
+                    .setStorageEngineId(getStorageEngineId())
+                    .setShape(VariantQueryUtils.validParams(variantQuery.getInputQuery(), true).stream()
+                            .map(VariantQueryParam::key)
+                            .sorted()
+                            .collect(Collectors.joining(",")))
+                    .setParseTimeNanos(System.nanoTime() - start);
+            return variantQuery;
         } catch (StorageEngineException e) {
             throw VariantQueryException.internalException(e).setQuery(originalQuery);
         }
@@ -1624,6 +1664,10 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                 variantSearchManager.set(null);
             }
         }
+        CacheManager cacheManager = this.cacheManager.getAndSet(null);
+        if (cacheManager != null) {
+            cacheManager.close();
+        }
         lazyVariantQueryExecutorsList.clear();
     }
 }
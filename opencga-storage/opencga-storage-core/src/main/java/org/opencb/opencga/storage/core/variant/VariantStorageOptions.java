@@ -21,6 +21,7 @@ public enum VariantStorageOptions implements ConfigurationOption {
 
     TRANSFORM_BATCH_SIZE("transform.batchSize", 200),
     TRANSFORM_THREADS("transform.numThreads", 4),
+    TRANSFORM_INFLATE_THREADS("transform.inflate.numThreads", 2),   // Threads inflating BGZF input files. 1 to disable.
     TRANSFORM_FORMAT("transform.format", "avro"),
     TRANSFORM_FAIL_ON_MALFORMED_VARIANT("transform.failOnMalformed", true),
     TRANSFORM_COMPRESSION("transform.compression", "gzip"),
@@ -94,6 +95,8 @@ public enum VariantStorageOptions implements ConfigurationOption {
     METADATA_LOCK_TIMEOUT("metadata.lock.timeout", 600000),
     METADATA_LOAD_BATCH_SIZE("metadata.load.batchSize", 10),
     METADATA_LOAD_THREADS("metadata.load.numThreads", 4),
+    METADATA_CACHE_MAX_SIZE("metadata.cache.maxSize", 200000),       // Max number of entries of each metadata cache
+    METADATA_CACHE_EXPIRE("metadata.cache.expireAfterWrite", 0),      // Milliseconds since load to expire a cache entry. 0 to never expire
 
     QUERY_DEFAULT_TIMEOUT("query.timeout.default", 10000), // Default timeout for DBAdaptor operations. Only used if none is provided.
     QUERY_MAX_TIMEOUT("query.timeout.max", 30000),         // Max allowed timeout for DBAdaptor operations
@@ -101,6 +104,14 @@ public enum VariantStorageOptions implements ConfigurationOption {
     QUERY_LIMIT_MAX("query.limit.max", 5000),
     QUERY_SAMPLE_LIMIT_DEFAULT("query.sample.limit.default", 100),
     QUERY_SAMPLE_LIMIT_MAX("query.sample.limit.max", 1000),
+    // Max number of threads per query used to prefetch each of the merged iterators (e.g. one per sample). 0 to disable.
+    QUERY_PREFETCH_THREADS("query.prefetch.numThreads", 4),
+    QUERY_PREFETCH_BUFFER_SIZE("query.prefetch.bufferSize", 2000),  // Max number of prefetched elements per iterator
+    QUERY_PREFETCH_BATCH_SIZE("query.prefetch.batchSize", 100),
+
+    // Number of threads serializing and compressing the exported variants. Only for VCF and JSON formats. 1 to disable.
+    EXPORT_THREADS("export.numThreads", 4),
+    EXPORT_BATCH_SIZE("export.batchSize", 1000),    // Number of variants per chunk when exporting in parallel
 
     WALKER_DOCKER_MEMORY("walker.docker.memory", "1024m", true),
     WALKER_DOCKER_CPU("walker.docker.cpu", "1", true),
@@ -115,6 +126,9 @@ public enum VariantStorageOptions implements ConfigurationOption {
     SEARCH_INTERSECT_ALWAYS("search.intersect.always", false),                 // Force intersect queries
     SEARCH_INTERSECT_PARAMS_THRESHOLD("search.intersect.params.threshold", 3), // Minimum number of QueryParams in the query to intersect
     SEARCH_LOAD_BATCH_SIZE("search.load.batchSize", 200),
+    SEARCH_LOAD_THREADS("search.load.numThreads", 4),                        // Number of threads converting variants to documents
+    SEARCH_LOAD_WRITER_THREADS("search.load.writer.numThreads", 2),          // Number of concurrent update requests. 1 to disable.
+    SEARCH_LOAD_MAX_IN_FLIGHT_MB("search.load.maxInFlightMb", 256),          // Max size of the documents being sent concurrently
     // Use blue-green deployment when overwriting an existing collection in the SearchEngine (Solr).
     // In this scenario, data is loaded in a new collection, and when finished, the old collection is deleted.
     // While loading, the old collection is still available for querying.
@@ -305,6 +305,9 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         }
         ProgressLogger progressLogger = new ProgressLogger("Transforming file:", fileSize, 200);
         stringReader.setReadBytesListener((totalRead, delta) -> progressLogger.increment(delta, "Bytes"));
+        stringReader.setInflateThreads(options.getInt(
+                VariantStorageOptions.TRANSFORM_INFLATE_THREADS.key(),
+                VariantStorageOptions.TRANSFORM_INFLATE_THREADS.defaultValue()));
 
         VariantSetStatsCalculator statsCalculator = new VariantSetStatsCalculator(studyId, metadata);
 
@@ -1,8 +1,13 @@
 package org.opencb.opencga.storage.core.variant.adaptors.iterators;
 
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.opencga.storage.core.utils.iterators.IntersectMultiKeyIterator;
 
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Created on 03/07/18.
@@ -15,11 +20,19 @@ public class IntersectMultiVariantKeyIterator extends VariantDBIteratorWrapper {
     private final List<VariantDBIterator> negatedIterators;
 
     public IntersectMultiVariantKeyIterator(List<VariantDBIterator> iterators, List<VariantDBIterator> negatedIterators) {
-        super(new IntersectMultiKeyIterator<>(VariantDBIterator.VARIANT_COMPARATOR, iterators, negatedIterators));
+        super(PackedVariantKey.unpack(intersect(iterators, negatedIterators)));
         this.iterators = iterators;
         this.negatedIterators = negatedIterators;
     }
 
+    private static IntersectMultiKeyIterator<PackedVariantKey<Variant>> intersect(List<VariantDBIterator> iterators,
+                                                                                  List<VariantDBIterator> negatedIterators) {
+        Map<String, String> chromosomes = new HashMap<>();
+        return new IntersectMultiKeyIterator<>(Comparator.naturalOrder(),
+                PackedVariantKey.pack(iterators, Function.identity(), chromosomes),
+                PackedVariantKey.pack(negatedIterators, Function.identity(), chromosomes));
+    }
+
     @Override
     public long getTimeFetching() {
         return iterators.stream().mapToLong(VariantDBIterator::getTimeFetching).sum();
@@ -0,0 +1,177 @@
+package org.opencb.opencga.storage.core.variant.adaptors.iterators;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.utils.iterators.CloseableIterator;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Sort key of a variant, precomputed once per element to speed up the merge of multiple sorted iterators.
+ *
+ * The chromosome is interned, so chromosomes are compared by reference in most cases, and the start and end
+ * are packed in one single long. The reference and alternate are only compared on ties, with the same
+ * criteria as {@link VariantDBIterator#VARIANT_COMPARATOR}, so the order is exactly the same.
+ *
+ * Created on 17/10/26.
+ *
+ * @param <T> Type of the element associated to the variant
+ */
+public final class PackedVariantKey<T> implements Comparable<PackedVariantKey<T>> {
+
+    private final T value;
+    private final Variant variant;
+    private final String chromosome;
+    private final long position;
+
+    private PackedVariantKey(T value, Variant variant, String chromosome) {
+        this.value = value;
+        this.variant = variant;
+        this.chromosome = chromosome;
+        this.position = pack(variant.getStart(), variant.getEnd());
+    }
+
+    /**
+     * Pack start and end in one long, keeping the order of (start, end).
+     *
+     * @param start Start
+     * @param end   End
+     * @return      Packed position
+     */
+    static long pack(int start, int end) {
+        return ((long) start << 32) | (end - (long) Integer.MIN_VALUE);
+    }
+
+    /**
+     * Wrap the given sorted iterators, producing packed keys. All the iterators share the same chromosome dictionary.
+     *
+     * @param iterators Sorted iterators
+     * @param toVariant Function to get the variant of each element
+     * @param <T>       Type of the elements
+     * @return          Iterators of packed keys. Closing them will close the original iterators
+     */
+    public static <T> List<CloseableIterator<PackedVariantKey<T>>> pack(List<? extends Iterator<T>> iterators,
+                                                                         Function<T, Variant> toVariant) {
+        return pack(iterators, toVariant, new HashMap<>());
+    }
+
+    /**
+     * Wrap the given sorted iterators, producing packed keys.
+     *
+     * @param iterators     Sorted iterators
+     * @param toVariant     Function to get the variant of each element
+     * @param chromosomes   Chromosome dictionary. Share between all the iterators to be merged
+     * @param <T>           Type of the elements
+     * @return              Iterators of packed keys. Closing them will close the original iterators
+     */
+    public static <T> List<CloseableIterator<PackedVariantKey<T>>> pack(List<? extends Iterator<T>> iterators,
+                                                                         Function<T, Variant> toVariant,
+                                                                         Map<String, String> chromosomes) {
+        List<CloseableIterator<PackedVariantKey<T>>> packedIterators = new ArrayList<>(iterators.size());
+        for (Iterator<T> iterator : iterators) {
+            packedIterators.add(new PackingIterator<>(iterator, toVariant, chromosomes));
+        }
+        return packedIterators;
+    }
+
+    /**
+     * Unwrap an iterator of packed keys.
+     *
+     * @param iterator  Iterator of packed keys
+     * @param <T>       Type of the elements
+     * @return          Iterator of elements. Closing it will close the given iterator
+     */
+    public static <T> CloseableIterator<T> unpack(Iterator<PackedVariantKey<T>> iterator) {
+        CloseableIterator<T> unpacked = new CloseableIterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next().getValue();
+            }
+        };
+        unpacked.addCloseableOptional(iterator);
+        return unpacked;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public Variant getVariant() {
+        return variant;
+    }
+
+    @Override
+    public int compareTo(PackedVariantKey<T> o) {
+        // Interned chromosomes. Same reference means same chromosome
+        if (chromosome != o.chromosome) {
+            int c = chromosome.compareTo(o.chromosome);
+            if (c != 0) {
+                return c;
+            }
+        }
+        int c = Long.compare(position, o.position);
+        if (c != 0) {
+            return c;
+        }
+        return VariantDBIterator.VARIANT_COMPARATOR.compare(variant, o.variant);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PackedVariantKey)) {
+            return false;
+        }
+        return compareTo((PackedVariantKey<T>) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(chromosome, position);
+    }
+
+    @Override
+    public String toString() {
+        return variant.toString();
+    }
+
+    private static final class PackingIterator<T> extends CloseableIterator<PackedVariantKey<T>> {
+        private final Iterator<T> iterator;
+        private final Function<T, Variant> toVariant;
+        private final Map<String, String> chromosomes;
+        private String lastChromosome;
+        private String lastInternedChromosome;
+
+        private PackingIterator(Iterator<T> iterator, Function<T, Variant> toVariant, Map<String, String> chromosomes) {
+            this.iterator = iterator;
+            this.toVariant = toVariant;
+            this.chromosomes = chromosomes;
+            addCloseableOptional(iterator);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public PackedVariantKey<T> next() {
+            T value = iterator.next();
+            Variant variant = toVariant.apply(value);
+            String chromosome = variant.getChromosome();
+            // Input is sorted, so the chromosome rarely changes
+            if (!chromosome.equals(lastChromosome)) {
+                lastChromosome = chromosome;
+                lastInternedChromosome = chromosomes.computeIfAbsent(chromosome, Function.identity());
+            }
+            return new PackedVariantKey<>(value, variant, lastInternedChromosome);
+        }
+    }
+}
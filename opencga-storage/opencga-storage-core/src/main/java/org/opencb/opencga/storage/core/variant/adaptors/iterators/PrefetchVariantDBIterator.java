@@ -0,0 +1,53 @@
+package org.opencb.opencga.storage.core.variant.adaptors.iterators;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.utils.iterators.PrefetchCloseableIterator;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Prefetches the variants from the delegated iterator in a background task.
+ * Use {@link PrefetchCloseableIterator}.
+ *
+ * The time fetching reported by this iterator is the time the consumer was blocked waiting for new variants.
+ *
+ * Created on 17/10/26.
+ */
+public class PrefetchVariantDBIterator extends VariantDBIterator {
+
+    private final VariantDBIterator delegated;
+    private final PrefetchCloseableIterator<Variant> iterator;
+    private int count = 0;
+
+    public PrefetchVariantDBIterator(VariantDBIterator delegated, ExecutorService executor, int bufferSize, int batchSize) {
+        this.delegated = delegated;
+        this.iterator = new PrefetchCloseableIterator<>(delegated, executor, bufferSize, batchSize);
+        addCloseable(iterator);
+    }
+
+    public VariantDBIterator getDelegated() {
+        return delegated;
+    }
+
+    @Override
+    public long getTimeConverting() {
+        return delegated.getTimeConverting();
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fetch(iterator::hasNext);
+    }
+
+    @Override
+    public Variant next() {
+        Variant variant = fetch(iterator::next);
+        count++;
+        return variant;
+    }
+}
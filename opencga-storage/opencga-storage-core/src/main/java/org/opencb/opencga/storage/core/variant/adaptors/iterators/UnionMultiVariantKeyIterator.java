@@ -2,7 +2,9 @@ package org.opencb.opencga.storage.core.variant.adaptors.iterators;
 
 import org.opencb.opencga.storage.core.utils.iterators.UnionMultiKeyIterator;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Created on 03/07/18.
@@ -14,7 +16,8 @@ public class UnionMultiVariantKeyIterator extends VariantDBIteratorWrapper {
     private final List<VariantDBIterator> iterators;
 
     public UnionMultiVariantKeyIterator(List<VariantDBIterator> iterators) {
-        super(new UnionMultiKeyIterator<>(VariantDBIterator.VARIANT_COMPARATOR, iterators));
+        super(PackedVariantKey.unpack(new UnionMultiKeyIterator<>(Comparator.naturalOrder(),
+                PackedVariantKey.pack(iterators, Function.identity()))));
         this.iterators = iterators;
     }
 
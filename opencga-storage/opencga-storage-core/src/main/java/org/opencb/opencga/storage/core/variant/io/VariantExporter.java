@@ -18,6 +18,8 @@ package org.opencb.opencga.storage.core.variant.io;
 
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
 import org.opencb.biodata.models.metadata.Individual;
 import org.opencb.biodata.models.variant.Variant;
@@ -35,6 +37,7 @@ import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.io.managers.IOConnectorProvider;
 import org.opencb.opencga.storage.core.metadata.VariantMetadataFactory;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.io.VariantWriterFactory.VariantOutputFormat;
 import org.opencb.opencga.storage.core.variant.io.db.VariantDBReader;
 import org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery;
@@ -50,6 +53,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Prints the result of a given query in the selected output format, and the associated metadata.
@@ -102,9 +106,18 @@ public class VariantExporter {
             ioConnectorProvider.checkWritable(outputFile);
         }
 
-        try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat, ioConnectorProvider)) {
-            boolean logProgress = !VariantWriterFactory.isStandardOutput(outputFile);
-            exportData(outputFile, os, outputFormat, variantsFile, query.getInputQuery(), query.getInputOptions(), logProgress);
+        boolean logProgress = !VariantWriterFactory.isStandardOutput(outputFile);
+        int numThreads = getParallelExportThreads(outputFormat, query.getInputOptions());
+        if (numThreads > 1) {
+            // Chunks are compressed by the workers. Write them as they come.
+            try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat.inPlain(), ioConnectorProvider)) {
+                exportDataParallel(outputFile, os, outputFormat, variantsFile, query.getInputQuery(), query.getInputOptions(),
+                        logProgress, numThreads);
+            }
+        } else {
+            try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat, ioConnectorProvider)) {
+                exportData(outputFile, os, outputFormat, variantsFile, query.getInputQuery(), query.getInputOptions(), logProgress);
+            }
         }
         if (metadataFactory != null && !VariantWriterFactory.isStandardOutput(outputFile)) {
             VariantMetadata metadata = metadataFactory.makeVariantMetadata(query.getInputQuery(), query.getInputOptions());
@@ -130,16 +143,145 @@ public class VariantExporter {
             queryOptions = new QueryOptions();
         }
 
-        // DataReader
-        VariantDBReader variantDBReader;
+        VariantDBReader variantDBReader = newVariantDBReader(variantsFile, query, queryOptions);
+        Task<Variant, Variant> progressTask = newProgressTask(variantsFile, query, queryOptions, logProgress);
+
+        // DataWriter
+        DataWriter<Variant> variantDataWriter = newVariantDataWriter(outputFile, outputStream, outputFormat, query, queryOptions);
+
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder().setNumTasks(1).setBatchSize(10).build();
+
+        ParallelTaskRunner<Variant, Variant> ptr = new ParallelTaskRunner<>(variantDBReader, progressTask, variantDataWriter, config);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error exporting variants", e);
+        }
+
+        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+
+    }
+
+    /**
+     * Exports the variants splitting the work in chunks of {@link VariantStorageOptions#EXPORT_BATCH_SIZE} variants.
+     *
+     * Each chunk is serialized and compressed by one of the workers, using an independent writer. Chunks are written
+     * in the same order they were read, so the output is the same as a sequential export.
+     * When compressing, VCF chunks are written as BGZF blocks, and the rest as gzip members. In both cases,
+     * the concatenation of chunks is a valid gzip file.
+     *
+     * @param outputFile    Output file. Null for the standard output.
+     * @param outputStream  Output stream. Must not compress the data.
+     * @param outputFormat  Variant output format
+     * @param variantsFile  Optional variants file
+     * @param query         Query with the variants to export
+     * @param queryOptions  Query options
+     * @param logProgress   Log the progress
+     * @param numThreads    Number of workers
+     * @throws StorageEngineException  If there is any error exporting variants
+     * @throws IOException  If there is any IO error
+     */
+    protected void exportDataParallel(URI outputFile, OutputStream outputStream, VariantOutputFormat outputFormat, URI variantsFile,
+                                      Query query, QueryOptions queryOptions, boolean logProgress, int numThreads)
+            throws StorageEngineException, IOException {
+        if (query == null) {
+            query = new Query();
+        }
+        if (queryOptions == null) {
+            queryOptions = new QueryOptions();
+        }
+        int batchSize = getExportOption(queryOptions, VariantStorageOptions.EXPORT_BATCH_SIZE);
+
+        VariantDBReader variantDBReader = newVariantDBReader(variantsFile, query, queryOptions);
+        Task<Variant, Variant> progressTask = newProgressTask(variantsFile, query, queryOptions, logProgress);
+
+        // Header, written once by an independent writer
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataWriter<Variant> headerWriter = newVariantDataWriter(outputFile, header, outputFormat, query, queryOptions);
+        headerWriter.open();
+        headerWriter.pre();
+        headerWriter.post();
+        headerWriter.close();
+        if (header.size() > 0) {
+            try (ChunkCompressor compressor = new ChunkCompressor(outputFormat)) {
+                outputStream.write(compressor.compress(header));
+            }
+        }
+
+        final Query finalQuery = query;
+        final QueryOptions finalQueryOptions = queryOptions;
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                .setNumTasks(numThreads)
+                .setBatchSize(batchSize)
+                .setCapacity(numThreads * 2)
+                .setSorted(true)
+                .build();
+        DataWriter<byte[]> chunkWriter = new DataWriter<byte[]>() {
+            @Override
+            public boolean write(List<byte[]> batch) {
+                try {
+                    for (byte[] chunk : batch) {
+                        outputStream.write(chunk);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            }
+        };
+        ParallelTaskRunner<Variant, byte[]> ptr = new ParallelTaskRunner<>(variantDBReader,
+                () -> progressTask.then(new ExportChunkTask(outputFile, outputFormat, finalQuery, finalQueryOptions)),
+                chunkWriter, config);
+        logger.info("Exporting variants with {} threads and chunks of {} variants", numThreads, batchSize);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error exporting variants", e);
+        }
+        if (outputFormat.isGzip() && outputFormat.inPlain() == VariantOutputFormat.VCF) {
+            outputStream.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+        }
+
+        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+    }
+
+    /**
+     * Number of threads to use for the export, or 1 if the export can not be executed in parallel.
+     *
+     * @param outputFormat  Variant output format
+     * @param queryOptions  Query options
+     * @return              Number of threads
+     */
+    protected int getParallelExportThreads(VariantOutputFormat outputFormat, QueryOptions queryOptions) {
+        switch (outputFormat.inPlain()) {
+            case VCF:
+            case JSON:
+            case JSON_SPARSE:
+                return Math.max(1, getExportOption(queryOptions, VariantStorageOptions.EXPORT_THREADS));
+            default:
+                return 1;
+        }
+    }
+
+    private int getExportOption(QueryOptions queryOptions, VariantStorageOptions option) {
+        if (queryOptions != null && queryOptions.containsKey(option.key())) {
+            return queryOptions.getInt(option.key());
+        }
+        return engine.getOptions().getInt(option.key(), option.defaultValue());
+    }
+
+    private VariantDBReader newVariantDBReader(URI variantsFile, Query query, QueryOptions queryOptions) throws StorageEngineException {
         if (variantsFile != null) {
             Iterator<Variant> variants = toVariantsIterator(variantsFile);
-            variantDBReader = new VariantDBReader(engine.iterator(variants, query, queryOptions));
+            return new VariantDBReader(engine.iterator(variants, query, queryOptions));
         } else {
-            variantDBReader = new VariantDBReader(engine, query, queryOptions);
+            return new VariantDBReader(engine, query, queryOptions);
         }
+    }
 
-        // TaskMetadata<Variant, Variant>
+    private Task<Variant, Variant> newProgressTask(URI variantsFile, Query query, QueryOptions queryOptions, boolean logProgress) {
         Task<Variant, Variant> progressTask;
         if (logProgress) {
             final Query finalQuery = query;
@@ -161,22 +303,7 @@ public class VariantExporter {
         } else {
             progressTask = batch -> batch;
         }
-
-        // DataWriter
-        DataWriter<Variant> variantDataWriter = newVariantDataWriter(outputFile, outputStream, outputFormat, query, queryOptions);
-
-        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder().setNumTasks(1).setBatchSize(10).build();
-
-        ParallelTaskRunner<Variant, Variant> ptr = new ParallelTaskRunner<>(variantDBReader, progressTask, variantDataWriter, config);
-        try {
-            ptr.run();
-        } catch (ExecutionException e) {
-            throw new StorageEngineException("Error exporting variants", e);
-        }
-
-        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
-        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
-
+        return progressTask;
     }
 
     protected DataWriter<Variant> newVariantDataWriter(URI outputFile, OutputStream outputStream, VariantOutputFormat outputFormat,
@@ -234,6 +361,95 @@ public class VariantExporter {
         os.close();
     }
 
+    /**
+     * Serializes and compresses a chunk of variants. Each instance is used by one single thread.
+     */
+    private final class ExportChunkTask implements Task<Variant, byte[]> {
+        private final URI outputFile;
+        private final VariantOutputFormat outputFormat;
+        private final Query query;
+        private final QueryOptions queryOptions;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private DataWriter<Variant> writer;
+        private ChunkCompressor compressor;
+
+        private ExportChunkTask(URI outputFile, VariantOutputFormat outputFormat, Query query, QueryOptions queryOptions) {
+            this.outputFile = outputFile;
+            this.outputFormat = outputFormat;
+            this.query = query;
+            this.queryOptions = queryOptions;
+        }
+
+        @Override
+        public void pre() throws Exception {
+            writer = newVariantDataWriter(outputFile, buffer, outputFormat, query, queryOptions);
+            writer.open();
+            writer.pre();
+            // Discard the header. Already written.
+            buffer.reset();
+            compressor = new ChunkCompressor(outputFormat);
+        }
+
+        @Override
+        public List<byte[]> apply(List<Variant> batch) throws Exception {
+            // The VCF and JSON writers flush each batch to the underlying output stream. Every variant ends with a new line,
+            // so the chunks can be concatenated.
+            writer.write(batch);
+            byte[] chunk = compressor.compress(buffer);
+            buffer.reset();
+            return Collections.singletonList(chunk);
+        }
+
+        @Override
+        public void post() throws Exception {
+            writer.post();
+            writer.close();
+            compressor.close();
+        }
+    }
+
+    /**
+     * Compress chunks of data independently, so they can be concatenated in any order.
+     * VCF chunks are compressed as BGZF blocks, so the output can be indexed. The rest are compressed as gzip members.
+     */
+    private static final class ChunkCompressor implements Closeable {
+        private final VariantOutputFormat outputFormat;
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private BlockCompressedOutputStream bgzfStream;
+
+        private ChunkCompressor(VariantOutputFormat outputFormat) {
+            this.outputFormat = outputFormat;
+        }
+
+        private byte[] compress(ByteArrayOutputStream chunk) throws IOException {
+            if (!outputFormat.isGzip()) {
+                return chunk.toByteArray();
+            }
+            compressed.reset();
+            if (outputFormat.inPlain() == VariantOutputFormat.VCF) {
+                if (bgzfStream == null) {
+                    bgzfStream = new BlockCompressedOutputStream(compressed, (File) null);
+                }
+                chunk.writeTo(bgzfStream);
+                // Force writing the last partial block. The EOF block is only written at the end of the file.
+                bgzfStream.flush();
+            } else {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    chunk.writeTo(gzip);
+                }
+            }
+            return compressed.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bgzfStream != null) {
+                // Release the deflater. The EOF block written into the buffer is discarded.
+                bgzfStream.close();
+            }
+        }
+    }
+
     private Iterator<Variant> toVariantsIterator(URI variantsFile) {
         VariantStudyMetadata metadata = new VariantFileMetadata("", variantsFile.getPath()).toVariantStudyMetadata("");
         return new VariantVcfReader(metadata, variantsFile.getPath(),
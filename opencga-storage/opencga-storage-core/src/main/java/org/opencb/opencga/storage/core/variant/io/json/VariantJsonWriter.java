@@ -119,7 +119,8 @@ public class VariantJsonWriter implements VariantWriter {
 
         try {
             variantsGenerator = factory.createGenerator(variantsStream);
-            variantsGenerator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            // Each variant is followed by a new line, so independent writers produce chunks that can be concatenated
+            variantsGenerator.setPrettyPrinter(new MinimalPrettyPrinter(""));
             if (fileStream != null || fileMetadata != null) {
                 fileGenerator = factory.createGenerator(fileStream);
             }
@@ -136,6 +137,12 @@ public class VariantJsonWriter implements VariantWriter {
         for (Variant variant : batch) {
             write(variant);
         }
+        try {
+            variantsGenerator.flush();
+        } catch (IOException ex) {
+            close();
+            throw new UncheckedIOException(ex);
+        }
         return true;
     }
 
@@ -156,6 +163,7 @@ public class VariantJsonWriter implements VariantWriter {
                 }
             }
             variantsGenerator.writeObject(variant);
+            variantsGenerator.writeRaw('\n');
             numVariantsWritten++;
         } catch (IOException ex) {
             logger.error(variant.toString(), ex);
@@ -169,7 +177,7 @@ public class VariantJsonWriter implements VariantWriter {
     public boolean post() {
         try {
 //            variantsStream.flush();
-//            variantsGenerator.flush();
+            variantsGenerator.flush();
 
             if (fileGenerator != null) {
                 fileGenerator.writeObject(fileMetadata);
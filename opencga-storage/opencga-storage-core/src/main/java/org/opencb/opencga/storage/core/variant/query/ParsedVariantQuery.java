@@ -11,6 +11,7 @@ import org.opencb.opencga.storage.core.metadata.models.StudyResourceMetadata;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQuery;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.query.metrics.VariantQueryMetrics;
 import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
 
 import java.util.*;
@@ -40,6 +41,7 @@ public class ParsedVariantQuery {
     private List<List<String>> clinicalCombination;
     private List<String> clinicalCombinationList;
     private VariantQuerySource source;
+    private VariantQueryMetrics metrics = new VariantQueryMetrics();
     //    private VariantAnnotationQuery annotationQuery;
 
 
@@ -73,6 +75,8 @@ public class ParsedVariantQuery {
         this.clinicalCombination = new ArrayList<>(other.clinicalCombination);
         this.clinicalCombinationList = new ArrayList<>(other.clinicalCombinationList);
         this.source = other.source;
+        // Derived queries contribute to the same metrics
+        this.metrics = other.metrics;
     }
 
     public Query getInputQuery() {
@@ -106,6 +110,10 @@ public class ParsedVariantQuery {
         return events;
     }
 
+    public VariantQueryMetrics getMetrics() {
+        return metrics;
+    }
+
     public ParsedVariantQuery setEvents(List<Event> events) {
         this.events = events;
         return this;
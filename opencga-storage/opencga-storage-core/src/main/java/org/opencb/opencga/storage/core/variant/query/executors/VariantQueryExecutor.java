@@ -10,6 +10,9 @@ import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBItera
 import org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryResult;
 import org.opencb.opencga.storage.core.variant.query.VariantQuerySource;
+import org.opencb.opencga.storage.core.variant.query.metrics.VariantQueryMetrics;
+
+import java.util.concurrent.TimeUnit;
 
 import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.QUERY_DEFAULT_TIMEOUT;
 import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.QUERY_MAX_TIMEOUT;
@@ -32,14 +35,29 @@ public abstract class VariantQueryExecutor {
     }
 
     public final VariantQueryResult<Variant> get(ParsedVariantQuery query) {
+        VariantQueryMetrics metrics = query.getMetrics();
+        boolean recordMetrics = metrics.start(getClass().getSimpleName());
+        VariantQueryResult<Variant> result = null;
         try {
-            return (VariantQueryResult<Variant>) getOrIterator(query, false);
+            result = (VariantQueryResult<Variant>) getOrIterator(query, false);
+            return result;
         } catch (StorageEngineException e) {
             throw VariantQueryException.internalException(e);
+        } finally {
+            if (recordMetrics) {
+                if (result == null) {
+                    metrics.finish(0, 0, 0, true);
+                } else {
+                    metrics.finish(result.getNumResults(), TimeUnit.MILLISECONDS.toNanos(result.getTime()), 0, false);
+                }
+            }
         }
     }
 
     public final VariantDBIterator iterator(ParsedVariantQuery variantQuery) {
+        VariantQueryMetrics metrics = variantQuery.getMetrics();
+        boolean recordMetrics = metrics.start(getClass().getSimpleName());
+        boolean success = false;
         try {
             VariantDBIterator iterator = (VariantDBIterator) getOrIterator(variantQuery, true);
             if (iterator.getEvents() == null) {
@@ -47,9 +65,19 @@ public abstract class VariantQueryExecutor {
             } else {
                 iterator.getEvents().addAll(variantQuery.getEvents());
             }
+            if (recordMetrics) {
+                // Finish metrics when the iterator is closed
+                iterator.addCloseable(() -> metrics.finish(iterator.getCount(),
+                        iterator.getTimeFetching(), iterator.getTimeConverting(), false));
+            }
+            success = true;
             return iterator;
         } catch (StorageEngineException e) {
             throw VariantQueryException.internalException(e);
+        } finally {
+            if (recordMetrics && !success) {
+                metrics.finish(0, 0, 0, true);
+            }
         }
     }
 
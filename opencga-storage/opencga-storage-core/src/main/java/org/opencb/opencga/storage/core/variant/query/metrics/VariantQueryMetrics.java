@@ -0,0 +1,181 @@
+package org.opencb.opencga.storage.core.variant.query.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one single variant query.
+ *
+ * Attached to the {@link org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery}, and shared with the queries
+ * derived from it. The storage engine fills the parse and executor selection times, the {@link
+ * org.opencb.opencga.storage.core.variant.query.executors.VariantQueryExecutor} fills the execution times, and the
+ * backends may add the number of rows scanned and bytes read.
+ *
+ * Once finished, the metrics are recorded in the {@link VariantQueryMetricsRegistry}.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantQueryMetrics {
+
+    private String storageEngineId = "";
+    private String shape = "";
+    private volatile String executor;
+    private long parseTimeNanos;
+    private long selectionTimeNanos;
+    private long startNanos;
+    private long totalTimeNanos;
+    private long fetchTimeNanos;
+    private long convertTimeNanos;
+    private long rowsReturned;
+    private boolean error;
+    private final AtomicLong rowsScanned = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * Mark the start of the execution.
+     *
+     * @param executor  Name of the executor running the query
+     * @return          {@code true} if this is the first executor. Nested executors running the same query must not finish the metrics
+     */
+    public boolean start(String executor) {
+        if (started.compareAndSet(false, true)) {
+            this.executor = executor;
+            this.startNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Mark the end of the execution, and record the metrics in the registry.
+     *
+     * @param rowsReturned      Number of rows returned to the client
+     * @param fetchTimeNanos    Time fetching data from the backend, if known
+     * @param convertTimeNanos  Time converting data, if known
+     * @param error             If the query failed
+     */
+    public void finish(long rowsReturned, long fetchTimeNanos, long convertTimeNanos, boolean error) {
+        if (finished.compareAndSet(false, true)) {
+            this.totalTimeNanos = System.nanoTime() - startNanos;
+            this.rowsReturned = rowsReturned;
+            this.fetchTimeNanos = fetchTimeNanos;
+            this.convertTimeNanos = convertTimeNanos;
+            this.error = error;
+            VariantQueryMetricsRegistry.getInstance().record(this);
+        }
+    }
+
+    public VariantQueryMetrics addRowsScanned(long rows) {
+        rowsScanned.addAndGet(rows);
+        return this;
+    }
+
+    public VariantQueryMetrics addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+        return this;
+    }
+
+    public String getStorageEngineId() {
+        return storageEngineId;
+    }
+
+    public VariantQueryMetrics setStorageEngineId(String storageEngineId) {
+        this.storageEngineId = storageEngineId;
+        return this;
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * Set the shape of the query, i.e. the sorted list of query params used, without values.
+     *
+     * @param shape Shape of the query
+     * @return this
+     */
+    public VariantQueryMetrics setShape(String shape) {
+        this.shape = shape;
+        return this;
+    }
+
+    public String getExecutor() {
+        return executor;
+    }
+
+    public long getParseTimeNanos() {
+        return parseTimeNanos;
+    }
+
+    public VariantQueryMetrics setParseTimeNanos(long parseTimeNanos) {
+        this.parseTimeNanos = parseTimeNanos;
+        return this;
+    }
+
+    public long getSelectionTimeNanos() {
+        return selectionTimeNanos;
+    }
+
+    public VariantQueryMetrics setSelectionTimeNanos(long selectionTimeNanos) {
+        this.selectionTimeNanos = selectionTimeNanos;
+        return this;
+    }
+
+    public long getTotalTimeNanos() {
+        return totalTimeNanos;
+    }
+
+    VariantQueryMetrics setTotalTimeNanos(long totalTimeNanos) {
+        this.totalTimeNanos = totalTimeNanos;
+        return this;
+    }
+
+    public long getFetchTimeNanos() {
+        return fetchTimeNanos;
+    }
+
+    public long getConvertTimeNanos() {
+        return convertTimeNanos;
+    }
+
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("VariantQueryMetrics{");
+        sb.append("storageEngineId='").append(storageEngineId).append('\'');
+        sb.append(", executor='").append(executor).append('\'');
+        sb.append(", shape='").append(shape).append('\'');
+        sb.append(", parseTimeNanos=").append(parseTimeNanos);
+        sb.append(", selectionTimeNanos=").append(selectionTimeNanos);
+        sb.append(", totalTimeNanos=").append(totalTimeNanos);
+        sb.append(", fetchTimeNanos=").append(fetchTimeNanos);
+        sb.append(", convertTimeNanos=").append(convertTimeNanos);
+        sb.append(", rowsReturned=").append(rowsReturned);
+        sb.append(", rowsScanned=").append(rowsScanned);
+        sb.append(", bytesRead=").append(bytesRead);
+        sb.append(", error=").append(error);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,203 @@
+package org.opencb.opencga.storage.core.variant.query.metrics;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-JVM registry of variant query metrics, aggregated by storage engine, executor and query shape.
+ *
+ * Metrics can be exported in the Prometheus text exposition format with {@link #scrape()}, or as an ObjectMap with {@link #getStats()}.
+ *
+ * Created on 17/10/26.
+ */
+public final class VariantQueryMetricsRegistry {
+
+    public static final String PREFIX = "opencga_variant_query";
+    static final double[] LATENCY_BUCKETS_SECONDS = {0.005, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    // Limit the number of series. New shapes are grouped as "other"
+    static final int MAX_SERIES = 1000;
+    static final String OTHER_SHAPE = "other";
+
+    private static final VariantQueryMetricsRegistry INSTANCE = new VariantQueryMetricsRegistry();
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    VariantQueryMetricsRegistry() {
+    }
+
+    public static VariantQueryMetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record the metrics of a finished query.
+     *
+     * @param metrics Query metrics
+     */
+    public void record(VariantQueryMetrics metrics) {
+        String executor = metrics.getExecutor() == null ? "" : metrics.getExecutor();
+        String labels = labels(metrics.getStorageEngineId(), executor, metrics.getShape());
+        Series s = series.get(labels);
+        if (s == null) {
+            if (series.size() >= MAX_SERIES) {
+                labels = labels(metrics.getStorageEngineId(), executor, OTHER_SHAPE);
+            }
+            s = series.computeIfAbsent(labels, k -> new Series());
+        }
+        s.record(metrics);
+    }
+
+    public void reset() {
+        series.clear();
+    }
+
+    /**
+     * Export all the metrics in the Prometheus text exposition format.
+     *
+     * @return Metrics in text format
+     */
+    public String scrape() {
+        Map<String, Series> sorted = new TreeMap<>(series);
+        StringBuilder sb = new StringBuilder();
+
+        counter(sb, sorted, "_total", "Number of variant queries.", s -> s.count.sum());
+        counter(sb, sorted, "_errors_total", "Number of failed variant queries.", s -> s.errors.sum());
+        counter(sb, sorted, "_rows_returned_total", "Number of variants returned.", s -> s.rowsReturned.sum());
+        counter(sb, sorted, "_rows_scanned_total", "Number of rows read from the backend, if known.", s -> s.rowsScanned.sum());
+        counter(sb, sorted, "_bytes_read_total", "Number of bytes read from the backend, if known.", s -> s.bytesRead.sum());
+
+        String phaseName = PREFIX + "_phase_seconds_total";
+        sb.append("# HELP ").append(phaseName).append(" Time spent in each phase of the variant queries.\n");
+        sb.append("# TYPE ").append(phaseName).append(" counter\n");
+        for (Map.Entry<String, Series> entry : sorted.entrySet()) {
+            Series s = entry.getValue();
+            phase(sb, phaseName, entry.getKey(), "parse", s.parseNanos.sum());
+            phase(sb, phaseName, entry.getKey(), "select", s.selectionNanos.sum());
+            phase(sb, phaseName, entry.getKey(), "fetch", s.fetchNanos.sum());
+            phase(sb, phaseName, entry.getKey(), "convert", s.convertNanos.sum());
+        }
+
+        String durationName = PREFIX + "_duration_seconds";
+        sb.append("# HELP ").append(durationName).append(" Execution time of the variant queries.\n");
+        sb.append("# TYPE ").append(durationName).append(" histogram\n");
+        for (Map.Entry<String, Series> entry : sorted.entrySet()) {
+            Series s = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_SECONDS.length; i++) {
+                cumulative += s.buckets.get(i);
+                sb.append(durationName).append("_bucket{").append(entry.getKey())
+                        .append(",le=\"").append(LATENCY_BUCKETS_SECONDS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            long count = s.count.sum();
+            sb.append(durationName).append("_bucket{").append(entry.getKey()).append(",le=\"+Inf\"} ").append(count).append('\n');
+            sb.append(durationName).append("_sum{").append(entry.getKey()).append("} ")
+                    .append(toSeconds(s.totalNanos.sum())).append('\n');
+            sb.append(durationName).append("_count{").append(entry.getKey()).append("} ").append(count).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Summary of the metrics, by series.
+     *
+     * @return Metrics summary
+     */
+    public ObjectMap getStats() {
+        ObjectMap stats = new ObjectMap();
+        for (Map.Entry<String, Series> entry : new TreeMap<>(series).entrySet()) {
+            Series s = entry.getValue();
+            long count = s.count.sum();
+            stats.put(entry.getKey(), new ObjectMap()
+                    .append("count", count)
+                    .append("errors", s.errors.sum())
+                    .append("avgTimeMillis", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(s.totalNanos.sum() / count))
+                    .append("maxTimeMillis", TimeUnit.NANOSECONDS.toMillis(s.maxNanos.get()))
+                    .append("parseTimeMillis", TimeUnit.NANOSECONDS.toMillis(s.parseNanos.sum()))
+                    .append("selectionTimeMillis", TimeUnit.NANOSECONDS.toMillis(s.selectionNanos.sum()))
+                    .append("fetchTimeMillis", TimeUnit.NANOSECONDS.toMillis(s.fetchNanos.sum()))
+                    .append("convertTimeMillis", TimeUnit.NANOSECONDS.toMillis(s.convertNanos.sum()))
+                    .append("rowsReturned", s.rowsReturned.sum())
+                    .append("rowsScanned", s.rowsScanned.sum())
+                    .append("bytesRead", s.bytesRead.sum()));
+        }
+        return stats;
+    }
+
+    private interface SeriesValue {
+        long get(Series s);
+    }
+
+    private static void counter(StringBuilder sb, Map<String, Series> sorted, String suffix, String help, SeriesValue value) {
+        String name = PREFIX + suffix;
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Series> entry : sorted.entrySet()) {
+            sb.append(name).append('{').append(entry.getKey()).append("} ").append(value.get(entry.getValue())).append('\n');
+        }
+    }
+
+    private static void phase(StringBuilder sb, String name, String labels, String phase, long nanos) {
+        sb.append(name).append('{').append(labels).append(",phase=\"").append(phase).append("\"} ").append(toSeconds(nanos)).append('\n');
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    static String labels(String storageEngineId, String executor, String shape) {
+        return "engine=\"" + escape(storageEngineId) + "\",executor=\"" + escape(executor) + "\",shape=\"" + escape(shape) + '"';
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Series {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder parseNanos = new LongAdder();
+        private final LongAdder selectionNanos = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAdder convertNanos = new LongAdder();
+        private final LongAdder rowsReturned = new LongAdder();
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKETS_SECONDS.length);
+
+        private void record(VariantQueryMetrics metrics) {
+            count.increment();
+            if (metrics.isError()) {
+                errors.increment();
+            }
+            long total = metrics.getTotalTimeNanos();
+            totalNanos.add(total);
+            parseNanos.add(metrics.getParseTimeNanos());
+            selectionNanos.add(metrics.getSelectionTimeNanos());
+            fetchNanos.add(metrics.getFetchTimeNanos());
+            convertNanos.add(metrics.getConvertTimeNanos());
+            rowsReturned.add(metrics.getRowsReturned());
+            rowsScanned.add(metrics.getRowsScanned());
+            bytesRead.add(metrics.getBytesRead());
+            maxNanos.accumulateAndGet(total, Math::max);
+            double seconds = toSeconds(total);
+            for (int i = 0; i < LATENCY_BUCKETS_SECONDS.length; i++) {
+                if (seconds <= LATENCY_BUCKETS_SECONDS[i]) {
+                    buckets.incrementAndGet(i);
+                    break;
+                }
+            }
+        }
+    }
+}
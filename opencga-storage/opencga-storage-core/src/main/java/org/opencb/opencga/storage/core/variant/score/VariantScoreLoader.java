@@ -84,13 +84,16 @@ public abstract class VariantScoreLoader {
     }
 
     protected VariantScoreMetadata postLoad(VariantScoreMetadata variantScoreMetadata, boolean success) throws StorageEngineException {
-        return metadataManager.updateVariantScoreMetadata(variantScoreMetadata.getStudyId(), variantScoreMetadata.getId(), vsm -> {
-            if (success) {
-                vsm.setIndexStatus(TaskMetadata.Status.READY);
-            } else {
-                vsm.setIndexStatus(TaskMetadata.Status.ERROR);
-            }
-        });
+        VariantScoreMetadata updated = metadataManager.updateVariantScoreMetadata(variantScoreMetadata.getStudyId(),
+                variantScoreMetadata.getId(), vsm -> {
+                    if (success) {
+                        vsm.setIndexStatus(TaskMetadata.Status.READY);
+                    } else {
+                        vsm.setIndexStatus(TaskMetadata.Status.ERROR);
+                    }
+                });
+        metadataManager.invalidateQueryCache();
+        return updated;
     }
 
     protected StringDataReader getDataReader(URI scoreFile) throws IOException {
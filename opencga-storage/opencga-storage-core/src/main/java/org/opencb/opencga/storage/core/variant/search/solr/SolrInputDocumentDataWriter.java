@@ -1,6 +1,7 @@
 package org.opencb.opencga.storage.core.variant.search.solr;
 
 import com.google.common.base.Throwables;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.request.UpdateRequest;
@@ -13,7 +14,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument> {
 
@@ -22,13 +23,21 @@ public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument
     private final SolrClient solrClient;
     private final int insertBatchSize;
     private int serverBufferSize = 0;
-    private int serverBufferSizeBytes = 0;
+    private long serverBufferSizeBytes = 0;
     private int insertedDocuments = 0;
-    private long addTimeMs = 0;
+    private volatile long addTimeMs = 0;
     private long commitTimeMs = 0;
     private final Logger logger = LoggerFactory.getLogger(SolrInputDocumentDataWriter.class);
     private final String uniqueKey;
 
+    // Concurrent add requests. Null if disabled
+    private final ExecutorService addExecutor;
+    private final long maxInFlightBytes;
+    private final List<Future<?>> pendingAdds = new LinkedList<>();
+    // Guarded by "inFlightLock"
+    private long inFlightBytes = 0;
+    private final Object inFlightLock = new Object();
+
     private static final String SET = "set";
 
     public SolrInputDocumentDataWriter(String collection, SolrClient solrClient, int insertBatchSize) {
@@ -36,10 +45,37 @@ public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument
     }
 
     public SolrInputDocumentDataWriter(String collection, SolrClient solrClient, int insertBatchSize, String uniqueKey) {
+        this(collection, solrClient, insertBatchSize, uniqueKey, 1, 0);
+    }
+
+    /**
+     * Create a SolrInputDocumentDataWriter sending multiple add requests concurrently.
+     *
+     * Documents are sent in the background, and the caller is only blocked if the documents being sent exceed
+     * the given max size. All the pending requests are completed before each commit.
+     *
+     * @param collection        Solr collection
+     * @param solrClient        Solr client
+     * @param insertBatchSize   Number of documents to add between commits
+     * @param uniqueKey         Unique key field
+     * @param addThreads        Number of concurrent add requests. If 1 or less, documents are sent from the calling thread.
+     * @param maxInFlightBytes  Max approximate size of the documents being sent. 0 for unlimited.
+     */
+    public SolrInputDocumentDataWriter(String collection, SolrClient solrClient, int insertBatchSize, String uniqueKey,
+                                       int addThreads, long maxInFlightBytes) {
         this.collection = collection;
         this.solrClient = solrClient;
         this.insertBatchSize = insertBatchSize;
         this.uniqueKey = uniqueKey;
+        this.maxInFlightBytes = maxInFlightBytes <= 0 ? Long.MAX_VALUE : maxInFlightBytes;
+        if (addThreads > 1) {
+            addExecutor = Executors.newFixedThreadPool(addThreads, new BasicThreadFactory.Builder()
+                    .namingPattern("solr-add-" + collection + "-%s")
+                    .daemon(true)
+                    .build());
+        } else {
+            addExecutor = null;
+        }
     }
 
     public final boolean update(List<SolrInputDocument> batch) {
@@ -99,16 +135,87 @@ public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument
         return true;
     }
 
+    @Override
+    public boolean close() {
+        if (addExecutor != null) {
+            addExecutor.shutdownNow();
+        }
+        return true;
+    }
+
     protected void add(List<SolrInputDocument> batch) throws Exception {
-        UpdateResponse response = retry(() -> solrClient.add(collection, batch));
+        long batchSize = 0;
         for (SolrInputDocument document : batch) {
-            long docSize = getSize(document);
-            serverBufferSizeBytes += docSize;
+            batchSize += getSize(document);
+        }
+        if (addExecutor == null) {
+            UpdateResponse response = retry(() -> solrClient.add(collection, batch));
+            addTimeMs += response.getElapsedTime();
+        } else {
+            checkPendingAdds(false);
+            acquireInFlight(batchSize);
+            try {
+                pendingAdds.add(addExecutor.submit(() -> {
+                    try {
+                        UpdateResponse response = retry(() -> solrClient.add(collection, batch));
+                        synchronized (inFlightLock) {
+                            addTimeMs += response.getElapsedTime();
+                        }
+                        return null;
+                    } finally {
+                        releaseInFlight(batchSize);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                releaseInFlight(batchSize);
+                throw e;
+            }
         }
-        addTimeMs += response.getElapsedTime();
+        serverBufferSizeBytes += batchSize;
         serverBufferSize += batch.size();
     }
 
+    private void acquireInFlight(long size) throws InterruptedException {
+        synchronized (inFlightLock) {
+            // Always accept one batch, even if it is larger than the limit
+            while (inFlightBytes > 0 && inFlightBytes + size > maxInFlightBytes) {
+                inFlightLock.wait();
+            }
+            inFlightBytes += size;
+        }
+    }
+
+    private void releaseInFlight(long size) {
+        synchronized (inFlightLock) {
+            inFlightBytes -= size;
+            inFlightLock.notifyAll();
+        }
+    }
+
+    /**
+     * Remove the finished add requests, propagating any failure.
+     *
+     * @param wait Wait for all the pending requests to finish
+     * @throws Exception if any request failed
+     */
+    private void checkPendingAdds(boolean wait) throws Exception {
+        Iterator<Future<?>> iterator = pendingAdds.iterator();
+        while (iterator.hasNext()) {
+            Future<?> future = iterator.next();
+            if (wait || future.isDone()) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+                iterator.remove();
+            }
+        }
+    }
+
     /**
      * Get an approximation of the size of the value in bytes.
      * @param value The value to estimate the size of.
@@ -149,6 +256,8 @@ public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument
     }
 
     public void commit(boolean openSearcher) throws Exception {
+        // Documents must be added before committing
+        checkPendingAdds(true);
         boolean waitSearcher = openSearcher;
         StopWatch stopWatch = StopWatch.createStarted();
         UpdateResponse response = retry(() -> new UpdateRequest()
@@ -518,9 +518,9 @@ public class VariantSearchManager {
         int batchSize = options.getInt(
                 VariantStorageOptions.SEARCH_LOAD_BATCH_SIZE.key(),
                 VariantStorageOptions.SEARCH_LOAD_BATCH_SIZE.defaultValue());
-//        int numLoadThreads = options.getInt(
-//                VariantStorageOptions.SEARCH_LOAD_THREADS.key(),
-//                VariantStorageOptions.SEARCH_LOAD_THREADS.defaultValue());
+        int numLoadThreads = options.getInt(
+                VariantStorageOptions.SEARCH_LOAD_THREADS.key(),
+                VariantStorageOptions.SEARCH_LOAD_THREADS.defaultValue());
 
         ProgressLogger progressLogger;
         if (callableTotalCount == null) {
@@ -531,22 +531,21 @@ public class VariantSearchManager {
                     .setProgressRateAtMillionsPerHours();
         }
 
-        VariantToSolrBeanConverterTask converterTask = new VariantToSolrBeanConverterTask(solrManager.getSolrClient().getBinder(),
-                indexMetadata, metadataManager);
         VariantSearchLoadingWatchdog watchdog = new VariantSearchLoadingWatchdog(metadataManager);
 
-        logger.info("Loading Solr collection '{}' with in batches of {} and hard commit every {} documents.",
-                buildCollectionName(indexMetadata), batchSize, getInsertBatchSize());
+        logger.info("Loading Solr collection '{}' with {} threads in batches of {} and hard commit every {} documents.",
+                buildCollectionName(indexMetadata), numLoadThreads, batchSize, getInsertBatchSize());
+        // Sorted, so the writer and the progress logger receive the variants in the same order they were read
         ParallelTaskRunner<Variant, VariantSearchUpdateDocument> ptr = new ParallelTaskRunner<>(
                 variantReader,
-                converterTask,
+                () -> new VariantToSolrBeanConverterTask(solrManager.getSolrClient().getBinder(), indexMetadata, metadataManager),
                 writer.then(progressLogger
                         .asTask(d -> "up to position " + d.getVariant().toString())),
                 ParallelTaskRunner.Config.builder()
                         .setSorted(true)
                         .setBatchSize(batchSize)
-                        .setCapacity(2)
-                        .setNumTasks(1)
+                        .setCapacity(Math.max(2, numLoadThreads * 2))
+                        .setNumTasks(Math.max(1, numLoadThreads))
                         .build());
 
         try {
@@ -1220,4 +1219,8 @@ public class VariantSearchManager {
         return insertBatchSize;
     }
 
+    public ObjectMap getOptions() {
+        return options;
+    }
+
 }
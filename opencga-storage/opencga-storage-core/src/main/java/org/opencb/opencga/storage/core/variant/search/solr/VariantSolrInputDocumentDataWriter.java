@@ -2,6 +2,7 @@ package org.opencb.opencga.storage.core.variant.search.solr;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.solr.common.SolrInputDocument;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.io.DataWriter;
 import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.storage.core.metadata.models.project.SearchIndexMetadata;
@@ -12,6 +13,9 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.SEARCH_LOAD_MAX_IN_FLIGHT_MB;
+import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.SEARCH_LOAD_WRITER_THREADS;
+
 public class VariantSolrInputDocumentDataWriter implements DataWriter<VariantSearchUpdateDocument> {
 
     private final Logger logger = LoggerFactory.getLogger(VariantSolrInputDocumentDataWriter.class);
@@ -22,10 +26,14 @@ public class VariantSolrInputDocumentDataWriter implements DataWriter<VariantSea
     private StopWatch startTime;
 
     public VariantSolrInputDocumentDataWriter(VariantSearchManager variantSearchManager, SearchIndexMetadata indexMetadata) {
+        ObjectMap options = variantSearchManager.getOptions();
         mainWriter = new SolrInputDocumentDataWriter(
                 variantSearchManager.buildCollectionName(indexMetadata),
                 variantSearchManager.getSolrClient(),
-                variantSearchManager.getInsertBatchSize()
+                variantSearchManager.getInsertBatchSize(),
+                "id",
+                options.getInt(SEARCH_LOAD_WRITER_THREADS.key(), SEARCH_LOAD_WRITER_THREADS.defaultValue()),
+                options.getInt(SEARCH_LOAD_MAX_IN_FLIGHT_MB.key(), SEARCH_LOAD_MAX_IN_FLIGHT_MB.defaultValue()) * 1024L * 1024L
         );
     }
 
@@ -0,0 +1,90 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class VariantQueryResultCacheTest {
+
+    @Test
+    public void testGetReturnsCopy() {
+        VariantQueryResultCache cache = new VariantQueryResultCache(1024 * 1024, 0);
+        VariantQueryResult<Variant> result = newResult(10);
+        assertTrue(cache.put("k1", result));
+
+        VariantQueryResult<Variant> cached = cache.get("k1");
+        assertNotNull(cached);
+        assertEquals(toStrings(result), toStrings(cached));
+        cached.getResults().get(0).setId("modified");
+        cached.getEvents().clear();
+
+        assertEquals("1:100:A:C", cache.get("k1").getResults().get(0).toString());
+        assertNull(cache.get("k2"));
+        assertEquals(2L, cache.getStats().getLong("hits"));
+        assertEquals(1L, cache.getStats().getLong("misses"));
+    }
+
+    @Test
+    public void testEvictToOffHeap() {
+        VariantQueryResultCache cache = new VariantQueryResultCache(20 * 1024, 1024 * 1024);
+        List<VariantQueryResult<Variant>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            VariantQueryResult<Variant> result = newResult(20);
+            results.add(result);
+            cache.put("k" + i, result);
+        }
+        assertTrue(cache.getStats().getInt("offHeapEntries") > 0);
+        for (int i = 0; i < 20; i++) {
+            VariantQueryResult<Variant> cached = cache.get("k" + i);
+            assertNotNull(cached);
+            assertEquals(toStrings(results.get(i)), toStrings(cached));
+        }
+        assertTrue(cache.getStats().getLong("offHeapHits") > 0);
+        assertEquals(0L, cache.getStats().getLong("evictions"));
+    }
+
+    @Test
+    public void testEvictWithoutOffHeap() {
+        VariantQueryResultCache cache = new VariantQueryResultCache(20 * 1024, 0);
+        for (int i = 0; i < 20; i++) {
+            cache.put("k" + i, newResult(20));
+        }
+        assertNull(cache.get("k0"));
+        assertNotNull(cache.get("k19"));
+        assertTrue(cache.getStats().getLong("evictions") > 0);
+        assertTrue(cache.getStats().getLong("heapSize") <= 20 * 1024);
+    }
+
+    @Test
+    public void testInvalidate() {
+        VariantQueryResultCache cache = new VariantQueryResultCache(1024 * 1024, 1024 * 1024);
+        cache.put("k1", newResult(10));
+        cache.invalidate();
+        assertNull(cache.get("k1"));
+        assertEquals(0L, cache.getStats().getLong("heapSize"));
+    }
+
+    private static VariantQueryResult<Variant> newResult(int numVariants) {
+        List<Variant> variants = new ArrayList<>();
+        for (int i = 0; i < numVariants; i++) {
+            variants.add(new Variant("1:" + (100 + i) + ":A:C"));
+        }
+        return new VariantQueryResult<>(10, variants.size(), variants.size(), new ArrayList<>(), variants, "test");
+    }
+
+    private static List<String> toStrings(VariantQueryResult<Variant> result) {
+        List<String> list = new ArrayList<>();
+        for (Variant variant : result.getResults()) {
+            list.add(variant.toString());
+        }
+        return list;
+    }
+}
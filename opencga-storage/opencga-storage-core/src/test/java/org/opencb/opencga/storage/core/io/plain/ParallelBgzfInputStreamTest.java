@@ -0,0 +1,123 @@
+package org.opencb.opencga.storage.core.io.plain;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class ParallelBgzfInputStreamTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws Exception {
+        lines = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            lines.add("1\t" + (i + 1000) + "\t.\tA\tC\t.\tPASS\tAC=" + (i % 7) + "\tGT\t0/1\t1/1");
+        }
+    }
+
+    @Test
+    public void testReadBgzf() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = new BlockCompressedOutputStream(file.toFile())) {
+            writeLines(os);
+        }
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+            assertTrue(ParallelBgzfInputStream.isBgzf(is));
+        }
+
+        assertEquals(lines, readLines(file, 4));
+        assertEquals(lines, readLines(file, 1));
+    }
+
+    @Test
+    public void testReadConcatenatedBgzf() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            // Each one with its own EOF block
+            for (List<String> subList : new List[]{lines.subList(0, 100), lines.subList(100, lines.size())}) {
+                BlockCompressedOutputStream bgzf = new BlockCompressedOutputStream(os, (File) null);
+                for (String line : subList) {
+                    bgzf.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                bgzf.flush();
+                bgzf.close();
+            }
+        }
+
+        try (ParallelBgzfInputStream is = new ParallelBgzfInputStream(Files.newInputStream(file), 3)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+            List<String> read = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                read.add(line);
+            }
+            assertEquals(lines, read);
+        }
+    }
+
+    @Test
+    public void testReadPlainGzip() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(file))) {
+            writeLines(os);
+        }
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+            assertFalse(ParallelBgzfInputStream.isBgzf(is));
+        }
+
+        assertEquals(lines, readLines(file, 4));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testCorruptedBlock() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = new BlockCompressedOutputStream(file.toFile())) {
+            writeLines(os);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0xFF;
+        Files.write(file, bytes);
+
+        readLines(file, 4);
+    }
+
+    private void writeLines(OutputStream os) throws IOException {
+        for (String line : lines) {
+            os.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> readLines(Path file, int inflateThreads) {
+        StringDataReader reader = new StringDataReader(file).setInflateThreads(inflateThreads);
+        List<String> read = new ArrayList<>();
+        reader.open();
+        reader.pre();
+        List<String> batch;
+        do {
+            batch = reader.read(1000);
+            read.addAll(batch);
+        } while (!batch.isEmpty());
+        reader.post();
+        reader.close();
+        return read;
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.experimental.categories.Category;
 import org.opencb.opencga.core.testclassification.duration.ShortTests;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Category(ShortTests.class)
 public class MetadataCacheTest {
@@ -33,4 +34,88 @@ public class MetadataCacheTest {
 
     }
 
+    @Test
+    public void testEviction() {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer, String> cache = new MetadataCache<>((study, id) -> {
+            loads.incrementAndGet();
+            return study + ":" + id;
+        }, null, 10, 0);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("1:" + i, cache.get(1, i));
+        }
+        Assert.assertEquals(100, loads.get());
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertTrue(cache.getEvictionCount() >= 90);
+        Assert.assertEquals(100, cache.getMissCount());
+        Assert.assertEquals(0, cache.getHitCount());
+
+        // Last value is still in the cache
+        Assert.assertEquals("1:99", cache.get(1, 99));
+        Assert.assertEquals(100, loads.get());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testKeys() {
+        MetadataCache<Integer, String> intCache = new MetadataCache<>((study, id) -> study + ":" + id);
+        Assert.assertEquals("1:2", intCache.get(1, 2));
+        Assert.assertEquals("2:1", intCache.get(2, 1));
+        Assert.assertEquals("-1:-2", intCache.get(-1, -2));
+        Assert.assertEquals(3, intCache.size());
+
+        MetadataCache<String, String> stringCache = new MetadataCache<>((study, id) -> study + ":" + id);
+        Assert.assertEquals("1:1_2", stringCache.get(1, "1_2"));
+        Assert.assertEquals("11:2", stringCache.get(11, "2"));
+        Assert.assertEquals(2, stringCache.size());
+    }
+
+    @Test
+    public void testNullValuesNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<String, Integer> cache = new MetadataCache<>((study, id) -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        Assert.assertNull(cache.get(1, "a"));
+        Assert.assertNull(cache.get(1, "a"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidValue() {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer, Boolean> cache = new MetadataCache<>((study, id) -> loads.incrementAndGet() > 1);
+        Assert.assertFalse(cache.get(1, 1, false));
+        Assert.assertTrue(cache.get(1, 1, false));
+        Assert.assertTrue(cache.get(1, 1, false));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer, Integer> cache = new MetadataCache<>((study, id) -> loads.incrementAndGet(), null, 100, 50);
+        Assert.assertEquals(1, cache.get(1, 1).intValue());
+        Assert.assertEquals(1, cache.get(1, 1).intValue());
+        Thread.sleep(100);
+        Assert.assertEquals(2, cache.get(1, 1).intValue());
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testClear() {
+        MetadataCache<Integer, Integer> cache = new MetadataCache<>((study, id) -> id);
+        cache.get(1, 1);
+        cache.get(1, 2);
+        Assert.assertEquals(2, cache.size());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
 }
\ No newline at end of file
@@ -264,4 +264,24 @@ public abstract class VariantStorageMetadataManagerTest {
         Assert.assertEquals(2, metadataManager.getCohortMetadata(study.getId(), cohortId).getSamples().size());
     }
 
+    @Test
+    public void testRemoveInvalidatesQueryCache() throws StorageEngineException {
+        StudyMetadata study = metadataManager.createStudy("study");
+        int fileId = metadataManager.registerFile(study.getId(), "file.txt", Arrays.asList("s1", "s2"));
+        int fileId2 = metadataManager.registerFile(study.getId(), "file2.txt", Arrays.asList("s3"));
+        metadataManager.addIndexedFiles(study.getId(), Arrays.asList(fileId, fileId2));
+
+        int validCacheTimestamp = metadataManager.getProjectMetadata().getValidCacheTimestamp();
+        metadataManager.removeIndexedFiles(study.getId(), Collections.singletonList(fileId2));
+        Assert.assertTrue(validCacheTimestamp < metadataManager.getProjectMetadata().getValidCacheTimestamp());
+
+        validCacheTimestamp = metadataManager.getProjectMetadata().getValidCacheTimestamp();
+        metadataManager.removeSamples(study.getId(), Collections.singletonList(metadataManager.getSampleId(study.getId(), "s1")));
+        Assert.assertTrue(validCacheTimestamp < metadataManager.getProjectMetadata().getValidCacheTimestamp());
+
+        validCacheTimestamp = metadataManager.getProjectMetadata().getValidCacheTimestamp();
+        metadataManager.invalidateQueryCache();
+        Assert.assertTrue(validCacheTimestamp < metadataManager.getProjectMetadata().getValidCacheTimestamp());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package org.opencb.opencga.storage.core.utils;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class LockWaitQueueTest {
+
+    @Test
+    public void testFifoOrder() throws Exception {
+        LockWaitQueue queue = LockWaitQueue.get("testFifoOrder");
+        long ticket = queue.enter(1000);
+
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int id = i;
+            futures.add(executor.submit(() -> {
+                long t = queue.enter(10000);
+                order.add(id);
+                queue.acquired(t, 1000, 0);
+                queue.leave(t);
+                return null;
+            }));
+            // Make sure the threads are enqueued in order
+            while (queue.getStats().getInt("waiters") != i + 1) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(Collections.emptyList(), order);
+        queue.leave(ticket);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+        assertEquals(5L, queue.getStats().get("acquired"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        LockWaitQueue queue = LockWaitQueue.get("testTimeout");
+        long ticket = queue.enter(1000);
+        queue.acquired(ticket, 10000, 5);
+        try {
+            queue.enter(50);
+            fail();
+        } catch (TimeoutException e) {
+            assertEquals(1L, queue.getStats().get("timeouts"));
+        }
+        queue.leave(ticket);
+        queue.leave(queue.enter(50));
+    }
+
+    @Test
+    public void testLeaseExpires() throws Exception {
+        LockWaitQueue queue = LockWaitQueue.get("testLeaseExpires");
+        long ticket = queue.enter(1000);
+        queue.acquired(ticket, 100, 0);
+
+        // Holder never leaves. Next waiter gets in after the lease
+        long newTicket = queue.enter(2000);
+        assertNotEquals(ticket, newTicket);
+
+        // Old holder can not release the new one
+        queue.leave(ticket);
+        try {
+            queue.enter(50);
+            fail();
+        } catch (TimeoutException ignore) {
+            // expected
+        }
+        queue.leave(newTicket);
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        LockWaitQueue queue = LockWaitQueue.get("testStats");
+        for (long wait : new long[]{0, 5, 50, 500, 120000}) {
+            long ticket = queue.enter(100);
+            queue.acquired(ticket, 1000, wait);
+            queue.leave(ticket);
+        }
+        ObjectMap stats = queue.getStats();
+        assertEquals(5L, stats.get("acquired"));
+        assertEquals(120000L, stats.get("maxWaitMillis"));
+        ObjectMap histogram = (ObjectMap) stats.get("waitHistogram");
+        assertEquals(1L, histogram.get("<=1ms"));
+        assertEquals(1L, histogram.get("<=10ms"));
+        assertEquals(1L, histogram.get("<=100ms"));
+        assertEquals(1L, histogram.get("<=1000ms"));
+        assertEquals(0L, histogram.get("<=60000ms"));
+        assertEquals(1L, histogram.get(">60000ms"));
+
+        // Stats survive the removal of the drained queue
+        assertFalse(LockWaitQueue.isRegistered("testStats"));
+        assertTrue(LockWaitQueue.getAllStats().containsKey("testStats"));
+        ObjectMap allStats = (ObjectMap) LockWaitQueue.getAllStats().get("testStats");
+        assertEquals(5L, allStats.get("acquired"));
+        assertEquals(1L, ((ObjectMap) allStats.get("waitHistogram")).get(">60000ms"));
+        assertEquals(5L, LockWaitQueue.get("testStats").getStats().get("acquired"));
+
+        long ticket = LockWaitQueue.get("testStats").enter(100);
+        LockWaitQueue.get("testStats").acquired(ticket, 1000, 0);
+        LockWaitQueue.get("testStats").leave(ticket);
+        assertEquals(6L, ((ObjectMap) LockWaitQueue.getAllStats().get("testStats")).get("acquired"));
+    }
+
+    @Test
+    public void testRemoveDrainedQueue() throws Exception {
+        LockWaitQueue queue = LockWaitQueue.get("testRemoveDrainedQueue");
+        long ticket = queue.enter(100);
+        assertTrue(LockWaitQueue.isRegistered("testRemoveDrainedQueue"));
+        queue.acquired(ticket, 1000, 0);
+        queue.leave(ticket);
+        assertFalse(LockWaitQueue.isRegistered("testRemoveDrainedQueue"));
+        assertEquals(1L, ((ObjectMap) LockWaitQueue.getAllStats().get("testRemoveDrainedQueue")).get("acquired"));
+
+        // Old instance is registered again when used
+        ticket = queue.enter(100);
+        assertSame(queue, LockWaitQueue.get("testRemoveDrainedQueue"));
+        queue.leave(ticket);
+        assertFalse(LockWaitQueue.isRegistered("testRemoveDrainedQueue"));
+
+        // Old instance replaced by a new one. Both share the same lock
+        LockWaitQueue oldQueue = LockWaitQueue.get("testRemoveDrainedQueue");
+        ticket = LockWaitQueue.get("testRemoveDrainedQueue").enter(100);
+        LockWaitQueue newQueue = LockWaitQueue.get("testRemoveDrainedQueue");
+        newQueue.leave(ticket);
+        LockWaitQueue otherQueue = LockWaitQueue.get("testRemoveDrainedQueue");
+        ticket = otherQueue.enter(100);
+        assertNotSame(oldQueue, otherQueue);
+        try {
+            oldQueue.enter(50);
+            fail();
+        } catch (TimeoutException ignore) {
+            // expected
+        }
+        oldQueue.leave(ticket);
+        assertFalse(LockWaitQueue.isRegistered("testRemoveDrainedQueue"));
+        // All the instances share the same stats
+        assertEquals(1L, oldQueue.getStats().get("timeouts"));
+        assertEquals(1L, otherQueue.getStats().get("timeouts"));
+    }
+
+    @Test
+    public void testBackoff() {
+        for (int attempt = 0; attempt < 30; attempt++) {
+            long backoff = LockWaitQueue.backoffMillis(attempt);
+            assertTrue(backoff >= 5);
+            assertTrue(backoff <= 1000);
+        }
+        assertTrue(LockWaitQueue.backoffMillis(0) <= 10);
+        assertTrue(LockWaitQueue.backoffMillis(20) >= 500);
+    }
+}
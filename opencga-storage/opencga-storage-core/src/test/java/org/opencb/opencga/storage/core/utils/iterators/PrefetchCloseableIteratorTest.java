@@ -0,0 +1,111 @@
+package org.opencb.opencga.storage.core.utils.iterators;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class PrefetchCloseableIteratorTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        List<Integer> expected = IntStream.range(0, 1055).boxed().collect(Collectors.toList());
+        try (PrefetchCloseableIterator<Integer> iterator = new PrefetchCloseableIterator<>(expected.iterator(), executor, 100, 10)) {
+            List<Integer> actual = new ArrayList<>();
+            iterator.forEachRemaining(actual::add);
+            assertEquals(expected, actual);
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testPrefetchEmpty() throws Exception {
+        try (PrefetchCloseableIterator<Integer> iterator
+                     = new PrefetchCloseableIterator<>(Collections.emptyIterator(), executor, 100, 10)) {
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testPropagateException() throws Exception {
+        Iterator<Integer> failing = new Iterator<Integer>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                if (i == 50) {
+                    throw new IllegalArgumentException("Expected error");
+                }
+                return i++;
+            }
+        };
+        try (PrefetchCloseableIterator<Integer> iterator = new PrefetchCloseableIterator<>(failing, executor, 100, 10)) {
+            int count = 0;
+            try {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    count++;
+                }
+                fail("Expected exception");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Expected error", e.getMessage());
+            }
+            assertEquals(50, count);
+        }
+    }
+
+    @Test
+    public void testCloseBeforeConsuming() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        CloseableIterator<Integer> infinite = new CloseableIterator<Integer>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return i++;
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        PrefetchCloseableIterator<Integer> iterator = new PrefetchCloseableIterator<>(infinite, executor, 100, 10);
+        assertEquals(0, iterator.next().intValue());
+        iterator.close();
+        assertTrue(closed.get());
+    }
+}
@@ -0,0 +1,96 @@
+package org.opencb.opencga.storage.core.variant.adaptors.iterators;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class MultiVariantKeyIteratorTest {
+
+    private static final String[] CHROMOSOMES = {"1", "10", "2", "X"};
+    private static final String[] ALLELES = {"A", "C", "G", "T", "AC", "GT"};
+
+    @Test
+    public void testPackPosition() {
+        int[] values = {Integer.MIN_VALUE, -10, -1, 0, 1, 10, 1000, Integer.MAX_VALUE};
+        for (int start1 : values) {
+            for (int end1 : values) {
+                for (int start2 : values) {
+                    for (int end2 : values) {
+                        int expected = start1 == start2 ? Integer.compare(end1, end2) : Integer.compare(start1, start2);
+                        assertEquals(Integer.signum(expected), Integer.signum(Long.compare(
+                                PackedVariantKey.pack(start1, end1), PackedVariantKey.pack(start2, end2))));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnion() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            List<List<Variant>> inputs = randomInputs(random, 1 + random.nextInt(12));
+            TreeSet<Variant> expected = new TreeSet<>(VariantDBIterator.VARIANT_COMPARATOR);
+            inputs.forEach(expected::addAll);
+
+            AtomicInteger closed = new AtomicInteger();
+            UnionMultiVariantKeyIterator iterator = new UnionMultiVariantKeyIterator(toIterators(inputs, closed));
+            assertEquals(new ArrayList<>(expected), iterator.toList());
+            iterator.close();
+            assertEquals(inputs.size(), closed.get());
+        }
+    }
+
+    @Test
+    public void testIntersect() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            List<List<Variant>> inputs = randomInputs(random, 1 + random.nextInt(4));
+            List<List<Variant>> negated = randomInputs(random, random.nextInt(3));
+            TreeSet<Variant> expected = new TreeSet<>(VariantDBIterator.VARIANT_COMPARATOR);
+            expected.addAll(inputs.get(0));
+            inputs.forEach(expected::retainAll);
+            negated.forEach(expected::removeAll);
+
+            AtomicInteger closed = new AtomicInteger();
+            IntersectMultiVariantKeyIterator iterator = new IntersectMultiVariantKeyIterator(
+                    toIterators(inputs, closed), toIterators(negated, closed));
+            assertEquals(new ArrayList<>(expected), iterator.toList());
+            iterator.close();
+            assertEquals(inputs.size() + negated.size(), closed.get());
+        }
+    }
+
+    private static List<List<Variant>> randomInputs(Random random, int numInputs) {
+        List<List<Variant>> inputs = new ArrayList<>(numInputs);
+        for (int i = 0; i < numInputs; i++) {
+            TreeSet<Variant> variants = new TreeSet<>(VariantDBIterator.VARIANT_COMPARATOR);
+            for (int v = 0; v < 200; v++) {
+                String ref = ALLELES[random.nextInt(ALLELES.length)];
+                String alt = ALLELES[random.nextInt(ALLELES.length)];
+                if (!ref.equals(alt)) {
+                    variants.add(new Variant(CHROMOSOMES[random.nextInt(CHROMOSOMES.length)]
+                            + ":" + (1 + random.nextInt(50)) + ":" + ref + ":" + alt));
+                }
+            }
+            inputs.add(new ArrayList<>(variants));
+        }
+        return inputs;
+    }
+
+    private static List<VariantDBIterator> toIterators(List<List<Variant>> inputs, AtomicInteger closed) {
+        return inputs.stream()
+                // Use different String instances for the chromosomes
+                .map(variants -> variants.stream().map(v -> new Variant(v.toString())).collect(Collectors.toList()))
+                .map(variants -> VariantDBIterator.wrapper(variants.iterator()).addCloseable(closed::incrementAndGet))
+                .collect(Collectors.toList());
+    }
+}
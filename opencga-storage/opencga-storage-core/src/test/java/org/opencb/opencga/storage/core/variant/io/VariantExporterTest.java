@@ -31,6 +31,7 @@ import java.io.*;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -116,6 +117,42 @@ public abstract class VariantExporterTest extends VariantStorageBaseTest {
         assertEquals(expectedVariants.size(), numVariants);
     }
 
+    @Test
+    public void exportParallelTest() throws Exception {
+        for (VariantOutputFormat outputFormat : Arrays.asList(VariantOutputFormat.VCF, VariantOutputFormat.VCF_GZ,
+                VariantOutputFormat.JSON, VariantOutputFormat.JSON_GZ)) {
+            URI outdir = newOutputUri();
+            URI sequential = outdir.resolve("sequential." + outputFormat.getExtension());
+            URI parallel = outdir.resolve("parallel." + outputFormat.getExtension());
+            variantStorageEngine.exportData(sequential, outputFormat, null, new Query(),
+                    new QueryOptions(VariantStorageOptions.EXPORT_THREADS.key(), 1));
+            variantStorageEngine.exportData(parallel, outputFormat, null, new Query(),
+                    new QueryOptions(VariantStorageOptions.EXPORT_THREADS.key(), 4)
+                            .append(VariantStorageOptions.EXPORT_BATCH_SIZE.key(), 10));
+
+            String expected = readContent(sequential, outputFormat);
+            assertTrue(expected.split("\n").length > 10);
+            // Same content, byte by byte. Every line ends with a new line
+            assertEquals(outputFormat.toString(), expected, readContent(parallel, outputFormat));
+            assertTrue(outputFormat.toString(), expected.endsWith("\n"));
+            assertFalse(outputFormat.toString(), expected.contains("}{"));
+        }
+    }
+
+    private static String readContent(URI file, VariantOutputFormat outputFormat) throws IOException {
+        try (InputStream is = outputFormat.isGzip()
+                ? new GZIPInputStream(new FileInputStream(file.getPath()))
+                : new FileInputStream(file.getPath())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
     @Test
     public void exportTpedTest() throws Exception {
         URI output = newOutputUri().resolve("variant" + VariantExporter.TPED_FILE_EXTENSION);
@@ -0,0 +1,89 @@
+package org.opencb.opencga.storage.core.variant.query.metrics;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class VariantQueryMetricsRegistryTest {
+
+    @Test
+    public void testMetrics() {
+        VariantQueryMetrics metrics = new VariantQueryMetrics()
+                .setStorageEngineId("mongodb")
+                .setShape("region,study");
+        assertTrue(metrics.start("RegionVariantQueryExecutor"));
+        // Nested executors do not own the metrics
+        assertFalse(metrics.start("DBAdaptorVariantQueryExecutor"));
+        metrics.addRowsScanned(10).addBytesRead(1000);
+        metrics.finish(5, 100, 200, false);
+
+        assertTrue(metrics.isFinished());
+        assertEquals("RegionVariantQueryExecutor", metrics.getExecutor());
+        assertEquals(5, metrics.getRowsReturned());
+        assertEquals(10, metrics.getRowsScanned());
+        assertEquals(1000, metrics.getBytesRead());
+    }
+
+    @Test
+    public void testScrape() {
+        VariantQueryMetricsRegistry registry = new VariantQueryMetricsRegistry();
+        registry.record(metrics("RegionVariantQueryExecutor", "region", 2, false));
+        registry.record(metrics("RegionVariantQueryExecutor", "region", 200, false));
+        registry.record(metrics("SearchIndexVariantQueryExecutor", "ct,region", 20, true));
+
+        String labels = VariantQueryMetricsRegistry.labels("mongodb", "RegionVariantQueryExecutor", "region");
+        String scrape = registry.scrape();
+        assertTrue(scrape, scrape.contains("# TYPE opencga_variant_query_duration_seconds histogram\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_total{" + labels + "} 2\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_rows_returned_total{" + labels + "} 20\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_rows_scanned_total{" + labels + "} 202\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_duration_seconds_bucket{" + labels + ",le=\"0.005\"} 1\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_duration_seconds_bucket{" + labels + ",le=\"0.25\"} 2\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_duration_seconds_count{" + labels + "} 2\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_phase_seconds_total{" + labels + ",phase=\"parse\"} 0.002\n"));
+        assertTrue(scrape, scrape.contains("opencga_variant_query_errors_total{"
+                + VariantQueryMetricsRegistry.labels("mongodb", "SearchIndexVariantQueryExecutor", "ct,region") + "} 1\n"));
+
+        ObjectMap stats = registry.getStats();
+        assertEquals(2, stats.size());
+        assertEquals(2L, ((ObjectMap) stats.get(labels)).get("count"));
+        assertEquals(200L, ((ObjectMap) stats.get(labels)).get("maxTimeMillis"));
+    }
+
+    @Test
+    public void testMaxSeries() {
+        VariantQueryMetricsRegistry registry = new VariantQueryMetricsRegistry();
+        for (int i = 0; i < VariantQueryMetricsRegistry.MAX_SERIES + 10; i++) {
+            registry.record(metrics("DBAdaptorVariantQueryExecutor", "shape" + i, 1, false));
+        }
+        ObjectMap stats = registry.getStats();
+        assertEquals(VariantQueryMetricsRegistry.MAX_SERIES + 1, stats.size());
+        String other = VariantQueryMetricsRegistry.labels("mongodb", "DBAdaptorVariantQueryExecutor",
+                VariantQueryMetricsRegistry.OTHER_SHAPE);
+        assertEquals(10L, ((ObjectMap) stats.get(other)).get("count"));
+    }
+
+    @Test
+    public void testEscapeLabels() {
+        assertEquals("engine=\"a\\\"b\",executor=\"c\\\\d\",shape=\"\"", VariantQueryMetricsRegistry.labels("a\"b", "c\\d", null));
+    }
+
+    private static VariantQueryMetrics metrics(String executor, String shape, long millis, boolean error) {
+        VariantQueryMetrics metrics = new VariantQueryMetrics()
+                .setStorageEngineId("mongodb")
+                .setShape(shape)
+                .setParseTimeNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.start(executor);
+        metrics.addRowsScanned(millis);
+        metrics.finish(millis / 10, 0, 0, error);
+        // Override the measured time
+        return metrics.setTotalTimeNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,113 @@
+package org.opencb.opencga.storage.core.variant.search.solr;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class SolrInputDocumentDataWriterTest {
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        SolrInputDocumentDataWriter writer = new SolrInputDocumentDataWriter("collection", solrClient, 1000, "id", 4, 0);
+        writeDocuments(writer, 100, 50);
+
+        assertEquals(5000, solrClient.ids.size());
+        assertTrue(solrClient.maxConcurrentAdds.get() > 1);
+        assertTrue(solrClient.maxConcurrentAdds.get() <= 4);
+        // Every commit sees all the documents added before it
+        assertEquals(Collections.emptyList(), solrClient.commitsWithPendingAdds);
+        assertEquals(5000, writer.getInsertedDocuments());
+    }
+
+    @Test
+    public void testMaxInFlightBytes() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        // Each batch is about 10 * 20 bytes. Only one batch fits in the limit.
+        SolrInputDocumentDataWriter writer = new SolrInputDocumentDataWriter("collection", solrClient, 1000, "id", 4, 250);
+        writeDocuments(writer, 20, 10);
+
+        assertEquals(200, solrClient.ids.size());
+        assertEquals(1, solrClient.maxConcurrentAdds.get());
+    }
+
+    @Test
+    public void testSingleThread() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        SolrInputDocumentDataWriter writer = new SolrInputDocumentDataWriter("collection", solrClient, 1000);
+        writeDocuments(writer, 20, 10);
+
+        assertEquals(200, solrClient.ids.size());
+        assertEquals(1, solrClient.maxConcurrentAdds.get());
+    }
+
+    private static void writeDocuments(SolrInputDocumentDataWriter writer, int numBatches, int batchSize) {
+        writer.open();
+        writer.pre();
+        for (int i = 0; i < numBatches; i++) {
+            List<SolrInputDocument> batch = new ArrayList<>(batchSize);
+            for (int j = 0; j < batchSize; j++) {
+                SolrInputDocument document = new SolrInputDocument();
+                document.addField("id", String.format("1:%08d:A:C", i * batchSize + j));
+                batch.add(document);
+            }
+            writer.write(batch);
+        }
+        writer.post();
+        writer.close();
+    }
+
+    private static class RecordingSolrClient extends SolrClient {
+        private final Set<String> ids = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger concurrentAdds = new AtomicInteger();
+        private final AtomicInteger maxConcurrentAdds = new AtomicInteger();
+        private final AtomicInteger pendingAdds = new AtomicInteger();
+        private final List<Integer> commitsWithPendingAdds = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) throws IOException {
+            List<SolrInputDocument> documents = ((UpdateRequest) request).getDocuments();
+            if (documents == null) {
+                // Commit
+                if (pendingAdds.get() != 0) {
+                    commitsWithPendingAdds.add(pendingAdds.get());
+                }
+            } else {
+                pendingAdds.incrementAndGet();
+                maxConcurrentAdds.accumulateAndGet(concurrentAdds.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                for (SolrInputDocument document : documents) {
+                    ids.add(document.getFieldValue("id").toString());
+                }
+                concurrentAdds.decrementAndGet();
+                pendingAdds.decrementAndGet();
+            }
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.storage.core.metadata.models.Lock;
+import org.opencb.opencga.storage.core.utils.LockWaitQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +66,8 @@ import java.util.concurrent.TimeoutException;
  *     value = HBase.get(row, column)
  *     HBase.checkAndPut(row, column, EQ, value, Put(""))
  *
+ * Threads from the same JVM wait in a local FIFO {@link LockWaitQueue}, so only one of them polls HBase at a time.
+ *
  * Created on 19/05/16.
  *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
@@ -137,30 +140,40 @@ public class HBaseLockManager {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        do {
-            lockToken = readLockToken(row, column);
-
-            // If the lock is taken, wait
-            while (lockToken.isTaken()) {
-                Thread.sleep(100);
+        // Wait for other threads of this JVM first. Only the first local waiter polls HBase
+        LockWaitQueue queue = getWaitQueue(row, column);
+        long ticket = queue.enter(timeout);
+        try {
+            int attempt = 0;
+            do {
                 lockToken = readLockToken(row, column);
+
+                // If the lock is taken, wait
+                while (lockToken.isTaken()) {
+                    queue.backoff(attempt++, timeout - stopWatch.getTime());
+                    lockToken = readLockToken(row, column);
+                    //Check if the lock is still valid
+                    if (stopWatch.getTime() > timeout) {
+                        throw new TimeoutException("Unable to get the lock");
+                    }
+                }
                 //Check if the lock is still valid
                 if (stopWatch.getTime() > timeout) {
                     throw new TimeoutException("Unable to get the lock");
                 }
-            }
-            //Check if the lock is still valid
-            if (stopWatch.getTime() > timeout) {
-                throw new TimeoutException("Unable to get the lock");
-            }
 
-            // Try to lock cell
-            if (tryToPutToken(token, lockDuration, row, column, lockToken, CURRENT)) {
-                lockToken = readLockToken(row, column);
-            }
+                // Try to lock cell
+                if (tryToPutToken(token, lockDuration, row, column, lockToken, CURRENT)) {
+                    lockToken = readLockToken(row, column);
+                }
 
-            // You win the lock if you manage to write your lock.
-        } while (!lockToken.equals(token));
+                // You win the lock if you manage to write your lock.
+            } while (!lockToken.equals(token));
+        } catch (InterruptedException | TimeoutException | IOException | RuntimeException e) {
+            queue.leave(ticket);
+            throw e;
+        }
+        queue.acquired(ticket, lockDuration, stopWatch.getTime());
 
         boolean prevTokenExpired = !lockToken.isEmpty() && lockToken.isExpired();
         boolean slowQuery = stopWatch.getTime() > 60000;
@@ -181,7 +194,19 @@ public class HBaseLockManager {
 
         logger.debug("Won the lock with token " + token + " (" + token.hashCode() + ")");
 
-        return new HBaseLock(lockDuration, token, row, column);
+        return new HBaseLock(lockDuration, token, row, column, queue, ticket);
+    }
+
+    /**
+     * In-JVM wait queue for the given lock cell. Includes the wait time stats.
+     *
+     * @param row       Row to find the lock cell
+     * @param column    Column to find the lock cell
+     * @return          Wait queue
+     */
+    public LockWaitQueue getWaitQueue(byte[] row, byte[] column) {
+        return LockWaitQueue.get("hbase:" + tableName + ":" + Bytes.toStringBinary(columnFamily)
+                + ":" + Bytes.toStringBinary(row) + ":" + Bytes.toStringBinary(column));
     }
 
     /**
@@ -409,14 +434,18 @@ public class HBaseLockManager {
         private final long tokenHash;
         private final byte[] row;
         private final byte[] column;
+        private final LockWaitQueue queue;
+        private final long ticket;
 
-        private HBaseLock(long lockDuration, String token, byte[] row, byte[] column) {
+        private HBaseLock(long lockDuration, String token, byte[] row, byte[] column, LockWaitQueue queue, long ticket) {
             super(HBaseLockManager.threadPool, (int) (lockDuration / 4), token.hashCode());
             this.lockDuration = lockDuration;
             this.token = token;
             this.tokenHash = token.hashCode();
             this.row = row;
             this.column = column;
+            this.queue = queue;
+            this.ticket = ticket;
         }
 
         @Override
@@ -427,6 +456,8 @@ public class HBaseLockManager {
                 }
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
+            } finally {
+                queue.leave(ticket);
             }
         }
 
@@ -434,6 +465,7 @@ public class HBaseLockManager {
         public void refresh() throws IOException {
             synchronized (this) {
                 HBaseLockManager.this.refresh(row, column, tokenHash, lockDuration);
+                queue.extend(ticket, lockDuration);
             }
         }
     }
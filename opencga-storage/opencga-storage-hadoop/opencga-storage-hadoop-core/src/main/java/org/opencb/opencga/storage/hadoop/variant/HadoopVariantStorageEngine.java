@@ -1331,7 +1331,7 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine implements
                 sampleIndexDBAdaptor = this.sampleIndexDBAdaptor.get();
                 if (sampleIndexDBAdaptor == null) {
                     sampleIndexDBAdaptor = new SampleIndexDBAdaptor(dbAdaptor.getHBaseManager(),
-                            dbAdaptor.getTableNameGenerator(), dbAdaptor.getMetadataManager());
+                            dbAdaptor.getTableNameGenerator(), dbAdaptor.getMetadataManager(), getOptions());
                     this.sampleIndexDBAdaptor.set(sampleIndexDBAdaptor);
                 }
             }
@@ -1396,7 +1396,7 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine implements
         List<VariantAggregationExecutor> executors = new ArrayList<>(3);
         try {
             executors.add(new SearchIndexVariantAggregationExecutor(getVariantSearchManager()));
-            executors.add(new SampleIndexVariantAggregationExecutor(getMetadataManager(), getSampleIndexDBAdaptor()));
+            executors.add(new SampleIndexVariantAggregationExecutor(getMetadataManager(), getSampleIndexDBAdaptor(), getOptions()));
             executors.add(new ChromDensityVariantAggregationExecutor(this, getMetadataManager()));
         } catch (Exception e) {
             throw VariantQueryException.internalException(e);
@@ -116,6 +116,11 @@ public enum HadoopVariantStorageOptions implements ConfigurationOption {
     SAMPLE_INDEX_QUERY_SAMPLE_INDEX_ONLY_PD_BUFFER("storage.hadoop.sampleIndex.query.sampleIndexOnly.partialData.buffer", 10000),
     SAMPLE_INDEX_QUERY_SAMPLE_INDEX_ONLY_PD_BATCH("storage.hadoop.sampleIndex.query.sampleIndexOnly.partialData.batch", 250),
     SAMPLE_INDEX_QUERY_EXTENDED_REGION_FILTER("storage.hadoop.sampleIndex.query.extendedRegionFilter.default", 5_000_000),
+    // Max number of threads used to count a single sample query. Each thread counts a batch aligned region shard.
+    SAMPLE_INDEX_QUERY_COUNT_THREADS("storage.hadoop.sampleIndex.query.count.numThreads", 4),
+    // Off-heap memory used to cache aggregation results from the sample index. 0 to disable the cache.
+    SAMPLE_INDEX_AGGREGATION_CACHE_SIZE_MB("storage.hadoop.sampleIndex.aggregation.cache.sizeMb", 64),
+    SAMPLE_INDEX_AGGREGATION_CACHE_TTL_SECONDS("storage.hadoop.sampleIndex.aggregation.cache.ttlSeconds", 600),
 
     /////////////////////////
     // Annotation index table  configuration
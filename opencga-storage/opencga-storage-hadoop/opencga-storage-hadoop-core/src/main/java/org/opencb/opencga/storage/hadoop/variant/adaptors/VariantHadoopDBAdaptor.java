@@ -466,7 +466,8 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         }).iterator();
 
         VariantHBaseScanIterator iterator = new VariantHBaseScanIterator(
-                resScans, metadataManager, converterConfiguration, options);
+                resScans, metadataManager, converterConfiguration, options)
+                .setMetrics(variantQuery.getMetrics());
 
         // Client side skip!
         int skip = options.getInt(QueryOptions.SKIP, -1);
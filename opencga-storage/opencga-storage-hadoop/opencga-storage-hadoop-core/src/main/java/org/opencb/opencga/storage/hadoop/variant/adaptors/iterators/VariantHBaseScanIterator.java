@@ -22,6 +22,7 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
 import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+import org.opencb.opencga.storage.core.variant.query.metrics.VariantQueryMetrics;
 import org.opencb.opencga.storage.hadoop.variant.converters.HBaseToVariantConverter;
 import org.opencb.opencga.storage.hadoop.variant.converters.HBaseVariantConverterConfiguration;
 import org.slf4j.Logger;
@@ -52,6 +53,7 @@ public class VariantHBaseScanIterator extends VariantDBIterator {
     private int count = 0;
     private ExecutorService threadPool;
     private AtomicLong timeConverting = new AtomicLong();
+    private VariantQueryMetrics metrics = new VariantQueryMetrics();
 //    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
 //            .namingPattern("variant-hbase-scan-convert-%s")
 //            .build());
@@ -103,6 +105,7 @@ public class VariantHBaseScanIterator extends VariantDBIterator {
             while (hasNext() && i > 0) {
                 i--;
                 Result result = fetch(resultIterator::next);
+                metrics.addRowsScanned(1).addBytesRead(Result.getTotalSizeOfCells(result));
                 variants.add(threadPool.submit(() -> {
                     long start = System.nanoTime();
                     Variant v = converter.convert(result);
@@ -149,6 +152,17 @@ public class VariantHBaseScanIterator extends VariantDBIterator {
         return limit;
     }
 
+    /**
+     * Report the rows and bytes read from HBase to the given query metrics.
+     *
+     * @param metrics Query metrics
+     * @return this
+     */
+    public VariantHBaseScanIterator setMetrics(VariantQueryMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
     protected void setLimit(long limit) {
         this.limit = limit < 0 ? Long.MAX_VALUE : limit;
     }
@@ -157,7 +171,8 @@ public class VariantHBaseScanIterator extends VariantDBIterator {
         if (skip > 0) {
             while (hasNext() && skip > 0) {
                 skip--;
-                fetch(resultIterator::next);
+                Result result = fetch(resultIterator::next);
+                metrics.addRowsScanned(1).addBytesRead(Result.getTotalSizeOfCells(result));
             }
         }
     }
@@ -0,0 +1,207 @@
+package org.opencb.opencga.storage.hadoop.variant.index;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opencb.commons.datastore.core.FacetField;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.core.common.JacksonUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of aggregation results computed from the sample index.
+ *
+ * Results are serialized and stored off-heap, in direct byte buffers, bounded by a max number of bytes.
+ * Entries are evicted in LRU order, or when they are older than the TTL.
+ *
+ * Keys must include the sample index generation of each sample involved
+ * (see {@link org.opencb.opencga.storage.core.metadata.models.SampleMetadata#getSampleIndexGeneration}), so results
+ * computed before rewriting the sample index are never returned, even if the sample index was modified from another process.
+ *
+ * Created on 17/10/26.
+ */
+public class SampleIndexAggregationCache {
+
+    private static final TypeReference<List<FacetField>> FACET_FIELDS_TYPE = new TypeReference<List<FacetField>>() {
+    };
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final ObjectMapper objectMapper = JacksonUtils.getDefaultObjectMapper();
+    private final LinkedHashMap<String, CachedResult> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a SampleIndexAggregationCache.
+     *
+     * @param maxBytes  Max number of bytes to store. 0 to disable the cache.
+     * @param ttlMillis Max age of the entries in milliseconds.
+     */
+    public SampleIndexAggregationCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key   Aggregation key
+     * @return      Cached result, or null if missing or expired
+     */
+    public CachedResult get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CachedResult result;
+        synchronized (this) {
+            result = cache.get(key);
+            if (result != null && result.isExpired(ttlMillis)) {
+                remove(key);
+                result = null;
+            }
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Store an aggregation result.
+     *
+     * @param key           Aggregation key
+     * @param studyId       Study of the aggregated samples
+     * @param samples       Samples involved in the aggregation
+     * @param numMatches    Number of variants aggregated
+     * @param fields        Aggregation result
+     */
+    public void put(String key, int studyId, Collection<Integer> samples, long numMatches, List<FacetField> fields) {
+        if (!isEnabled()) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(fields);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (bytes.length > maxBytes) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        CachedResult result = new CachedResult(this, studyId, new HashSet<>(samples), numMatches, buffer);
+        synchronized (this) {
+            remove(key);
+            cache.put(key, result);
+            usedBytes += bytes.length;
+            Iterator<CachedResult> iterator = cache.values().iterator();
+            while (usedBytes > maxBytes && iterator.hasNext()) {
+                usedBytes -= iterator.next().data.capacity();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove all the cached results involving this sample.
+     *
+     * @param studyId   Study
+     * @param sampleId  Sample
+     */
+    public synchronized void invalidate(int studyId, int sampleId) {
+        Iterator<CachedResult> iterator = cache.values().iterator();
+        while (iterator.hasNext()) {
+            CachedResult result = iterator.next();
+            if (result.studyId == studyId && result.samples.contains(sampleId)) {
+                usedBytes -= result.data.capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        cache.clear();
+        usedBytes = 0;
+    }
+
+    public ObjectMap getStats() {
+        int entries;
+        long bytes;
+        synchronized (this) {
+            entries = cache.size();
+            bytes = usedBytes;
+        }
+        return new ObjectMap()
+                .append("hits", hits.get())
+                .append("misses", misses.get())
+                .append("evictions", evictions.get())
+                .append("entries", entries)
+                .append("bytes", bytes)
+                .append("maxBytes", maxBytes);
+    }
+
+    private void remove(String key) {
+        CachedResult old = cache.remove(key);
+        if (old != null) {
+            usedBytes -= old.data.capacity();
+        }
+    }
+
+    public static final class CachedResult {
+        private final SampleIndexAggregationCache cache;
+        private final int studyId;
+        private final Set<Integer> samples;
+        private final long numMatches;
+        private final ByteBuffer data;
+        private final long creationTime;
+
+        private CachedResult(SampleIndexAggregationCache cache, int studyId, Set<Integer> samples, long numMatches, ByteBuffer data) {
+            this.cache = cache;
+            this.studyId = studyId;
+            this.samples = samples;
+            this.numMatches = numMatches;
+            this.data = data;
+            this.creationTime = System.currentTimeMillis();
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - creationTime > ttlMillis;
+        }
+
+        public long getNumMatches() {
+            return numMatches;
+        }
+
+        /**
+         * Deserialize the aggregation result. Each call returns a new copy.
+         *
+         * @return Aggregation result
+         */
+        public List<FacetField> getFields() {
+            byte[] bytes = new byte[data.capacity()];
+            data.duplicate().get(bytes);
+            try {
+                return cache.objectMapper.readValue(bytes, FACET_FIELDS_TYPE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -130,11 +130,12 @@ public class SampleIndexOnlyVariantQueryExecutor extends VariantQueryExecutor {
 
         boolean count;
         Future<Long> asyncCountFuture;
+        List<Event> countEvents = new ArrayList<>();
         if (shouldGetCount(variantQuery.getInputOptions(), iterator)) {
             count = true;
             asyncCountFuture = THREAD_POOL.submit(() -> {
                 StopWatch stopWatch = StopWatch.createStarted();
-                long numMatches = sampleIndexDBAdaptor.count(sampleIndexQuery);
+                long numMatches = sampleIndexDBAdaptor.count(sampleIndexQuery, countEvents);
                 logger.info("Async count took " + TimeUtils.durationToString(stopWatch));
                 return numMatches;
             });
@@ -156,6 +157,7 @@ public class SampleIndexOnlyVariantQueryExecutor extends VariantQueryExecutor {
                 } catch (InterruptedException | ExecutionException e) {
                     throw VariantQueryException.internalException(e);
                 }
+                result.getEvents().addAll(countEvents);
             }
             result.setSource(SAMPLE_INDEX_TABLE_SOURCE);
             return result;
@@ -7,11 +7,13 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.commons.datastore.core.FacetField;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryResult;
 import org.opencb.opencga.storage.core.io.bit.BitBuffer;
 import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.SampleMetadata;
 import org.opencb.opencga.storage.core.utils.iterators.CloseableIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
@@ -19,6 +21,7 @@ import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
 import org.opencb.opencga.storage.core.variant.query.executors.VariantAggregationExecutor;
 import org.opencb.opencga.storage.core.variant.query.executors.accumulators.*;
+import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions;
 import org.opencb.opencga.storage.hadoop.variant.index.core.CategoricalMultiValuedIndexField;
 import org.opencb.opencga.storage.hadoop.variant.index.core.CombinationTripleIndexSchema.CombinationTriple;
 import org.opencb.opencga.storage.hadoop.variant.index.core.IndexField;
@@ -42,6 +45,7 @@ public class SampleIndexVariantAggregationExecutor extends VariantAggregationExe
 
     private final SampleIndexDBAdaptor sampleIndexDBAdaptor;
     private VariantStorageMetadataManager metadataManager;
+    private final SampleIndexAggregationCache cache;
     private static final Pattern CATEGORICAL_PATTERN = Pattern.compile("^([a-zA-Z][a-zA-Z0-9_.:]+)(\\[[a-zA-Z0-9\\-,:*]+])?(:\\*|:\\d+)?$");
     private Logger logger = LoggerFactory.getLogger(SampleIndexVariantAggregationExecutor.class);
 
@@ -61,8 +65,22 @@ public class SampleIndexVariantAggregationExecutor extends VariantAggregationExe
 
 
     public SampleIndexVariantAggregationExecutor(VariantStorageMetadataManager metadataManager, SampleIndexDBAdaptor sampleIndexDBAdaptor) {
+        this(metadataManager, sampleIndexDBAdaptor, new ObjectMap());
+    }
+
+    public SampleIndexVariantAggregationExecutor(VariantStorageMetadataManager metadataManager, SampleIndexDBAdaptor sampleIndexDBAdaptor,
+                                                 ObjectMap options) {
         this.metadataManager = metadataManager;
         this.sampleIndexDBAdaptor = sampleIndexDBAdaptor;
+        long cacheSizeMb = options.getLong(HadoopVariantStorageOptions.SAMPLE_INDEX_AGGREGATION_CACHE_SIZE_MB.key(),
+                HadoopVariantStorageOptions.SAMPLE_INDEX_AGGREGATION_CACHE_SIZE_MB.defaultValue());
+        long cacheTtlSeconds = options.getLong(HadoopVariantStorageOptions.SAMPLE_INDEX_AGGREGATION_CACHE_TTL_SECONDS.key(),
+                HadoopVariantStorageOptions.SAMPLE_INDEX_AGGREGATION_CACHE_TTL_SECONDS.defaultValue());
+        this.cache = new SampleIndexAggregationCache(cacheSizeMb * 1024 * 1024, TimeUnit.SECONDS.toMillis(cacheTtlSeconds));
+    }
+
+    public SampleIndexAggregationCache getCache() {
+        return cache;
     }
 
     @Override
@@ -116,6 +134,19 @@ public class SampleIndexVariantAggregationExecutor extends VariantAggregationExe
 
         logger.info("Filter transcript = {}", filterTranscript);
 
+        int studyId = metadataManager.getStudyId(sampleIndexQuery.getStudy());
+        Set<Integer> sampleIds = new HashSet<>();
+        String cacheKey = null;
+        if (cache.isEnabled()) {
+            cacheKey = buildCacheKey(sampleIndexQuery, studyId, sampleIds, query, facet, filterTranscript);
+            SampleIndexAggregationCache.CachedResult cachedResult = cache.get(cacheKey);
+            if (cachedResult != null) {
+                logger.info("Aggregation result found in cache");
+                return new VariantQueryResult<>((int) stopWatch.getTime(TimeUnit.MILLISECONDS), 1, cachedResult.getNumMatches(),
+                        Collections.emptyList(), cachedResult.getFields(), SampleIndexVariantQueryExecutor.SAMPLE_INDEX_TABLE_SOURCE);
+            }
+        }
+
         try (CloseableIterator<SampleIndexVariant> sampleIndexVariantIterator = sampleIndexDBAdaptor.rawIterator(query)) {
             // Init top level fields
             for (FacetFieldAccumulator<SampleIndexVariant> accumulator : accumulators) {
@@ -141,11 +172,49 @@ public class SampleIndexVariantAggregationExecutor extends VariantAggregationExe
                 accumulator.evaluate(field);
             }
 
+            if (cacheKey != null) {
+                cache.put(cacheKey, studyId, sampleIds, numMatches, fields);
+            }
+
             return new VariantQueryResult<>((int) stopWatch.getTime(TimeUnit.MILLISECONDS), 1, numMatches, Collections.emptyList(),
                     fields, SampleIndexVariantQueryExecutor.SAMPLE_INDEX_TABLE_SOURCE);
         }
     }
 
+    /**
+     * Build a key that uniquely identifies the result of this aggregation.
+     *
+     * Includes the sample index generation of every sample involved, so any change in the sample index of
+     * any of the samples (new variants, annotation, family index, ...) produces a different key.
+     *
+     * @param sampleIndexQuery  Parsed sample index query
+     * @param studyId           Study id
+     * @param sampleIds         Output set to fill with the ids of the samples involved
+     * @param query             Original query, already modified by the accumulators
+     * @param facet             Facet
+     * @param filterTranscript  Filter transcript
+     * @return                  Cache key
+     */
+    private String buildCacheKey(SampleIndexQuery sampleIndexQuery, int studyId, Set<Integer> sampleIds,
+                                 Query query, String facet, boolean filterTranscript) {
+        Set<String> samples = new TreeSet<>(sampleIndexQuery.getSamplesMap().keySet());
+        samples.addAll(sampleIndexQuery.getNegatedSamples());
+        samples.addAll(sampleIndexQuery.getMendelianErrorSet());
+
+        StringBuilder sb = new StringBuilder()
+                .append(sampleIndexDBAdaptor.getSampleIndexTableName(sampleIndexQuery))
+                .append('|').append(facet)
+                .append('|').append(filterTranscript)
+                .append('|').append(new TreeMap<>(query));
+        for (String sample : samples) {
+            Integer sampleId = metadataManager.getSampleId(studyId, sample);
+            SampleMetadata sampleMetadata = metadataManager.getSampleMetadata(studyId, sampleId);
+            sampleIds.add(sampleId);
+            sb.append('|').append(sampleId).append(':').append(sampleMetadata.getSampleIndexGeneration());
+        }
+        return sb.toString();
+    }
+
     private List<FacetFieldAccumulator<SampleIndexVariant>> createAccumulators(
             SampleIndexSchema schema, Query query, String facet, boolean filterTranscript) {
         List<FacetFieldAccumulator<SampleIndexVariant>> list = new ArrayList<>();
@@ -3,6 +3,7 @@ package org.opencb.opencga.storage.hadoop.variant.index;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.StopWatch;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Event;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -23,6 +24,8 @@ import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexQueryPa
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -94,11 +97,12 @@ public class SampleIndexVariantQueryExecutor extends AbstractTwoPhasedVariantQue
         Query uncoveredQuery = new Query(sampleIndexQuery.getUncoveredQuery());
         Future<Long> asyncCountFuture;
         boolean asyncCount;
+        List<Event> countEvents = new ArrayList<>();
         if (shouldGetApproximateCount(inputOptions, iterator) && queryFiltersCovered(uncoveredQuery)) {
             asyncCount = true;
             asyncCountFuture = THREAD_POOL.submit(() -> {
                 StopWatch stopWatch = StopWatch.createStarted();
-                long count = sampleIndexDBAdaptor.count(sampleIndexQuery);
+                long count = sampleIndexDBAdaptor.count(sampleIndexQuery, countEvents);
                 logger.info("Async count took " + TimeUtils.durationToString(stopWatch));
                 return count;
             });
@@ -151,6 +155,7 @@ public class SampleIndexVariantQueryExecutor extends AbstractTwoPhasedVariantQue
                 } catch (InterruptedException | ExecutionException e) {
                     throw VariantQueryException.internalException(e);
                 }
+                result.getEvents().addAll(countEvents);
             } else {
                 // Approximate count
                 QueryOptions numTotalResultsOptions = new QueryOptions(options);
@@ -263,6 +263,7 @@ public class FamilyIndexDriver extends AbstractVariantsTableDriver {
                     }
                 });
             }
+            metadataManager.invalidateQueryCache();
         }
     }
 
@@ -4,6 +4,7 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.opencga.storage.core.io.bit.BitBuffer;
 import org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
@@ -42,6 +43,11 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
     private final List<Integer> annotationIndexPositions;
     private final SampleIndexVariantBiConverter converter;
 
+    // Result of testing the next variant without decoding it
+    private static final int DISCARD = 0;
+    private static final int ACCEPT = 1;
+    private static final int NEEDS_VARIANT = 2;
+
     private static final boolean[] DE_NOVO_MENDELIAN_ERROR_CODES = new boolean[]{
                    /* | Code  |   Dad  | Mother | Kid  |  deNovo | */
             true,  /* |   0   |        |        |      |         | */
@@ -107,7 +113,7 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
 
     public Collection<T> filter(SampleIndexEntry sampleIndexEntry) {
         if (query.getMendelianError()) {
-            return filterMendelian(converter.toMendelianIterator(sampleIndexEntry));
+            return filterMendelian(converter.toMendelianIterator(sampleIndexEntry), sampleIndexEntry.getChromosome());
         } else {
             return filter(sampleIndexEntry, false);
         }
@@ -115,13 +121,16 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
 
     public int filterAndCount(SampleIndexEntry sampleIndexEntry) {
         if (query.getMendelianError()) {
-            return filterMendelian(converter.toMendelianIterator(sampleIndexEntry)).size();
-        } else {
+            return filterMendelian(converter.toMendelianIterator(sampleIndexEntry), sampleIndexEntry.getChromosome()).size();
+        } else if (query.isMultiFileSample() && sampleIndexEntry.getDiscrepancies() > 0) {
+            // Need to build the variants to remove duplicates
             return filter(sampleIndexEntry, true).size();
+        } else {
+            return count(sampleIndexEntry);
         }
     }
 
-    private Set<T> filterMendelian(MendelianErrorSampleIndexEntryIterator iterator) {
+    private Set<T> filterMendelian(MendelianErrorSampleIndexEntryIterator iterator, String chromosome) {
         // Use SET to ensure order and remove duplicates
         Set<T> variants = new TreeSet<>(getComparator());
 
@@ -132,7 +141,7 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
                 if (!testDeNovo(mendelianErrorCode, genotype)) {
                     iterator.skip();
                 } else {
-                    T variant = filter(iterator);
+                    T variant = filter(iterator, new MutableInt(Integer.MAX_VALUE), chromosome);
                     if (variant != null) {
                         variants.add(variant);
                     }
@@ -182,11 +191,7 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
         Map<String, SampleIndexGtEntry> gts = entry.getGts();
         List<List<T>> variantsByGt = new ArrayList<>(gts.size());
         int numVariants = 0;
-        // Use countIterator only if don't need to filter by locus or by type
-        boolean countIterator = count
-                && locusQuery == null
-                && CollectionUtils.isEmpty(query.getVariantTypes())
-                && !query.isMultiFileSample();
+        boolean countIterator = count && useCountIterator();
         for (SampleIndexGtEntry gtEntry : gts.values()) {
             MutableInt expectedResultsFromAnnotation = new MutableInt(getExpectedResultsFromAnnotation(gtEntry));
 
@@ -194,24 +199,14 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
             ArrayList<T> variants = new ArrayList<>(variantIterator.getApproxSize());
             try {
                 while (expectedResultsFromAnnotation.intValue() > 0 && variantIterator.hasNext()) {
-                    T variant = filter(variantIterator, expectedResultsFromAnnotation);
+                    T variant = filter(variantIterator, expectedResultsFromAnnotation, entry.getChromosome());
                     if (variant != null) {
                         variants.add(variant);
                         numVariants++;
                     }
                 }
             } catch (Exception e) {
-                logger.error("Error '{}' filtering SampleIndexGtEntry. sample={}, region={}:{} gt={}",
-                        e.getClass().getName(),
-                        entry.getSampleId(),
-                        entry.getChromosome(), entry.getBatchStart(),
-                        gtEntry.getGt());
-                try {
-                    logger.warn(gtEntry.toStringSummary());
-                    logger.warn(converter.getSchema().toString());
-                } catch (Exception exception) {
-                    e.addSuppressed(exception);
-                }
+                logFilterError(entry, gtEntry, e);
                 throw e;
             }
             if (!variants.isEmpty()) {
@@ -258,6 +253,60 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
     }
 
 
+    /**
+     * Count the variants that pass the filters, without building any variant object, unless required to filter by locus.
+     *
+     * @param entry SampleIndexEntry to count
+     * @return      Number of variants
+     */
+    private int count(SampleIndexEntry entry) {
+        int numVariants = 0;
+        boolean countIterator = useCountIterator();
+        for (SampleIndexGtEntry gtEntry : entry.getGts().values()) {
+            MutableInt expectedResultsFromAnnotation = new MutableInt(getExpectedResultsFromAnnotation(gtEntry));
+
+            SampleIndexEntryIterator variantIterator = converter.toVariantsIterator(gtEntry, countIterator);
+            try {
+                while (expectedResultsFromAnnotation.intValue() > 0 && variantIterator.hasNext()) {
+                    int result = test(variantIterator, expectedResultsFromAnnotation, entry.getChromosome());
+                    if (result == NEEDS_VARIANT) {
+                        // Get the variant without moving the cursor
+                        result = filterLocusAndType(variantIterator.nextVariant()) ? ACCEPT : DISCARD;
+                    }
+                    if (result == ACCEPT) {
+                        numVariants++;
+                    }
+                    variantIterator.skip();
+                }
+            } catch (Exception e) {
+                logFilterError(entry, gtEntry, e);
+                throw e;
+            }
+        }
+        return numVariants;
+    }
+
+    private boolean useCountIterator() {
+        // Use countIterator only if don't need to filter by locus or by type
+        return locusQuery == null
+                && CollectionUtils.isEmpty(query.getVariantTypes())
+                && !query.isMultiFileSample();
+    }
+
+    private void logFilterError(SampleIndexEntry entry, SampleIndexGtEntry gtEntry, Exception e) {
+        logger.error("Error '{}' filtering SampleIndexGtEntry. sample={}, region={}:{} gt={}",
+                e.getClass().getName(),
+                entry.getSampleId(),
+                entry.getChromosome(), entry.getBatchStart(),
+                gtEntry.getGt());
+        try {
+            logger.warn(gtEntry.toStringSummary());
+            logger.warn(converter.getSchema().toString());
+        } catch (Exception exception) {
+            e.addSuppressed(exception);
+        }
+    }
+
     private int getExpectedResultsFromAnnotation(SampleIndexGtEntry gtEntry) {
         int expectedResultsFromAnnotation = Integer.MAX_VALUE;
         if (gtEntry.getAnnotationCounts() != null) {
@@ -268,13 +317,34 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
         return expectedResultsFromAnnotation;
     }
 
-    private T filter(SampleIndexEntryIterator variants) {
-        return filter(variants, new MutableInt(Integer.MAX_VALUE));
-    }
-
-    private T filter(SampleIndexEntryIterator variants, MutableInt expectedResultsFromAnnotation) {
+    private T filter(SampleIndexEntryIterator variants, MutableInt expectedResultsFromAnnotation, String chromosome) {
         // Either call to next() or to skip(), but no both
+        switch (test(variants, expectedResultsFromAnnotation, chromosome)) {
+            case ACCEPT:
+                return getNext(variants);
+            case NEEDS_VARIANT:
+                // Only at this point, get the variant.
+                T variant = getNext(variants);
+
+                // Apply rest of filters
+                return filterLocusAndType(toVariant(variant)) ? variant : null;
+            case DISCARD:
+            default:
+                // The variant did not pass the tests. Skip
+                variants.skip();
+                return null;
+        }
+    }
 
+    /**
+     * Test the next variant without moving the cursor, and without decoding the variant if possible.
+     *
+     * @param variants      Variants iterator
+     * @param expectedResultsFromAnnotation Number of variants expected to pass the annotation summary filter
+     * @param chromosome    Chromosome of the variants
+     * @return DISCARD, ACCEPT or NEEDS_VARIANT if the variant has to be decoded to test the locus and type filters
+     */
+    private int test(SampleIndexEntryIterator variants, MutableInt expectedResultsFromAnnotation, String chromosome) {
         SampleIndexVariantAnnotation annotationIndex;
         try {
             annotationIndex = variants.nextAnnotationIndexEntry();
@@ -304,18 +374,14 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
                             query.getFatherFilter(),
                             query.getMotherFilter())) {
 
-                        // Only at this point, get the variant.
-                        T variant = getNext(variants);
-
-                        // Apply rest of filters
-                        return filter(variant);
+                        // Test region and type filters reading the raw variant (if possible)
+                        return filterLocusAndType(variants, chromosome);
                     }
                 }
             }
         }
-        // The variant did not pass the tests. Skip
-        variants.skip();
-        return null;
+        // The variant did not pass the tests
+        return DISCARD;
     }
 
     private boolean filterFile(SampleIndexEntryIterator variants) {
@@ -447,17 +513,71 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
         return true;
     }
 
-    private T filter(T v) {
-        Variant variant = toVariant(v);
+    /**
+     * Test region and type filters using the raw start of the next variant.
+     * The variant is only decoded if the raw values are not enough to take a decision.
+     *
+     * @param variants      Variants iterator
+     * @param chromosome    Chromosome of the variants
+     * @return DISCARD, ACCEPT or NEEDS_VARIANT
+     */
+    private int filterLocusAndType(SampleIndexEntryIterator variants, String chromosome) {
+        boolean filterByType = CollectionUtils.isNotEmpty(query.getVariantTypes());
+        if (locusQuery == null && !filterByType) {
+            return ACCEPT;
+        }
+        int start = variants.nextStart();
+        if (start < 0) {
+            return NEEDS_VARIANT;
+        }
+        // If SNV, start, end and type are known
+        boolean snv = variants.isNextSnv();
+        if (snv && filterByType && !query.getVariantTypes().contains(VariantType.SNV)) {
+            return DISCARD;
+        }
+        if (locusQuery == null) {
+            return snv ? ACCEPT : NEEDS_VARIANT;
+        }
+        boolean sameChromosome = false;
+        boolean mayOverlap = false;
+        for (Region region : locusQuery.getRegions()) {
+            if (region.getChromosome().equals(chromosome)) {
+                sameChromosome = true;
+                if (start <= region.getEnd()) {
+                    if (!snv) {
+                        // End is unknown. Decode the variant
+                        mayOverlap = true;
+                    } else if (start >= region.getStart()) {
+                        return ACCEPT;
+                    }
+                }
+            }
+        }
+        for (Variant queryVariant : locusQuery.getVariants()) {
+            if (queryVariant.getChromosome().equals(chromosome)) {
+                sameChromosome = true;
+                if (queryVariant.getStart() == start) {
+                    mayOverlap = true;
+                }
+            }
+        }
+        if (!sameChromosome) {
+            // Chromosome names may not be normalized. Let the variant decide
+            return NEEDS_VARIANT;
+        }
+        return mayOverlap ? NEEDS_VARIANT : DISCARD;
+    }
+
+    private boolean filterLocusAndType(Variant variant) {
         //Test region filter (if any)
         if (filterLocus(variant)) {
 
             // Test type filter (if any)
             if (CollectionUtils.isEmpty(query.getVariantTypes()) || query.getVariantTypes().contains(variant.getType())) {
-                return v;
+                return true;
             }
         }
-        return null;
+        return false;
     }
 
     private boolean filterLocus(Variant variant) {
@@ -160,6 +160,7 @@ public class SampleIndexAnnotationLoader {
                 sampleMetadata.setSampleIndexAnnotationStatus(Status.READY, version);
             });
         }
+        metadataManager.invalidateQueryCache();
     }
 
     public void postAnnotationLoad(int studyId, int version)
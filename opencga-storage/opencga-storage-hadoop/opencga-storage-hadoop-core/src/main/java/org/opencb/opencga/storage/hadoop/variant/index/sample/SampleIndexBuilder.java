@@ -138,6 +138,7 @@ public class SampleIndexBuilder {
                 sampleMetadata.setSampleIndexStatus(TaskMetadata.Status.READY, schema.getVersion());
             });
         }
+        metadataManager.invalidateQueryCache();
     }
 
 }
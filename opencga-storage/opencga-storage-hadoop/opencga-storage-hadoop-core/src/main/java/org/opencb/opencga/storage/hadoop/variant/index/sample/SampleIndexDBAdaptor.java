@@ -2,14 +2,19 @@ package org.opencb.opencga.storage.hadoop.variant.index.sample;
 
 import com.google.common.collect.Iterators;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Event;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.core.common.TimeUtils;
+import org.opencb.opencga.core.config.ConfigurationOption;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
 import org.opencb.opencga.storage.core.metadata.models.SampleMetadata;
@@ -17,12 +22,15 @@ import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
 import org.opencb.opencga.storage.core.metadata.models.TaskMetadata;
 import org.opencb.opencga.storage.core.utils.iterators.CloseableIterator;
 import org.opencb.opencga.storage.core.utils.iterators.IntersectMultiKeyIterator;
+import org.opencb.opencga.storage.core.utils.iterators.PrefetchCloseableIterator;
 import org.opencb.opencga.storage.core.utils.iterators.UnionMultiKeyIterator;
 import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantIterable;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.adaptors.iterators.IntersectMultiVariantKeyIterator;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.PackedVariantKey;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.PrefetchVariantDBIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.iterators.UnionMultiVariantKeyIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
@@ -40,6 +48,13 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantSqlQueryParser.DEFAULT_LOADED_GENOTYPES;
@@ -56,15 +71,31 @@ public class SampleIndexDBAdaptor implements VariantIterable {
     private final HBaseVariantTableNameGenerator tableNameGenerator;
     private final VariantStorageMetadataManager metadataManager;
     private final SampleIndexSchemaFactory schemaFactory;
+    private final ObjectMap options;
     private static byte[] family = GenomeHelper.COLUMN_FAMILY_BYTES;
     private static Logger logger = LoggerFactory.getLogger(SampleIndexDBAdaptor.class);
 
+    private static final int COUNT_SHARDS_REPORTED = 10;
+
+    // Prefetch and count tasks are bounded per query. Do not use a fixed size thread pool, as tasks from
+    // different queries could block each other.
+    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+            .namingPattern("sample-index-query-%s")
+            .daemon(true)
+            .build());
+
     public SampleIndexDBAdaptor(HBaseManager hBaseManager, HBaseVariantTableNameGenerator tableNameGenerator,
                                 VariantStorageMetadataManager metadataManager) {
+        this(hBaseManager, tableNameGenerator, metadataManager, new ObjectMap());
+    }
+
+    public SampleIndexDBAdaptor(HBaseManager hBaseManager, HBaseVariantTableNameGenerator tableNameGenerator,
+                                VariantStorageMetadataManager metadataManager, ObjectMap options) {
         this.hBaseManager = hBaseManager;
         this.tableNameGenerator = tableNameGenerator;
         this.metadataManager = metadataManager;
         this.schemaFactory = new SampleIndexSchemaFactory(metadataManager);
+        this.options = options == null ? new ObjectMap() : options;
     }
 
     @Override
@@ -121,6 +152,17 @@ public class SampleIndexDBAdaptor implements VariantIterable {
                 }
             }
         }
+        int prefetchThreads = getOption(options, VariantStorageOptions.QUERY_PREFETCH_THREADS);
+        if (prefetchThreads > 0) {
+            int bufferSize = getOption(options, VariantStorageOptions.QUERY_PREFETCH_BUFFER_SIZE);
+            int batchSize = getOption(options, VariantStorageOptions.QUERY_PREFETCH_BATCH_SIZE);
+            UnaryOperator<VariantDBIterator> prefetch = it -> it == VariantDBIterator.emptyIterator()
+                    ? it
+                    : new PrefetchVariantDBIterator(it, THREAD_POOL, bufferSize, batchSize);
+            prefetchThreads = prefetch(iterators, prefetchThreads, prefetch);
+            prefetch(negatedIterators, prefetchThreads, prefetch);
+        }
+
         VariantDBIterator iterator;
         if (operation.equals(QueryOperation.OR)) {
             logger.info("Union of " + iterators.size() + " sample indexes");
@@ -133,6 +175,33 @@ public class SampleIndexDBAdaptor implements VariantIterable {
         return iterator.localLimitSkip(options);
     }
 
+    /**
+     * Replace the first iterators of the list with prefetching iterators, so each of them is
+     * consumed in a background thread.
+     *
+     * @param iterators List of iterators to modify
+     * @param threads   Max number of iterators to prefetch
+     * @param prefetch  Prefetch function. Might return the same iterator if there is nothing to prefetch
+     * @param <I>       Iterator type
+     * @return          Remaining number of threads
+     */
+    private static <I> int prefetch(List<I> iterators, int threads, UnaryOperator<I> prefetch) {
+        for (int i = 0; i < iterators.size() && threads > 0; i++) {
+            I iterator = iterators.get(i);
+            I prefetchIterator = prefetch.apply(iterator);
+            if (prefetchIterator != iterator) {
+                iterators.set(i, prefetchIterator);
+                threads--;
+            }
+        }
+        return threads;
+    }
+
+    private int getOption(ObjectMap queryOptions, ConfigurationOption option) {
+        int defaultValue = options.getInt(option.key(), option.defaultValue());
+        return queryOptions == null ? defaultValue : queryOptions.getInt(option.key(), defaultValue);
+    }
+
     /**
      * Partially processed iterator. Internal usage only.
      *
@@ -300,8 +369,8 @@ public class SampleIndexDBAdaptor implements VariantIterable {
             }
         }
 
-        List<RawSingleSampleIndexVariantDBIterator> iterators = new ArrayList<>(samples.size());
-        List<RawSingleSampleIndexVariantDBIterator> negatedIterators = new ArrayList<>(samples.size());
+        List<CloseableIterator<SampleIndexVariant>> iterators = new ArrayList<>(samples.size());
+        List<CloseableIterator<SampleIndexVariant>> negatedIterators = new ArrayList<>(samples.size());
 
         for (Map.Entry<String, List<String>> entry : samples.entrySet()) {
             String sample = entry.getKey();
@@ -323,16 +392,27 @@ public class SampleIndexDBAdaptor implements VariantIterable {
             }
         }
 
+        int prefetchThreads = getOption(options, VariantStorageOptions.QUERY_PREFETCH_THREADS);
+        if (prefetchThreads > 0) {
+            int bufferSize = getOption(options, VariantStorageOptions.QUERY_PREFETCH_BUFFER_SIZE);
+            int batchSize = getOption(options, VariantStorageOptions.QUERY_PREFETCH_BATCH_SIZE);
+            UnaryOperator<CloseableIterator<SampleIndexVariant>> prefetch =
+                    it -> new PrefetchCloseableIterator<>(it, THREAD_POOL, bufferSize, batchSize);
+            prefetchThreads = prefetch(iterators, prefetchThreads, prefetch);
+            prefetch(negatedIterators, prefetchThreads, prefetch);
+        }
+
         final CloseableIterator<SampleIndexVariant> iterator;
         if (operation.equals(QueryOperation.OR)) {
             logger.info("Union of " + iterators.size() + " sample indexes");
-            iterator = new UnionMultiKeyIterator<>(
-                    Comparator.comparing(SampleIndexVariant::getVariant, VariantDBIterator.VARIANT_COMPARATOR), iterators);
+            iterator = PackedVariantKey.unpack(new UnionMultiKeyIterator<>(Comparator.naturalOrder(),
+                    PackedVariantKey.pack(iterators, SampleIndexVariant::getVariant)));
         } else {
             logger.info("Intersection of " + iterators.size() + " sample indexes plus " + negatedIterators.size() + " negated indexes");
-            iterator = new IntersectMultiKeyIterator<>(
-                    Comparator.comparing(SampleIndexVariant::getVariant, VariantDBIterator.VARIANT_COMPARATOR),
-                    iterators, negatedIterators);
+            Map<String, String> chromosomes = new HashMap<>();
+            iterator = PackedVariantKey.unpack(new IntersectMultiKeyIterator<>(Comparator.naturalOrder(),
+                    PackedVariantKey.pack(iterators, SampleIndexVariant::getVariant, chromosomes),
+                    PackedVariantKey.pack(negatedIterators, SampleIndexVariant::getVariant, chromosomes)));
         }
 
         return iterator.localLimitSkip(options);
@@ -347,15 +427,28 @@ public class SampleIndexDBAdaptor implements VariantIterable {
     }
 
     public long count(SampleIndexQuery query) {
+        return count(query, null);
+    }
+
+    /**
+     * Count the number of variants matching the query.
+     *
+     * Single sample queries are split in batch aligned shards that are counted in parallel.
+     *
+     * @param query  SampleIndexQuery
+     * @param events Optional list of events where to report the per-shard timings
+     * @return Number of variants
+     */
+    public long count(SampleIndexQuery query, List<Event> events) {
         if (query.getSamplesMap().size() == 1 && query.getMendelianErrorSet().isEmpty()) {
             String sample = query.getSamplesMap().keySet().iterator().next();
-            return count(query.forSample(sample));
+            return count(query.forSample(sample), events);
         } else {
             return Iterators.size(iterator(query));
         }
     }
 
-    private long count(SingleSampleIndexQuery query) {
+    private long count(SingleSampleIndexQuery query, List<Event> events) {
         Collection<LocusQuery> locusQueries;
         if (CollectionUtils.isEmpty(query.getLocusQueries())) {
             // If no locus are defined, get a list of one null element to initialize the stream.
@@ -364,66 +457,155 @@ public class SampleIndexDBAdaptor implements VariantIterable {
             locusQueries = query.getLocusQueries();
         }
 
+        // Split regions in countable regions
+        List<LocusQuery> subLocusQueries = new ArrayList<>();
+        for (LocusQuery locusQuery : locusQueries) {
+            subLocusQueries.addAll(splitLocusQuery(locusQuery));
+        }
+
         int studyId = toStudyId(query.getStudy());
         String tableName = getSampleIndexTableName(studyId, query.getSchema().getVersion());
+        int numThreads = Math.min(subLocusQueries.size(),
+                getOption(null, HadoopVariantStorageOptions.SAMPLE_INDEX_QUERY_COUNT_THREADS));
 
+        List<CountShard> shards = new ArrayList<>(subLocusQueries.size());
+        for (LocusQuery subLocusQuery : subLocusQueries) {
+            shards.add(new CountShard(subLocusQuery));
+        }
+        StopWatch stopWatch = StopWatch.createStarted();
+        if (numThreads <= 1) {
+            countShards(query, tableName, shards.iterator());
+        } else {
+            // Each task takes shards from a shared queue, so at most numThreads shards are counted concurrently.
+            Iterator<CountShard> shardsIterator = new ConcurrentLinkedQueue<>(shards).iterator();
+            List<Future<?>> futures = new ArrayList<>(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(THREAD_POOL.submit(() -> countShards(query, tableName, shardsIterator)));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw VariantQueryException.internalException(e);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw VariantQueryException.internalException(e);
+            }
+        }
+        stopWatch.stop();
+
+        long count = 0;
+        for (CountShard shard : shards) {
+            count += shard.count;
+        }
+        if (events != null && shards.size() > 1) {
+            reportCountShards(events, shards, numThreads, stopWatch);
+        }
+        return count;
+    }
+
+    private void countShards(SingleSampleIndexQuery query, String tableName, Iterator<CountShard> shards) {
         HBaseToSampleIndexConverter converter = newConverter(query.getSchema());
         try {
-            return hBaseManager.act(tableName, table -> {
-                long count = 0;
-                for (LocusQuery locusQuery : locusQueries) {
-                    // Split region in countable regions
-                    List<LocusQuery> subLocusQueries = splitLocusQuery(locusQuery);
-
-                    for (LocusQuery subLocusQuery : subLocusQueries) {
-                        boolean noLocusFilter = subLocusQuery == null
-                                || (subLocusQuery.getVariants().isEmpty()
-                                && subLocusQuery.getRegions().size() == 1
-                                && matchesWithBatch(subLocusQuery.getRegions().get(0)));
-                        // Don't need to parse the variant to filter
-                        boolean simpleCount = !query.isMultiFileSample()
-                                && CollectionUtils.isEmpty(query.getVariantTypes())
-                                && noLocusFilter;
-                        try {
-                            if (query.emptyOrRegionFilter() && simpleCount) {
-                                // Directly sum counters
-                                Scan scan = parseCount(query, subLocusQuery);
-                                ResultScanner scanner = table.getScanner(scan);
-                                Result result = scanner.next();
-                                while (result != null) {
-                                    count += converter.convertToCount(result);
-                                    result = scanner.next();
-                                }
-                            } else {
-                                SampleIndexEntryFilter filter = buildSampleIndexEntryFilter(query, subLocusQuery);
-                                Scan scan;
-                                if (simpleCount) {
-                                    // Fast filter and count. Don't need to parse the variant to filter
-                                    scan = parseCountAndFilter(query, subLocusQuery);
-                                } else {
-                                    // Need to parse the variant to finish filtering. Create a normal scan query.
-                                    scan = parse(query, subLocusQuery);
-                                }
-                                ResultScanner scanner = table.getScanner(scan);
-                                Result result = scanner.next();
-                                while (result != null) {
-                                    SampleIndexEntry sampleIndexEntry = converter.convert(result);
-                                    count += filter.filterAndCount(sampleIndexEntry);
-                                    result = scanner.next();
-                                }
-                            }
-                        } catch (IOException e) {
-                            throw VariantQueryException.internalException(e);
+            hBaseManager.act(tableName, table -> {
+                while (true) {
+                    CountShard shard;
+                    // ConcurrentLinkedQueue iterators are thread safe, but hasNext and next are not atomic.
+                    synchronized (shards) {
+                        if (!shards.hasNext()) {
+                            break;
                         }
+                        shard = shards.next();
                     }
+                    long start = System.nanoTime();
+                    shard.count = count(table, query, shard.locusQuery, converter);
+                    shard.timeNanos = System.nanoTime() - start;
                 }
-                return count;
+                return null;
             });
         } catch (IOException e) {
             throw VariantQueryException.internalException(e);
         }
     }
 
+    private long count(Table table, SingleSampleIndexQuery query, LocusQuery subLocusQuery, HBaseToSampleIndexConverter converter)
+            throws IOException {
+        boolean noLocusFilter = subLocusQuery == null
+                || (subLocusQuery.getVariants().isEmpty()
+                && subLocusQuery.getRegions().size() == 1
+                && matchesWithBatch(subLocusQuery.getRegions().get(0)));
+        // Don't need to parse the variant to filter
+        boolean simpleCount = !query.isMultiFileSample()
+                && CollectionUtils.isEmpty(query.getVariantTypes())
+                && noLocusFilter;
+        long count = 0;
+        if (query.emptyOrRegionFilter() && simpleCount) {
+            // Directly sum counters
+            Scan scan = parseCount(query, subLocusQuery);
+            try (ResultScanner scanner = table.getScanner(scan)) {
+                Result result = scanner.next();
+                while (result != null) {
+                    count += converter.convertToCount(result);
+                    result = scanner.next();
+                }
+            }
+        } else {
+            SampleIndexEntryFilter filter = buildSampleIndexEntryFilter(query, subLocusQuery);
+            Scan scan;
+            if (simpleCount) {
+                // Fast filter and count. Don't need to parse the variant to filter
+                scan = parseCountAndFilter(query, subLocusQuery);
+            } else {
+                // Need to parse the variant to finish filtering. Create a normal scan query.
+                scan = parse(query, subLocusQuery);
+            }
+            try (ResultScanner scanner = table.getScanner(scan)) {
+                Result result = scanner.next();
+                while (result != null) {
+                    SampleIndexEntry sampleIndexEntry = converter.convert(result);
+                    count += filter.filterAndCount(sampleIndexEntry);
+                    result = scanner.next();
+                }
+            }
+        }
+        return count;
+    }
+
+    private void reportCountShards(List<Event> events, List<CountShard> shards, int numThreads, StopWatch stopWatch) {
+        List<CountShard> sortedShards = new ArrayList<>(shards);
+        sortedShards.sort(Comparator.comparingLong((CountShard shard) -> shard.timeNanos).reversed());
+        long totalTimeNanos = 0;
+        for (CountShard shard : shards) {
+            totalTimeNanos += shard.timeNanos;
+        }
+        events.add(new Event(Event.Type.INFO, "Sample index count split in " + shards.size() + " shards using "
+                + numThreads + " threads. Wall time: " + TimeUtils.durationToString(stopWatch)
+                + ", accumulated time: " + TimeUtils.durationToString(totalTimeNanos, TimeUnit.NANOSECONDS)));
+        // Report only the slowest shards
+        for (CountShard shard : sortedShards.subList(0, Math.min(COUNT_SHARDS_REPORTED, sortedShards.size()))) {
+            events.add(new Event(Event.Type.INFO, "Sample index count shard "
+                    + (shard.locusQuery == null ? "<all>" : shard.locusQuery.getChunkRegion().toString())
+                    + " : " + shard.count + " variants in "
+                    + TimeUtils.durationToString(shard.timeNanos, TimeUnit.NANOSECONDS)));
+        }
+    }
+
+    private static final class CountShard {
+        private final LocusQuery locusQuery;
+        private volatile long count;
+        private volatile long timeNanos;
+
+        private CountShard(LocusQuery locusQuery) {
+            this.locusQuery = locusQuery;
+        }
+    }
+
     protected HBaseToSampleIndexConverter newConverter(SampleIndexSchema schema) {
         return new HBaseToSampleIndexConverter(schema);
     }
@@ -865,6 +1047,7 @@ public class SampleIndexDBAdaptor implements VariantIterable {
                 sm.getSampleIndexConfiguration(version)
                         .setStatus(StudyMetadata.SampleIndexConfigurationVersioned.Status.ACTIVE);
             });
+            metadataManager.invalidateQueryCache();
         } else {
             logger.info("Not all samples had the sample index version {} on GENOTYPES and ANNOTATION", version);
         }
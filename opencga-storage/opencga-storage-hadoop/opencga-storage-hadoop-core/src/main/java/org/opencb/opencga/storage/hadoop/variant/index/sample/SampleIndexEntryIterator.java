@@ -68,6 +68,23 @@ public interface SampleIndexEntryIterator extends Iterator<Variant> {
         return new SampleIndexVariant(variant, filesIndex, filesData, genotype, annotationIndex, parentsCode, null);
     }
 
+    /**
+     * Get the start of the next variant without decoding it, nor moving the cursor.
+     * @return start of the next variant, or -1 if not available without decoding the variant
+     */
+    default int nextStart() {
+        return -1;
+    }
+
+    /**
+     * Check if the next variant is a single nucleotide variant without decoding it, nor moving the cursor.
+     * If true, the end of the variant is equal to the start, and the type is SNV.
+     * @return {@code true} if the next variant is known to be a SNV
+     */
+    default boolean isNextSnv() {
+        return false;
+    }
+
     /**
      * @return the index of the element that would be returned by a
      * subsequent call to {@code next}.
@@ -628,6 +628,17 @@ public class SampleIndexVariantBiConverter {
             return variant;
         }
 
+        @Override
+        public int nextStart() {
+            // Encoded alleles are stored in the 4 most significant bits
+            return batchStart + (read24bitInteger(bytes, currentOffset) & 0x0F_FF_FF);
+        }
+
+        @Override
+        public boolean isNextSnv() {
+            return encodedRefAlt;
+        }
+
         @Override
         public void skip() {
             nextAnnotationIndexEntry(); // ensure read annotation
@@ -0,0 +1,98 @@
+package org.opencb.opencga.storage.hadoop.variant.index;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.commons.datastore.core.FacetField;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category(ShortTests.class)
+public class SampleIndexAggregationCacheTest {
+
+    @Test
+    public void testRoundTrip() {
+        SampleIndexAggregationCache cache = new SampleIndexAggregationCache(1024 * 1024, 60000);
+        List<FacetField> fields = facet("type", 10);
+        cache.put("k1", 1, Arrays.asList(1, 2), 10, fields);
+
+        SampleIndexAggregationCache.CachedResult result = cache.get("k1");
+        assertNotNull(result);
+        assertEquals(10, result.getNumMatches());
+        List<FacetField> actual = result.getFields();
+        assertEquals(1, actual.size());
+        assertEquals("type", actual.get(0).getName());
+        assertEquals(10, actual.get(0).getCount());
+        assertEquals("SNV", actual.get(0).getBuckets().get(0).getValue());
+        assertEquals(7, actual.get(0).getBuckets().get(0).getCount());
+
+        assertNull(cache.get("k2"));
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(1L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void testEvictByBytes() {
+        SampleIndexAggregationCache cache = new SampleIndexAggregationCache(1024 * 1024, 60000);
+        cache.put("k1", 1, Collections.singletonList(1), 10, facet("type", 10));
+        long entrySize = cache.getStats().getLong("bytes");
+
+        cache = new SampleIndexAggregationCache(entrySize * 2, 60000);
+        cache.put("k1", 1, Collections.singletonList(1), 10, facet("type", 10));
+        cache.put("k2", 1, Collections.singletonList(1), 10, facet("type", 10));
+        // Touch k1, so k2 is the least recently used
+        assertNotNull(cache.get("k1"));
+        cache.put("k3", 1, Collections.singletonList(1), 10, facet("type", 10));
+
+        assertNotNull(cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertNotNull(cache.get("k3"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertTrue(cache.getStats().getLong("bytes") <= entrySize * 2);
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        SampleIndexAggregationCache cache = new SampleIndexAggregationCache(1024 * 1024, 10);
+        cache.put("k1", 1, Collections.singletonList(1), 10, facet("type", 10));
+        Thread.sleep(50);
+        assertNull(cache.get("k1"));
+        assertEquals(0, cache.getStats().getInt("entries"));
+        assertEquals(0L, cache.getStats().getLong("bytes"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        SampleIndexAggregationCache cache = new SampleIndexAggregationCache(1024 * 1024, 60000);
+        cache.put("k1", 1, Arrays.asList(1, 2), 10, facet("type", 10));
+        cache.put("k2", 1, Arrays.asList(3), 10, facet("type", 10));
+        cache.put("k3", 2, Arrays.asList(2), 10, facet("type", 10));
+
+        cache.invalidate(1, 2);
+        assertNull(cache.get("k1"));
+        assertNotNull(cache.get("k2"));
+        assertNotNull(cache.get("k3"));
+
+        cache.invalidateAll();
+        assertNull(cache.get("k2"));
+        assertEquals(0L, cache.getStats().getLong("bytes"));
+    }
+
+    @Test
+    public void testDisabled() {
+        SampleIndexAggregationCache cache = new SampleIndexAggregationCache(0, 60000);
+        assertFalse(cache.isEnabled());
+        cache.put("k1", 1, Collections.singletonList(1), 10, facet("type", 10));
+        assertNull(cache.get("k1"));
+    }
+
+    private static List<FacetField> facet(String name, long count) {
+        return Collections.singletonList(new FacetField(name, count, Arrays.asList(
+                new FacetField.Bucket("SNV", 7, null),
+                new FacetField.Bucket("INDEL", 3, null))));
+    }
+}
@@ -7,7 +7,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.opencga.core.config.storage.SampleIndexConfiguration;
 import org.opencb.opencga.core.config.storage.SampleIndexConfiguration.Population;
@@ -22,6 +24,7 @@ import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
 import org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverter;
 import org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationPutBuilder;
 import org.opencb.opencga.storage.hadoop.variant.index.core.filters.RangeIndexFieldFilter;
+import org.opencb.opencga.storage.hadoop.variant.index.query.LocusQuery;
 import org.opencb.opencga.storage.hadoop.variant.index.query.SampleAnnotationIndexQuery;
 import org.opencb.opencga.storage.hadoop.variant.index.query.SampleFileIndexQuery;
 import org.opencb.opencga.storage.hadoop.variant.index.query.SampleIndexQuery;
@@ -29,8 +32,10 @@ import org.opencb.opencga.storage.hadoop.variant.index.query.SingleSampleIndexQu
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.opencb.opencga.storage.hadoop.variant.index.annotation.SampleIndexVariantAnnotationConverterTest.*;
@@ -122,6 +127,53 @@ public class SampleIndexEntryFilterTest {
         Assert.assertEquals(Arrays.asList("1:10:A:T", "1:20:A:T"), result);
     }
 
+    @Test
+    public void testLocusAndTypeFilter() {
+        SampleIndexEntry entry = new SampleIndexEntry(0, "1", 0);
+        entry.getGtEntry("0/1")
+                .setCount(6)
+                .setVariants(toBytes(
+                        "1:10:A:T",
+                        "1:20:AT:A",
+                        "1:30:A:C",
+                        "1:40:-:TT",
+                        "1:50:G:T",
+                        "1:60:AAAA:-"
+                ));
+
+        assertFilter(entry, null, Arrays.asList(new Region("1", 15, 35)), Collections.emptyList(),
+                "1:20:AT:A", "1:30:A:C");
+        // Deletion starting before the region
+        assertFilter(entry, null, Arrays.asList(new Region("1", 62, 70)), Collections.emptyList(),
+                "1:60:AAAA:-");
+        assertFilter(entry, null, Arrays.asList(new Region("2", 1, 100)), Collections.emptyList());
+        assertFilter(entry, null, Arrays.asList(new Region("1", 10, 10), new Region("1", 50, 55)), Collections.emptyList(),
+                "1:10:A:T", "1:50:G:T");
+        assertFilter(entry, null, Collections.emptyList(), Arrays.asList(new Variant("1:20:AT:A"), new Variant("1:30:A:G")),
+                "1:20:AT:A");
+        assertFilter(entry, EnumSet.of(VariantType.SNV), null, null,
+                "1:10:A:T", "1:30:A:C", "1:50:G:T");
+        assertFilter(entry, EnumSet.of(VariantType.INDEL), null, null,
+                "1:20:AT:A", "1:40:-:TT", "1:60:AAAA:-");
+        assertFilter(entry, EnumSet.of(VariantType.INDEL), Arrays.asList(new Region("1", 1, 45)), Collections.emptyList(),
+                "1:20:AT:A", "1:40:-:TT");
+    }
+
+    private void assertFilter(SampleIndexEntry entry, Set<VariantType> types, List<Region> regions, List<Variant> variants,
+                              String... expected) {
+        LocusQuery locusQuery = regions == null ? null : new LocusQuery(new Region("1", 0, 1000000), regions, variants);
+        SingleSampleIndexQuery query = new SampleIndexQuery(
+                schema, Collections.emptyList(), 0, types, "study", Collections.singletonMap("S1", Arrays.asList("0/1", "1/1")),
+                Collections.emptySet(), null, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+                new SampleAnnotationIndexQuery(schema), Collections.emptySet(), null, false, VariantQueryUtils.QueryOperation.AND, null)
+                .forSample("S1");
+        List<String> result = new SampleIndexEntryFilter(query, locusQuery).filter(entry)
+                .stream().map(Variant::toString).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(expected), result);
+        Assert.assertEquals(expected.length, new SampleIndexEntryFilter(query, locusQuery).filterAndCount(entry));
+        Assert.assertEquals(expected.length, new RawSampleIndexEntryFilter(query, locusQuery).filter(entry).size());
+    }
+
     private SampleIndexEntry getSampleIndexEntry1() {
         SampleIndexVariantAnnotationConverter converter = new SampleIndexVariantAnnotationConverter(schema);
         //{0.001, 0.005, 0.01};
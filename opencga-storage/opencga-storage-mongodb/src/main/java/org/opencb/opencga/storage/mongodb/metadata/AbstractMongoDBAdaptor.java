@@ -49,7 +49,7 @@ public class AbstractMongoDBAdaptor<T> {
         converter = new GenericDocumentComplexConverter<>(clazz);
         converter.getObjectMapper().configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
         converter.getObjectMapper().addMixIn(SampleVariantStats.class, SampleVariantStatsMixin.class);
-        mongoLock = new MongoLockManager(collection, "_lock");
+        mongoLock = new MongoLockManager(collection, "_lock", db.getDatabaseName() + "." + collectionName);
     }
 
     protected MongoDBCollection getCollection(String collectionName) {
@@ -42,7 +42,7 @@ public class MongoDBProjectMetadataDBAdaptor implements ProjectMetadataAdaptor {
         this.collection = db.getCollection(collectionName)
                 .withReadPreference(ReadPreference.primary())
                 .withWriteConcern(WriteConcern.ACKNOWLEDGED);
-        mongoLock = new MongoLockManager(collection, "_lock");
+        mongoLock = new MongoLockManager(collection, "_lock", db.getDatabaseName() + "." + collectionName);
     }
 
     @Override
@@ -27,6 +27,7 @@ import org.bson.conversions.Bson;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.opencga.storage.core.metadata.models.Lock;
+import org.opencb.opencga.storage.core.utils.LockWaitQueue;
 
 import java.util.Calendar;
 import java.util.Date;
@@ -56,6 +57,7 @@ public class MongoLockManager {
                     .setNameFormat("mongodb-lock-%d")
                     .build());
     private final String lockWriteField;
+    private final String namespace;
 
     private final MongoDBCollection collection;
 
@@ -64,10 +66,23 @@ public class MongoLockManager {
     }
 
     public MongoLockManager(MongoDBCollection collection, String lockField) {
+        this(collection, lockField, null);
+    }
+
+    /**
+     * Create a MongoLockManager.
+     *
+     * @param collection    Collection with the documents to lock
+     * @param lockField     Field to store the lock
+     * @param namespace     Full name of the collection. Lock managers with the same namespace share the in-JVM wait queues.
+     *                      If null, the wait queues are private to this instance.
+     */
+    public MongoLockManager(MongoDBCollection collection, String lockField, String namespace) {
         this.collection = collection;
         this.collection.withReadPreference(ReadPreference.primary())
                 .withWriteConcern(WriteConcern.ACKNOWLEDGED);
         lockWriteField = lockField + '.' + WRITE_FIELD;
+        this.namespace = namespace == null ? "instance-" + System.identityHashCode(this) : namespace;
     }
 
     /**
@@ -101,40 +116,65 @@ public class MongoLockManager {
 
         StopWatch watch = new StopWatch();
         watch.start();
+        // Wait for other threads of this JVM first. Only the first local waiter polls the database
+        LockWaitQueue queue = getWaitQueue(id);
+        long ticket = queue.enter(timeout);
         long modifiedCount;
         Date date;
-        do {
-            date = new Date(Calendar.getInstance().getTimeInMillis() + lockDuration);
-            Date now = Calendar.getInstance().getTime();
-
-            Bson query = and(eq("_id", id), or(eq(lockWriteField, null), lt(lockWriteField, now)));
-            Bson update = combine(set(lockWriteField, date));
-
-            modifiedCount = collection.update(query, update, null).getNumUpdated();
-
-            if (modifiedCount != 1) {
-                Thread.sleep(100);
-                //Check if the lock is still valid
-                if (watch.getTime() > timeout) {
-                    throw new TimeoutException("Unable to get the lock");
+        try {
+            int attempt = 0;
+            do {
+                date = new Date(Calendar.getInstance().getTimeInMillis() + lockDuration);
+                Date now = Calendar.getInstance().getTime();
+
+                Bson query = and(eq("_id", id), or(eq(lockWriteField, null), lt(lockWriteField, now)));
+                Bson update = combine(set(lockWriteField, date));
+
+                modifiedCount = collection.update(query, update, null).getNumUpdated();
+
+                if (modifiedCount != 1) {
+                    queue.backoff(attempt++, timeout - watch.getTime());
+                    //Check if the lock is still valid
+                    if (watch.getTime() > timeout) {
+                        throw new TimeoutException("Unable to get the lock");
+                    }
                 }
-            }
-        } while (modifiedCount == 0);
+            } while (modifiedCount == 0);
+        } catch (InterruptedException | TimeoutException | RuntimeException e) {
+            queue.leave(ticket);
+            throw e;
+        }
+        queue.acquired(ticket, lockDuration, watch.getTime());
 
         long lockToken = date.getTime();
         return new Lock(THREAD_POOL, ((int) (lockDuration / 4)), lockToken) {
             @Override
             public void unlock0() {
-                MongoLockManager.this.unlock(id, getToken());
+                try {
+                    MongoLockManager.this.unlock(id, getToken());
+                } finally {
+                    queue.leave(ticket);
+                }
             }
 
             @Override
             public synchronized void refresh() {
                 setToken(MongoLockManager.this.refresh(id, getToken(), lockDuration));
+                queue.extend(ticket, lockDuration);
             }
         };
     }
 
+    /**
+     * In-JVM wait queue for the given lock. Includes the wait time stats.
+     *
+     * @param id    _id of the locked document
+     * @return      Wait queue
+     */
+    public LockWaitQueue getWaitQueue(Object id) {
+        return LockWaitQueue.get("mongodb:" + namespace + ":" + lockWriteField + ":" + id);
+    }
+
     public long refresh(Object id, long lockToken, long lockDuration) {
         Date date = new Date(Calendar.getInstance().getTimeInMillis() + lockDuration);
         Date lockToRefresh = new Date(lockToken);
@@ -139,6 +139,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                 }
             });
         }
+        metadataManager.invalidateQueryCache();
         return new DataResult<List<String>>().setResults(trios);
     }
 
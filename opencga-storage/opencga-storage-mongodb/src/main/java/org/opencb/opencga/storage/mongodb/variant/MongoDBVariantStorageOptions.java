@@ -37,6 +37,8 @@ public enum MongoDBVariantStorageOptions implements ConfigurationOption {
     MERGE_PARALLEL_WRITE("storage.mongodb.merge.parallelWrite", false),
     MERGE_BATCH_SIZE("storage.mongodb.merge.batchSize", 10),          //Number of files to merge directly from first to second collection
 
+    QUERY_REGION_BATCH_SIZE("storage.mongodb.query.region.batchSize", 50),      // Max number of regions per cursor in multi-region queries
+    QUERY_REGION_PARALLEL_CURSORS("storage.mongodb.query.region.parallelCursors", 4), // Number of region batches fetched in parallel
 
     EXTRA_GENOTYPE_FIELDS_COMPRESS("extra-fields.compress", true),    //Compress with gzip other sample information
     DEFAULT_GENOTYPE("defaultGenotype", Arrays.asList("0/0", "0|0"));
@@ -0,0 +1,126 @@
+package org.opencb.opencga.storage.mongodb.variant.query;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Concatenates the iterators of a sorted list of disjoint region batches.
+ *
+ * Up to {@code parallelCursors} batches are open at the same time. The factory is expected to return iterators
+ * that fetch in background, so while the first batch is being consumed, the next ones are already being fetched.
+ * As the batches are disjoint and sorted, concatenating them in order returns the variants in genomic order.
+ *
+ * Once {@code maxResults} variants are returned, all the open batches are closed and no more batches are opened.
+ *
+ * Created on 17/10/26.
+ */
+public class RegionBatchVariantDBIterator extends VariantDBIterator {
+
+    private final Iterator<Supplier<VariantDBIterator>> batches;
+    private final int parallelCursors;
+    private final int maxResults;
+    private final Deque<VariantDBIterator> openIterators = new ArrayDeque<>();
+    private int count = 0;
+    private long closedTimeConverting = 0;
+    private int numBatches = 0;
+
+    /**
+     * Create a RegionBatchVariantDBIterator.
+     *
+     * @param batches           Iterator factory for each batch, in genomic order
+     * @param parallelCursors   Max number of batches to open at the same time
+     * @param maxResults        Max number of results to return. Negative for no limit.
+     */
+    public RegionBatchVariantDBIterator(Iterator<Supplier<VariantDBIterator>> batches, int parallelCursors, int maxResults) {
+        this.batches = batches;
+        this.parallelCursors = Math.max(1, parallelCursors);
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fetch(this::hasNextInternal);
+    }
+
+    private boolean hasNextInternal() {
+        if (maxResults >= 0 && count >= maxResults) {
+            // Limit reached. Stop all the cursors.
+            closeOpenIterators();
+            return false;
+        }
+        openBatches();
+        while (!openIterators.isEmpty()) {
+            if (openIterators.peekFirst().hasNext()) {
+                return true;
+            }
+            closeIterator(openIterators.pollFirst());
+            openBatches();
+        }
+        return false;
+    }
+
+    @Override
+    public Variant next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        count++;
+        return openIterators.peekFirst().next();
+    }
+
+    private void openBatches() {
+        while (openIterators.size() < parallelCursors && batches.hasNext()) {
+            openIterators.addLast(batches.next().get());
+            numBatches++;
+        }
+    }
+
+    private void closeOpenIterators() {
+        while (!openIterators.isEmpty()) {
+            closeIterator(openIterators.pollFirst());
+        }
+    }
+
+    private void closeIterator(VariantDBIterator iterator) {
+        closedTimeConverting += iterator.getTimeConverting();
+        try {
+            iterator.close();
+        } catch (Exception e) {
+            throw VariantQueryException.internalException(e);
+        }
+    }
+
+    @Override
+    public long getTimeConverting() {
+        long timeConverting = closedTimeConverting;
+        for (VariantDBIterator iterator : openIterators) {
+            timeConverting += iterator.getTimeConverting();
+        }
+        return timeConverting;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    public int getNumBatches() {
+        return numBatches;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            closeOpenIterators();
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -1,15 +1,34 @@
 package org.opencb.opencga.storage.mongodb.variant.query;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.core.config.ConfigurationOption;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.PrefetchVariantDBIterator;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+import org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryResult;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
 import org.opencb.opencga.storage.core.variant.query.executors.DBAdaptorVariantQueryExecutor;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions;
+import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
+import org.opencb.opencga.storage.mongodb.variant.converters.VariantStringIdConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.REGION;
 import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.MODIFIER_QUERY_PARAMS;
@@ -17,18 +36,31 @@ import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.MO
 /**
  * Special executor to be used if the query contains only filters for REGION and (optionally) STUDY. [#837]
  *
+ * Queries with multiple regions (e.g. gene panels) are split in batches of sorted and merged regions. Each batch is
+ * queried with its own cursor, fetching several batches in parallel, and the results are streamed back in genomic order.
+ *
  * Created on 02/04/19.
  *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
 public class RegionVariantQueryExecutor extends DBAdaptorVariantQueryExecutor {
 
+    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+            .namingPattern("mongodb-region-query-%s")
+            .daemon(true)
+            .build());
+
+    private final VariantDBAdaptor dbAdaptor;
+    private final Logger logger = LoggerFactory.getLogger(RegionVariantQueryExecutor.class);
+
     public RegionVariantQueryExecutor(VariantDBAdaptor dbAdaptor, String storageEngineId, ObjectMap options) {
         super(dbAdaptor, storageEngineId, options);
+        this.dbAdaptor = dbAdaptor;
     }
 
     @Override
-    public boolean canUseThisExecutor(Query query, QueryOptions options) {
+    public boolean canUseThisExecutor(ParsedVariantQuery variantQuery) throws StorageEngineException {
+        QueryOptions options = variantQuery.getInputOptions();
         if (VariantStorageEngine.UseSearchIndex.from(options).equals(VariantStorageEngine.UseSearchIndex.YES)) {
             // Query search index is mandatory. Can not use this executor.
             return false;
@@ -39,16 +71,113 @@ public class RegionVariantQueryExecutor extends DBAdaptorVariantQueryExecutor {
         }
 
         // Get set of valid params. Remove Modifier params
-        Set<VariantQueryParam> queryParams = VariantQueryUtils.validParams(query);
+        Set<VariantQueryParam> queryParams = VariantQueryUtils.validParams(variantQuery.getInputQuery());
         queryParams.removeAll(MODIFIER_QUERY_PARAMS);
 
         // REGION + [ STUDY ]
         if (queryParams.contains(REGION) // Has region
                 // Optionally, has study
                 && (queryParams.size() == 1 || queryParams.size() == 2 && queryParams.contains(VariantQueryParam.STUDY))) {
-            return true;
+            return super.canUseThisExecutor(variantQuery);
         }
 
         return false;
     }
+
+    @Override
+    protected Object getOrIterator(ParsedVariantQuery variantQuery, boolean iterator) throws StorageEngineException {
+        Query query = variantQuery.getInputQuery();
+        QueryOptions options = variantQuery.getInputOptions();
+        int batchSize = getOption(options, MongoDBVariantStorageOptions.QUERY_REGION_BATCH_SIZE);
+
+        List<Region> regions = VariantQueryUtils.mergeRegions(Region.parseRegions(query.getString(REGION.key()), true));
+        List<List<Region>> batches = batchRegions(regions, batchSize);
+        if (batches.size() <= 1) {
+            return super.getOrIterator(variantQuery, iterator);
+        }
+
+        int limit = options.getInt(QueryOptions.LIMIT, -1);
+        int skip = Math.max(0, options.getInt(QueryOptions.SKIP, 0));
+        int maxResults = limit < 0 ? -1 : limit + skip;
+
+        // Batches are sorted as the variant ids, so the concatenation of all batches is sorted.
+        // Skip can not be applied per batch. Apply locally.
+        QueryOptions batchOptions = new QueryOptions(options);
+        batchOptions.put(QueryOptions.SORT, true);
+        batchOptions.remove(QueryOptions.SKIP);
+        if (maxResults >= 0) {
+            batchOptions.put(QueryOptions.LIMIT, maxResults);
+        }
+
+        int parallelCursors = getOption(options, MongoDBVariantStorageOptions.QUERY_REGION_PARALLEL_CURSORS);
+        int bufferSize = getOption(options, VariantStorageOptions.QUERY_PREFETCH_BUFFER_SIZE);
+        int prefetchBatchSize = getOption(options, VariantStorageOptions.QUERY_PREFETCH_BATCH_SIZE);
+        logger.info("Query {} regions in {} batches using {} parallel cursors", regions.size(), batches.size(), parallelCursors);
+
+        List<Supplier<VariantDBIterator>> iteratorSuppliers = new ArrayList<>(batches.size());
+        for (List<Region> batch : batches) {
+            Query batchQuery = new Query(query);
+            batchQuery.put(REGION.key(), batch.stream().map(Region::toString).collect(Collectors.joining(VariantQueryUtils.OR)));
+            iteratorSuppliers.add(() -> {
+                VariantDBIterator batchIterator = dbAdaptor.iterator(batchQuery, new QueryOptions(batchOptions));
+                return parallelCursors > 1
+                        ? new PrefetchVariantDBIterator(batchIterator, THREAD_POOL, bufferSize, prefetchBatchSize)
+                        : batchIterator;
+            });
+        }
+        VariantDBIterator variantsIterator = new RegionBatchVariantDBIterator(iteratorSuppliers.iterator(), parallelCursors, maxResults)
+                .localSkip(skip);
+
+        if (iterator) {
+            return variantsIterator;
+        } else {
+            VariantQueryResult<Variant> result = variantsIterator.toDataResult(variantQuery);
+            result.setSource(storageEngineId);
+            return result;
+        }
+    }
+
+    /**
+     * Split a list of sorted and non overlapping regions in batches.
+     *
+     * Each batch contains regions from one single chromosome. Batches are only closed at chunk boundaries, so two
+     * batches never read the same chunk of the variants collection.
+     * Returned batches follow the order of the variant ids, where single digit chromosomes are left padded
+     * (i.e. "2" goes before "10"), instead of the lexicographic order used to merge the regions.
+     *
+     * @param regions   Sorted and merged regions
+     * @param batchSize Max number of regions per batch. Can be exceeded to complete the last chunk.
+     * @return          List of batches
+     */
+    static List<List<Region>> batchRegions(List<Region> regions, int batchSize) {
+        List<List<Region>> batches = new ArrayList<>();
+        List<Region> batch = new ArrayList<>();
+        Region prev = null;
+        for (Region region : regions) {
+            if (prev != null) {
+                boolean sameChromosome = prev.getChromosome().equals(region.getChromosome());
+                boolean sameChunk = sameChromosome && getChunk(prev.getEnd()) == getChunk(region.getStart());
+                if (!sameChromosome || batch.size() >= batchSize && !sameChunk) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            batch.add(region);
+            prev = region;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        batches.sort(Comparator.comparing(b -> VariantStringIdConverter.buildId(b.get(0).getChromosome(), b.get(0).getStart())));
+        return batches;
+    }
+
+    private static int getChunk(int position) {
+        return position / VariantMongoDBAdaptor.CHUNK_SIZE_BIG;
+    }
+
+    private int getOption(QueryOptions queryOptions, ConfigurationOption option) {
+        int defaultValue = getOptions().getInt(option.key(), option.defaultValue());
+        return queryOptions.getInt(option.key(), defaultValue);
+    }
 }
@@ -0,0 +1,151 @@
+package org.opencb.opencga.storage.mongodb.variant.query;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.core.testclassification.duration.ShortTests;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+import org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions;
+import org.opencb.opencga.storage.mongodb.variant.converters.VariantStringIdConverter;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.REGION;
+
+@Category(ShortTests.class)
+public class RegionVariantQueryExecutorTest {
+
+    @Test
+    public void testBatchRegions() {
+        List<Region> regions = VariantQueryUtils.mergeRegions(Region.parseRegions(
+                "2:100-200,1:1000-2000,1:1500-3000,1:5000-5100,1:5200-5300,1:25000-26000,2:50000-60000", true));
+
+        List<List<Region>> batches = RegionVariantQueryExecutor.batchRegions(regions, 2);
+        assertEquals(Arrays.asList(
+                // Third region in the same chunk as the second one. Can not be split
+                Arrays.asList(new Region("1", 1000, 3000), new Region("1", 5000, 5100), new Region("1", 5200, 5300)),
+                Collections.singletonList(new Region("1", 25000, 26000)),
+                // New chromosome, new batch
+                Arrays.asList(new Region("2", 100, 200), new Region("2", 50000, 60000))
+        ), batches);
+
+        assertEquals(1, RegionVariantQueryExecutor.batchRegions(Collections.singletonList(new Region("1", 1, 10)), 2).size());
+        assertEquals(0, RegionVariantQueryExecutor.batchRegions(Collections.emptyList(), 2).size());
+    }
+
+    @Test
+    public void testBatchRegionsVariantIdOrder() {
+        // Merged regions are sorted lexicographically ("10" before "2")
+        List<Region> regions = VariantQueryUtils.mergeRegions(Region.parseRegions("2:100-200,10:100-200,1:100-200", true));
+
+        // Batches follow the variant id order
+        assertEquals(Arrays.asList(
+                Collections.singletonList(new Region("1", 100, 200)),
+                Collections.singletonList(new Region("2", 100, 200)),
+                Collections.singletonList(new Region("10", 100, 200))
+        ), RegionVariantQueryExecutor.batchRegions(regions, 2));
+    }
+
+    @Test
+    public void testGetMultipleChromosomes() throws Exception {
+        List<Variant> variants = variants("2:100:A:C", "2:200:A:C", "10:100:A:C", "10:200:A:C");
+        RegionVariantQueryExecutor executor = new RegionVariantQueryExecutor(mockDBAdaptor(variants), "mongodb", new ObjectMap());
+        Query query = new Query(REGION.key(), "10:1-1000,2:1-1000");
+
+        assertEquals(variants, iterate(executor, query, new QueryOptions()));
+        assertEquals(variants.subList(0, 3), iterate(executor, query, new QueryOptions(QueryOptions.LIMIT, 3)));
+        assertEquals(variants.subList(1, 4), iterate(executor, query, new QueryOptions(QueryOptions.LIMIT, 3)
+                .append(QueryOptions.SKIP, 1)));
+        assertEquals(variants.subList(0, 3), iterate(executor, query, new QueryOptions(QueryOptions.LIMIT, 3)
+                .append(MongoDBVariantStorageOptions.QUERY_REGION_PARALLEL_CURSORS.key(), 1)));
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        List<List<Variant>> batches = Arrays.asList(
+                variants("1:100:A:C", "1:200:A:C"),
+                variants(),
+                variants("1:5000:A:C"),
+                variants("2:10:A:C", "2:20:A:C", "2:30:A:C"));
+
+        for (int parallel = 1; parallel < 5; parallel++) {
+            AtomicInteger opened = new AtomicInteger();
+            RegionBatchVariantDBIterator iterator = new RegionBatchVariantDBIterator(suppliers(batches, opened), parallel, -1);
+            List<Variant> result = iterator.toList();
+            assertEquals(batches.stream().flatMap(Collection::stream).collect(Collectors.toList()), result);
+            assertEquals(4, iterator.getNumBatches());
+            assertEquals(6, iterator.getCount());
+        }
+    }
+
+    @Test
+    public void testIteratorLimit() throws Exception {
+        List<List<Variant>> batches = Arrays.asList(
+                variants("1:100:A:C", "1:200:A:C"),
+                variants("1:5000:A:C"),
+                variants("2:10:A:C", "2:20:A:C", "2:30:A:C"),
+                variants("3:10:A:C"),
+                variants("4:10:A:C"));
+
+        AtomicInteger opened = new AtomicInteger();
+        RegionBatchVariantDBIterator iterator = new RegionBatchVariantDBIterator(suppliers(batches, opened), 2, 3);
+        List<Variant> result = iterator.toList();
+        assertEquals(variants("1:100:A:C", "1:200:A:C", "1:5000:A:C"), result);
+        // Limit reached in the second batch. Only the next one was opened in advance
+        assertEquals(3, opened.get());
+    }
+
+    private static List<Variant> iterate(RegionVariantQueryExecutor executor, Query query, QueryOptions options) throws Exception {
+        try (VariantDBIterator iterator = (VariantDBIterator) executor.getOrIterator(new ParsedVariantQuery(query, options), true)) {
+            return iterator.toList();
+        }
+    }
+
+    /**
+     * Mock a VariantDBAdaptor returning the variants within the queried regions, sorted as in the variants collection.
+     */
+    private static VariantDBAdaptor mockDBAdaptor(List<Variant> variants) {
+        VariantDBAdaptor dbAdaptor = mock(VariantDBAdaptor.class);
+        when(dbAdaptor.iterator(any(Query.class), any(QueryOptions.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            QueryOptions options = invocation.getArgument(1);
+            List<Region> regions = Region.parseRegions(query.getString(REGION.key()), true);
+            List<Variant> result = variants.stream()
+                    .filter(variant -> regions.stream().anyMatch(region -> region.contains(variant.getChromosome(), variant.getStart())))
+                    .sorted(Comparator.comparing(variant -> VariantStringIdConverter.buildId(variant.getChromosome(), variant.getStart())))
+                    .limit(options.getInt(QueryOptions.LIMIT, Integer.MAX_VALUE))
+                    .collect(Collectors.toList());
+            return VariantDBIterator.wrapper(result.iterator());
+        });
+        return dbAdaptor;
+    }
+
+    private static Iterator<Supplier<VariantDBIterator>> suppliers(List<List<Variant>> batches, AtomicInteger opened) {
+        List<Supplier<VariantDBIterator>> suppliers = new ArrayList<>();
+        for (List<Variant> batch : batches) {
+            suppliers.add(() -> {
+                opened.incrementAndGet();
+                return VariantDBIterator.wrapper(batch.iterator());
+            });
+        }
+        return suppliers.iterator();
+    }
+
+    private static List<Variant> variants(String... variants) {
+        return Arrays.stream(variants).map(Variant::new).collect(Collectors.toList());
+    }
+}